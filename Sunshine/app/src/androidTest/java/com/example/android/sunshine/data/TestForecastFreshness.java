@@ -0,0 +1,59 @@
+package com.example.android.sunshine.data;
+
+import android.support.test.runner.AndroidJUnit4;
+
+import com.example.android.sunshine.utilities.SunshineDateUtils;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.concurrent.TimeUnit;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertFalse;
+import static junit.framework.Assert.assertTrue;
+
+@RunWith(AndroidJUnit4.class)
+public class TestForecastFreshness {
+
+    private static final long SOFT_TTL = TimeUnit.HOURS.toMillis(4);
+
+    private final long mNow = System.currentTimeMillis();
+    private final long mToday = SunshineDateUtils.normalizeDate(mNow);
+
+    @Test
+    public void testRecentForecastIsServedAsIs() {
+        ForecastFreshness freshness = ForecastFreshness.evaluate(14, mToday, mNow - 1000, mNow, SOFT_TTL);
+        assertEquals(ForecastFreshness.STATE_FRESH, freshness.getState());
+        assertEquals(1000, freshness.getAgeMillis());
+        assertTrue(freshness.canServe());
+        assertFalse(freshness.needsRevalidation());
+    }
+
+    @Test
+    public void testAgingForecastIsServedAndRevalidated() {
+        ForecastFreshness freshness = ForecastFreshness.evaluate(14, mToday, mNow - SOFT_TTL - 1, mNow, SOFT_TTL);
+        assertEquals(ForecastFreshness.STATE_AGING, freshness.getState());
+        assertTrue(freshness.canServe());
+        assertTrue(freshness.needsRevalidation());
+        assertFalse(freshness.isStale());
+    }
+
+    @Test
+    public void testOldForecastIsMarkedStale() {
+        ForecastFreshness freshness = ForecastFreshness.evaluate(14, mToday,
+                mNow - ForecastFreshness.HARD_TTL_MILLIS - 1, mNow, SOFT_TTL);
+        assertTrue(freshness.canServe());
+        assertTrue(freshness.needsRevalidation());
+        assertTrue(freshness.isStale());
+    }
+
+    @Test
+    public void testNothingToServeBeforeToday() {
+        assertFalse(ForecastFreshness.evaluate(0, 0, 0, mNow, SOFT_TTL).canServe());
+        ForecastFreshness freshness = ForecastFreshness.evaluate(14,
+                mToday - SunshineDateUtils.DAY_IN_MILLIS, mNow - 1000, mNow, SOFT_TTL);
+        assertEquals(ForecastFreshness.STATE_MISSING, freshness.getState());
+        assertTrue(freshness.needsRevalidation());
+    }
+}
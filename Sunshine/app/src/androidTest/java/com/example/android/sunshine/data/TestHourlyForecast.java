@@ -0,0 +1,115 @@
+package com.example.android.sunshine.data;
+
+import android.content.ContentValues;
+import android.content.Context;
+import android.database.Cursor;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.runner.AndroidJUnit4;
+
+import com.example.android.sunshine.data.WeatherContract.HourlyWeatherEntry;
+import com.example.android.sunshine.utilities.OpenWeatherJsonUtils;
+import com.example.android.sunshine.utilities.SunshineDateUtils;
+
+import org.json.JSONException;
+import org.junit.After;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.StringReader;
+import java.util.concurrent.TimeUnit;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertNotNull;
+import static junit.framework.Assert.assertNull;
+import static junit.framework.Assert.assertTrue;
+
+@RunWith(AndroidJUnit4.class)
+public class TestHourlyForecast {
+
+    /* A day, at midnight UTC */
+    private static final long DATE = SunshineDateUtils.normalizeDate(System.currentTimeMillis());
+
+    private final Context mContext = InstrumentationRegistry.getTargetContext();
+
+    /*
+     * Builds a response with steps every 3 hours from 18:00 on DATE, so 2 steps on the first day.
+     */
+    private static String createResponse(int stepCount) {
+        StringBuilder json = new StringBuilder("{\"cod\":\"200\",\"cnt\":" + stepCount + ",\"list\":[");
+        long firstStep = DATE + TimeUnit.HOURS.toMillis(18);
+        for (int i = 0; i < stepCount; i++) {
+            long seconds = TimeUnit.MILLISECONDS.toSeconds(firstStep + TimeUnit.HOURS.toMillis(3 * i));
+            json.append(i == 0 ? "" : ",")
+                    .append("{\"dt\":").append(seconds)
+                    .append(",\"main\":{\"temp\":").append(10 + i * 0.25).append(",\"humidity\":80}")
+                    .append(",\"weather\":[{\"id\":").append(800 + i).append(",\"main\":\"Clear\"}]")
+                    .append(",\"wind\":{\"speed\":3.1,\"deg\":200}}");
+        }
+        return json.append("],\"city\":{\"name\":\"Lisbon\"}}").toString();
+    }
+
+    @After
+    public void tearDown() {
+        mContext.getContentResolver().delete(HourlyWeatherEntry.CONTENT_URI, null, null);
+    }
+
+    @Test
+    public void testStepsArePackedPerDay() throws JSONException {
+        ContentValues[] days = OpenWeatherJsonUtils.getHourlyContentValuesFromJson(
+                new StringReader(createResponse(11)), "lisbon");
+        assertNotNull(days);
+        assertEquals("11 steps from 18:00 span 3 days", 3, days.length);
+
+        HourlyForecast first = HourlyForecast.fromBlob(DATE,
+                days[0].getAsByteArray(HourlyWeatherEntry.COLUMN_STEPS));
+        assertEquals(2, first.size());
+        assertEquals(DATE + TimeUnit.HOURS.toMillis(21), first.getTime(1));
+        assertEquals(10.25, first.getTemperature(1));
+        assertEquals(801, first.getWeatherId(1));
+        assertEquals(3.1, first.getWindSpeed(1));
+
+        assertEquals(DATE + SunshineDateUtils.DAY_IN_MILLIS,
+                (long) days[1].getAsLong(HourlyWeatherEntry.COLUMN_DATE));
+        assertEquals(8 * HourlyForecast.STEP_BYTES,
+                days[1].getAsByteArray(HourlyWeatherEntry.COLUMN_STEPS).length);
+    }
+
+    @Test
+    public void testErrorResponseHasNoDays() throws JSONException {
+        assertNull(OpenWeatherJsonUtils.getHourlyContentValuesFromJson(
+                new StringReader("{\"cod\":\"404\",\"message\":\"city not found\"}"), "nowhere"));
+    }
+
+    @Test
+    public void testDaysAreStoredPerLocation() throws JSONException {
+        String[] locations = {HourlyWeatherEntry.PREFERRED_LOCATION, "lisbon", "recife"};
+        for (String location : locations) {
+            ContentValues[] days = OpenWeatherJsonUtils.getHourlyContentValuesFromJson(
+                    new StringReader(createResponse(40)), location);
+            assertEquals(days.length,
+                    mContext.getContentResolver().bulkInsert(HourlyWeatherEntry.CONTENT_URI, days));
+        }
+
+        /* Storing a location again replaces its days */
+        ContentValues[] again = OpenWeatherJsonUtils.getHourlyContentValuesFromJson(
+                new StringReader(createResponse(40)), "lisbon");
+        mContext.getContentResolver().bulkInsert(HourlyWeatherEntry.CONTENT_URI, again);
+
+        Cursor cursor = mContext.getContentResolver().query(HourlyWeatherEntry.CONTENT_URI,
+                new String[]{HourlyWeatherEntry.COLUMN_DATE, HourlyWeatherEntry.COLUMN_STEPS},
+                HourlyWeatherEntry.getSqlSelectForLocation(), new String[]{"lisbon"}, null);
+        assertNotNull(cursor);
+        try {
+            assertEquals(again.length, cursor.getCount());
+            int steps = 0;
+            while (cursor.moveToNext()) {
+                HourlyForecast day = HourlyForecast.fromBlob(cursor.getLong(0), cursor.getBlob(1));
+                assertTrue(day.size() > 0);
+                steps += day.size();
+            }
+            assertEquals(40, steps);
+        } finally {
+            cursor.close();
+        }
+    }
+}
@@ -0,0 +1,133 @@
+package com.example.android.sunshine.data;
+
+import android.content.Context;
+import android.database.Cursor;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.runner.AndroidJUnit4;
+
+import com.example.android.sunshine.data.WeatherContract.NowcastEntry;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.concurrent.TimeUnit;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertNotNull;
+
+@RunWith(AndroidJUnit4.class)
+public class TestPrecipitationNowcast {
+
+    private static final long MINUTE = TimeUnit.MINUTES.toMillis(1);
+
+    private final Context mContext = InstrumentationRegistry.getTargetContext();
+
+    /* The current minute, and the ones after it, with 0.1 mm/h more precipitation each */
+    private static int fillMinutes(long start, int count, long[] times, float[] precipitation) {
+        for (int i = 0; i < count; i++) {
+            times[i] = start + i * MINUTE;
+            precipitation[i] = 0.1f * i;
+        }
+        return count;
+    }
+
+    @Test
+    public void testUpdateOverwritesMinutesInPlace() {
+        PrecipitationNowcast nowcast = PrecipitationNowcast.forLocation(mContext, "test:overwrite");
+        long now = System.currentTimeMillis() / MINUTE * MINUTE;
+        long[] times = new long[PrecipitationNowcast.CAPACITY];
+        float[] precipitation = new float[PrecipitationNowcast.CAPACITY];
+
+        nowcast.update(times, precipitation,
+                fillMinutes(now, PrecipitationNowcast.CAPACITY, times, precipitation));
+        /* Ten minutes later, the update wraps around the ring over the minutes gone by */
+        nowcast.update(times, precipitation,
+                fillMinutes(now + 10 * MINUTE, PrecipitationNowcast.CAPACITY, times, precipitation));
+
+        int count = nowcast.snapshot(now + 10 * MINUTE, times, precipitation);
+        assertEquals(PrecipitationNowcast.CAPACITY, count);
+        assertEquals(now + 10 * MINUTE, times[0]);
+        assertEquals(0f, precipitation[0]);
+        assertEquals(now + 69 * MINUTE, times[count - 1]);
+        assertEquals(0.1f * 59, precipitation[count - 1]);
+    }
+
+    @Test
+    public void testMinutesWithoutDataAreLeftOut() {
+        PrecipitationNowcast nowcast = PrecipitationNowcast.forLocation(mContext, "test:partial");
+        long now = System.currentTimeMillis() / MINUTE * MINUTE;
+        long[] times = new long[PrecipitationNowcast.CAPACITY];
+        float[] precipitation = new float[PrecipitationNowcast.CAPACITY];
+
+        nowcast.update(times, precipitation, fillMinutes(now - 30 * MINUTE, 40, times, precipitation));
+
+        /* Only the 10 minutes from now on are left */
+        assertEquals(10, nowcast.snapshot(now, times, precipitation));
+        assertEquals(now, times[0]);
+    }
+
+    /**
+     * A shorter update replaces the nowcast: the minutes it no longer covers must not be read,
+     * even though their slots still hold the previous update.
+     */
+    @Test
+    public void testMinutesNotCoveredByTheLatestUpdateAreLeftOut() {
+        PrecipitationNowcast nowcast = PrecipitationNowcast.forLocation(mContext, "test:shorter");
+        long now = System.currentTimeMillis() / MINUTE * MINUTE;
+        long[] times = new long[PrecipitationNowcast.CAPACITY];
+        float[] precipitation = new float[PrecipitationNowcast.CAPACITY];
+
+        nowcast.update(times, precipitation,
+                fillMinutes(now, PrecipitationNowcast.CAPACITY, times, precipitation));
+        nowcast.update(times, precipitation, fillMinutes(now, 30, times, precipitation));
+
+        int count = nowcast.snapshot(now, times, precipitation);
+        assertEquals(30, count);
+        assertEquals(now + 29 * MINUTE, times[count - 1]);
+    }
+
+    /**
+     * The minutes an update has no data for, within the range it covers, must not be read either.
+     */
+    @Test
+    public void testGapsOfTheLatestUpdateAreLeftOut() {
+        PrecipitationNowcast nowcast = PrecipitationNowcast.forLocation(mContext, "test:gaps");
+        long now = System.currentTimeMillis() / MINUTE * MINUTE;
+        long[] times = new long[PrecipitationNowcast.CAPACITY];
+        float[] precipitation = new float[PrecipitationNowcast.CAPACITY];
+
+        nowcast.update(times, precipitation, fillMinutes(now, 10, times, precipitation));
+        /* Every other minute */
+        for (int i = 0; i < 5; i++) {
+            times[i] = now + 2 * i * MINUTE;
+        }
+        nowcast.update(times, precipitation, 5);
+
+        assertEquals(5, nowcast.snapshot(now, times, precipitation));
+        assertEquals(now + 2 * MINUTE, times[1]);
+    }
+
+    @Test
+    public void testNowcastIsQueriedThroughTheProvider() {
+        String location = "test:provider";
+        long now = System.currentTimeMillis() / MINUTE * MINUTE;
+        long[] times = new long[PrecipitationNowcast.CAPACITY];
+        float[] precipitation = new float[PrecipitationNowcast.CAPACITY];
+        PrecipitationNowcast.forLocation(mContext, location)
+                .update(times, precipitation, fillMinutes(now, 5, times, precipitation));
+
+        Cursor cursor = mContext.getContentResolver().query(
+                NowcastEntry.buildNowcastUriWithLocation(location),
+                new String[]{NowcastEntry.COLUMN_PRECIPITATION, NowcastEntry.COLUMN_TIME},
+                null, null, null);
+        assertNotNull(cursor);
+        try {
+            assertEquals(5, cursor.getCount());
+            cursor.moveToPosition(4);
+            assertEquals(0.4f, cursor.getFloat(0));
+            assertEquals(now + 4 * MINUTE, cursor.getLong(1));
+        } finally {
+            cursor.close();
+        }
+    }
+}
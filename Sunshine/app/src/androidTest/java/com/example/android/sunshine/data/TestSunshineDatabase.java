@@ -193,7 +193,7 @@ public class TestSunshineDatabase {
 
     @Test
     public void testDatabaseVersionWasIncremented() {
-        int expectedDatabaseVersion = 3;
+        int expectedDatabaseVersion = 9;
         String databaseVersionShouldBe1 = "Database version should be "
                 + expectedDatabaseVersion + " but isn't."
                 + "\n Database version: ";
@@ -301,6 +301,12 @@ public class TestSunshineDatabase {
             /* We don't need to verify the _ID column value is not null, the system does */
             if (columnName.equals(WeatherContract.WeatherEntry._ID)) continue;
 
+            /* Pressure, humidity and wind are filled by the sync after the days are inserted */
+            if (columnName.equals(WeatherContract.WeatherEntry.COLUMN_PRESSURE)
+                    || columnName.equals(WeatherContract.WeatherEntry.COLUMN_HUMIDITY)
+                    || columnName.equals(WeatherContract.WeatherEntry.COLUMN_WIND_SPEED)
+                    || columnName.equals(WeatherContract.WeatherEntry.COLUMN_DEGREES)) continue;
+
             /* Set the value to null */
             testValues.putNull(columnName);
 
@@ -37,6 +37,14 @@ public class TestUriMatcher {
     private static final Uri TEST_WEATHER_DIR = WeatherContract.WeatherEntry.CONTENT_URI;
     private static final Uri TEST_WEATHER_WITH_DATE_DIR = WeatherContract.WeatherEntry
             .buildWeatherUriWithDate(TestUtilities.DATE_NORMALIZED);
+    private static final Uri TEST_METADATA_DIR = WeatherContract.MetadataEntry.CONTENT_URI;
+    private static final Uri TEST_SYNC_HISTORY_DIR = WeatherContract.SyncHistoryEntry.CONTENT_URI;
+    private static final Uri TEST_LOCATION_WEATHER_DIR = WeatherContract.LocationWeatherEntry.CONTENT_URI;
+    private static final Uri TEST_FORECAST_CACHE_DIR = WeatherContract.ForecastCacheEntry.CONTENT_URI;
+    private static final Uri TEST_HOURLY_WEATHER_DIR = WeatherContract.HourlyWeatherEntry.CONTENT_URI;
+    private static final Uri TEST_NOWCAST_DIR = WeatherContract.NowcastEntry.CONTENT_URI;
+    private static final Uri TEST_NOWCAST_WITH_LOCATION_DIR =
+            WeatherContract.NowcastEntry.buildNowcastUriWithLocation("Mountain View, CA");
 
     private static final String weatherCodeVariableName = "CODE_WEATHER";
     private static int REFLECTED_WEATHER_CODE;
@@ -44,6 +52,27 @@ public class TestUriMatcher {
     private static final String weatherCodeWithDateVariableName = "CODE_WEATHER_WITH_DATE";
     private static int REFLECTED_WEATHER_WITH_DATE_CODE;
 
+    private static final String metadataCodeVariableName = "CODE_METADATA";
+    private static int REFLECTED_METADATA_CODE;
+
+    private static final String syncHistoryCodeVariableName = "CODE_SYNC_HISTORY";
+    private static int REFLECTED_SYNC_HISTORY_CODE;
+
+    private static final String locationWeatherCodeVariableName = "CODE_LOCATION_WEATHER";
+    private static int REFLECTED_LOCATION_WEATHER_CODE;
+
+    private static final String forecastCacheCodeVariableName = "CODE_FORECAST_CACHE";
+    private static int REFLECTED_FORECAST_CACHE_CODE;
+
+    private static final String hourlyWeatherCodeVariableName = "CODE_HOURLY_WEATHER";
+    private static int REFLECTED_HOURLY_WEATHER_CODE;
+
+    private static final String nowcastCodeVariableName = "CODE_NOWCAST";
+    private static int REFLECTED_NOWCAST_CODE;
+
+    private static final String nowcastWithLocationCodeVariableName = "CODE_NOWCAST_WITH_LOCATION";
+    private static int REFLECTED_NOWCAST_WITH_LOCATION_CODE;
+
     private UriMatcher testMatcher;
 
     @Before
@@ -61,6 +90,34 @@ public class TestUriMatcher {
                     WeatherProvider.class,
                     weatherCodeWithDateVariableName);
 
+            REFLECTED_METADATA_CODE = getStaticIntegerField(
+                    WeatherProvider.class,
+                    metadataCodeVariableName);
+
+            REFLECTED_SYNC_HISTORY_CODE = getStaticIntegerField(
+                    WeatherProvider.class,
+                    syncHistoryCodeVariableName);
+
+            REFLECTED_LOCATION_WEATHER_CODE = getStaticIntegerField(
+                    WeatherProvider.class,
+                    locationWeatherCodeVariableName);
+
+            REFLECTED_FORECAST_CACHE_CODE = getStaticIntegerField(
+                    WeatherProvider.class,
+                    forecastCacheCodeVariableName);
+
+            REFLECTED_HOURLY_WEATHER_CODE = getStaticIntegerField(
+                    WeatherProvider.class,
+                    hourlyWeatherCodeVariableName);
+
+            REFLECTED_NOWCAST_CODE = getStaticIntegerField(
+                    WeatherProvider.class,
+                    nowcastCodeVariableName);
+
+            REFLECTED_NOWCAST_WITH_LOCATION_CODE = getStaticIntegerField(
+                    WeatherProvider.class,
+                    nowcastWithLocationCodeVariableName);
+
         } catch (NoSuchFieldException e) {
             fail(studentReadableNoSuchField(e));
         } catch (IllegalAccessException e) {
@@ -101,5 +158,54 @@ public class TestUriMatcher {
         assertEquals(weatherWithDateUriCodeDoesNotMatch,
                 expectedWeatherWithDateCode,
                 actualWeatherWithDateCode);
+
+        /* Test that the code returned from our matcher matches the expected metadata code */
+        String metadataUriDoesNotMatch = "Error: The CODE_METADATA URI was matched incorrectly.";
+        int actualMetadataCode = testMatcher.match(TEST_METADATA_DIR);
+        assertEquals(metadataUriDoesNotMatch,
+                REFLECTED_METADATA_CODE,
+                actualMetadataCode);
+
+        /* Test that the code returned from our matcher matches the expected sync history code */
+        String syncHistoryUriDoesNotMatch = "Error: The CODE_SYNC_HISTORY URI was matched incorrectly.";
+        int actualSyncHistoryCode = testMatcher.match(TEST_SYNC_HISTORY_DIR);
+        assertEquals(syncHistoryUriDoesNotMatch,
+                REFLECTED_SYNC_HISTORY_CODE,
+                actualSyncHistoryCode);
+
+        /* Test that the code returned from our matcher matches the expected location weather code */
+        String locationWeatherUriDoesNotMatch = "Error: The CODE_LOCATION_WEATHER URI was matched incorrectly.";
+        int actualLocationWeatherCode = testMatcher.match(TEST_LOCATION_WEATHER_DIR);
+        assertEquals(locationWeatherUriDoesNotMatch,
+                REFLECTED_LOCATION_WEATHER_CODE,
+                actualLocationWeatherCode);
+
+        /* Test that the code returned from our matcher matches the expected forecast cache code */
+        String forecastCacheUriDoesNotMatch = "Error: The CODE_FORECAST_CACHE URI was matched incorrectly.";
+        int actualForecastCacheCode = testMatcher.match(TEST_FORECAST_CACHE_DIR);
+        assertEquals(forecastCacheUriDoesNotMatch,
+                REFLECTED_FORECAST_CACHE_CODE,
+                actualForecastCacheCode);
+
+        /* Test that the code returned from our matcher matches the expected hourly weather code */
+        String hourlyWeatherUriDoesNotMatch = "Error: The CODE_HOURLY_WEATHER URI was matched incorrectly.";
+        int actualHourlyWeatherCode = testMatcher.match(TEST_HOURLY_WEATHER_DIR);
+        assertEquals(hourlyWeatherUriDoesNotMatch,
+                REFLECTED_HOURLY_WEATHER_CODE,
+                actualHourlyWeatherCode);
+
+        /* Test that the code returned from our matcher matches the expected nowcast codes */
+        String nowcastUriDoesNotMatch = "Error: The CODE_NOWCAST URI was matched incorrectly.";
+        int actualNowcastCode = testMatcher.match(TEST_NOWCAST_DIR);
+        assertEquals(nowcastUriDoesNotMatch,
+                REFLECTED_NOWCAST_CODE,
+                actualNowcastCode);
+
+        String nowcastWithLocationUriDoesNotMatch =
+                "Error: The CODE_NOWCAST_WITH_LOCATION URI was matched incorrectly.";
+        int actualNowcastWithLocationCode = testMatcher.match(TEST_NOWCAST_WITH_LOCATION_DIR);
+        assertEquals(nowcastWithLocationUriDoesNotMatch,
+                REFLECTED_NOWCAST_WITH_LOCATION_CODE,
+                actualNowcastWithLocationCode);
     }
 }
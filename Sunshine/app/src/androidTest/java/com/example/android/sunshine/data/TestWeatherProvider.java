@@ -16,6 +16,7 @@
 package com.example.android.sunshine.data;
 
 import android.content.ComponentName;
+import android.content.ContentProviderOperation;
 import android.content.ContentResolver;
 import android.content.ContentValues;
 import android.content.Context;
@@ -27,14 +28,19 @@ import android.net.Uri;
 import android.support.test.InstrumentationRegistry;
 import android.support.test.runner.AndroidJUnit4;
 
+import com.example.android.sunshine.utilities.SunshineDateUtils;
+
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 
+import java.util.ArrayList;
+
 import static com.example.android.sunshine.data.TestUtilities.BULK_INSERT_RECORDS_TO_INSERT;
 import static com.example.android.sunshine.data.TestUtilities.createBulkInsertTestWeatherValues;
 import static junit.framework.Assert.assertEquals;
 import static junit.framework.Assert.assertNotNull;
+import static junit.framework.Assert.assertNull;
 import static junit.framework.Assert.assertTrue;
 import static junit.framework.Assert.fail;
 
@@ -423,6 +429,231 @@ public class TestWeatherProvider {
         shouldBeEmptyCursor.close();
     }
 
+    /**
+     * This test checks that the metadata row follows the weather table: the row count, the newest
+     * date and the time of the last sync after a bulkInsert, and the row count and newest date
+     * after a deletion.
+     */
+    @Test
+    public void testMetadataFollowsWeatherTable() {
+
+        long beforeInsert = System.currentTimeMillis();
+        ContentValues[] bulkInsertTestContentValues = createBulkInsertTestWeatherValues();
+        mContext.getContentResolver().bulkInsert(
+                WeatherContract.WeatherEntry.CONTENT_URI,
+                bulkInsertTestContentValues);
+
+        long newestDate = bulkInsertTestContentValues[BULK_INSERT_RECORDS_TO_INSERT - 1]
+                .getAsLong(WeatherContract.WeatherEntry.COLUMN_DATE);
+
+        Cursor metadataCursor = queryMetadata();
+        assertEquals("Metadata row count does not match the inserted records",
+                BULK_INSERT_RECORDS_TO_INSERT,
+                metadataCursor.getInt(0));
+        assertEquals("Metadata newest date does not match the inserted records",
+                newestDate,
+                metadataCursor.getLong(1));
+        assertTrue("Metadata last sync was not updated by bulkInsert",
+                metadataCursor.getLong(2) >= beforeInsert);
+        metadataCursor.close();
+
+        /* Inserting the same dates again replaces the rows, the count must not change */
+        mContext.getContentResolver().bulkInsert(
+                WeatherContract.WeatherEntry.CONTENT_URI,
+                bulkInsertTestContentValues);
+        metadataCursor = queryMetadata();
+        assertEquals("Replaced records were counted twice",
+                BULK_INSERT_RECORDS_TO_INSERT,
+                metadataCursor.getInt(0));
+        metadataCursor.close();
+
+        /* Deleting the newest row moves the newest date back one day */
+        mContext.getContentResolver().delete(
+                WeatherContract.WeatherEntry.CONTENT_URI,
+                WeatherContract.WeatherEntry.COLUMN_DATE + " = ?",
+                new String[]{Long.toString(newestDate)});
+        metadataCursor = queryMetadata();
+        assertEquals(BULK_INSERT_RECORDS_TO_INSERT - 1, metadataCursor.getInt(0));
+        assertEquals(newestDate - SunshineDateUtils.DAY_IN_MILLIS, metadataCursor.getLong(1));
+        metadataCursor.close();
+    }
+
+    /**
+     * This test checks that days inserted with the fields of the forecast list only get their
+     * details filled in by an update of their date.
+     */
+    @Test
+    public void testDetailsAreFilledInByDate() {
+        ContentValues[] forecast = createBulkInsertTestWeatherValues();
+        for (ContentValues day : forecast) {
+            day.remove(WeatherContract.WeatherEntry.COLUMN_PRESSURE);
+            day.remove(WeatherContract.WeatherEntry.COLUMN_HUMIDITY);
+            day.remove(WeatherContract.WeatherEntry.COLUMN_WIND_SPEED);
+            day.remove(WeatherContract.WeatherEntry.COLUMN_DEGREES);
+        }
+        assertEquals(BULK_INSERT_RECORDS_TO_INSERT, mContext.getContentResolver().bulkInsert(
+                WeatherContract.WeatherEntry.CONTENT_URI, forecast));
+
+        long date = forecast[0].getAsLong(WeatherContract.WeatherEntry.COLUMN_DATE);
+        Uri dayUri = WeatherContract.WeatherEntry.buildWeatherUriWithDate(date);
+        ContentValues details = new ContentValues();
+        details.put(WeatherContract.WeatherEntry.COLUMN_PRESSURE, 1013.0);
+        details.put(WeatherContract.WeatherEntry.COLUMN_HUMIDITY, 80.0);
+        details.put(WeatherContract.WeatherEntry.COLUMN_WIND_SPEED, 4.5);
+        details.put(WeatherContract.WeatherEntry.COLUMN_DEGREES, 270.0);
+        assertEquals(1, mContext.getContentResolver().update(dayUri, details, null, null));
+
+        String[] projection = {
+                WeatherContract.WeatherEntry.COLUMN_PRESSURE,
+                WeatherContract.WeatherEntry.COLUMN_MAX_TEMP
+        };
+        Cursor cursor = mContext.getContentResolver().query(dayUri, projection, null, null, null);
+        assertNotNull(cursor);
+        assertTrue(cursor.moveToFirst());
+        assertEquals(1013.0, cursor.getDouble(0), 0);
+        assertEquals("The fields of the list were changed",
+                forecast[0].getAsDouble(WeatherContract.WeatherEntry.COLUMN_MAX_TEMP), cursor.getDouble(1), 0);
+        cursor.close();
+
+        cursor = mContext.getContentResolver().query(
+                WeatherContract.WeatherEntry.buildWeatherUriWithDate(date + SunshineDateUtils.DAY_IN_MILLIS),
+                projection, null, null, null);
+        assertNotNull(cursor);
+        assertTrue(cursor.moveToFirst());
+        assertTrue("Another day was updated", cursor.isNull(0));
+        cursor.close();
+    }
+
+    /**
+     * This test checks that the sync history only keeps the latest MAX_ROWS runs, newest first.
+     */
+    @Test
+    public void testSyncHistoryIsBounded() {
+        int runs = WeatherContract.SyncHistoryEntry.MAX_ROWS + 5;
+        for (int run = 0; run < runs; run++) {
+            ContentValues values = new ContentValues();
+            values.put(WeatherContract.SyncHistoryEntry.COLUMN_STARTED_AT, run);
+            values.put(WeatherContract.SyncHistoryEntry.COLUMN_TRIGGER, WeatherContract.SyncHistoryEntry.TRIGGER_JOB);
+            values.put(WeatherContract.SyncHistoryEntry.COLUMN_OUTCOME, WeatherContract.SyncHistoryEntry.OUTCOME_SUCCEEDED);
+            values.put(WeatherContract.SyncHistoryEntry.COLUMN_TOTAL_MILLIS, 10);
+            assertNotNull("Sync run was not recorded", mContext.getContentResolver().insert(
+                    WeatherContract.SyncHistoryEntry.CONTENT_URI, values));
+        }
+
+        Cursor history = mContext.getContentResolver().query(
+                WeatherContract.SyncHistoryEntry.CONTENT_URI,
+                new String[]{WeatherContract.SyncHistoryEntry.COLUMN_STARTED_AT},
+                null,
+                null,
+                null);
+        assertNotNull("Sync history cursor was null", history);
+        assertEquals("Sync history is not bounded",
+                WeatherContract.SyncHistoryEntry.MAX_ROWS,
+                history.getCount());
+        assertTrue(history.moveToFirst());
+        assertEquals("Latest run should come first", runs - 1, history.getLong(0));
+        history.close();
+    }
+
+    /**
+     * This test checks that a batch on the location weather is applied in a single transaction:
+     * a failing operation leaves the table as it was.
+     */
+    @Test
+    public void testLocationWeatherBatchIsAtomic() throws Exception {
+        ContentValues[] forecast = createBulkInsertTestWeatherValues();
+        ArrayList<ContentProviderOperation> operations = new ArrayList<>();
+        for (String location : new String[]{"Lisbon", "Recife"}) {
+            for (ContentValues day : forecast) {
+                ContentValues values = new ContentValues(day);
+                values.put(WeatherContract.LocationWeatherEntry.COLUMN_LOCATION, location);
+                operations.add(ContentProviderOperation
+                        .newInsert(WeatherContract.LocationWeatherEntry.CONTENT_URI)
+                        .withValues(values)
+                        .build());
+            }
+        }
+        mContext.getContentResolver().applyBatch(WeatherContract.CONTENT_AUTHORITY, operations);
+        assertEquals(2 * BULK_INSERT_RECORDS_TO_INSERT, countLocationWeatherRows());
+
+        /* Replacing a location, but with a date that is not normalized */
+        ArrayList<ContentProviderOperation> failingOperations = new ArrayList<>();
+        failingOperations.add(ContentProviderOperation
+                .newDelete(WeatherContract.LocationWeatherEntry.CONTENT_URI)
+                .withSelection(WeatherContract.LocationWeatherEntry.getSqlSelectForLocation(),
+                        new String[]{"Lisbon"})
+                .build());
+        ContentValues invalid = new ContentValues(forecast[0]);
+        invalid.put(WeatherContract.LocationWeatherEntry.COLUMN_LOCATION, "Lisbon");
+        invalid.put(WeatherContract.LocationWeatherEntry.COLUMN_DATE, forecast[0].getAsLong(
+                WeatherContract.LocationWeatherEntry.COLUMN_DATE) + 1);
+        failingOperations.add(ContentProviderOperation
+                .newInsert(WeatherContract.LocationWeatherEntry.CONTENT_URI)
+                .withValues(invalid)
+                .build());
+        try {
+            mContext.getContentResolver().applyBatch(WeatherContract.CONTENT_AUTHORITY, failingOperations);
+            fail("A date that is not normalized should have been rejected");
+        } catch (IllegalArgumentException expected) {
+        }
+        assertEquals("The failed batch was partially applied",
+                2 * BULK_INSERT_RECORDS_TO_INSERT, countLocationWeatherRows());
+    }
+
+    /**
+     * This test checks that the forecast cache serves the latest response of a location while it
+     * is fresh, and keeps only the most recently stored locations.
+     */
+    @Test
+    public void testForecastCache() {
+        assertNull("Nothing was cached yet", ForecastCache.get(mContext, "query:lisbon"));
+
+        ForecastCache.put(mContext, "query:lisbon", "{\"old\":true}");
+        ForecastCache.put(mContext, "query:lisbon", "{\"old\":false}");
+        assertEquals("The latest response should replace the previous one",
+                "{\"old\":false}", ForecastCache.get(mContext, "query:lisbon"));
+
+        /* A response older than the maximum age is not served */
+        ContentValues stale = new ContentValues();
+        stale.put(WeatherContract.ForecastCacheEntry.COLUMN_CACHE_KEY, "query:recife");
+        stale.put(WeatherContract.ForecastCacheEntry.COLUMN_FETCHED_AT,
+                System.currentTimeMillis() - ForecastCache.MAX_AGE_MILLIS);
+        stale.put(WeatherContract.ForecastCacheEntry.COLUMN_RESPONSE, "{}");
+        mContext.getContentResolver().insert(WeatherContract.ForecastCacheEntry.CONTENT_URI, stale);
+        assertNull("A stale response was served", ForecastCache.get(mContext, "query:recife"));
+
+        for (int i = 0; i < WeatherContract.ForecastCacheEntry.MAX_ROWS; i++) {
+            ForecastCache.put(mContext, "geohash:" + i, "{}");
+        }
+        assertNull("The least recently stored location should be gone",
+                ForecastCache.get(mContext, "query:lisbon"));
+        assertEquals("{}", ForecastCache.get(mContext, "geohash:0"));
+    }
+
+    private int countLocationWeatherRows() {
+        Cursor cursor = mContext.getContentResolver().query(
+                WeatherContract.LocationWeatherEntry.CONTENT_URI, null, null, null, null);
+        assertNotNull("Location weather cursor was null", cursor);
+        int count = cursor.getCount();
+        cursor.close();
+        return count;
+    }
+
+    private Cursor queryMetadata() {
+        Cursor cursor = mContext.getContentResolver().query(
+                WeatherContract.MetadataEntry.CONTENT_URI,
+                new String[]{
+                        WeatherContract.MetadataEntry.COLUMN_ROW_COUNT,
+                        WeatherContract.MetadataEntry.COLUMN_NEWEST_DATE,
+                        WeatherContract.MetadataEntry.COLUMN_LAST_SYNC},
+                null,
+                null,
+                null);
+        assertNotNull("Metadata cursor was null", cursor);
+        assertTrue("Metadata cursor should contain exactly one row", cursor.moveToFirst());
+        return cursor;
+    }
+
     /**
      * This method will clear all rows from the weather table in our database.
      * <p>
@@ -442,6 +673,10 @@ public class TestWeatherProvider {
 
         /* The delete method deletes all of the desired rows from the table, not the table itself */
         database.delete(WeatherContract.WeatherEntry.TABLE_NAME, null, null);
+        database.delete(WeatherContract.SyncHistoryEntry.TABLE_NAME, null, null);
+        database.delete(WeatherContract.LocationWeatherEntry.TABLE_NAME, null, null);
+        database.delete(WeatherContract.ForecastCacheEntry.TABLE_NAME, null, null);
+        database.delete(WeatherContract.HourlyWeatherEntry.TABLE_NAME, null, null);
 
         /* Always close the database when you're through with it */
         database.close();
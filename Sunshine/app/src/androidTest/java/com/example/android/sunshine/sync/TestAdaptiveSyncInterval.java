@@ -0,0 +1,79 @@
+package com.example.android.sunshine.sync;
+
+import android.content.ContentValues;
+import android.support.test.runner.AndroidJUnit4;
+
+import com.example.android.sunshine.data.ForecastSnapshot;
+import com.example.android.sunshine.data.WeatherContract.WeatherEntry;
+import com.example.android.sunshine.utilities.SunshineDateUtils;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.concurrent.TimeUnit;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertTrue;
+
+@RunWith(AndroidJUnit4.class)
+public class TestAdaptiveSyncInterval {
+
+    private static final int THREE_HOURS = (int) TimeUnit.HOURS.toSeconds(3);
+
+    private static ForecastSnapshot createSnapshot(long firstDate, int weatherId, double high) {
+        ContentValues[] values = new ContentValues[3];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = new ContentValues();
+            values[i].put(WeatherEntry.COLUMN_DATE, firstDate + i * SunshineDateUtils.DAY_IN_MILLIS);
+            values[i].put(WeatherEntry.COLUMN_WEATHER_ID, weatherId);
+            values[i].put(WeatherEntry.COLUMN_MAX_TEMP, high);
+            values[i].put(WeatherEntry.COLUMN_MIN_TEMP, high - 10);
+        }
+        return ForecastSnapshot.fromContentValues(values);
+    }
+
+    @Test
+    public void testStableForecastStretchesTheInterval() {
+        long today = SunshineDateUtils.normalizeDate(System.currentTimeMillis());
+        ForecastChange change = ForecastChange.between(
+                createSnapshot(today, 800, 20), createSnapshot(today, 800, 20));
+
+        assertEquals(0.0, change.getVolatility());
+        assertTrue(SunshineSyncUtils.getNextSyncIntervalSeconds(THREE_HOURS, change.getVolatility()) > THREE_HOURS);
+    }
+
+    @Test
+    public void testChangingForecastShortensTheInterval() {
+        long today = SunshineDateUtils.normalizeDate(System.currentTimeMillis());
+        ForecastChange change = ForecastChange.between(
+                createSnapshot(today, 800, 20), createSnapshot(today, 500, 20));
+
+        assertEquals(3, change.getConditionChanges());
+        assertTrue(SunshineSyncUtils.getNextSyncIntervalSeconds(THREE_HOURS, change.getVolatility()) < THREE_HOURS);
+    }
+
+    @Test
+    public void testShiftedWindowOnlyComparesCommonDays() {
+        long today = SunshineDateUtils.normalizeDate(System.currentTimeMillis());
+        ForecastChange change = ForecastChange.between(
+                createSnapshot(today, 800, 20),
+                createSnapshot(today + SunshineDateUtils.DAY_IN_MILLIS, 800, 20));
+
+        assertEquals(2, change.getComparedDays());
+        assertEquals(0, change.getChangedDays());
+    }
+
+    @Test
+    public void testIntervalStaysWithinBounds() {
+        int interval = THREE_HOURS;
+        for (int i = 0; i < 20; i++) {
+            interval = SunshineSyncUtils.getNextSyncIntervalSeconds(interval, 0);
+        }
+        assertEquals(TimeUnit.HOURS.toSeconds(12), interval);
+        for (int i = 0; i < 20; i++) {
+            interval = SunshineSyncUtils.getNextSyncIntervalSeconds(interval, 1);
+        }
+        assertEquals(TimeUnit.HOURS.toSeconds(1), interval);
+        assertEquals(interval, SunshineSyncUtils.getNextSyncIntervalSeconds(interval, Double.NaN));
+    }
+}
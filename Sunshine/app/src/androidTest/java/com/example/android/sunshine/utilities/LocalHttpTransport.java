@@ -0,0 +1,83 @@
+package com.example.android.sunshine.utilities;
+
+import android.os.CancellationSignal;
+import android.os.OperationCanceledException;
+import android.os.SystemClock;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.net.URL;
+import java.nio.charset.Charset;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * In-process {@link HttpTransport} serving canned bodies by URL path, after a simulated server
+ * latency. Plugged in with {@link NetworkUtils#setTransport(HttpTransport)}, it runs the whole
+ * sync pipeline without any network, which is what benchmarks of the parse, persist and fan-out
+ * stages need. Unknown paths get a 404.
+ */
+class LocalHttpTransport implements HttpTransport {
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private final Map<String, String> mBodies = new HashMap<>();
+    private final long mLatencyMillis;
+    private final AtomicInteger mRequestCount = new AtomicInteger();
+
+    /**
+     * @param latencyMillis Simulated time before the first byte of every response
+     */
+    LocalHttpTransport(long latencyMillis) {
+        mLatencyMillis = latencyMillis;
+    }
+
+    synchronized LocalHttpTransport serve(String path, String body) {
+        mBodies.put(path, body);
+        return this;
+    }
+
+    int getRequestCount() {
+        return mRequestCount.get();
+    }
+
+    @Override
+    public String execute(URL url, CancellationSignal cancellationSignal, NetworkUtils.ResponseStats stats)
+            throws IOException {
+        mRequestCount.incrementAndGet();
+        long start = SystemClock.elapsedRealtime();
+        waitFor(mLatencyMillis, cancellationSignal);
+
+        String body;
+        synchronized (this) {
+            body = mBodies.get(url.getPath());
+        }
+        long headersAt = SystemClock.elapsedRealtime();
+        stats.setPhaseMillis(NetworkUtils.ResponseStats.PHASE_FIRST_BYTE, headersAt - start);
+        if (body == null) {
+            stats.setHttpStatus(404);
+            throw new FileNotFoundException(url.toString());
+        }
+        stats.setHttpStatus(200);
+        stats.onFirstByte(headersAt - start);
+        stats.setBytes(body.getBytes(UTF_8).length);
+        return body.isEmpty() ? null : body;
+    }
+
+    private static void waitFor(long millis, CancellationSignal cancellationSignal) {
+        long wakeUpAt = SystemClock.elapsedRealtime() + millis;
+        long remaining;
+        while ((remaining = wakeUpAt - SystemClock.elapsedRealtime()) > 0) {
+            if (cancellationSignal != null) {
+                cancellationSignal.throwIfCanceled();
+            }
+            try {
+                Thread.sleep(Math.min(remaining, 10));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new OperationCanceledException("Interrupted");
+            }
+        }
+    }
+}
@@ -0,0 +1,83 @@
+package com.example.android.sunshine.utilities;
+
+import com.google.android.gms.wearable.PutDataRequest;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * In-memory stand-in for the Wearable DataApi. Connections only complete, or fail, when the test
+ * calls {@link #completeConnection()} or {@link #failConnection()}, and every data item "sent" is
+ * recorded.
+ */
+class LocalWearableDataApi implements WearableDataApi {
+
+    private final List<PutDataRequest> mSentRequests = new ArrayList<>();
+    private ConnectionCallback mPendingCallback;
+    private boolean mConnected;
+    private int mConnectCount;
+
+    @Override
+    public synchronized void connect(ConnectionCallback callback) {
+        mConnectCount++;
+        mPendingCallback = callback;
+    }
+
+    @Override
+    public synchronized void disconnect() {
+        mConnected = false;
+    }
+
+    @Override
+    public synchronized boolean isConnected() {
+        return mConnected;
+    }
+
+    @Override
+    public void putDataItem(PutDataRequest request, PutCallback callback) {
+        synchronized (this) {
+            if (!mConnected) {
+                throw new IllegalStateException("putDataItem called while disconnected");
+            }
+            mSentRequests.add(request);
+        }
+        if (callback != null) {
+            callback.onResult(true);
+        }
+    }
+
+    void completeConnection() {
+        ConnectionCallback callback;
+        synchronized (this) {
+            mConnected = true;
+            callback = mPendingCallback;
+            mPendingCallback = null;
+        }
+        if (callback != null) {
+            callback.onConnected();
+        }
+    }
+
+    void failConnection() {
+        ConnectionCallback callback;
+        synchronized (this) {
+            callback = mPendingCallback;
+            mPendingCallback = null;
+        }
+        if (callback != null) {
+            callback.onConnectionFailed();
+        }
+    }
+
+    synchronized boolean isConnecting() {
+        return mPendingCallback != null;
+    }
+
+    synchronized List<PutDataRequest> getSentRequests() {
+        return new ArrayList<>(mSentRequests);
+    }
+
+    synchronized int getConnectCount() {
+        return mConnectCount;
+    }
+}
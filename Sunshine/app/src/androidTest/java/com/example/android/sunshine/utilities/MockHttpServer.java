@@ -0,0 +1,175 @@
+package com.example.android.sunshine.utilities;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.URL;
+import java.util.LinkedList;
+import java.util.Locale;
+import java.util.Queue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Minimal HTTP server on the loopback interface, answering each request with the next scripted
+ * response. Responses can inject errors (any status) and latency (a delay before the first byte
+ * is sent), and can be gzipped. Connections are kept alive. When the script is exhausted,
+ * requests get a 500.
+ */
+class MockHttpServer implements Closeable {
+
+    private final ServerSocket mServerSocket;
+    private final Queue<MockResponse> mResponses = new LinkedList<>();
+    private final AtomicInteger mRequestCount = new AtomicInteger();
+    private final AtomicInteger mConnectionCount = new AtomicInteger();
+    private volatile String mLastAcceptEncoding;
+    private final Thread mAcceptThread;
+
+    static class MockResponse {
+        final int status;
+        final String body;
+        final long delayMillis;
+        final boolean gzip;
+
+        MockResponse(int status, String body, long delayMillis, boolean gzip) {
+            this.status = status;
+            this.body = body;
+            this.delayMillis = delayMillis;
+            this.gzip = gzip;
+        }
+    }
+
+    MockHttpServer() throws IOException {
+        mServerSocket = new ServerSocket(0, 50, InetAddress.getByName("127.0.0.1"));
+        mAcceptThread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                acceptLoop();
+            }
+        }, "mock-http-server");
+        mAcceptThread.start();
+    }
+
+    synchronized MockHttpServer enqueue(int status, String body) {
+        return enqueue(status, body, 0);
+    }
+
+    synchronized MockHttpServer enqueue(int status, String body, long delayMillis) {
+        mResponses.add(new MockResponse(status, body, delayMillis, false));
+        return this;
+    }
+
+    synchronized MockHttpServer enqueueGzip(int status, String body) {
+        mResponses.add(new MockResponse(status, body, 0, true));
+        return this;
+    }
+
+    URL getUrl(String path) throws IOException {
+        return new URL("http", "127.0.0.1", mServerSocket.getLocalPort(), path);
+    }
+
+    int getRequestCount() {
+        return mRequestCount.get();
+    }
+
+    /**
+     * @return Number of TCP connections accepted, lower than the request count when they are reused
+     */
+    int getConnectionCount() {
+        return mConnectionCount.get();
+    }
+
+    /**
+     * @return Accept-Encoding header of the last request, null if it had none
+     */
+    String getLastAcceptEncoding() {
+        return mLastAcceptEncoding;
+    }
+
+    @Override
+    public void close() throws IOException {
+        mServerSocket.close();
+    }
+
+    private synchronized MockResponse nextResponse() {
+        MockResponse response = mResponses.poll();
+        return response != null ? response : new MockResponse(500, "", 0, false);
+    }
+
+    private void acceptLoop() {
+        while (!mServerSocket.isClosed()) {
+            try {
+                final Socket socket = mServerSocket.accept();
+                mConnectionCount.incrementAndGet();
+                new Thread(new Runnable() {
+                    @Override
+                    public void run() {
+                        serve(socket);
+                    }
+                }).start();
+            } catch (IOException e) {
+                /* Closed */
+                return;
+            }
+        }
+    }
+
+    private void serve(Socket socket) {
+        try {
+            /* Keep-alive connections may carry several requests */
+            BufferedReader reader = new BufferedReader(new InputStreamReader(socket.getInputStream(), "UTF-8"));
+            OutputStream out = socket.getOutputStream();
+            String requestLine;
+            while ((requestLine = reader.readLine()) != null && !requestLine.isEmpty()) {
+                String header;
+                String acceptEncoding = null;
+                while ((header = reader.readLine()) != null && !header.isEmpty()) {
+                    /* Other headers are ignored */
+                    if (header.toLowerCase(Locale.US).startsWith("accept-encoding:")) {
+                        acceptEncoding = header.substring(header.indexOf(':') + 1).trim();
+                    }
+                }
+                mLastAcceptEncoding = acceptEncoding;
+                mRequestCount.incrementAndGet();
+
+                MockResponse response = nextResponse();
+                if (response.delayMillis > 0) {
+                    Thread.sleep(response.delayMillis);
+                }
+                byte[] body = response.body.getBytes("UTF-8");
+                if (response.gzip) {
+                    body = gzip(body);
+                }
+                String head = "HTTP/1.1 " + response.status + " Mock\r\n"
+                        + "Content-Type: application/json\r\n"
+                        + (response.gzip ? "Content-Encoding: gzip\r\n" : "")
+                        + "Content-Length: " + body.length + "\r\n"
+                        + "\r\n";
+                out.write(head.getBytes("UTF-8"));
+                out.write(body);
+                out.flush();
+            }
+        } catch (IOException | InterruptedException e) {
+            /* Client went away */
+        } finally {
+            try {
+                socket.close();
+            } catch (IOException ignored) {
+            }
+        }
+    }
+
+    private static byte[] gzip(byte[] data) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        GZIPOutputStream out = new GZIPOutputStream(bytes);
+        out.write(data);
+        out.close();
+        return bytes.toByteArray();
+    }
+}
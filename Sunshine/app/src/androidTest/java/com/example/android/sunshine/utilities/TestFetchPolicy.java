@@ -0,0 +1,213 @@
+package com.example.android.sunshine.utilities;
+
+import android.os.CancellationSignal;
+import android.os.OperationCanceledException;
+import android.os.SystemClock;
+import android.support.test.runner.AndroidJUnit4;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.IOException;
+import java.net.URL;
+import java.util.Random;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertFalse;
+import static junit.framework.Assert.assertTrue;
+import static junit.framework.Assert.fail;
+
+@RunWith(AndroidJUnit4.class)
+public class TestFetchPolicy {
+
+    private static final String BODY = "{\"cod\":200}";
+
+    private MockHttpServer mServer;
+
+    @Before
+    public void setUp() throws IOException {
+        mServer = new MockHttpServer();
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        mServer.close();
+    }
+
+    private static FetchPolicy createPolicy(int maxAttempts, int failureThreshold, long coolDownMillis) {
+        return new FetchPolicy(maxAttempts, 10, 50, failureThreshold, coolDownMillis, new Random(42));
+    }
+
+    @Test
+    public void testServerErrorsAreRetried() throws IOException {
+        mServer.enqueue(503, "").enqueue(500, "").enqueue(200, BODY);
+        FetchPolicy policy = createPolicy(3, 10, 60000);
+
+        NetworkUtils.ResponseStats stats = new NetworkUtils.ResponseStats();
+        assertEquals(BODY, policy.fetch(mServer.getUrl("/weather"), null, stats));
+        assertEquals(3, mServer.getRequestCount());
+        assertEquals(200, stats.getHttpStatus());
+    }
+
+    @Test
+    public void testClientErrorsAreNotRetried() throws IOException {
+        mServer.enqueue(404, "").enqueue(200, BODY);
+        FetchPolicy policy = createPolicy(3, 10, 60000);
+
+        NetworkUtils.ResponseStats stats = new NetworkUtils.ResponseStats();
+        try {
+            policy.fetch(mServer.getUrl("/weather"), null, stats);
+            fail("A 404 should fail the fetch");
+        } catch (IOException expected) {
+        }
+        assertEquals(1, mServer.getRequestCount());
+        assertEquals(404, stats.getHttpStatus());
+    }
+
+    @Test
+    public void testCircuitOpensAfterConsecutiveFailures() throws IOException {
+        mServer.enqueue(500, "").enqueue(500, "").enqueue(200, BODY);
+        FetchPolicy policy = createPolicy(1, 2, 60000);
+
+        for (int i = 0; i < 2; i++) {
+            try {
+                policy.fetch(mServer.getUrl("/weather"), null, null);
+                fail("A 500 should fail the fetch");
+            } catch (IOException expected) {
+            }
+        }
+        assertTrue(policy.isCircuitOpen());
+
+        try {
+            policy.fetch(mServer.getUrl("/weather"), null, null);
+            fail("The open circuit should refuse the fetch");
+        } catch (FetchPolicy.CircuitOpenException expected) {
+            assertTrue(expected.getRetryAfterMillis() > 0);
+        }
+        assertEquals("The open circuit let a request through", 2, mServer.getRequestCount());
+    }
+
+    /**
+     * The weather server reports some of its failures in the JSON of a 200 response, the breaker
+     * must count those too.
+     */
+    @Test
+    public void testErrorCodesInTheBodyOpenCircuit() throws IOException {
+        String errorBody = "{\"cod\":\"500\",\"message\":\"Internal error\"}";
+        for (int i = 0; i < 3; i++) {
+            mServer.enqueue(200, errorBody);
+        }
+        mServer.enqueue(200, BODY);
+        FetchPolicy policy = createPolicy(1, 3, 60000);
+
+        for (int i = 0; i < 3; i++) {
+            OpenWeatherJsonUtils.ForecastValidator validator = new OpenWeatherJsonUtils.ForecastValidator();
+            assertEquals(errorBody, policy.fetch(mServer.getUrl("/weather"), null, null, null, validator));
+        }
+        assertTrue(policy.isCircuitOpen());
+
+        try {
+            policy.fetch(mServer.getUrl("/weather"), null, null, null, new OpenWeatherJsonUtils.ForecastValidator());
+            fail("The open circuit should refuse the fetch");
+        } catch (FetchPolicy.CircuitOpenException expected) {
+        }
+        assertEquals("The open circuit let a request through", 3, mServer.getRequestCount());
+    }
+
+    /**
+     * A rejected response is retried, and the first valid one is returned.
+     */
+    @Test
+    public void testRejectedResponsesAreRetried() throws IOException {
+        mServer.enqueue(200, "<html>Bad gateway</html>").enqueue(200, BODY);
+        FetchPolicy policy = createPolicy(3, 10, 60000);
+
+        assertEquals(BODY, policy.fetch(mServer.getUrl("/weather"), null, null, null,
+                new OpenWeatherJsonUtils.ForecastValidator()));
+        assertEquals(2, mServer.getRequestCount());
+        assertFalse(policy.isCircuitOpen());
+    }
+
+    @Test
+    public void testTrialRequestClosesCircuit() throws IOException {
+        mServer.enqueue(500, "").enqueue(200, BODY);
+        FetchPolicy policy = createPolicy(1, 1, 100);
+
+        try {
+            policy.fetch(mServer.getUrl("/weather"), null, null);
+            fail("A 500 should fail the fetch");
+        } catch (IOException expected) {
+        }
+        assertTrue(policy.isCircuitOpen());
+
+        SystemClock.sleep(150);
+        assertEquals(BODY, policy.fetch(mServer.getUrl("/weather"), null, null));
+        assertFalse(policy.isCircuitOpen());
+        assertEquals(0, policy.getRetryAfterMillis());
+    }
+
+    /**
+     * A trial request that fails on our side, rather than the server's, must not keep the
+     * circuit half open with a trial that never ends.
+     */
+    @Test
+    public void testTrialThatThrowsIsReleased() throws IOException {
+        mServer.enqueue(500, "").enqueue(200, BODY);
+        FetchPolicy policy = createPolicy(1, 1, 100);
+
+        try {
+            policy.fetch(mServer.getUrl("/weather"), null, null);
+            fail("A 500 should fail the fetch");
+        } catch (IOException expected) {
+        }
+        assertTrue(policy.isCircuitOpen());
+        SystemClock.sleep(150);
+
+        NetworkUtils.setTransport(new HttpTransport() {
+            @Override
+            public String execute(URL url, CancellationSignal cancellationSignal, NetworkUtils.ResponseStats stats) {
+                throw new IllegalStateException("Broken transport");
+            }
+        });
+        try {
+            policy.fetch(mServer.getUrl("/weather"), null, null);
+            fail("The transport should have thrown");
+        } catch (IllegalStateException expected) {
+        } finally {
+            NetworkUtils.setTransport(null);
+        }
+
+        assertEquals("The trial was never released", BODY, policy.fetch(mServer.getUrl("/weather"), null, null));
+        assertFalse(policy.isCircuitOpen());
+    }
+
+    /**
+     * A slow server must not hold a cancelled fetch: cancelling closes the connection.
+     */
+    @Test
+    public void testSlowResponseIsCancelled() throws IOException {
+        mServer.enqueue(200, BODY, 10000);
+        FetchPolicy policy = createPolicy(3, 10, 60000);
+
+        final CancellationSignal signal = new CancellationSignal();
+        new Thread(new Runnable() {
+            @Override
+            public void run() {
+                SystemClock.sleep(200);
+                signal.cancel();
+            }
+        }).start();
+
+        long start = SystemClock.elapsedRealtime();
+        try {
+            policy.fetch(mServer.getUrl("/weather"), signal, null);
+            fail("The fetch should have been cancelled");
+        } catch (OperationCanceledException expected) {
+        }
+        assertTrue("Cancellation took too long", SystemClock.elapsedRealtime() - start < 5000);
+        assertEquals("A cancelled fetch must not be retried", 1, mServer.getRequestCount());
+        assertFalse("A cancellation is not a server failure", policy.isCircuitOpen());
+    }
+}
@@ -0,0 +1,74 @@
+package com.example.android.sunshine.utilities;
+
+import android.content.ContentValues;
+import android.support.test.runner.AndroidJUnit4;
+
+import com.example.android.sunshine.data.WeatherContract.WeatherEntry;
+
+import org.json.JSONException;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertFalse;
+import static junit.framework.Assert.assertTrue;
+import static junit.framework.Assert.fail;
+
+@RunWith(AndroidJUnit4.class)
+public class TestForecastJsonIndex {
+
+    private static final String DAY =
+            "{\"dt\":1485000000,\"temp\":{\"day\":12.5,\"min\":8.25,\"max\":15.5,\"night\":9},"
+            + "\"pressure\":1013.2,\"humidity\":81,"
+            + "\"weather\":[{\"id\":501,\"main\":\"Rain\",\"description\":\"moderate {rain]\"}],"
+            + "\"speed\":4.6,\"deg\":230,\"clouds\":90}";
+
+    private static final String FORECAST = "{\"city\":{\"id\":1,\"name\":\"Mountain \\\"View\\\"\","
+            + "\"coord\":{\"lon\":-122.08,\"lat\":37.39}},\"cod\":\"200\",\"message\":0.01,\"cnt\":2,"
+            + "\"list\":[" + DAY + ",\n  " + DAY.replace("501", "800") + "]}";
+
+    @Test
+    public void testIndexFindsEveryDay() throws JSONException {
+        ForecastJsonIndex index = ForecastJsonIndex.build(FORECAST);
+        assertEquals(2, index.getDayCount());
+        assertTrue(index.hasDayList());
+        assertEquals(200, index.getMessageCode());
+        double[] coordinates = index.getCityCoordinates();
+        assertEquals(37.39, coordinates[0]);
+        assertEquals(-122.08, coordinates[1]);
+    }
+
+    @Test
+    public void testListFieldsLeaveDetailsUndecoded() throws JSONException {
+        ForecastJsonIndex index = ForecastJsonIndex.build(FORECAST);
+        ContentValues values = new ContentValues();
+        index.decodeDay(1, ForecastJsonIndex.FIELDS_LIST, values);
+        assertEquals(800, (int) values.getAsInteger(WeatherEntry.COLUMN_WEATHER_ID));
+        assertEquals(15.5, values.getAsDouble(WeatherEntry.COLUMN_MAX_TEMP));
+        assertEquals(8.25, values.getAsDouble(WeatherEntry.COLUMN_MIN_TEMP));
+        assertFalse(values.containsKey(WeatherEntry.COLUMN_PRESSURE));
+
+        index.decodeDay(1, ForecastJsonIndex.FIELDS_DETAIL, values);
+        assertEquals(1013.2, values.getAsDouble(WeatherEntry.COLUMN_PRESSURE));
+        assertEquals(81, (int) values.getAsInteger(WeatherEntry.COLUMN_HUMIDITY));
+        assertEquals(4.6, values.getAsDouble(WeatherEntry.COLUMN_WIND_SPEED));
+        assertEquals(230.0, values.getAsDouble(WeatherEntry.COLUMN_DEGREES));
+    }
+
+    @Test
+    public void testErrorResponseHasNoDays() throws JSONException {
+        ForecastJsonIndex index = ForecastJsonIndex.build("{\"cod\":\"404\",\"message\":\"city not found\"}");
+        assertFalse(index.hasDayList());
+        assertEquals(404, index.getMessageCode());
+    }
+
+    @Test
+    public void testMissingFieldIsAnError() throws JSONException {
+        ForecastJsonIndex index = ForecastJsonIndex.build("{\"list\":[{\"pressure\":1000}]}");
+        try {
+            index.decodeDay(0, ForecastJsonIndex.FIELDS_LIST, new ContentValues());
+            fail("The temperatures and weather id are missing");
+        } catch (JSONException expected) {
+        }
+    }
+}
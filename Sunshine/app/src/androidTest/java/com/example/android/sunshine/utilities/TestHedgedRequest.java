@@ -0,0 +1,78 @@
+package com.example.android.sunshine.utilities;
+
+import android.os.SystemClock;
+import android.support.test.runner.AndroidJUnit4;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.IOException;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertTrue;
+
+@RunWith(AndroidJUnit4.class)
+public class TestHedgedRequest {
+
+    private static final String PRIMARY_BODY = "{\"from\":\"primary\"}";
+    private static final String SECONDARY_BODY = "{\"from\":\"secondary\"}";
+
+    private MockHttpServer mPrimary;
+    private MockHttpServer mSecondary;
+
+    @Before
+    public void setUp() throws IOException {
+        mPrimary = new MockHttpServer();
+        mSecondary = new MockHttpServer();
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        mPrimary.close();
+        mSecondary.close();
+    }
+
+    @Test
+    public void testFastPrimaryIsNotHedged() throws IOException {
+        mPrimary.enqueue(200, PRIMARY_BODY);
+        HedgedRequest hedging = new HedgedRequest(1000, 0.1, 2);
+
+        String response = hedging.execute(mPrimary.getUrl("/weather"), mSecondary.getUrl("/staticweather"),
+                null, null);
+        assertEquals(PRIMARY_BODY, response);
+        assertEquals(0, mSecondary.getRequestCount());
+    }
+
+    @Test
+    public void testSlowPrimaryLosesToTheHedge() throws IOException {
+        mPrimary.enqueue(200, PRIMARY_BODY, 5000);
+        mSecondary.enqueue(200, SECONDARY_BODY);
+        HedgedRequest hedging = new HedgedRequest(200, 0.1, 2);
+
+        long start = SystemClock.elapsedRealtime();
+        NetworkUtils.ResponseStats stats = new NetworkUtils.ResponseStats();
+        String response = hedging.execute(mPrimary.getUrl("/weather"), mSecondary.getUrl("/staticweather"),
+                null, stats);
+        long elapsed = SystemClock.elapsedRealtime() - start;
+
+        assertEquals(SECONDARY_BODY, response);
+        assertEquals(200, stats.getHttpStatus());
+        assertTrue("The slow primary was waited for: " + elapsed + "ms", elapsed < 2000);
+    }
+
+    @Test
+    public void testHedgesAreCappedByTheBudget() throws IOException {
+        /* One hedge in the bucket, and a tenth earned per request */
+        HedgedRequest hedging = new HedgedRequest(100, 0.1, 1);
+        for (int i = 0; i < 4; i++) {
+            mPrimary.enqueue(200, PRIMARY_BODY, 400);
+            mSecondary.enqueue(200, SECONDARY_BODY, 400);
+            hedging.execute(mPrimary.getUrl("/weather"), mSecondary.getUrl("/staticweather"), null, null);
+        }
+
+        assertEquals(1, mSecondary.getRequestCount());
+        assertEquals(0.25, hedging.getHedgeRate(), 0.001);
+    }
+}
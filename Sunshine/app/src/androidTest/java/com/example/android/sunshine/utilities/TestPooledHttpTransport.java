@@ -0,0 +1,86 @@
+package com.example.android.sunshine.utilities;
+
+import android.support.test.runner.AndroidJUnit4;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.IOException;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertTrue;
+
+@RunWith(AndroidJUnit4.class)
+public class TestPooledHttpTransport {
+
+    private static final String BODY = "{\"cod\":200,\"list\":[]}";
+
+    private MockHttpServer mServer;
+
+    @Before
+    public void setUp() throws IOException {
+        mServer = new MockHttpServer();
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        mServer.close();
+        NetworkUtils.setTransport(null);
+    }
+
+    @Test
+    public void testConnectionsAreReused() throws IOException {
+        mServer.enqueue(200, BODY).enqueue(200, BODY).enqueue(200, BODY);
+        PooledHttpTransport transport = new PooledHttpTransport();
+
+        for (int i = 0; i < 3; i++) {
+            NetworkUtils.ResponseStats stats = new NetworkUtils.ResponseStats();
+            assertEquals(BODY, transport.execute(mServer.getUrl("/weather"), null, stats));
+        }
+        assertEquals(3, mServer.getRequestCount());
+        assertEquals(1, mServer.getConnectionCount());
+    }
+
+    @Test
+    public void testGzipIsNegotiatedAndInflated() throws IOException {
+        StringBuilder body = new StringBuilder();
+        for (int i = 0; i < 100; i++) {
+            body.append(BODY);
+        }
+        mServer.enqueueGzip(200, body.toString());
+
+        NetworkUtils.ResponseStats stats = new NetworkUtils.ResponseStats();
+        String response = new PooledHttpTransport().execute(mServer.getUrl("/weather"), null, stats);
+
+        assertEquals("gzip", mServer.getLastAcceptEncoding());
+        assertEquals(body.toString(), response);
+        assertTrue("Wire size not counted: " + stats.getBytes(), stats.getBytes() < body.length());
+    }
+
+    @Test
+    public void testPhasesAreTimed() throws IOException {
+        mServer.enqueue(200, BODY, 300);
+
+        NetworkUtils.ResponseStats stats = new NetworkUtils.ResponseStats();
+        new PooledHttpTransport().execute(mServer.getUrl("/weather"), null, stats);
+
+        long firstByte = stats.getPhaseMillis(NetworkUtils.ResponseStats.PHASE_FIRST_BYTE);
+        assertTrue("First byte phase too short: " + firstByte, firstByte >= 300);
+        assertTrue(stats.getFirstByteMillis() >= firstByte);
+        assertEquals(0, stats.getPhaseMillis(NetworkUtils.ResponseStats.PHASE_TLS));
+    }
+
+    @Test
+    public void testTransportIsPluggable() throws IOException {
+        LocalHttpTransport transport = new LocalHttpTransport(0).serve("/weather", BODY);
+        NetworkUtils.setTransport(transport);
+
+        NetworkUtils.ResponseStats stats = new NetworkUtils.ResponseStats();
+        assertEquals(BODY, NetworkUtils.getResponseFromHttpUrl(mServer.getUrl("/weather"), null, stats));
+        assertEquals(200, stats.getHttpStatus());
+        assertEquals(1, transport.getRequestCount());
+        assertEquals(0, mServer.getRequestCount());
+    }
+}
@@ -0,0 +1,107 @@
+package com.example.android.sunshine.utilities;
+
+import android.support.test.runner.AndroidJUnit4;
+
+import com.example.android.sunshine.utils.PollingCheck;
+import com.google.android.gms.wearable.DataMap;
+import com.google.android.gms.wearable.PutDataMapRequest;
+import com.google.android.gms.wearable.PutDataRequest;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.List;
+
+import static junit.framework.Assert.assertEquals;
+
+@RunWith(AndroidJUnit4.class)
+public class TestWearableGateway {
+
+    private static final String PATH = "/sunshine";
+
+    private LocalWearableDataApi mDataApi;
+    private WearableGateway mGateway;
+
+    @Before
+    public void setUp() {
+        mDataApi = new LocalWearableDataApi();
+        mGateway = new WearableGateway(mDataApi);
+    }
+
+    /**
+     * Updates sent while the gateway is connecting must be collapsed into the latest one.
+     */
+    @Test
+    public void testPendingUpdatesAreCollapsed() {
+        mGateway.putDataItem(createRequest(1), null);
+        mGateway.putDataItem(createRequest(2), null);
+        mGateway.putDataItem(createRequest(3), null);
+
+        waitUntilConnecting();
+        mDataApi.completeConnection();
+        waitForSentRequests(1);
+
+        List<PutDataRequest> sent = mDataApi.getSentRequests();
+        assertEquals(1, sent.size());
+        assertEquals(3, DataMap.fromByteArray(sent.get(0).getData()).getInt("max"));
+        assertEquals(1, mDataApi.getConnectCount());
+    }
+
+    /**
+     * Updates sent while connected must reuse the connection instead of opening a new one.
+     */
+    @Test
+    public void testConnectionIsReused() {
+        mGateway.putDataItem(createRequest(1), null);
+        waitUntilConnecting();
+        mDataApi.completeConnection();
+        waitForSentRequests(1);
+
+        mGateway.putDataItem(createRequest(2), null);
+        waitForSentRequests(2);
+
+        assertEquals(1, mDataApi.getConnectCount());
+    }
+
+    /**
+     * A failed connection must be retried on its own, without waiting for another update.
+     */
+    @Test
+    public void testFailedConnectionIsRetried() {
+        mGateway = new WearableGateway(mDataApi, 10);
+        mGateway.putDataItem(createRequest(1), null);
+        waitUntilConnecting();
+        mDataApi.failConnection();
+
+        waitUntilConnecting();
+        mDataApi.completeConnection();
+        waitForSentRequests(1);
+
+        assertEquals(2, mDataApi.getConnectCount());
+    }
+
+    private static PutDataRequest createRequest(int max) {
+        PutDataMapRequest request = PutDataMapRequest.create(PATH);
+        request.getDataMap().putInt("max", max);
+        return request.asPutDataRequest();
+    }
+
+    private void waitUntilConnecting() {
+        new PollingCheck() {
+            @Override
+            protected boolean check() {
+                return mDataApi.isConnecting();
+            }
+        }.run();
+    }
+
+    private void waitForSentRequests(final int count) {
+        new PollingCheck() {
+            @Override
+            protected boolean check() {
+                return mDataApi.getSentRequests().size() == count;
+            }
+        }.run();
+    }
+}
@@ -0,0 +1,75 @@
+package com.example.android.sunshine.utilities;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.runner.AndroidJUnit4;
+import android.util.Log;
+
+import com.example.android.sunshine.shared.ForecastPayload;
+import com.google.android.gms.wearable.DataMap;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.ByteArrayOutputStream;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertTrue;
+
+/**
+ * Measures what a push to the watch weighs, before and after the forecast was sent as a
+ * {@link ForecastPayload}. Both sizes are logged, so they can be compared on a device.
+ */
+@RunWith(AndroidJUnit4.class)
+public class TestWearablePayloadSize {
+
+    private static final String TAG = TestWearablePayloadSize.class.getSimpleName();
+
+    /* The whole forecast window the sync fetches */
+    private static final int DAYS = 14;
+
+    /* Size of the icon the phone used to render for the watch */
+    private static final int LEGACY_ICON_SIZE_PX = 60;
+
+    private static final int WEATHER_ID = 500;
+
+    @Test
+    public void testPayloadIsSmallerThanTheLegacyDataMap() {
+        Context context = InstrumentationRegistry.getTargetContext();
+
+        /* Before: today's high and low, and the icon as a PNG asset, which travels on its own */
+        DataMap legacy = new DataMap();
+        legacy.putDouble("max", 21.4);
+        legacy.putDouble("min", 12.6);
+        Bitmap icon = WeatherArtCache.getBitmap(context,
+                SunshineWeatherUtils.getSmallArtResourceIdForWeatherCondition(WEATHER_ID),
+                LEGACY_ICON_SIZE_PX, LEGACY_ICON_SIZE_PX);
+        ByteArrayOutputStream png = new ByteArrayOutputStream();
+        icon.compress(Bitmap.CompressFormat.PNG, 100, png);
+        int legacyBytes = legacy.toByteArray().length + png.size();
+
+        /* After: every day of the window, the watch has the icons */
+        long today = SunshineDateUtils.getNormalizedUtcDateForToday();
+        long[] dates = new long[DAYS];
+        int[] weatherIds = new int[DAYS];
+        double[] highs = new double[DAYS];
+        double[] lows = new double[DAYS];
+        for (int i = 0; i < DAYS; i++) {
+            dates[i] = today + i * SunshineDateUtils.DAY_IN_MILLIS;
+            weatherIds[i] = WEATHER_ID;
+            highs[i] = 21.4 + i;
+            lows[i] = 12.6 - i;
+        }
+        byte[] encoded = new ForecastPayload(System.currentTimeMillis(), dates, weatherIds, highs, lows).encode();
+        assertEquals(14 + 7 * DAYS, encoded.length);
+        DataMap current = new DataMap();
+        current.putByteArray(ForecastPayload.KEY_FORECAST, encoded);
+        int currentBytes = current.toByteArray().length;
+
+        Log.i(TAG, "Legacy push: " + legacyBytes + " bytes (" + png.size() + " of PNG) for today only, "
+                + "payload push: " + currentBytes + " bytes for " + DAYS + " days");
+        assertTrue("The payload push weighs " + currentBytes + " bytes, the legacy one " + legacyBytes,
+                currentBytes < legacyBytes);
+    }
+}
@@ -0,0 +1,79 @@
+package com.example.android.sunshine.widget;
+
+import android.appwidget.AppWidgetManager;
+import android.content.ContentValues;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.runner.AndroidJUnit4;
+
+import com.example.android.sunshine.data.ForecastSnapshot;
+import com.example.android.sunshine.data.WeatherContract.WeatherEntry;
+import com.example.android.sunshine.utilities.SunshineDateUtils;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import static junit.framework.Assert.assertEquals;
+
+@RunWith(AndroidJUnit4.class)
+public class TestForecastWidgetFactory {
+
+    private static final int ICON_SIZE_PX = 48;
+
+    private final long mToday = SunshineDateUtils.getNormalizedUtcDateForToday();
+
+    private ForecastWidgetFactory mFactory;
+
+    @Before
+    public void setUp() {
+        mFactory = new ForecastWidgetFactory(InstrumentationRegistry.getTargetContext(),
+                AppWidgetManager.INVALID_APPWIDGET_ID);
+    }
+
+    /* A forecast of the given number of days from today, each a degree warmer, plus the offset */
+    private ForecastSnapshot createSnapshot(int days, double offset) {
+        ContentValues[] weatherValues = new ContentValues[days];
+        for (int i = 0; i < days; i++) {
+            ContentValues values = new ContentValues();
+            values.put(WeatherEntry.COLUMN_DATE, mToday + i * SunshineDateUtils.DAY_IN_MILLIS);
+            values.put(WeatherEntry.COLUMN_WEATHER_ID, 800);
+            values.put(WeatherEntry.COLUMN_MAX_TEMP, 20 + i + offset);
+            values.put(WeatherEntry.COLUMN_MIN_TEMP, 10 + i);
+            weatherValues[i] = values;
+        }
+        return ForecastSnapshot.fromContentValues(weatherValues);
+    }
+
+    @Test
+    public void testUnchangedDaysAreNotBuiltAgain() {
+        ForecastSnapshot snapshot = createSnapshot(ForecastWidgetProvider.MAX_DAYS + 2, 0);
+        assertEquals(ForecastWidgetProvider.MAX_DAYS, mFactory.bindCells(snapshot, mToday, true, ICON_SIZE_PX));
+        assertEquals(ForecastWidgetProvider.MAX_DAYS, mFactory.getCount());
+
+        assertEquals(0, mFactory.bindCells(createSnapshot(ForecastWidgetProvider.MAX_DAYS + 2, 0),
+                mToday, true, ICON_SIZE_PX));
+    }
+
+    @Test
+    public void testChangedDaysAreBuiltAgain() {
+        mFactory.bindCells(createSnapshot(ForecastWidgetProvider.MAX_DAYS, 0), mToday, true, ICON_SIZE_PX);
+
+        assertEquals(ForecastWidgetProvider.MAX_DAYS,
+                mFactory.bindCells(createSnapshot(ForecastWidgetProvider.MAX_DAYS, 1), mToday, true, ICON_SIZE_PX));
+        assertEquals(ForecastWidgetProvider.MAX_DAYS,
+                mFactory.bindCells(createSnapshot(ForecastWidgetProvider.MAX_DAYS, 1), mToday, false, ICON_SIZE_PX));
+    }
+
+    /**
+     * Once the date changed, every cell shows another day, or the same day with another label.
+     */
+    @Test
+    public void testEveryCellIsBuiltAgainOnANewDay() {
+        ForecastSnapshot snapshot = createSnapshot(ForecastWidgetProvider.MAX_DAYS + 2, 0);
+        mFactory.bindCells(snapshot, mToday, true, ICON_SIZE_PX);
+
+        long tomorrow = mToday + SunshineDateUtils.DAY_IN_MILLIS;
+        assertEquals(ForecastWidgetProvider.MAX_DAYS, mFactory.bindCells(snapshot, tomorrow, true, ICON_SIZE_PX));
+        assertEquals(tomorrow, mFactory.getItemId(0));
+    }
+}
@@ -320,12 +320,21 @@ public class DetailActivity extends AppCompatActivity implements
         mDetailBinding.primaryInfo.lowTemperature.setText(lowString);
         mDetailBinding.primaryInfo.lowTemperature.setContentDescription(lowA11y);
 
+        /*
+         * The sync inserts the days before it decodes their pressure, humidity and wind, those
+         * are null until it has. They are decoded together.
+         */
+        boolean detailsDecoded = !data.isNull(INDEX_WEATHER_PRESSURE);
+        String pendingString = getString(R.string.detail_pending);
+
         /************
          * Humidity *
          ************/
         /* Read humidity from the cursor */
         float humidity = data.getFloat(INDEX_WEATHER_HUMIDITY);
-        String humidityString = getString(R.string.format_humidity, humidity);
+        String humidityString = detailsDecoded
+                ? getString(R.string.format_humidity, humidity)
+                : pendingString;
 
         String humidityA11y = getString(R.string.a11y_humidity, humidityString);
 
@@ -341,7 +350,9 @@ public class DetailActivity extends AppCompatActivity implements
         /* Read wind speed (in MPH) and direction (in compass degrees) from the cursor  */
         float windSpeed = data.getFloat(INDEX_WEATHER_WIND_SPEED);
         float windDirection = data.getFloat(INDEX_WEATHER_DEGREES);
-        String windString = SunshineWeatherUtils.getFormattedWind(this, windSpeed, windDirection);
+        String windString = detailsDecoded
+                ? SunshineWeatherUtils.getFormattedWind(this, windSpeed, windDirection)
+                : pendingString;
 
         String windA11y = getString(R.string.a11y_wind, windString);
 
@@ -364,7 +375,9 @@ public class DetailActivity extends AppCompatActivity implements
          * additional logic that needs to be considered in order to properly display the
          * pressure.
          */
-        String pressureString = getString(R.string.format_pressure, pressure);
+        String pressureString = detailsDecoded
+                ? getString(R.string.format_pressure, pressure)
+                : pendingString;
 
         String pressureA11y = getString(R.string.a11y_pressure, pressureString);
 
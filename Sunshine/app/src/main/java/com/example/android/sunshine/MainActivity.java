@@ -19,12 +19,14 @@ import android.content.Intent;
 import android.database.Cursor;
 import android.net.Uri;
 import android.os.Bundle;
+import android.os.SystemClock;
 import android.support.v4.app.LoaderManager;
 import android.support.v4.content.CursorLoader;
 import android.support.v4.content.Loader;
 import android.support.v7.app.AppCompatActivity;
 import android.support.v7.widget.LinearLayoutManager;
 import android.support.v7.widget.RecyclerView;
+import android.text.format.DateUtils;
 import android.util.Log;
 import android.view.Menu;
 import android.view.MenuInflater;
@@ -32,6 +34,7 @@ import android.view.MenuItem;
 import android.view.View;
 import android.widget.ProgressBar;
 
+import com.example.android.sunshine.data.ForecastFreshness;
 import com.example.android.sunshine.data.SunshinePreferences;
 import com.example.android.sunshine.data.WeatherContract;
 import com.example.android.sunshine.sync.SunshineSyncUtils;
@@ -66,6 +69,9 @@ public class MainActivity extends AppCompatActivity implements LoaderManager.Loa
      * it is unique and consistent.
      */
     private static final int ID_FORECAST_LOADER = 44;
+
+    /* Loads the metadata row, to tell how fresh the forecast being shown is */
+    private static final int ID_FRESHNESS_LOADER = 45;
     
     private ForecastAdapter mForecastAdapter;
     private RecyclerView mRecyclerView;
@@ -142,10 +148,34 @@ public class MainActivity extends AppCompatActivity implements LoaderManager.Loa
          * the last created loader is re-used.
          */
         getSupportLoaderManager().initLoader(ID_FORECAST_LOADER, null, this);
-        
-        SunshineSyncUtils.initialize(this);
+        getSupportLoaderManager().initLoader(ID_FRESHNESS_LOADER, null, this);
+
+        /*
+         * Scheduling the sync is not needed to draw our first frame. A Runnable posted to the
+         * decor view only runs after its first layout pass, so we defer the initialization until
+         * then. Whatever forecast we have is shown meanwhile, and revalidated if needed once the
+         * freshness loader has read its age.
+         */
+        final long onCreateTime = SystemClock.elapsedRealtime();
+        getWindow().getDecorView().post(new Runnable() {
+            @Override
+            public void run() {
+                Log.d(TAG, "First frame in " + (SystemClock.elapsedRealtime() - onCreateTime) + "ms");
+                SunshineSyncUtils.initialize(MainActivity.this);
+            }
+        });
     }
     
+    /**
+     * Coming back to the list, the forecast may have aged past its TTLs without any change to
+     * the data, so its freshness is read again.
+     */
+    @Override
+    protected void onRestart() {
+        super.onRestart();
+        getSupportLoaderManager().restartLoader(ID_FRESHNESS_LOADER, null, this);
+    }
+
     /**
      * Uses the URI scheme for showing a location found on a map in conjunction with
      * an implicit Intent. This super-handy Intent is detailed in the "Common Intents" page of
@@ -199,6 +229,10 @@ public class MainActivity extends AppCompatActivity implements LoaderManager.Loa
                 String selection = WeatherContract.WeatherEntry.getSqlSelectForTodayOnwards();
                 
                 return new CursorLoader(this, forecastQueryUri, MAIN_FORECAST_PROJECTION, selection, null, sortOrder);
+
+            case ID_FRESHNESS_LOADER:
+                return new CursorLoader(this, WeatherContract.MetadataEntry.CONTENT_URI,
+                        ForecastFreshness.PROJECTION, null, null, null);
             
             default:
                 throw new RuntimeException("Loader Not Implemented: " + loaderId);
@@ -218,6 +252,11 @@ public class MainActivity extends AppCompatActivity implements LoaderManager.Loa
      */
     @Override
     public void onLoadFinished(Loader<Cursor> loader, Cursor data) {
+
+        if (loader.getId() == ID_FRESHNESS_LOADER) {
+            onFreshnessLoaded(data);
+            return;
+        }
         
         mForecastAdapter.swapCursor(data);
         if (mPosition == RecyclerView.NO_POSITION) {
@@ -237,6 +276,9 @@ public class MainActivity extends AppCompatActivity implements LoaderManager.Loa
      */
     @Override
     public void onLoaderReset(Loader<Cursor> loader) {
+        if (loader.getId() == ID_FRESHNESS_LOADER) {
+            return;
+        }
         /*
          * Since this Loader's data is now invalid, we need to clear the Adapter that is
          * displaying the data.
@@ -244,6 +286,30 @@ public class MainActivity extends AppCompatActivity implements LoaderManager.Loa
         mForecastAdapter.swapCursor(null);
     }
     
+    /**
+     * Tags the forecast being shown with its age, marks it when it is stale, and revalidates it
+     * in the background when it is older than its soft TTL.
+     *
+     * @param metadata The metadata row, null if it couldn't be read
+     */
+    private void onFreshnessLoaded(Cursor metadata) {
+        long now = System.currentTimeMillis();
+        ForecastFreshness freshness = ForecastFreshness.fromCursor(metadata, now,
+                SunshineSyncUtils.getSoftTtlMillis(this));
+
+        if (freshness.canServe()) {
+            CharSequence lastSync = DateUtils.getRelativeTimeSpanString(
+                    freshness.getLastSync(), now, DateUtils.MINUTE_IN_MILLIS);
+            getSupportActionBar().setSubtitle(getString(freshness.isStale()
+                    ? R.string.format_forecast_stale
+                    : R.string.format_forecast_updated, lastSync));
+        } else {
+            getSupportActionBar().setSubtitle(null);
+        }
+
+        SunshineSyncUtils.revalidateIfNeeded(this, freshness);
+    }
+
     /**
      * This method is for responding to clicks from our list.
      *
@@ -303,6 +369,8 @@ public class MainActivity extends AppCompatActivity implements LoaderManager.Loa
         MenuInflater inflater = getMenuInflater();
         /* Use the inflater's inflate method to inflate our menu layout to this menu */
         inflater.inflate(R.menu.forecast, menu);
+        /* The sync history is a diagnostics screen, for debug builds only */
+        menu.findItem(R.id.action_sync_history).setVisible(BuildConfig.DEBUG);
         /* Return true so that the menu is displayed in the Toolbar */
         return true;
     }
@@ -328,6 +396,11 @@ public class MainActivity extends AppCompatActivity implements LoaderManager.Loa
             return true;
         }
         
+        if (id == R.id.action_sync_history) {
+            startActivity(new Intent(this, SyncHistoryActivity.class));
+            return true;
+        }
+
         if (id == R.id.force_wearable) {
             SunshineSyncUtils.startImmediateSync(this);
             return true;
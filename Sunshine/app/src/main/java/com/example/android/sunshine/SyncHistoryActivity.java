@@ -0,0 +1,151 @@
+package com.example.android.sunshine;
+
+import android.database.Cursor;
+import android.os.Bundle;
+import android.support.v4.app.LoaderManager;
+import android.support.v4.content.CursorLoader;
+import android.support.v4.content.Loader;
+import android.support.v4.widget.SimpleCursorAdapter;
+import android.support.v7.app.AppCompatActivity;
+import android.text.format.DateUtils;
+import android.view.MenuItem;
+import android.view.View;
+import android.widget.ListView;
+import android.widget.TextView;
+
+import com.example.android.sunshine.data.ForecastCache;
+import com.example.android.sunshine.data.WeatherContract.SyncHistoryEntry;
+import com.example.android.sunshine.sync.SunshineSyncUtils;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Debug screen listing the latest sync runs recorded in the sync history, newest first: when
+ * and why each run started, how it ended, how long each stage took and what it transferred.
+ * The subtitle shows the current interval of the periodic sync.
+ */
+public class SyncHistoryActivity extends AppCompatActivity implements LoaderManager.LoaderCallbacks<Cursor> {
+
+    private static final int ID_SYNC_HISTORY_LOADER = 80;
+
+    private static final String[] SYNC_HISTORY_PROJECTION = {
+            SyncHistoryEntry._ID,
+            SyncHistoryEntry.COLUMN_STARTED_AT,
+            SyncHistoryEntry.COLUMN_TRIGGER,
+            SyncHistoryEntry.COLUMN_OUTCOME,
+            SyncHistoryEntry.COLUMN_TOTAL_MILLIS,
+            SyncHistoryEntry.COLUMN_FETCH_MILLIS,
+            SyncHistoryEntry.COLUMN_PARSE_MILLIS,
+            SyncHistoryEntry.COLUMN_PERSIST_MILLIS,
+            SyncHistoryEntry.COLUMN_FAN_OUT_MILLIS,
+            SyncHistoryEntry.COLUMN_HTTP_STATUS,
+            SyncHistoryEntry.COLUMN_BYTES,
+            SyncHistoryEntry.COLUMN_ROWS_CHANGED,
+            SyncHistoryEntry.COLUMN_ERROR,
+    };
+
+    private static final int INDEX_STARTED_AT = 1;
+    private static final int INDEX_TRIGGER = 2;
+    private static final int INDEX_OUTCOME = 3;
+    private static final int INDEX_TOTAL_MILLIS = 4;
+    private static final int INDEX_FETCH_MILLIS = 5;
+    private static final int INDEX_PARSE_MILLIS = 6;
+    private static final int INDEX_PERSIST_MILLIS = 7;
+    private static final int INDEX_FAN_OUT_MILLIS = 8;
+    private static final int INDEX_HTTP_STATUS = 9;
+    private static final int INDEX_BYTES = 10;
+    private static final int INDEX_ROWS_CHANGED = 11;
+    private static final int INDEX_ERROR = 12;
+
+    private SimpleCursorAdapter mAdapter;
+
+    @Override
+    protected void onCreate(Bundle savedInstanceState) {
+        super.onCreate(savedInstanceState);
+        setContentView(R.layout.activity_sync_history);
+        getSupportActionBar().setDisplayHomeAsUpEnabled(true);
+
+        /* How the adaptive sync interval compares with the fixed schedule, and the cache hit ratio */
+        double cacheHitRatio = ForecastCache.getHitRatio(this);
+        getSupportActionBar().setSubtitle(getString(R.string.format_sync_schedule,
+                TimeUnit.SECONDS.toMinutes(SunshineSyncUtils.getCurrentSyncIntervalSeconds(this)),
+                SunshineSyncUtils.getFetchesSavedVsFixedSchedule(this),
+                Double.isNaN(cacheHitRatio) ? 0 : Math.round(cacheHitRatio * 100)));
+
+        ListView listView = (ListView) findViewById(R.id.lv_sync_history);
+        listView.setEmptyView(findViewById(R.id.tv_sync_history_empty));
+
+        /* Both lines of each item are built by the ViewBinder, from the whole row */
+        mAdapter = new SimpleCursorAdapter(this,
+                android.R.layout.simple_list_item_2,
+                null,
+                new String[]{SyncHistoryEntry.COLUMN_OUTCOME, SyncHistoryEntry.COLUMN_TOTAL_MILLIS},
+                new int[]{android.R.id.text1, android.R.id.text2},
+                0);
+        mAdapter.setViewBinder(new SimpleCursorAdapter.ViewBinder() {
+            @Override
+            public boolean setViewValue(View view, Cursor cursor, int columnIndex) {
+                ((TextView) view).setText(view.getId() == android.R.id.text1
+                        ? getSummary(cursor)
+                        : getDetails(cursor));
+                return true;
+            }
+        });
+        listView.setAdapter(mAdapter);
+
+        getSupportLoaderManager().initLoader(ID_SYNC_HISTORY_LOADER, null, this);
+    }
+
+    private CharSequence getSummary(Cursor cursor) {
+        return getString(R.string.format_sync_history_summary,
+                DateUtils.formatDateTime(this, cursor.getLong(INDEX_STARTED_AT),
+                        DateUtils.FORMAT_SHOW_DATE | DateUtils.FORMAT_SHOW_TIME),
+                cursor.getString(INDEX_TRIGGER),
+                cursor.getString(INDEX_OUTCOME),
+                cursor.getLong(INDEX_TOTAL_MILLIS));
+    }
+
+    private CharSequence getDetails(Cursor cursor) {
+        String details = getString(R.string.format_sync_history_details,
+                cursor.getLong(INDEX_FETCH_MILLIS),
+                cursor.getLong(INDEX_PARSE_MILLIS),
+                cursor.getLong(INDEX_PERSIST_MILLIS),
+                cursor.getLong(INDEX_FAN_OUT_MILLIS),
+                cursor.getInt(INDEX_HTTP_STATUS),
+                cursor.getLong(INDEX_BYTES),
+                cursor.getInt(INDEX_ROWS_CHANGED));
+        if (!cursor.isNull(INDEX_ERROR)) {
+            details += "\n" + cursor.getString(INDEX_ERROR);
+        }
+        return details;
+    }
+
+    @Override
+    public Loader<Cursor> onCreateLoader(int id, Bundle args) {
+        return new CursorLoader(this,
+                SyncHistoryEntry.CONTENT_URI,
+                SYNC_HISTORY_PROJECTION,
+                null,
+                null,
+                null);
+    }
+
+    @Override
+    public void onLoadFinished(Loader<Cursor> loader, Cursor data) {
+        mAdapter.swapCursor(data);
+    }
+
+    @Override
+    public void onLoaderReset(Loader<Cursor> loader) {
+        mAdapter.swapCursor(null);
+    }
+
+    @Override
+    public boolean onOptionsItemSelected(MenuItem item) {
+        if (item.getItemId() == android.R.id.home) {
+            onBackPressed();
+            return true;
+        }
+        return super.onOptionsItemSelected(item);
+    }
+}
@@ -0,0 +1,107 @@
+package com.example.android.sunshine.data;
+
+import android.content.ContentValues;
+import android.content.Context;
+import android.database.Cursor;
+import android.text.format.DateUtils;
+
+import com.example.android.sunshine.data.WeatherContract.ForecastCacheEntry;
+
+/**
+ * Responses of the weather server, by location. The server only updates its forecasts every so
+ * often, so a response younger than {@link #MAX_AGE_MILLIS} is used instead of fetching the same
+ * forecast again: when the user moves within a geohash cell, switches back to a location, or when
+ * syncs follow each other closely. Keys come from {@link
+ * com.example.android.sunshine.utilities.NetworkUtils#getForecastCacheKey(Context)}.
+ */
+public final class ForecastCache {
+
+    /* Age after which a response is not used anymore */
+    static final long MAX_AGE_MILLIS = 30 * DateUtils.MINUTE_IN_MILLIS;
+
+    private static final String[] PROJECTION = {
+            ForecastCacheEntry.COLUMN_FETCHED_AT,
+            ForecastCacheEntry.COLUMN_RESPONSE
+    };
+
+    private static final String SELECTION = ForecastCacheEntry.COLUMN_CACHE_KEY + " = ?";
+
+    private ForecastCache() {
+    }
+
+    /**
+     * Looks up a response, and counts the lookup for {@link #getHitRatio(Context)}.
+     *
+     * @param context Used to access the ContentResolver
+     * @param key     The key of the location
+     * @return The JSON of the response, null if there is none younger than the maximum age
+     */
+    public static String get(Context context, String key) {
+        String response = null;
+        Cursor cursor = context.getContentResolver().query(ForecastCacheEntry.CONTENT_URI,
+                PROJECTION, SELECTION, new String[]{key}, null);
+        if (cursor != null) {
+            try {
+                if (cursor.moveToFirst()) {
+                    long age = System.currentTimeMillis() - cursor.getLong(0);
+                    /* A negative age means the clock was set back, the response can't be trusted */
+                    if (age >= 0 && age < MAX_AGE_MILLIS) {
+                        response = cursor.getString(1);
+                    }
+                }
+            } finally {
+                cursor.close();
+            }
+        }
+        SunshinePreferences.recordForecastCacheLookup(context, response != null);
+        return response;
+    }
+
+    /**
+     * Returns when the response of a location was fetched, to tell how old a response returned
+     * by {@link #get(Context, String)} is. Unlike it, doesn't count as a lookup.
+     *
+     * @param context Used to access the ContentResolver
+     * @param key     The key of the location
+     * @return UNIX time at which the response was fetched, 0 if there is none
+     */
+    public static long getFetchedAt(Context context, String key) {
+        Cursor cursor = context.getContentResolver().query(ForecastCacheEntry.CONTENT_URI,
+                PROJECTION, SELECTION, new String[]{key}, null);
+        if (cursor == null) {
+            return 0;
+        }
+        try {
+            return cursor.moveToFirst() ? cursor.getLong(0) : 0;
+        } finally {
+            cursor.close();
+        }
+    }
+
+    /**
+     * Stores a response just received, replacing the previous one of the location.
+     *
+     * @param context Used to access the ContentResolver
+     * @param key     The key of the location
+     * @param json    The JSON of the response
+     */
+    public static void put(Context context, String key, String json) {
+        ContentValues values = new ContentValues();
+        values.put(ForecastCacheEntry.COLUMN_CACHE_KEY, key);
+        values.put(ForecastCacheEntry.COLUMN_FETCHED_AT, System.currentTimeMillis());
+        values.put(ForecastCacheEntry.COLUMN_RESPONSE, json);
+        context.getContentResolver().insert(ForecastCacheEntry.CONTENT_URI, values);
+    }
+
+    /**
+     * @param context Used to access SharedPreferences
+     * @return The share of the lookups the cache answered, between 0 and 1, NaN before any lookup
+     */
+    public static double getHitRatio(Context context) {
+        int lookups = SunshinePreferences.getForecastCacheLookups(context);
+        if (lookups == 0) {
+            return Double.NaN;
+        }
+        return (double) SunshinePreferences.getForecastCacheHits(context) / lookups;
+    }
+}
@@ -0,0 +1,140 @@
+package com.example.android.sunshine.data;
+
+import android.database.Cursor;
+import android.text.format.DateUtils;
+
+import com.example.android.sunshine.utilities.SunshineDateUtils;
+
+/**
+ * Stale-while-revalidate policy of the forecast list. Whatever forecast the database holds is
+ * served right away, along with its age:
+ * <ul>
+ * <li>younger than the soft TTL, it is fresh and served as is;</li>
+ * <li>older than the soft TTL, it is still served, and revalidated in the background;</li>
+ * <li>older than {@link #HARD_TTL_MILLIS}, it is also marked as stale to the user.</li>
+ * </ul>
+ * Only when there is nothing to serve, no forecast from today onwards, does the user have to
+ * wait for a sync.
+ */
+public final class ForecastFreshness {
+
+    public static final int STATE_FRESH = 0;
+    public static final int STATE_AGING = 1;
+    public static final int STATE_STALE = 2;
+    public static final int STATE_MISSING = 3;
+
+    /* Age after which the forecast is marked as stale, whatever the soft TTL */
+    public static final long HARD_TTL_MILLIS = DateUtils.DAY_IN_MILLIS;
+
+    /* The columns of the metadata row {@link #fromCursor(Cursor, long, long)} expects, in this order */
+    public static final String[] PROJECTION = {
+            WeatherContract.MetadataEntry.COLUMN_ROW_COUNT,
+            WeatherContract.MetadataEntry.COLUMN_NEWEST_DATE,
+            WeatherContract.MetadataEntry.COLUMN_LAST_SYNC,
+    };
+
+    private static final int INDEX_ROW_COUNT = 0;
+    private static final int INDEX_NEWEST_DATE = 1;
+    private static final int INDEX_LAST_SYNC = 2;
+
+    private final int mState;
+    private final long mLastSync;
+    private final long mAgeMillis;
+
+    private ForecastFreshness(int state, long lastSync, long ageMillis) {
+        mState = state;
+        mLastSync = lastSync;
+        mAgeMillis = ageMillis;
+    }
+
+    /**
+     * @param cursor        The metadata row, with the {@link #PROJECTION} columns, or null if it
+     *                      couldn't be read. It is left open.
+     * @param now           Current UNIX time
+     * @param softTtlMillis Age after which the forecast is revalidated
+     * @return The freshness of the forecast
+     */
+    public static ForecastFreshness fromCursor(Cursor cursor, long now, long softTtlMillis) {
+        /* If we can't tell how fresh the data is, we consider there is none */
+        if (cursor == null || !cursor.moveToFirst()) {
+            return evaluate(0, 0, 0, now, softTtlMillis);
+        }
+        return evaluate(
+                cursor.getInt(INDEX_ROW_COUNT),
+                cursor.getLong(INDEX_NEWEST_DATE),
+                cursor.getLong(INDEX_LAST_SYNC),
+                now,
+                softTtlMillis);
+    }
+
+    /**
+     * @param rowCount      Number of rows in the weather table
+     * @param newestDate    Greatest normalized date in the weather table
+     * @param lastSync      UNIX time of the last successful sync, 0 if never
+     * @param now           Current UNIX time
+     * @param softTtlMillis Age after which the forecast is revalidated
+     * @return The freshness of the forecast
+     */
+    public static ForecastFreshness evaluate(int rowCount, long newestDate, long lastSync, long now,
+                                             long softTtlMillis) {
+        if (rowCount == 0 || newestDate < SunshineDateUtils.normalizeDate(now)) {
+            return new ForecastFreshness(STATE_MISSING, lastSync, -1);
+        }
+        if (lastSync > now) {
+            /* The clock was set back, the age can't be trusted */
+            return new ForecastFreshness(STATE_AGING, lastSync, 0);
+        }
+        long age = now - lastSync;
+        int state;
+        if (age > HARD_TTL_MILLIS) {
+            state = STATE_STALE;
+        } else if (age > softTtlMillis) {
+            state = STATE_AGING;
+        } else {
+            state = STATE_FRESH;
+        }
+        return new ForecastFreshness(state, lastSync, age);
+    }
+
+    /**
+     * @return One of the STATE_* values
+     */
+    public int getState() {
+        return mState;
+    }
+
+    /**
+     * @return UNIX time of the last successful sync, 0 if never
+     */
+    public long getLastSync() {
+        return mLastSync;
+    }
+
+    /**
+     * @return Milliseconds since the last successful sync, -1 if there is no forecast to serve
+     */
+    public long getAgeMillis() {
+        return mAgeMillis;
+    }
+
+    /**
+     * @return Whether a forecast can be shown right away
+     */
+    public boolean canServe() {
+        return mState != STATE_MISSING;
+    }
+
+    /**
+     * @return Whether a sync should be started in the background
+     */
+    public boolean needsRevalidation() {
+        return mState != STATE_FRESH;
+    }
+
+    /**
+     * @return Whether the forecast served should be marked as stale
+     */
+    public boolean isStale() {
+        return mState == STATE_STALE;
+    }
+}
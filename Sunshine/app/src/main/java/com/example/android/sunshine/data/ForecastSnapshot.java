@@ -0,0 +1,146 @@
+package com.example.android.sunshine.data;
+
+import android.content.ContentValues;
+import android.database.Cursor;
+
+import com.example.android.sunshine.shared.ForecastPayload;
+
+import java.util.Arrays;
+import java.util.Comparator;
+
+/**
+ * Immutable, in-memory copy of the forecast written by a sync, in ascending date order. It is
+ * handed to everything that reacts to a sync (notification, wearable...), so none of them has to
+ * query the ContentProvider for the data that was just inserted.
+ */
+public final class ForecastSnapshot {
+
+    /* The columns {@link #fromCursor(Cursor)} expects, in this order */
+    public static final String[] PROJECTION = {
+            WeatherContract.WeatherEntry.COLUMN_DATE,
+            WeatherContract.WeatherEntry.COLUMN_WEATHER_ID,
+            WeatherContract.WeatherEntry.COLUMN_MAX_TEMP,
+            WeatherContract.WeatherEntry.COLUMN_MIN_TEMP,
+    };
+
+    private static final int INDEX_DATE = 0;
+    private static final int INDEX_WEATHER_ID = 1;
+    private static final int INDEX_MAX_TEMP = 2;
+    private static final int INDEX_MIN_TEMP = 3;
+
+    private final long[] mDates;
+    private final int[] mWeatherIds;
+    private final double[] mHighs;
+    private final double[] mLows;
+
+    private ForecastSnapshot(long[] dates, int[] weatherIds, double[] highs, double[] lows) {
+        mDates = dates;
+        mWeatherIds = weatherIds;
+        mHighs = highs;
+        mLows = lows;
+    }
+
+    /**
+     * @param weatherValues Weather rows as inserted in {@link WeatherContract.WeatherEntry}
+     * @return A snapshot of the date, weather id, high and low of each row
+     */
+    public static ForecastSnapshot fromContentValues(ContentValues[] weatherValues) {
+        ContentValues[] sorted = Arrays.copyOf(weatherValues, weatherValues.length);
+        Arrays.sort(sorted, new Comparator<ContentValues>() {
+            @Override
+            public int compare(ContentValues lhs, ContentValues rhs) {
+                long lhsDate = lhs.getAsLong(WeatherContract.WeatherEntry.COLUMN_DATE);
+                long rhsDate = rhs.getAsLong(WeatherContract.WeatherEntry.COLUMN_DATE);
+                return lhsDate < rhsDate ? -1 : (lhsDate == rhsDate ? 0 : 1);
+            }
+        });
+
+        int count = sorted.length;
+        long[] dates = new long[count];
+        int[] weatherIds = new int[count];
+        double[] highs = new double[count];
+        double[] lows = new double[count];
+        for (int i = 0; i < count; i++) {
+            ContentValues values = sorted[i];
+            dates[i] = values.getAsLong(WeatherContract.WeatherEntry.COLUMN_DATE);
+            weatherIds[i] = values.getAsInteger(WeatherContract.WeatherEntry.COLUMN_WEATHER_ID);
+            highs[i] = values.getAsDouble(WeatherContract.WeatherEntry.COLUMN_MAX_TEMP);
+            lows[i] = values.getAsDouble(WeatherContract.WeatherEntry.COLUMN_MIN_TEMP);
+        }
+        return new ForecastSnapshot(dates, weatherIds, highs, lows);
+    }
+
+    /**
+     * @param cursor Weather rows with the {@link #PROJECTION} columns, sorted by date. It is
+     *               read from its first row and left open.
+     * @return A snapshot of the rows
+     */
+    public static ForecastSnapshot fromCursor(Cursor cursor) {
+        int count = cursor.getCount();
+        long[] dates = new long[count];
+        int[] weatherIds = new int[count];
+        double[] highs = new double[count];
+        double[] lows = new double[count];
+        for (int i = 0; i < count && cursor.moveToPosition(i); i++) {
+            dates[i] = cursor.getLong(INDEX_DATE);
+            weatherIds[i] = cursor.getInt(INDEX_WEATHER_ID);
+            highs[i] = cursor.getDouble(INDEX_MAX_TEMP);
+            lows[i] = cursor.getDouble(INDEX_MIN_TEMP);
+        }
+        return new ForecastSnapshot(dates, weatherIds, highs, lows);
+    }
+
+    public int size() {
+        return mDates.length;
+    }
+
+    public long getDate(int index) {
+        return mDates[index];
+    }
+
+    public int getWeatherId(int index) {
+        return mWeatherIds[index];
+    }
+
+    public double getHigh(int index) {
+        return mHighs[index];
+    }
+
+    public double getLow(int index) {
+        return mLows[index];
+    }
+
+    /**
+     * @param normalizedDate A normalized UTC date
+     * @return The index of the day with that date, -1 if there is none
+     */
+    public int indexOfDate(long normalizedDate) {
+        int index = Arrays.binarySearch(mDates, normalizedDate);
+        return index < 0 ? -1 : index;
+    }
+
+    /**
+     * @param normalizedDate A normalized UTC date
+     * @return The index of the first day on or after that date, size() if there is none
+     */
+    public int indexFromDate(long normalizedDate) {
+        int index = Arrays.binarySearch(mDates, normalizedDate);
+        return index < 0 ? -index - 1 : index;
+    }
+
+    /**
+     * @param normalizedDate A normalized UTC date
+     * @param syncedAt       UNIX time at which the snapshot was synced
+     * @return The days of the snapshot from that date onwards, as sent to the watch
+     */
+    public ForecastPayload toForecastPayload(long normalizedDate, long syncedAt) {
+        int from = indexFromDate(normalizedDate);
+        int to = mDates.length;
+        return new ForecastPayload(
+                syncedAt,
+                Arrays.copyOfRange(mDates, from, to),
+                Arrays.copyOfRange(mWeatherIds, from, to),
+                Arrays.copyOfRange(mHighs, from, to),
+                Arrays.copyOfRange(mLows, from, to));
+    }
+}
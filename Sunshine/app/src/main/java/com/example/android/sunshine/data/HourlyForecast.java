@@ -0,0 +1,114 @@
+package com.example.android.sunshine.data;
+
+import android.text.format.DateUtils;
+
+import java.nio.ByteBuffer;
+
+/**
+ * The 3-hour steps of one day of forecast, as stored in {@link WeatherContract.HourlyWeatherEntry}.
+ * <p>
+ * A day is packed in a single blob of {@link #STEP_BYTES} bytes per step, in fixed point: the
+ * minute of the day, the temperature and the wind speed in hundredths, and the weather id, each
+ * as a 16 bit value. A day of 8 steps takes 64 bytes, where 8 rows of REAL columns would take
+ * several times that, plus their ids and index entries.
+ */
+public final class HourlyForecast {
+
+    public static final int STEP_BYTES = 8;
+
+    /* Temperatures and wind speeds are stored in hundredths */
+    private static final double FIXED_POINT_SCALE = 100;
+
+    private final long mDate;
+    private final ByteBuffer mSteps;
+
+    private HourlyForecast(long date, ByteBuffer steps) {
+        mDate = date;
+        mSteps = steps;
+    }
+
+    /**
+     * @param date  Normalized UTC date of the steps
+     * @param steps The blob of the {@link WeatherContract.HourlyWeatherEntry#COLUMN_STEPS} column
+     * @return The steps of the day
+     */
+    public static HourlyForecast fromBlob(long date, byte[] steps) {
+        if (steps.length % STEP_BYTES != 0) {
+            throw new IllegalArgumentException("Truncated steps: " + steps.length + " bytes");
+        }
+        return new HourlyForecast(date, ByteBuffer.wrap(steps));
+    }
+
+    /**
+     * Appends a step to a blob being packed. Steps are expected in ascending time order.
+     *
+     * @param out         Where the step is written, STEP_BYTES of it
+     * @param date        Normalized UTC date of the day being packed
+     * @param time        UNIX time of the step, within that day
+     * @param temperature Temperature, in degrees Celsius
+     * @param weatherId   Weather condition id
+     * @param windSpeed   Wind speed, in meters per second
+     */
+    public static void packStep(ByteBuffer out, long date, long time, double temperature, int weatherId,
+                                double windSpeed) {
+        long minuteOfDay = (time - date) / DateUtils.MINUTE_IN_MILLIS;
+        if (minuteOfDay < 0 || minuteOfDay >= 24 * 60) {
+            throw new IllegalArgumentException("Step " + time + " is not on " + date);
+        }
+        out.putShort((short) minuteOfDay);
+        out.putShort(toFixedPoint(temperature));
+        out.putShort((short) weatherId);
+        out.putShort(toFixedPoint(windSpeed));
+    }
+
+    private static short toFixedPoint(double value) {
+        long fixed = Math.round(value * FIXED_POINT_SCALE);
+        return (short) Math.max(Short.MIN_VALUE, Math.min(Short.MAX_VALUE, fixed));
+    }
+
+    /**
+     * @return Normalized UTC date of the steps
+     */
+    public long getDate() {
+        return mDate;
+    }
+
+    /**
+     * @return The number of steps of the day
+     */
+    public int size() {
+        return mSteps.capacity() / STEP_BYTES;
+    }
+
+    /**
+     * @param step Index of the step
+     * @return UNIX time of the step
+     */
+    public long getTime(int step) {
+        return mDate + mSteps.getShort(step * STEP_BYTES) * DateUtils.MINUTE_IN_MILLIS;
+    }
+
+    /**
+     * @param step Index of the step
+     * @return Temperature, in degrees Celsius
+     */
+    public double getTemperature(int step) {
+        return mSteps.getShort(step * STEP_BYTES + 2) / FIXED_POINT_SCALE;
+    }
+
+    /**
+     * @param step Index of the step
+     * @return Weather condition id
+     */
+    public int getWeatherId(int step) {
+        return mSteps.getShort(step * STEP_BYTES + 4);
+    }
+
+    /**
+     * @param step Index of the step
+     * @return Wind speed, in meters per second
+     */
+    public double getWindSpeed(int step) {
+        return mSteps.getShort(step * STEP_BYTES + 6) / FIXED_POINT_SCALE;
+    }
+}
@@ -0,0 +1,215 @@
+package com.example.android.sunshine.data;
+
+import android.content.Context;
+import android.net.Uri;
+import android.util.Log;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * The minute by minute precipitation of the next hour at a location, in a ring of
+ * {@link #CAPACITY} minutes, one ring per location.
+ * <p>
+ * Each slot packs a minute and its precipitation in a single long: the UNIX minute in the high 32
+ * bits, the bits of the float precipitation in the low ones. Minute m lives in slot
+ * m % CAPACITY, so an update overwrites the slots of its minutes in place, without allocating,
+ * and a slot tells which minute it holds: minutes gone by are left out of reads without ever
+ * clearing them.
+ * <p>
+ * An update replaces the whole nowcast though: the range of minutes it covers is kept along with
+ * the slots, and reads leave out the minutes outside of it, even though their slots still hold
+ * an older update. The slots within that range the update has no data for are cleared.
+ * <p>
+ * The slots are mirrored to a memory-mapped file, so the nowcast outlives the process without
+ * any I/O on the update path, the kernel writes the dirty page back. Should the file not map, the
+ * nowcast is only kept in memory.
+ * <p>
+ * Updates are serialized, reads never lock: a read takes a snapshot of the slots, and takes it
+ * again if an update ran meanwhile, which the sequence number, odd during an update, tells.
+ */
+public final class PrecipitationNowcast {
+
+    private static final String TAG = PrecipitationNowcast.class.getSimpleName();
+
+    /* Minutes of the ring, an hour of them */
+    public static final int CAPACITY = 60;
+
+    private static final String DIRECTORY = "nowcast";
+
+    /*
+     * Format of the file, its slots are discarded when it doesn't match. The header holds the
+     * magic, then the covered range at COVERAGE_OFFSET.
+     */
+    private static final int FILE_MAGIC = 0x4e4f5702;
+    private static final int COVERAGE_OFFSET = 8;
+    private static final int HEADER_BYTES = 16;
+    private static final int FILE_BYTES = HEADER_BYTES + CAPACITY * 8;
+
+    /*
+     * Snapshots taken again while updates keep running, before settling for the last one. Every
+     * slot is consistent on its own, so that snapshot may only mix minutes of two updates.
+     */
+    private static final int MAX_SNAPSHOT_ATTEMPTS = 16;
+
+    /* The rings opened so far, by location */
+    private static final ConcurrentHashMap<String, PrecipitationNowcast> sNowcasts =
+            new ConcurrentHashMap<>();
+
+    private final AtomicLongArray mSlots = new AtomicLongArray(CAPACITY);
+    private final AtomicInteger mSequence = new AtomicInteger();
+
+    /*
+     * Minutes covered by the latest update: the first one in the high 32 bits, the last one in
+     * the low ones. 0 covers no minute.
+     */
+    private final AtomicLong mCoverage = new AtomicLong();
+
+    /* The file the slots are mirrored to, only written by updates */
+    private final ByteBuffer mFile;
+
+    private PrecipitationNowcast(ByteBuffer file) {
+        mFile = file;
+        if (file.getInt(0) == FILE_MAGIC) {
+            mCoverage.set(file.getLong(COVERAGE_OFFSET));
+            for (int i = 0; i < CAPACITY; i++) {
+                mSlots.set(i, file.getLong(HEADER_BYTES + i * 8));
+            }
+        } else {
+            file.putLong(COVERAGE_OFFSET, 0);
+            for (int i = 0; i < CAPACITY; i++) {
+                file.putLong(HEADER_BYTES + i * 8, 0);
+            }
+            file.putInt(0, FILE_MAGIC);
+        }
+    }
+
+    /**
+     * Returns the nowcast of a location, opening its file the first time.
+     *
+     * @param context  Used to locate the file of the nowcast
+     * @param location The location, NowcastEntry#PREFERRED_LOCATION or the location query of a
+     *                 saved location
+     * @return The nowcast of the location
+     */
+    public static PrecipitationNowcast forLocation(Context context, String location) {
+        PrecipitationNowcast nowcast = sNowcasts.get(location);
+        if (nowcast == null) {
+            synchronized (sNowcasts) {
+                nowcast = sNowcasts.get(location);
+                if (nowcast == null) {
+                    nowcast = new PrecipitationNowcast(map(context, location));
+                    sNowcasts.put(location, nowcast);
+                }
+            }
+        }
+        return nowcast;
+    }
+
+    /*
+     * Maps the file of the location, or allocates a buffer in memory if it can't be.
+     */
+    private static ByteBuffer map(Context context, String location) {
+        File directory = new File(context.getNoBackupFilesDir(), DIRECTORY);
+        /* Prefixed, as the preferred location has an empty name */
+        File file = new File(directory, "_" + Uri.encode(location));
+        try {
+            if (!directory.isDirectory() && !directory.mkdirs()) {
+                throw new IOException("Couldn't create " + directory);
+            }
+            RandomAccessFile randomAccessFile = new RandomAccessFile(file, "rw");
+            try {
+                /* The mapping stays valid once the file is closed */
+                return randomAccessFile.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, FILE_BYTES);
+            } finally {
+                randomAccessFile.close();
+            }
+        } catch (IOException e) {
+            Log.w(TAG, "Couldn't map " + file + ", the nowcast won't be kept", e);
+            return ByteBuffer.allocate(FILE_BYTES);
+        }
+    }
+
+    /**
+     * Replaces the nowcast. Reads only return the minutes of this update from now on, from its
+     * first minute to its last one, the ones it has no data for are cleared.
+     *
+     * @param times         UNIX times of the minutes, in time order, within CAPACITY minutes
+     * @param precipitation Precipitation intensity of each minute, in mm/h
+     * @param count         Number of minutes of the arrays to write, 0 to clear the nowcast
+     */
+    public synchronized void update(long[] times, float[] precipitation, int count) {
+        mSequence.incrementAndGet();
+        try {
+            long coverage = 0;
+            if (count > 0) {
+                long firstMinute = TimeUnit.MILLISECONDS.toMinutes(times[0]);
+                long lastMinute = Math.min(TimeUnit.MILLISECONDS.toMinutes(times[count - 1]),
+                        firstMinute + CAPACITY - 1);
+                coverage = (firstMinute << 32) | lastMinute;
+                for (long minute = firstMinute; minute <= lastMinute; minute++) {
+                    int index = (int) (minute % CAPACITY);
+                    mSlots.set(index, 0);
+                    mFile.putLong(HEADER_BYTES + index * 8, 0);
+                }
+            }
+            mCoverage.set(coverage);
+            mFile.putLong(COVERAGE_OFFSET, coverage);
+
+            for (int i = 0; i < count; i++) {
+                long minute = TimeUnit.MILLISECONDS.toMinutes(times[i]);
+                int index = (int) (minute % CAPACITY);
+                long slot = (minute << 32) | (Float.floatToRawIntBits(precipitation[i]) & 0xffffffffL);
+                mSlots.set(index, slot);
+                mFile.putLong(HEADER_BYTES + index * 8, slot);
+            }
+        } finally {
+            mSequence.incrementAndGet();
+        }
+    }
+
+    /**
+     * Takes a snapshot of the CAPACITY minutes starting at the given time, without locking.
+     *
+     * @param now           UNIX time the snapshot starts at, its minute included
+     * @param times         Where the UNIX times of the minutes of the latest update are written,
+     *                      in time order, CAPACITY of them at most
+     * @param precipitation Where the precipitation of these minutes is written, in mm/h
+     * @return The number of minutes written
+     */
+    public int snapshot(long now, long[] times, float[] precipitation) {
+        long firstMinute = TimeUnit.MILLISECONDS.toMinutes(now);
+        int count = 0;
+        for (int attempt = 1; attempt <= MAX_SNAPSHOT_ATTEMPTS; attempt++) {
+            int sequence = mSequence.get();
+            if ((sequence & 1) != 0 && attempt < MAX_SNAPSHOT_ATTEMPTS) {
+                Thread.yield();
+                continue;
+            }
+            count = 0;
+            long coverage = mCoverage.get();
+            long from = Math.max(firstMinute, coverage >>> 32);
+            long to = Math.min(firstMinute + CAPACITY - 1, coverage & 0xffffffffL);
+            for (long minute = from; minute <= to; minute++) {
+                long slot = mSlots.get((int) (minute % CAPACITY));
+                if (slot >>> 32 == minute) {
+                    times[count] = TimeUnit.MINUTES.toMillis(minute);
+                    precipitation[count] = Float.intBitsToFloat((int) slot);
+                    count++;
+                }
+            }
+            if (mSequence.get() == sequence) {
+                break;
+            }
+        }
+        return count;
+    }
+}
@@ -18,9 +18,16 @@ package com.example.android.sunshine.data;
 import android.content.Context;
 import android.content.SharedPreferences;
 import android.preference.PreferenceManager;
+import android.util.Base64;
 
 import com.example.android.sunshine.R;
 
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+
 public final class SunshinePreferences {
 
     /*
@@ -185,6 +192,79 @@ public final class SunshinePreferences {
         return shouldDisplayNotifications;
     }
 
+    /**
+     * Returns the saved locations, whose forecasts are refreshed along with the one of the
+     * preferred location. There is no setting for them yet, they are saved with
+     * {@link #setSavedLocations(Context, Collection)}.
+     *
+     * @param context Used to access SharedPreferences
+     * @return The saved location queries, sorted, empty if there is none
+     */
+    public static List<String> getSavedLocations(Context context) {
+        SharedPreferences sp = PreferenceManager.getDefaultSharedPreferences(context);
+        String savedLocationsKey = context.getString(R.string.pref_saved_locations_key);
+        List<String> locations = new ArrayList<>(
+                sp.getStringSet(savedLocationsKey, Collections.<String>emptySet()));
+        Collections.sort(locations);
+        return locations;
+    }
+
+    /**
+     * Replaces the saved locations.
+     *
+     * @param context   Used to access SharedPreferences
+     * @param locations The location queries, as accepted by the weather server
+     */
+    public static void setSavedLocations(Context context, Collection<String> locations) {
+        SharedPreferences sp = PreferenceManager.getDefaultSharedPreferences(context);
+        SharedPreferences.Editor editor = sp.edit();
+        String savedLocationsKey = context.getString(R.string.pref_saved_locations_key);
+        editor.putStringSet(savedLocationsKey, new HashSet<>(locations));
+        editor.apply();
+    }
+
+    /**
+     * Returns true if slow forecast requests should be hedged on the secondary weather endpoint.
+     * There is no setting for it, it is flipped by hand while tuning the sync.
+     *
+     * @param context Used to access SharedPreferences
+     * @return true if forecast requests should be hedged
+     */
+    public static boolean isHedgedFetchEnabled(Context context) {
+        String hedgedFetchKey = context.getString(R.string.pref_hedged_fetch_key);
+        boolean hedgedFetchByDefault = context.getResources().getBoolean(R.bool.hedged_fetch_by_default);
+        SharedPreferences sp = PreferenceManager.getDefaultSharedPreferences(context);
+        return sp.getBoolean(hedgedFetchKey, hedgedFetchByDefault);
+    }
+
+    /**
+     * Returns true if the syncs should fetch the 3-hour step forecast along with the daily one.
+     * Off until the weather server serves it, there is no setting for it either.
+     *
+     * @param context Used to access SharedPreferences
+     * @return true if the hourly forecast should be fetched
+     */
+    public static boolean isHourlyForecastEnabled(Context context) {
+        String hourlyForecastKey = context.getString(R.string.pref_hourly_forecast_key);
+        boolean hourlyForecastByDefault = context.getResources().getBoolean(R.bool.hourly_forecast_by_default);
+        SharedPreferences sp = PreferenceManager.getDefaultSharedPreferences(context);
+        return sp.getBoolean(hourlyForecastKey, hourlyForecastByDefault);
+    }
+
+    /**
+     * Returns true if the syncs should fetch the precipitation of the next hour along with the
+     * forecast. Off until the weather server serves it, there is no setting for it either.
+     *
+     * @param context Used to access SharedPreferences
+     * @return true if the nowcast should be fetched
+     */
+    public static boolean isNowcastEnabled(Context context) {
+        String nowcastKey = context.getString(R.string.pref_nowcast_key);
+        boolean nowcastByDefault = context.getResources().getBoolean(R.bool.nowcast_by_default);
+        SharedPreferences sp = PreferenceManager.getDefaultSharedPreferences(context);
+        return sp.getBoolean(nowcastKey, nowcastByDefault);
+    }
+
     /**
      * Returns the last time that a notification was shown (in UNIX time)
      *
@@ -242,4 +322,157 @@ public final class SunshinePreferences {
         editor.putLong(lastNotificationKey, timeOfNotification);
         editor.apply();
     }
+
+    /**
+     * Returns the interval of the periodic sync, as adapted to how much the forecast changes.
+     *
+     * @param context      Used to access SharedPreferences
+     * @param defaultValue Interval to use when none was adapted yet
+     * @return Interval between two periodic syncs, in seconds
+     */
+    public static int getSyncIntervalSeconds(Context context, int defaultValue) {
+        SharedPreferences sp = PreferenceManager.getDefaultSharedPreferences(context);
+        String syncIntervalKey = context.getString(R.string.pref_sync_interval);
+        return sp.getInt(syncIntervalKey, defaultValue);
+    }
+
+    /**
+     * Saves the adapted interval of the periodic sync.
+     *
+     * @param context         Used to access SharedPreferences
+     * @param intervalSeconds Interval between two periodic syncs, in seconds
+     */
+    public static void saveSyncIntervalSeconds(Context context, int intervalSeconds) {
+        SharedPreferences sp = PreferenceManager.getDefaultSharedPreferences(context);
+        SharedPreferences.Editor editor = sp.edit();
+        String syncIntervalKey = context.getString(R.string.pref_sync_interval);
+        editor.putInt(syncIntervalKey, intervalSeconds);
+        editor.apply();
+    }
+
+    /**
+     * Counts a periodic sync. The first one counted also starts the period the count covers.
+     *
+     * @param context Used to access SharedPreferences
+     * @param now     UNIX time of the sync
+     */
+    public static void recordPeriodicSync(Context context, long now) {
+        SharedPreferences sp = PreferenceManager.getDefaultSharedPreferences(context);
+        String sinceKey = context.getString(R.string.pref_periodic_syncs_since);
+        String countKey = context.getString(R.string.pref_periodic_sync_count);
+        SharedPreferences.Editor editor = sp.edit();
+        if (sp.getLong(sinceKey, 0) == 0) {
+            editor.putLong(sinceKey, now);
+        }
+        editor.putInt(countKey, sp.getInt(countKey, 0) + 1);
+        editor.apply();
+    }
+
+    /**
+     * @param context Used to access SharedPreferences
+     * @return UNIX time of the first periodic sync counted, 0 if there was none
+     */
+    public static long getPeriodicSyncsSince(Context context) {
+        SharedPreferences sp = PreferenceManager.getDefaultSharedPreferences(context);
+        return sp.getLong(context.getString(R.string.pref_periodic_syncs_since), 0);
+    }
+
+    /**
+     * @param context Used to access SharedPreferences
+     * @return Number of periodic syncs counted since {@link #getPeriodicSyncsSince(Context)}
+     */
+    public static int getPeriodicSyncCount(Context context) {
+        SharedPreferences sp = PreferenceManager.getDefaultSharedPreferences(context);
+        return sp.getInt(context.getString(R.string.pref_periodic_sync_count), 0);
+    }
+
+    /**
+     * Counts a lookup in the forecast cache. The saved locations look up the cache concurrently,
+     * the counts are only read and incremented by one of them at a time.
+     *
+     * @param context Used to access SharedPreferences
+     * @param hit     Whether the cache had a fresh response
+     */
+    public static synchronized void recordForecastCacheLookup(Context context, boolean hit) {
+        SharedPreferences sp = PreferenceManager.getDefaultSharedPreferences(context);
+        String lookupsKey = context.getString(R.string.pref_forecast_cache_lookups);
+        String hitsKey = context.getString(R.string.pref_forecast_cache_hits);
+        SharedPreferences.Editor editor = sp.edit();
+        editor.putInt(lookupsKey, sp.getInt(lookupsKey, 0) + 1);
+        if (hit) {
+            editor.putInt(hitsKey, sp.getInt(hitsKey, 0) + 1);
+        }
+        editor.apply();
+    }
+
+    /**
+     * @param context Used to access SharedPreferences
+     * @return The number of lookups in the forecast cache
+     */
+    public static int getForecastCacheLookups(Context context) {
+        SharedPreferences sp = PreferenceManager.getDefaultSharedPreferences(context);
+        return sp.getInt(context.getString(R.string.pref_forecast_cache_lookups), 0);
+    }
+
+    /**
+     * @param context Used to access SharedPreferences
+     * @return The number of lookups the forecast cache answered
+     */
+    public static int getForecastCacheHits(Context context) {
+        SharedPreferences sp = PreferenceManager.getDefaultSharedPreferences(context);
+        return sp.getInt(context.getString(R.string.pref_forecast_cache_hits), 0);
+    }
+
+    /**
+     * @param context Used to access SharedPreferences
+     * @return The forecast cache key of the response the weather table was last filled from,
+     * null if there is none
+     */
+    public static String getPersistedForecastKey(Context context) {
+        SharedPreferences sp = PreferenceManager.getDefaultSharedPreferences(context);
+        return sp.getString(context.getString(R.string.pref_persisted_forecast_key), null);
+    }
+
+    /**
+     * Saves the forecast cache key of the response the weather table was just filled from.
+     *
+     * @param context Used to access SharedPreferences
+     * @param key     The key of the location
+     */
+    public static void savePersistedForecastKey(Context context, String key) {
+        SharedPreferences sp = PreferenceManager.getDefaultSharedPreferences(context);
+        SharedPreferences.Editor editor = sp.edit();
+        editor.putString(context.getString(R.string.pref_persisted_forecast_key), key);
+        editor.apply();
+    }
+
+    /**
+     * Returns the last forecast payload that the watch acknowledged, or null if none was.
+     *
+     * @param context Used to access SharedPreferences
+     * @return The encoded payload last acknowledged by the watch, null if there is none
+     */
+    public static byte[] getLastWearablePayload(Context context) {
+        SharedPreferences sp = PreferenceManager.getDefaultSharedPreferences(context);
+        String lastPayloadKey = context.getString(R.string.pref_last_wearable_payload);
+        String encoded = sp.getString(lastPayloadKey, null);
+        if (encoded == null) {
+            return null;
+        }
+        return Base64.decode(encoded, Base64.NO_WRAP);
+    }
+
+    /**
+     * Saves the forecast payload that the watch just acknowledged.
+     *
+     * @param context Used to access SharedPreferences
+     * @param payload The encoded payload
+     */
+    public static void saveLastWearablePayload(Context context, byte[] payload) {
+        SharedPreferences sp = PreferenceManager.getDefaultSharedPreferences(context);
+        SharedPreferences.Editor editor = sp.edit();
+        String lastPayloadKey = context.getString(R.string.pref_last_wearable_payload);
+        editor.putString(lastPayloadKey, Base64.encodeToString(payload, Base64.NO_WRAP));
+        editor.apply();
+    }
 }
\ No newline at end of file
@@ -56,6 +56,47 @@ public class WeatherContract {
      */
     public static final String PATH_WEATHER = "weather";
 
+    /*
+     * Path for the single-row bookkeeping view of the weather table:
+     *
+     *     content://com.example.android.sunshine/metadata/
+     */
+    public static final String PATH_METADATA = "metadata";
+
+    /*
+     * Path for the forecasts of the saved locations, refreshed along with the preferred one:
+     *
+     *     content://com.example.android.sunshine/location_weather/
+     */
+    public static final String PATH_LOCATION_WEATHER = "location_weather";
+
+    /*
+     * Path for the raw forecast responses, by location:
+     *
+     *     content://com.example.android.sunshine/forecast_cache/
+     */
+    public static final String PATH_FORECAST_CACHE = "forecast_cache";
+
+    /*
+     * Path for the 3-hour step forecasts, of the preferred and saved locations:
+     *
+     *     content://com.example.android.sunshine/hourly_weather/
+     */
+    public static final String PATH_HOURLY_WEATHER = "hourly_weather";
+
+    /*
+     * Path for the precipitation of the next hour, of the preferred location, or of a saved one
+     * with its location query appended:
+     *
+     *     content://com.example.android.sunshine/nowcast/
+     *     content://com.example.android.sunshine/nowcast/Mountain%20View%2C%20CA
+     */
+    public static final String PATH_NOWCAST = "nowcast";
+
+    /* Diagnostics of the app itself rather than weather data, such as the sync history */
+    public static final String PATH_DIAGNOSTICS = "diagnostics";
+    public static final String PATH_SYNC_HISTORY = "sync_history";
+
     /* Inner class that defines the table contents of the weather table */
     public static final class WeatherEntry implements BaseColumns {
 
@@ -135,4 +176,231 @@ public class WeatherContract {
             return WeatherContract.WeatherEntry.COLUMN_DATE + " >= " + normalizedUtcNow;
         }
     }
-}
\ No newline at end of file
+
+    /*
+     * Inner class that defines the contents of the metadata table. This table always contains a
+     * single row, kept up to date by triggers on the weather table, so that questions such as
+     * "do we have any data?" or "when did we last sync?" can be answered without scanning the
+     * weather table.
+     */
+    public static final class MetadataEntry implements BaseColumns {
+
+        /* The CONTENT_URI used to query the metadata row from the content provider */
+        public static final Uri CONTENT_URI = BASE_CONTENT_URI.buildUpon()
+                .appendPath(PATH_METADATA)
+                .build();
+
+        /* Used internally as the name of our metadata table. */
+        public static final String TABLE_NAME = "metadata";
+
+        /* The _ID of the one and only row of the metadata table */
+        public static final long SINGLE_ROW_ID = 1;
+
+        /* Number of rows currently stored in the weather table */
+        public static final String COLUMN_ROW_COUNT = "row_count";
+
+        /* Greatest normalized date stored in the weather table, 0 if the table is empty */
+        public static final String COLUMN_NEWEST_DATE = "newest_date";
+
+        /* UNIX time of the last bulk insert of weather data, 0 if there never was one */
+        public static final String COLUMN_LAST_SYNC = "last_sync";
+    }
+
+    /*
+     * Inner class that defines the contents of the location weather table. It holds the forecast
+     * of every saved location, with the same columns as the weather table plus the location.
+     * There is one row per location and date.
+     */
+    public static final class LocationWeatherEntry implements BaseColumns {
+
+        /* The CONTENT_URI used to query, and replace, the forecasts of the saved locations */
+        public static final Uri CONTENT_URI = BASE_CONTENT_URI.buildUpon()
+                .appendPath(PATH_LOCATION_WEATHER)
+                .build();
+
+        /* Used internally as the name of our location weather table. */
+        public static final String TABLE_NAME = "location_weather";
+
+        /* The saved location, as the location query sent to the weather server */
+        public static final String COLUMN_LOCATION = "location";
+
+        /* Same meaning as in the weather table */
+        public static final String COLUMN_DATE = WeatherEntry.COLUMN_DATE;
+        public static final String COLUMN_WEATHER_ID = WeatherEntry.COLUMN_WEATHER_ID;
+        public static final String COLUMN_MIN_TEMP = WeatherEntry.COLUMN_MIN_TEMP;
+        public static final String COLUMN_MAX_TEMP = WeatherEntry.COLUMN_MAX_TEMP;
+        public static final String COLUMN_HUMIDITY = WeatherEntry.COLUMN_HUMIDITY;
+        public static final String COLUMN_PRESSURE = WeatherEntry.COLUMN_PRESSURE;
+        public static final String COLUMN_WIND_SPEED = WeatherEntry.COLUMN_WIND_SPEED;
+        public static final String COLUMN_DEGREES = WeatherEntry.COLUMN_DEGREES;
+
+        /**
+         * @return The selection of the rows of one location, its argument being the location
+         */
+        public static String getSqlSelectForLocation() {
+            return COLUMN_LOCATION + " = ?";
+        }
+    }
+
+    /*
+     * Inner class that defines the contents of the hourly weather table. There is one row per
+     * location and date, its steps packed in a single blob, see HourlyForecast. Rows are unique
+     * per location and date, which also indexes them for the queries of one location.
+     */
+    public static final class HourlyWeatherEntry implements BaseColumns {
+
+        /* The CONTENT_URI used to query, and replace, the hourly forecasts */
+        public static final Uri CONTENT_URI = BASE_CONTENT_URI.buildUpon()
+                .appendPath(PATH_HOURLY_WEATHER)
+                .build();
+
+        /* Used internally as the name of our hourly weather table. */
+        public static final String TABLE_NAME = "hourly_weather";
+
+        /* The location of the preferred location, saved locations use their location query */
+        public static final String PREFERRED_LOCATION = "";
+
+        /* The location, PREFERRED_LOCATION or the location query of a saved location */
+        public static final String COLUMN_LOCATION = "location";
+
+        /* Normalized UTC date of the steps */
+        public static final String COLUMN_DATE = "date";
+
+        /* The steps of the day, packed by HourlyForecast */
+        public static final String COLUMN_STEPS = "steps";
+
+        /**
+         * @return The selection of the rows of one location, its argument being the location
+         */
+        public static String getSqlSelectForLocation() {
+            return COLUMN_LOCATION + " = ?";
+        }
+
+        /**
+         * @return The selection of the rows of one location from today onwards, its argument
+         * being the location
+         */
+        public static String getSqlSelectForLocationFromToday() {
+            long normalizedUtcNow = SunshineDateUtils.normalizeDate(System.currentTimeMillis());
+            return COLUMN_LOCATION + " = ? AND " + COLUMN_DATE + " >= " + normalizedUtcNow;
+        }
+    }
+
+    /*
+     * Inner class that defines the columns of the nowcast. It isn't a table of the database but
+     * a virtual one, read from the PrecipitationNowcast ring of the location: one row per minute
+     * of the next hour the nowcast has data for, in time order. It can't be filtered or sorted.
+     */
+    public static final class NowcastEntry {
+
+        /* The CONTENT_URI used to query the nowcast of the preferred location */
+        public static final Uri CONTENT_URI = BASE_CONTENT_URI.buildUpon()
+                .appendPath(PATH_NOWCAST)
+                .build();
+
+        /* The location of the preferred location, saved locations use their location query */
+        public static final String PREFERRED_LOCATION = HourlyWeatherEntry.PREFERRED_LOCATION;
+
+        /* UNIX time of the minute */
+        public static final String COLUMN_TIME = "time";
+
+        /* Precipitation intensity during the minute, in mm/h */
+        public static final String COLUMN_PRECIPITATION = "precipitation";
+
+        /**
+         * @param location The location, PREFERRED_LOCATION or the location query of a saved one
+         * @return Uri to query the nowcast of the location
+         */
+        public static Uri buildNowcastUriWithLocation(String location) {
+            if (PREFERRED_LOCATION.equals(location)) {
+                return CONTENT_URI;
+            }
+            return CONTENT_URI.buildUpon()
+                    .appendPath(location)
+                    .build();
+        }
+    }
+
+    /*
+     * Inner class that defines the contents of the forecast cache table. It holds the latest
+     * response of the weather server for each location, keyed by geohash for coordinates and
+     * by query otherwise. Only the MAX_ROWS most recently stored locations are kept.
+     */
+    public static final class ForecastCacheEntry implements BaseColumns {
+
+        /* The CONTENT_URI used to look up and store responses */
+        public static final Uri CONTENT_URI = BASE_CONTENT_URI.buildUpon()
+                .appendPath(PATH_FORECAST_CACHE)
+                .build();
+
+        /* Used internally as the name of our forecast cache table. */
+        public static final String TABLE_NAME = "forecast_cache";
+
+        /* Number of locations kept in the table */
+        public static final int MAX_ROWS = 20;
+
+        /* The location, see NetworkUtils#getForecastCacheKey */
+        public static final String COLUMN_CACHE_KEY = "cache_key";
+
+        /* UNIX time at which the response was received */
+        public static final String COLUMN_FETCHED_AT = "fetched_at";
+
+        /* The JSON of the response */
+        public static final String COLUMN_RESPONSE = "response";
+    }
+
+    /*
+     * Inner class that defines the contents of the sync history table. Each sync run, whatever
+     * its outcome, is recorded as one row. The table is a ring buffer: only the latest
+     * MAX_ROWS runs are kept.
+     */
+    public static final class SyncHistoryEntry implements BaseColumns {
+
+        /* The CONTENT_URI used to query and record sync runs */
+        public static final Uri CONTENT_URI = BASE_CONTENT_URI.buildUpon()
+                .appendPath(PATH_DIAGNOSTICS)
+                .appendPath(PATH_SYNC_HISTORY)
+                .build();
+
+        /* Used internally as the name of our sync history table. */
+        public static final String TABLE_NAME = "sync_history";
+
+        /* Number of runs kept in the table, older ones are dropped as new ones are recorded */
+        public static final int MAX_ROWS = 50;
+
+        /* UNIX time at which the run started */
+        public static final String COLUMN_STARTED_AT = "started_at";
+
+        /* What started the run, one of the TRIGGER_* values */
+        public static final String COLUMN_TRIGGER = "trigger";
+
+        /* How the run ended, one of the OUTCOME_* values */
+        public static final String COLUMN_OUTCOME = "outcome";
+
+        /* Duration of the whole run and of each of its stages, in milliseconds */
+        public static final String COLUMN_TOTAL_MILLIS = "total_millis";
+        public static final String COLUMN_FETCH_MILLIS = "fetch_millis";
+        public static final String COLUMN_PARSE_MILLIS = "parse_millis";
+        public static final String COLUMN_PERSIST_MILLIS = "persist_millis";
+        public static final String COLUMN_FAN_OUT_MILLIS = "fan_out_millis";
+
+        /* HTTP status code of the weather request, -1 if no response was received */
+        public static final String COLUMN_HTTP_STATUS = "http_status";
+
+        /* Number of bytes of the response body */
+        public static final String COLUMN_BYTES = "bytes";
+
+        /* Number of weather rows deleted and inserted */
+        public static final String COLUMN_ROWS_CHANGED = "rows_changed";
+
+        /* Class name of the exception that ended the run, null if there was none */
+        public static final String COLUMN_ERROR = "error";
+
+        public static final String TRIGGER_JOB = "job";
+        public static final String TRIGGER_IMMEDIATE = "immediate";
+
+        public static final String OUTCOME_SUCCEEDED = "succeeded";
+        public static final String OUTCOME_CANCELLED = "cancelled";
+        public static final String OUTCOME_FAILED = "failed";
+    }
+}
@@ -19,6 +19,11 @@ import android.content.Context;
 import android.database.sqlite.SQLiteDatabase;
 import android.database.sqlite.SQLiteOpenHelper;
 
+import com.example.android.sunshine.data.WeatherContract.ForecastCacheEntry;
+import com.example.android.sunshine.data.WeatherContract.HourlyWeatherEntry;
+import com.example.android.sunshine.data.WeatherContract.LocationWeatherEntry;
+import com.example.android.sunshine.data.WeatherContract.MetadataEntry;
+import com.example.android.sunshine.data.WeatherContract.SyncHistoryEntry;
 import com.example.android.sunshine.data.WeatherContract.WeatherEntry;
 
 /**
@@ -43,12 +48,37 @@ public class WeatherDbHelper extends SQLiteOpenHelper {
      * use-case, we wanted to watch out for it and warn you what could happen if you mistakenly
      * version your databases.
      */
-    private static final int DATABASE_VERSION = 3;
+    private static final int DATABASE_VERSION = 9;
+
+    /* Names of the triggers that keep the metadata table in sync with the weather table */
+    private static final String TRIGGER_WEATHER_INSERTED = "weather_inserted";
+    private static final String TRIGGER_WEATHER_DELETED = "weather_deleted";
+
+    /* Name of the trigger that keeps the sync history to its maximum size */
+    private static final String TRIGGER_SYNC_HISTORY_BOUNDED = "sync_history_bounded";
+
+    /* Name of the trigger that keeps the forecast cache to its maximum size */
+    private static final String TRIGGER_FORECAST_CACHE_BOUNDED = "forecast_cache_bounded";
 
     public WeatherDbHelper(Context context) {
         super(context, DATABASE_NAME, null, DATABASE_VERSION);
     }
 
+    /**
+     * Called when the database connection is being configured, before onCreate or onUpgrade.
+     * <p>
+     * Our weather table replaces rows ON CONFLICT. SQLite only fires DELETE triggers for the
+     * rows removed by a REPLACE when recursive triggers are enabled, and the metadata triggers
+     * depend on that to keep the row count right.
+     *
+     * @param sqLiteDatabase The database.
+     */
+    @Override
+    public void onConfigure(SQLiteDatabase sqLiteDatabase) {
+        super.onConfigure(sqLiteDatabase);
+        sqLiteDatabase.execSQL("PRAGMA recursive_triggers = ON");
+    }
+
     /**
      * Called when the database is created for the first time. This is where the creation of
      * tables and the initial population of the tables should happen.
@@ -80,11 +110,15 @@ public class WeatherDbHelper extends SQLiteOpenHelper {
                 WeatherEntry.COLUMN_MIN_TEMP   + " REAL NOT NULL, "                    +
                 WeatherEntry.COLUMN_MAX_TEMP   + " REAL NOT NULL, "                    +
 
-                WeatherEntry.COLUMN_HUMIDITY   + " REAL NOT NULL, "                    +
-                WeatherEntry.COLUMN_PRESSURE   + " REAL NOT NULL, "                    +
+                /*
+                 * The days are inserted as soon as the forecast list can show them, these are
+                 * filled right after by the sync, null until then.
+                 */
+                WeatherEntry.COLUMN_HUMIDITY   + " REAL, "                             +
+                WeatherEntry.COLUMN_PRESSURE   + " REAL, "                             +
 
-                WeatherEntry.COLUMN_WIND_SPEED + " REAL NOT NULL, "                    +
-                WeatherEntry.COLUMN_DEGREES    + " REAL NOT NULL, "                    +
+                WeatherEntry.COLUMN_WIND_SPEED + " REAL, "                             +
+                WeatherEntry.COLUMN_DEGREES    + " REAL, "                             +
 
                 /*
                  * To ensure this table can only contain one weather entry per date, we declare
@@ -99,6 +133,173 @@ public class WeatherDbHelper extends SQLiteOpenHelper {
          * that SQL with the execSQL method of our SQLite database object.
          */
         sqLiteDatabase.execSQL(SQL_CREATE_WEATHER_TABLE);
+
+        createMetadataTable(sqLiteDatabase);
+        createSyncHistoryTable(sqLiteDatabase);
+        createLocationWeatherTable(sqLiteDatabase);
+        createForecastCacheTable(sqLiteDatabase);
+        createHourlyWeatherTable(sqLiteDatabase);
+    }
+
+    /**
+     * Creates the single-row metadata table and the triggers that maintain it. Each trigger only
+     * touches that one row (and, on deletion of the newest date, the date index of the weather
+     * table), so the bookkeeping stays O(1) per weather row written.
+     *
+     * @param sqLiteDatabase The database.
+     */
+    private void createMetadataTable(SQLiteDatabase sqLiteDatabase) {
+        final String SQL_CREATE_METADATA_TABLE =
+
+                "CREATE TABLE " + MetadataEntry.TABLE_NAME + " (" +
+
+                MetadataEntry._ID                + " INTEGER PRIMARY KEY, "            +
+
+                MetadataEntry.COLUMN_ROW_COUNT   + " INTEGER NOT NULL DEFAULT 0, "     +
+                MetadataEntry.COLUMN_NEWEST_DATE + " INTEGER NOT NULL DEFAULT 0, "     +
+                MetadataEntry.COLUMN_LAST_SYNC   + " INTEGER NOT NULL DEFAULT 0);";
+
+        sqLiteDatabase.execSQL(SQL_CREATE_METADATA_TABLE);
+
+        sqLiteDatabase.execSQL("INSERT INTO " + MetadataEntry.TABLE_NAME +
+                " (" + MetadataEntry._ID + ") VALUES (" + MetadataEntry.SINGLE_ROW_ID + ");");
+
+        sqLiteDatabase.execSQL(
+                "CREATE TRIGGER " + TRIGGER_WEATHER_INSERTED +
+                " AFTER INSERT ON " + WeatherEntry.TABLE_NAME + " BEGIN " +
+                "UPDATE " + MetadataEntry.TABLE_NAME + " SET " +
+                MetadataEntry.COLUMN_ROW_COUNT + " = " + MetadataEntry.COLUMN_ROW_COUNT + " + 1, " +
+                MetadataEntry.COLUMN_NEWEST_DATE + " = MAX(" + MetadataEntry.COLUMN_NEWEST_DATE +
+                ", NEW." + WeatherEntry.COLUMN_DATE + "); END;");
+
+        sqLiteDatabase.execSQL(
+                "CREATE TRIGGER " + TRIGGER_WEATHER_DELETED +
+                " AFTER DELETE ON " + WeatherEntry.TABLE_NAME + " BEGIN " +
+                "UPDATE " + MetadataEntry.TABLE_NAME + " SET " +
+                MetadataEntry.COLUMN_ROW_COUNT + " = " + MetadataEntry.COLUMN_ROW_COUNT + " - 1, " +
+                MetadataEntry.COLUMN_NEWEST_DATE + " = CASE WHEN OLD." + WeatherEntry.COLUMN_DATE +
+                " < " + MetadataEntry.COLUMN_NEWEST_DATE + " THEN " + MetadataEntry.COLUMN_NEWEST_DATE +
+                " ELSE IFNULL((SELECT MAX(" + WeatherEntry.COLUMN_DATE + ") FROM " +
+                WeatherEntry.TABLE_NAME + "), 0) END; END;");
+    }
+
+    /**
+     * Creates the sync history table. It works as a ring buffer: each insert drops the rows that
+     * are more than {@link SyncHistoryEntry#MAX_ROWS} runs old. AUTOINCREMENT guarantees ids are
+     * never reused, so they count the runs.
+     *
+     * @param sqLiteDatabase The database.
+     */
+    private void createSyncHistoryTable(SQLiteDatabase sqLiteDatabase) {
+        final String SQL_CREATE_SYNC_HISTORY_TABLE =
+
+                "CREATE TABLE " + SyncHistoryEntry.TABLE_NAME + " (" +
+
+                SyncHistoryEntry._ID                   + " INTEGER PRIMARY KEY AUTOINCREMENT, " +
+
+                SyncHistoryEntry.COLUMN_STARTED_AT     + " INTEGER NOT NULL, "                 +
+                SyncHistoryEntry.COLUMN_TRIGGER        + " TEXT NOT NULL, "                    +
+                SyncHistoryEntry.COLUMN_OUTCOME        + " TEXT NOT NULL, "                    +
+
+                SyncHistoryEntry.COLUMN_TOTAL_MILLIS   + " INTEGER NOT NULL, "                 +
+                SyncHistoryEntry.COLUMN_FETCH_MILLIS   + " INTEGER NOT NULL DEFAULT 0, "       +
+                SyncHistoryEntry.COLUMN_PARSE_MILLIS   + " INTEGER NOT NULL DEFAULT 0, "       +
+                SyncHistoryEntry.COLUMN_PERSIST_MILLIS + " INTEGER NOT NULL DEFAULT 0, "       +
+                SyncHistoryEntry.COLUMN_FAN_OUT_MILLIS + " INTEGER NOT NULL DEFAULT 0, "       +
+
+                SyncHistoryEntry.COLUMN_HTTP_STATUS    + " INTEGER NOT NULL DEFAULT -1, "      +
+                SyncHistoryEntry.COLUMN_BYTES          + " INTEGER NOT NULL DEFAULT 0, "       +
+                SyncHistoryEntry.COLUMN_ROWS_CHANGED   + " INTEGER NOT NULL DEFAULT 0, "       +
+                SyncHistoryEntry.COLUMN_ERROR          + " TEXT);";
+
+        sqLiteDatabase.execSQL(SQL_CREATE_SYNC_HISTORY_TABLE);
+
+        sqLiteDatabase.execSQL(
+                "CREATE TRIGGER " + TRIGGER_SYNC_HISTORY_BOUNDED +
+                " AFTER INSERT ON " + SyncHistoryEntry.TABLE_NAME + " BEGIN " +
+                "DELETE FROM " + SyncHistoryEntry.TABLE_NAME + " WHERE " + SyncHistoryEntry._ID +
+                " <= NEW." + SyncHistoryEntry._ID + " - " + SyncHistoryEntry.MAX_ROWS + "; END;");
+    }
+
+    /**
+     * Creates the table of the forecasts of the saved locations. Like the weather table, a new
+     * forecast for a date replaces the old one, here per location.
+     *
+     * @param sqLiteDatabase The database.
+     */
+    private void createLocationWeatherTable(SQLiteDatabase sqLiteDatabase) {
+        final String SQL_CREATE_LOCATION_WEATHER_TABLE =
+
+                "CREATE TABLE " + LocationWeatherEntry.TABLE_NAME + " (" +
+
+                LocationWeatherEntry._ID               + " INTEGER PRIMARY KEY AUTOINCREMENT, " +
+
+                LocationWeatherEntry.COLUMN_LOCATION   + " TEXT NOT NULL, "                    +
+                LocationWeatherEntry.COLUMN_DATE       + " INTEGER NOT NULL, "                 +
+                LocationWeatherEntry.COLUMN_WEATHER_ID + " INTEGER NOT NULL, "                 +
+
+                LocationWeatherEntry.COLUMN_MIN_TEMP   + " REAL NOT NULL, "                    +
+                LocationWeatherEntry.COLUMN_MAX_TEMP   + " REAL NOT NULL, "                    +
+
+                LocationWeatherEntry.COLUMN_HUMIDITY   + " REAL NOT NULL, "                    +
+                LocationWeatherEntry.COLUMN_PRESSURE   + " REAL NOT NULL, "                    +
+
+                LocationWeatherEntry.COLUMN_WIND_SPEED + " REAL NOT NULL, "                    +
+                LocationWeatherEntry.COLUMN_DEGREES    + " REAL NOT NULL, "                    +
+
+                " UNIQUE (" + LocationWeatherEntry.COLUMN_LOCATION + ", " +
+                LocationWeatherEntry.COLUMN_DATE + ") ON CONFLICT REPLACE);";
+
+        sqLiteDatabase.execSQL(SQL_CREATE_LOCATION_WEATHER_TABLE);
+    }
+
+    /**
+     * Creates the hourly weather table. A day of steps is a single row, so a location is about 5
+     * rows rather than 40, and replacing its forecast for a date replaces the row.
+     *
+     * @param sqLiteDatabase The database.
+     */
+    private void createHourlyWeatherTable(SQLiteDatabase sqLiteDatabase) {
+        final String SQL_CREATE_HOURLY_WEATHER_TABLE =
+
+                "CREATE TABLE " + HourlyWeatherEntry.TABLE_NAME + " (" +
+
+                HourlyWeatherEntry._ID             + " INTEGER PRIMARY KEY AUTOINCREMENT, " +
+
+                HourlyWeatherEntry.COLUMN_LOCATION + " TEXT NOT NULL, "                    +
+                HourlyWeatherEntry.COLUMN_DATE     + " INTEGER NOT NULL, "                 +
+                HourlyWeatherEntry.COLUMN_STEPS    + " BLOB NOT NULL, "                    +
+
+                " UNIQUE (" + HourlyWeatherEntry.COLUMN_LOCATION + ", " +
+                HourlyWeatherEntry.COLUMN_DATE + ") ON CONFLICT REPLACE);";
+
+        sqLiteDatabase.execSQL(SQL_CREATE_HOURLY_WEATHER_TABLE);
+    }
+
+    /**
+     * Creates the forecast cache table. Storing a location again replaces its row, with a new id,
+     * and a trigger drops the rows that are more than {@link ForecastCacheEntry#MAX_ROWS} ids old,
+     * so the locations stored least recently go first.
+     *
+     * @param sqLiteDatabase The database.
+     */
+    private void createForecastCacheTable(SQLiteDatabase sqLiteDatabase) {
+        final String SQL_CREATE_FORECAST_CACHE_TABLE =
+
+                "CREATE TABLE " + ForecastCacheEntry.TABLE_NAME + " (" +
+
+                ForecastCacheEntry._ID              + " INTEGER PRIMARY KEY AUTOINCREMENT, " +
+                ForecastCacheEntry.COLUMN_CACHE_KEY + " TEXT NOT NULL UNIQUE ON CONFLICT REPLACE, " +
+                ForecastCacheEntry.COLUMN_FETCHED_AT + " INTEGER NOT NULL, " +
+                ForecastCacheEntry.COLUMN_RESPONSE  + " TEXT NOT NULL);";
+
+        sqLiteDatabase.execSQL(SQL_CREATE_FORECAST_CACHE_TABLE);
+
+        sqLiteDatabase.execSQL(
+                "CREATE TRIGGER " + TRIGGER_FORECAST_CACHE_BOUNDED +
+                " AFTER INSERT ON " + ForecastCacheEntry.TABLE_NAME + " BEGIN " +
+                "DELETE FROM " + ForecastCacheEntry.TABLE_NAME + " WHERE " + ForecastCacheEntry._ID +
+                " <= NEW." + ForecastCacheEntry._ID + " - " + ForecastCacheEntry.MAX_ROWS + "; END;");
     }
 
     /**
@@ -116,6 +317,11 @@ public class WeatherDbHelper extends SQLiteOpenHelper {
     @Override
     public void onUpgrade(SQLiteDatabase sqLiteDatabase, int oldVersion, int newVersion) {
         sqLiteDatabase.execSQL("DROP TABLE IF EXISTS " + WeatherEntry.TABLE_NAME);
+        sqLiteDatabase.execSQL("DROP TABLE IF EXISTS " + MetadataEntry.TABLE_NAME);
+        sqLiteDatabase.execSQL("DROP TABLE IF EXISTS " + SyncHistoryEntry.TABLE_NAME);
+        sqLiteDatabase.execSQL("DROP TABLE IF EXISTS " + LocationWeatherEntry.TABLE_NAME);
+        sqLiteDatabase.execSQL("DROP TABLE IF EXISTS " + ForecastCacheEntry.TABLE_NAME);
+        sqLiteDatabase.execSQL("DROP TABLE IF EXISTS " + HourlyWeatherEntry.TABLE_NAME);
         onCreate(sqLiteDatabase);
     }
 }
\ No newline at end of file
@@ -17,15 +17,24 @@ package com.example.android.sunshine.data;
 
 import android.annotation.TargetApi;
 import android.content.ContentProvider;
+import android.content.ContentProviderOperation;
+import android.content.ContentProviderResult;
+import android.content.ContentUris;
 import android.content.ContentValues;
+import android.content.OperationApplicationException;
 import android.content.UriMatcher;
 import android.database.Cursor;
+import android.database.MatrixCursor;
 import android.database.sqlite.SQLiteDatabase;
 import android.net.Uri;
 import android.support.annotation.NonNull;
 
 import com.example.android.sunshine.utilities.SunshineDateUtils;
 
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Set;
+
 /**
  * This class serves as the ContentProvider for all of Sunshine's data. This class allows us to
  * bulkInsert data, query data, and delete data.
@@ -45,6 +54,13 @@ public class WeatherProvider extends ContentProvider {
      */
     public static final int CODE_WEATHER = 100;
     public static final int CODE_WEATHER_WITH_DATE = 101;
+    public static final int CODE_METADATA = 200;
+    public static final int CODE_SYNC_HISTORY = 300;
+    public static final int CODE_LOCATION_WEATHER = 400;
+    public static final int CODE_FORECAST_CACHE = 500;
+    public static final int CODE_HOURLY_WEATHER = 600;
+    public static final int CODE_NOWCAST = 700;
+    public static final int CODE_NOWCAST_WITH_LOCATION = 701;
 
     /*
      * The URI Matcher used by this content provider. The leading "s" in this variable name
@@ -54,6 +70,9 @@ public class WeatherProvider extends ContentProvider {
     private static final UriMatcher sUriMatcher = buildUriMatcher();
     private WeatherDbHelper mOpenHelper;
 
+    /* URIs changed by the batch being applied on the current thread, null outside of a batch */
+    private static final ThreadLocal<Set<Uri>> sBatchChanges = new ThreadLocal<>();
+
     /**
      * Creates the UriMatcher that will match each URI to the CODE_WEATHER and
      * CODE_WEATHER_WITH_DATE constants defined above.
@@ -96,6 +115,29 @@ public class WeatherProvider extends ContentProvider {
          */
         matcher.addURI(authority, WeatherContract.PATH_WEATHER + "/#", CODE_WEATHER_WITH_DATE);
 
+        /* This URI is content://com.example.android.sunshine/metadata/ */
+        matcher.addURI(authority, WeatherContract.PATH_METADATA, CODE_METADATA);
+
+        /* This URI is content://com.example.android.sunshine/diagnostics/sync_history/ */
+        matcher.addURI(authority,
+                WeatherContract.PATH_DIAGNOSTICS + "/" + WeatherContract.PATH_SYNC_HISTORY,
+                CODE_SYNC_HISTORY);
+
+        /* This URI is content://com.example.android.sunshine/location_weather/ */
+        matcher.addURI(authority, WeatherContract.PATH_LOCATION_WEATHER, CODE_LOCATION_WEATHER);
+
+        /* This URI is content://com.example.android.sunshine/forecast_cache/ */
+        matcher.addURI(authority, WeatherContract.PATH_FORECAST_CACHE, CODE_FORECAST_CACHE);
+
+        /* This URI is content://com.example.android.sunshine/hourly_weather/ */
+        matcher.addURI(authority, WeatherContract.PATH_HOURLY_WEATHER, CODE_HOURLY_WEATHER);
+
+        /* This URI is content://com.example.android.sunshine/nowcast/ */
+        matcher.addURI(authority, WeatherContract.PATH_NOWCAST, CODE_NOWCAST);
+
+        /* This URI would look something like content://com.example.android.sunshine/nowcast/Lisbon */
+        matcher.addURI(authority, WeatherContract.PATH_NOWCAST + "/*", CODE_NOWCAST_WITH_LOCATION);
+
         return matcher;
     }
 
@@ -160,6 +202,16 @@ public class WeatherProvider extends ContentProvider {
                             rowsInserted++;
                         }
                     }
+
+                    /*
+                     * Row count and newest date are maintained by triggers. The time of the
+                     * last successful sync is ours to record, in the same transaction.
+                     */
+                    if (rowsInserted > 0) {
+                        ContentValues metadata = new ContentValues();
+                        metadata.put(WeatherContract.MetadataEntry.COLUMN_LAST_SYNC, System.currentTimeMillis());
+                        db.update(WeatherContract.MetadataEntry.TABLE_NAME, metadata, null, null);
+                    }
                     db.setTransactionSuccessful();
                 } finally {
                     db.endTransaction();
@@ -167,10 +219,35 @@ public class WeatherProvider extends ContentProvider {
 
                 if (rowsInserted > 0) {
                     getContext().getContentResolver().notifyChange(uri, null);
+                    getContext().getContentResolver().notifyChange(WeatherContract.MetadataEntry.CONTENT_URI, null);
                 }
 
                 return rowsInserted;
 
+            /*
+             * The days of hourly forecast of a location, in a single transaction rather than one
+             * per day as super.bulkInsert would.
+             */
+            case CODE_HOURLY_WEATHER:
+                db.beginTransaction();
+                int daysInserted = 0;
+                try {
+                    for (ContentValues value : values) {
+                        if (insertHourlyWeather(db, value) != -1) {
+                            daysInserted++;
+                        }
+                    }
+                    db.setTransactionSuccessful();
+                } finally {
+                    db.endTransaction();
+                }
+
+                if (daysInserted > 0) {
+                    notifyChange(uri);
+                }
+
+                return daysInserted;
+
             default:
                 return super.bulkInsert(uri, values);
         }
@@ -285,6 +362,104 @@ public class WeatherProvider extends ContentProvider {
                 break;
             }
 
+            /*
+             * content://com.example.android.sunshine/metadata/ always returns exactly one row,
+             * with the bookkeeping the triggers keep for the weather table.
+             */
+            case CODE_METADATA: {
+                cursor = mOpenHelper.getReadableDatabase().query(
+                        WeatherContract.MetadataEntry.TABLE_NAME,
+                        projection,
+                        null,
+                        null,
+                        null,
+                        null,
+                        null);
+
+                break;
+            }
+
+            /*
+             * The sync history, newest run first unless another order is requested.
+             */
+            case CODE_SYNC_HISTORY: {
+                cursor = mOpenHelper.getReadableDatabase().query(
+                        WeatherContract.SyncHistoryEntry.TABLE_NAME,
+                        projection,
+                        selection,
+                        selectionArgs,
+                        null,
+                        null,
+                        sortOrder != null ? sortOrder : WeatherContract.SyncHistoryEntry._ID + " DESC");
+
+                break;
+            }
+
+            /*
+             * The forecasts of the saved locations, by location then date unless another order
+             * is requested.
+             */
+            case CODE_LOCATION_WEATHER: {
+                cursor = mOpenHelper.getReadableDatabase().query(
+                        WeatherContract.LocationWeatherEntry.TABLE_NAME,
+                        projection,
+                        selection,
+                        selectionArgs,
+                        null,
+                        null,
+                        sortOrder != null ? sortOrder : WeatherContract.LocationWeatherEntry.COLUMN_LOCATION
+                                + ", " + WeatherContract.LocationWeatherEntry.COLUMN_DATE);
+
+                break;
+            }
+
+            /*
+             * The hourly forecasts, by location then date unless another order is requested.
+             */
+            case CODE_HOURLY_WEATHER: {
+                cursor = mOpenHelper.getReadableDatabase().query(
+                        WeatherContract.HourlyWeatherEntry.TABLE_NAME,
+                        projection,
+                        selection,
+                        selectionArgs,
+                        null,
+                        null,
+                        sortOrder != null ? sortOrder : WeatherContract.HourlyWeatherEntry.COLUMN_LOCATION
+                                + ", " + WeatherContract.HourlyWeatherEntry.COLUMN_DATE);
+
+                break;
+            }
+
+            /*
+             * The cached forecast responses, usually a single one selected by its key.
+             */
+            case CODE_FORECAST_CACHE: {
+                cursor = mOpenHelper.getReadableDatabase().query(
+                        WeatherContract.ForecastCacheEntry.TABLE_NAME,
+                        projection,
+                        selection,
+                        selectionArgs,
+                        null,
+                        null,
+                        sortOrder);
+
+                break;
+            }
+
+            /*
+             * The nowcast is read from the ring of the location rather than from the database,
+             * see queryNowcast.
+             */
+            case CODE_NOWCAST: {
+                cursor = queryNowcast(WeatherContract.NowcastEntry.PREFERRED_LOCATION, projection, selection);
+                break;
+            }
+
+            case CODE_NOWCAST_WITH_LOCATION: {
+                cursor = queryNowcast(uri.getLastPathSegment(), projection, selection);
+                break;
+            }
+
             default:
                 throw new UnsupportedOperationException("Unknown uri: " + uri);
         }
@@ -326,13 +501,38 @@ public class WeatherProvider extends ContentProvider {
 
                 break;
 
+            case CODE_LOCATION_WEATHER:
+                numRowsDeleted = mOpenHelper.getWritableDatabase().delete(
+                        WeatherContract.LocationWeatherEntry.TABLE_NAME,
+                        selection,
+                        selectionArgs);
+
+                break;
+
+            case CODE_HOURLY_WEATHER:
+                numRowsDeleted = mOpenHelper.getWritableDatabase().delete(
+                        WeatherContract.HourlyWeatherEntry.TABLE_NAME,
+                        selection,
+                        selectionArgs);
+
+                break;
+
+            case CODE_FORECAST_CACHE:
+                numRowsDeleted = mOpenHelper.getWritableDatabase().delete(
+                        WeatherContract.ForecastCacheEntry.TABLE_NAME,
+                        selection,
+                        selectionArgs);
+
+                break;
+
             default:
                 throw new UnsupportedOperationException("Unknown uri: " + uri);
         }
 
         /* If we actually deleted any rows, notify that a change has occurred to this URI */
         if (numRowsDeleted != 0) {
-            getContext().getContentResolver().notifyChange(uri, null);
+            notifyChange(uri);
+            notifyChange(WeatherContract.MetadataEntry.CONTENT_URI);
         }
 
         return numRowsDeleted;
@@ -364,15 +564,180 @@ public class WeatherProvider extends ContentProvider {
      *               This must not be null
      * @return nothing in Sunshine, but normally the URI for the newly inserted item.
      */
+    /**
+     * Only used to record sync runs in the sync history, to store forecast responses in the cache,
+     * and to insert the forecasts of the saved locations and the hourly forecasts, usually through
+     * {@link #applyBatch(ArrayList)}. Weather data must be inserted
+     * with {@link #bulkInsert(Uri, ContentValues[])}.
+     *
+     * @param uri    The content:// URI of the insertion request.
+     * @param values The values of the sync run, of the cached response, or of the forecast of a
+     *               location for a day, daily or hourly
+     * @return The URI of the inserted row
+     */
     @Override
     public Uri insert(@NonNull Uri uri, ContentValues values) {
-        throw new RuntimeException(
-                "We are not implementing insert in Sunshine. Use bulkInsert instead");
+        switch (sUriMatcher.match(uri)) {
+
+            case CODE_SYNC_HISTORY:
+                long _id = mOpenHelper.getWritableDatabase().insert(
+                        WeatherContract.SyncHistoryEntry.TABLE_NAME, null, values);
+                if (_id == -1) {
+                    return null;
+                }
+                getContext().getContentResolver().notifyChange(uri, null);
+                return ContentUris.withAppendedId(uri, _id);
+
+            case CODE_LOCATION_WEATHER:
+                long date = values.getAsLong(WeatherContract.LocationWeatherEntry.COLUMN_DATE);
+                if (!SunshineDateUtils.isDateNormalized(date)) {
+                    throw new IllegalArgumentException("Date must be normalized to insert");
+                }
+                long rowId = mOpenHelper.getWritableDatabase().insert(
+                        WeatherContract.LocationWeatherEntry.TABLE_NAME, null, values);
+                if (rowId == -1) {
+                    return null;
+                }
+                notifyChange(uri);
+                return ContentUris.withAppendedId(uri, rowId);
+
+            case CODE_HOURLY_WEATHER:
+                long dayId = insertHourlyWeather(mOpenHelper.getWritableDatabase(), values);
+                if (dayId == -1) {
+                    return null;
+                }
+                notifyChange(uri);
+                return ContentUris.withAppendedId(uri, dayId);
+
+            case CODE_FORECAST_CACHE:
+                long cacheId = mOpenHelper.getWritableDatabase().insert(
+                        WeatherContract.ForecastCacheEntry.TABLE_NAME, null, values);
+                if (cacheId == -1) {
+                    return null;
+                }
+                notifyChange(uri);
+                return ContentUris.withAppendedId(uri, cacheId);
+
+            default:
+                throw new RuntimeException(
+                        "We are not implementing insert in Sunshine. Use bulkInsert instead");
+        }
     }
 
+    /**
+     * Only the weather of a single day can be updated, see WeatherEntry#buildWeatherUriWithDate.
+     * The sync fills the pressure, humidity and wind of the days it inserted that way. The
+     * weather table is notified as a whole, so a batch of updates is a single change.
+     *
+     * @param uri           The URI of the day to update
+     * @param values        The columns to update
+     * @param selection     Ignored, the day is taken from the URI
+     * @param selectionArgs Ignored
+     * @return The number of rows updated, 0 or 1
+     */
     @Override
     public int update(@NonNull Uri uri, ContentValues values, String selection, String[] selectionArgs) {
-        throw new RuntimeException("We are not implementing update in Sunshine");
+        switch (sUriMatcher.match(uri)) {
+
+            case CODE_WEATHER_WITH_DATE:
+                int rowsUpdated = mOpenHelper.getWritableDatabase().update(
+                        WeatherContract.WeatherEntry.TABLE_NAME,
+                        values,
+                        WeatherContract.WeatherEntry.COLUMN_DATE + " = ? ",
+                        new String[]{uri.getLastPathSegment()});
+                if (rowsUpdated != 0) {
+                    notifyChange(WeatherContract.WeatherEntry.CONTENT_URI);
+                }
+                return rowsUpdated;
+
+            default:
+                throw new RuntimeException("We are not implementing update in Sunshine");
+        }
+    }
+
+    /**
+     * Applies the operations in a single transaction: either all of them are committed, or none
+     * is. Observers are notified once per URI, after the commit, rather than once per operation.
+     *
+     * @param operations The operations to apply
+     * @return The results of the operations
+     * @throws OperationApplicationException If an operation failed, nothing is committed then
+     */
+    @NonNull
+    @Override
+    public ContentProviderResult[] applyBatch(@NonNull ArrayList<ContentProviderOperation> operations)
+            throws OperationApplicationException {
+        final SQLiteDatabase db = mOpenHelper.getWritableDatabase();
+        Set<Uri> changedUris = new HashSet<>();
+        ContentProviderResult[] results;
+        sBatchChanges.set(changedUris);
+        db.beginTransaction();
+        try {
+            results = super.applyBatch(operations);
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+            sBatchChanges.remove();
+        }
+        for (Uri changedUri : changedUris) {
+            getContext().getContentResolver().notifyChange(changedUri, null);
+        }
+        return results;
+    }
+
+    /*
+     * Takes a snapshot of the nowcast of the location, one row per minute with data. The rows
+     * are in time order, and can't be filtered.
+     */
+    private Cursor queryNowcast(String location, String[] projection, String selection) {
+        if (selection != null) {
+            throw new IllegalArgumentException("The nowcast can't be filtered: " + selection);
+        }
+        long[] times = new long[PrecipitationNowcast.CAPACITY];
+        float[] precipitation = new float[PrecipitationNowcast.CAPACITY];
+        int count = PrecipitationNowcast.forLocation(getContext(), location)
+                .snapshot(System.currentTimeMillis(), times, precipitation);
+
+        String[] columns = projection != null ? projection : new String[]{
+                WeatherContract.NowcastEntry.COLUMN_TIME,
+                WeatherContract.NowcastEntry.COLUMN_PRECIPITATION};
+        MatrixCursor cursor = new MatrixCursor(columns, count);
+        for (int i = 0; i < count; i++) {
+            MatrixCursor.RowBuilder row = cursor.newRow();
+            for (String column : columns) {
+                if (WeatherContract.NowcastEntry.COLUMN_TIME.equals(column)) {
+                    row.add(times[i]);
+                } else if (WeatherContract.NowcastEntry.COLUMN_PRECIPITATION.equals(column)) {
+                    row.add(precipitation[i]);
+                } else {
+                    throw new IllegalArgumentException("Unknown nowcast column: " + column);
+                }
+            }
+        }
+        return cursor;
+    }
+
+    /*
+     * Inserts a day of hourly forecast, whose date must be normalized.
+     */
+    private static long insertHourlyWeather(SQLiteDatabase db, ContentValues values) {
+        long date = values.getAsLong(WeatherContract.HourlyWeatherEntry.COLUMN_DATE);
+        if (!SunshineDateUtils.isDateNormalized(date)) {
+            throw new IllegalArgumentException("Date must be normalized to insert");
+        }
+        return db.insert(WeatherContract.HourlyWeatherEntry.TABLE_NAME, null, values);
+    }
+
+    /*
+     * Notifies the observers of the URI right away, or at the end of the batch being applied.
+     */
+    private void notifyChange(Uri uri) {
+        Set<Uri> batchChanges = sBatchChanges.get();
+        if (batchChanges != null) {
+            batchChanges.add(uri);
+        } else {
+            getContext().getContentResolver().notifyChange(uri, null);
+        }
     }
 
     /**
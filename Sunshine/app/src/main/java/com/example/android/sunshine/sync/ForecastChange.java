@@ -0,0 +1,93 @@
+package com.example.android.sunshine.sync;
+
+import com.example.android.sunshine.data.ForecastSnapshot;
+
+import java.util.Locale;
+
+/**
+ * How much a sync changed the forecast, over the days present both before and after it. Days
+ * that appear or disappear as the forecast window moves on are not changes of the forecast.
+ */
+final class ForecastChange {
+
+    /* Mean temperature delta, in degrees Celsius, that counts as a completely different forecast */
+    private static final double FULL_TEMPERATURE_DELTA = 3.0;
+
+    private final int mComparedDays;
+    private final int mChangedDays;
+    private final int mConditionChanges;
+    private final double mMeanTemperatureDelta;
+
+    private ForecastChange(int comparedDays, int changedDays, int conditionChanges, double meanTemperatureDelta) {
+        mComparedDays = comparedDays;
+        mChangedDays = changedDays;
+        mConditionChanges = conditionChanges;
+        mMeanTemperatureDelta = meanTemperatureDelta;
+    }
+
+    /**
+     * @param previous The forecast before the sync, null if there was none
+     * @param current  The forecast written by the sync
+     * @return The change between the two
+     */
+    static ForecastChange between(ForecastSnapshot previous, ForecastSnapshot current) {
+        int compared = 0;
+        int changed = 0;
+        int conditionChanges = 0;
+        double temperatureDeltas = 0;
+        for (int i = 0; previous != null && i < current.size(); i++) {
+            int previousIndex = previous.indexOfDate(current.getDate(i));
+            if (previousIndex < 0) {
+                continue;
+            }
+            compared++;
+            double highDelta = Math.abs(current.getHigh(i) - previous.getHigh(previousIndex));
+            double lowDelta = Math.abs(current.getLow(i) - previous.getLow(previousIndex));
+            boolean conditionChanged = current.getWeatherId(i) != previous.getWeatherId(previousIndex);
+            temperatureDeltas += (highDelta + lowDelta) / 2;
+            if (conditionChanged) {
+                conditionChanges++;
+            }
+            if (conditionChanged || highDelta > 0 || lowDelta > 0) {
+                changed++;
+            }
+        }
+        return new ForecastChange(compared, changed, conditionChanges,
+                compared == 0 ? 0 : temperatureDeltas / compared);
+    }
+
+    int getComparedDays() {
+        return mComparedDays;
+    }
+
+    int getChangedDays() {
+        return mChangedDays;
+    }
+
+    int getConditionChanges() {
+        return mConditionChanges;
+    }
+
+    double getMeanTemperatureDelta() {
+        return mMeanTemperatureDelta;
+    }
+
+    /**
+     * @return Between 0, nothing changed, and 1, a completely different forecast. NaN when there
+     * was nothing to compare, on the first sync or after a long gap.
+     */
+    double getVolatility() {
+        if (mComparedDays == 0) {
+            return Double.NaN;
+        }
+        double conditionVolatility = (double) mConditionChanges / mComparedDays;
+        double temperatureVolatility = Math.min(1, mMeanTemperatureDelta / FULL_TEMPERATURE_DELTA);
+        return Math.max(conditionVolatility, temperatureVolatility);
+    }
+
+    @Override
+    public String toString() {
+        return String.format(Locale.US, "%d/%d days changed, %d conditions, %.1f° mean delta",
+                mChangedDays, mComparedDays, mConditionChanges, mMeanTemperatureDelta);
+    }
+}
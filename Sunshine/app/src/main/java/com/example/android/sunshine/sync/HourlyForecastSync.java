@@ -0,0 +1,63 @@
+package com.example.android.sunshine.sync;
+
+import android.content.ContentProviderOperation;
+import android.content.ContentValues;
+import android.os.CancellationSignal;
+
+import com.example.android.sunshine.data.WeatherContract.HourlyWeatherEntry;
+import com.example.android.sunshine.utilities.FetchPolicy;
+import com.example.android.sunshine.utilities.OpenWeatherJsonUtils;
+
+import org.json.JSONException;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.net.URL;
+import java.util.List;
+
+/**
+ * Fetches the 3-hour step forecast of a location, and replaces it in the hourly weather table.
+ * The hourly forecast comes on top of the daily one: the syncs that fetch it don't fail when it
+ * can't be fetched, the previous one is kept instead. Its fetches are made once, with the best
+ * effort policy, and only when SunshinePreferences#isHourlyForecastEnabled.
+ */
+final class HourlyForecastSync {
+
+    private HourlyForecastSync() {
+    }
+
+    /**
+     * @param url                URL of the hourly forecast of the location
+     * @param location           The location of the rows, see HourlyWeatherEntry#COLUMN_LOCATION
+     * @param cancellationSignal Signal to cancel the request, or null
+     * @return The rows of the hourly weather table, one per day, null if the server answered with
+     * an error code or didn't answer at all
+     */
+    static ContentValues[] fetch(URL url, String location, CancellationSignal cancellationSignal)
+            throws IOException, JSONException {
+        String json = FetchPolicy.getBestEffort().fetch(url, cancellationSignal, null);
+        if (json == null) {
+            return null;
+        }
+        return OpenWeatherJsonUtils.getHourlyContentValuesFromJson(new StringReader(json), location);
+    }
+
+    /**
+     * Adds the operations replacing every day of a location, including the ones that are gone.
+     *
+     * @param operations Where the operations are added, to be applied in a single batch
+     * @param location   The location of the rows
+     * @param days       The new rows of the location
+     */
+    static void addReplaceOperations(List<ContentProviderOperation> operations, String location,
+                                     ContentValues[] days) {
+        operations.add(ContentProviderOperation.newDelete(HourlyWeatherEntry.CONTENT_URI)
+                .withSelection(HourlyWeatherEntry.getSqlSelectForLocation(), new String[]{location})
+                .build());
+        for (ContentValues day : days) {
+            operations.add(ContentProviderOperation.newInsert(HourlyWeatherEntry.CONTENT_URI)
+                    .withValues(day)
+                    .build());
+        }
+    }
+}
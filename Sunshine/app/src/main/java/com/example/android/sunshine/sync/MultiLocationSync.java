@@ -0,0 +1,277 @@
+package com.example.android.sunshine.sync;
+
+import android.content.ContentProviderOperation;
+import android.content.ContentValues;
+import android.content.Context;
+import android.content.OperationApplicationException;
+import android.os.CancellationSignal;
+import android.os.OperationCanceledException;
+import android.os.Process;
+import android.os.RemoteException;
+import android.util.Log;
+
+import com.example.android.sunshine.data.ForecastCache;
+import com.example.android.sunshine.data.SunshinePreferences;
+import com.example.android.sunshine.data.WeatherContract;
+import com.example.android.sunshine.data.WeatherContract.LocationWeatherEntry;
+import com.example.android.sunshine.utilities.CancellationGroup;
+import com.example.android.sunshine.utilities.FetchPolicy;
+import com.example.android.sunshine.utilities.ForecastJsonIndex;
+import com.example.android.sunshine.utilities.NetworkUtils;
+import com.example.android.sunshine.utilities.OpenWeatherJsonUtils;
+import com.example.android.sunshine.utilities.OpenWeatherJsonUtils.ForecastValidator;
+
+import org.json.JSONException;
+
+import java.io.IOException;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Refreshes the forecasts of the saved locations, concurrently.
+ * <p>
+ * Every location is fetched and parsed on a bounded pool, so parsing a response overlaps the
+ * fetches still in flight, and the whole refresh takes about as long as the slowest location
+ * rather than the sum of them all. On top of the pool bound, a per host limit keeps the number
+ * of connections to the weather server reasonable. Once every location is in, the results are
+ * committed in a single provider transaction: either the forecasts of every location that
+ * answered are replaced, or none is. A location that failed keeps its previous forecast.
+ * <p>
+ * The hourly forecast of each location, when enabled, is fetched after its daily one, and
+ * committed along with it when it could be fetched. So is the nowcast, when enabled too, written
+ * into the ring of the location right away, as it isn't part of the transaction.
+ */
+class MultiLocationSync {
+
+    private static final String TAG = MultiLocationSync.class.getSimpleName();
+
+    private static final int MAX_CONCURRENT_FETCHES = 4;
+    private static final int MAX_CONNECTIONS_PER_HOST = 2;
+
+    private static final ThreadPoolExecutor sExecutor = new ThreadPoolExecutor(
+            MAX_CONCURRENT_FETCHES, MAX_CONCURRENT_FETCHES, 30, TimeUnit.SECONDS,
+            new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+        @Override
+        public Thread newThread(final Runnable runnable) {
+            return new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+                    runnable.run();
+                }
+            }, "sunshine-locations");
+        }
+    });
+
+    static {
+        sExecutor.allowCoreThreadTimeOut(true);
+    }
+
+    /* Connection permits, per host name, guarded by itself */
+    private static final Map<String, Semaphore> sHostPermits = new HashMap<>();
+
+    private final Context mContext;
+    private final CompletionService<LocationResult> mCompletionService =
+            new ExecutorCompletionService<>(sExecutor);
+    private int mPending;
+
+    private MultiLocationSync(Context context) {
+        mContext = context.getApplicationContext();
+    }
+
+    /**
+     * Starts fetching the locations in the background.
+     *
+     * @param context      Used to access the ContentResolver
+     * @param locations    The location queries
+     * @param cancellation Group the signal of every fetch is taken from
+     * @return The running sync, to be committed with {@link #commit(SyncTrace)}
+     */
+    static MultiLocationSync start(Context context, List<String> locations, CancellationGroup cancellation) {
+        MultiLocationSync sync = new MultiLocationSync(context);
+        for (String location : locations) {
+            sync.submit(location, cancellation.newChild());
+        }
+        return sync;
+    }
+
+    /**
+     * Waits for every location, then replaces their forecasts in a single transaction.
+     *
+     * @param trace Trace of the sync, the changed rows are added to it
+     * @return The number of locations whose forecast was replaced
+     * @throws OperationCanceledException If the fetches were cancelled, nothing is committed then
+     */
+    int commit(SyncTrace trace) throws InterruptedException, RemoteException, OperationApplicationException {
+        ArrayList<ContentProviderOperation> operations = new ArrayList<>();
+        int refreshed = 0;
+        int rows = 0;
+        while (mPending > 0) {
+            LocationResult result;
+            try {
+                result = mCompletionService.take().get();
+            } catch (ExecutionException e) {
+                if (e.getCause() instanceof OperationCanceledException) {
+                    throw (OperationCanceledException) e.getCause();
+                }
+                Log.w(TAG, "Couldn't refresh a location", e.getCause());
+                continue;
+            } finally {
+                mPending--;
+            }
+            if (result.mWeatherValues == null) {
+                Log.w(TAG, "No forecast for " + result.mLocation);
+                continue;
+            }
+
+            /* Replace every day of the location, including the ones that are gone */
+            operations.add(ContentProviderOperation.newDelete(LocationWeatherEntry.CONTENT_URI)
+                    .withSelection(LocationWeatherEntry.getSqlSelectForLocation(),
+                            new String[]{result.mLocation})
+                    .build());
+            for (ContentValues day : result.mWeatherValues) {
+                day.put(LocationWeatherEntry.COLUMN_LOCATION, result.mLocation);
+                operations.add(ContentProviderOperation.newInsert(LocationWeatherEntry.CONTENT_URI)
+                        .withValues(day)
+                        .build());
+            }
+            if (result.mHourlyValues != null) {
+                HourlyForecastSync.addReplaceOperations(operations, result.mLocation, result.mHourlyValues);
+                rows += result.mHourlyValues.length;
+            }
+            refreshed++;
+            rows += result.mWeatherValues.length;
+        }
+
+        if (!operations.isEmpty()) {
+            mContext.getContentResolver().applyBatch(WeatherContract.CONTENT_AUTHORITY, operations);
+            trace.addRowsChanged(rows);
+        }
+        return refreshed;
+    }
+
+    private void submit(final String location, final CancellationSignal cancellationSignal) {
+        mPending++;
+        mCompletionService.submit(new Callable<LocationResult>() {
+            @Override
+            public LocationResult call() throws Exception {
+                String cacheKey = NetworkUtils.getForecastCacheKeyForLocation(location);
+                String json = ForecastCache.get(mContext, cacheKey);
+                boolean cached = json != null;
+                ForecastValidator validator = new ForecastValidator();
+                if (!cached) {
+                    URL url = NetworkUtils.getUrlForLocation(location);
+                    Semaphore permits = getHostPermits(url.getHost());
+                    acquire(permits, cancellationSignal);
+                    try {
+                        json = FetchPolicy.getDefault().fetch(url, null, cancellationSignal, null, validator);
+                    } finally {
+                        permits.release();
+                    }
+                }
+                cancellationSignal.throwIfCanceled();
+
+                /* Parsed here, while the other locations are still being fetched */
+                ContentValues[] weatherValues = null;
+                ForecastJsonIndex index =
+                        OpenWeatherJsonUtils.getForecastIndexFromJson(mContext, validator.getIndex(json));
+                if (index != null) {
+                    weatherValues = OpenWeatherJsonUtils.getWeatherContentValues(index, ForecastJsonIndex.FIELDS_ALL);
+                }
+                if (!cached && weatherValues != null) {
+                    ForecastCache.put(mContext, cacheKey, json);
+                }
+                ContentValues[] hourlyValues = null;
+                if (weatherValues != null && SunshinePreferences.isHourlyForecastEnabled(mContext)) {
+                    hourlyValues = fetchHourly(location, cancellationSignal);
+                }
+                if (weatherValues != null && SunshinePreferences.isNowcastEnabled(mContext)) {
+                    fetchNowcast(mContext, location, cancellationSignal);
+                }
+                return new LocationResult(location, weatherValues, hourlyValues);
+            }
+        });
+    }
+
+    /*
+     * Fetches the hourly forecast of the location, null if it couldn't be. The daily forecast
+     * of the location is committed either way.
+     */
+    private static ContentValues[] fetchHourly(String location, CancellationSignal cancellationSignal)
+            throws InterruptedException {
+        URL url = NetworkUtils.getHourlyUrlForLocation(location);
+        Semaphore permits = getHostPermits(url.getHost());
+        acquire(permits, cancellationSignal);
+        try {
+            return HourlyForecastSync.fetch(url, location, cancellationSignal);
+        } catch (IOException | JSONException e) {
+            Log.w(TAG, "No hourly forecast for " + location, e);
+            return null;
+        } finally {
+            permits.release();
+        }
+    }
+
+    /*
+     * Fetches the nowcast of the location into its ring, if it can be.
+     */
+    private static void fetchNowcast(Context context, String location, CancellationSignal cancellationSignal)
+            throws InterruptedException {
+        URL url = NetworkUtils.getNowcastUrlForLocation(location);
+        Semaphore permits = getHostPermits(url.getHost());
+        acquire(permits, cancellationSignal);
+        try {
+            NowcastSync.fetch(context, url, location, cancellationSignal);
+        } catch (IOException | JSONException e) {
+            Log.w(TAG, "No nowcast for " + location, e);
+        } finally {
+            permits.release();
+        }
+    }
+
+    private static Semaphore getHostPermits(String host) {
+        synchronized (sHostPermits) {
+            Semaphore permits = sHostPermits.get(host);
+            if (permits == null) {
+                permits = new Semaphore(MAX_CONNECTIONS_PER_HOST, true);
+                sHostPermits.put(host, permits);
+            }
+            return permits;
+        }
+    }
+
+    /*
+     * Waits for a permit, giving up as soon as the signal is cancelled.
+     */
+    private static void acquire(Semaphore permits, CancellationSignal cancellationSignal)
+            throws InterruptedException {
+        while (!permits.tryAcquire(100, TimeUnit.MILLISECONDS)) {
+            cancellationSignal.throwIfCanceled();
+        }
+    }
+
+    private static class LocationResult {
+
+        final String mLocation;
+        final ContentValues[] mWeatherValues;
+        final ContentValues[] mHourlyValues;
+
+        LocationResult(String location, ContentValues[] weatherValues, ContentValues[] hourlyValues) {
+            mLocation = location;
+            mWeatherValues = weatherValues;
+            mHourlyValues = hourlyValues;
+        }
+    }
+}
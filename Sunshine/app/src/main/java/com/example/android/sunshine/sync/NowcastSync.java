@@ -0,0 +1,55 @@
+package com.example.android.sunshine.sync;
+
+import android.content.Context;
+import android.os.CancellationSignal;
+
+import com.example.android.sunshine.data.PrecipitationNowcast;
+import com.example.android.sunshine.data.WeatherContract.NowcastEntry;
+import com.example.android.sunshine.utilities.FetchPolicy;
+import com.example.android.sunshine.utilities.OpenWeatherJsonUtils;
+
+import org.json.JSONException;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.net.URL;
+
+/**
+ * Fetches the precipitation of the next hour of a location, and writes it into the nowcast ring
+ * of the location. Like the hourly forecast, it comes on top of the daily forecast, and the syncs
+ * that fetch it don't fail when it can't be fetched. Its fetches are made once, with the best
+ * effort policy, and only when SunshinePreferences#isNowcastEnabled.
+ * <p>
+ * The ring isn't part of the database, so a nowcast is visible as soon as it is written, rather
+ * than along with the forecast of its location.
+ */
+final class NowcastSync {
+
+    private NowcastSync() {
+    }
+
+    /**
+     * @param context            Used to open the ring and notify the observers of the nowcast
+     * @param url                URL of the nowcast of the location
+     * @param location           The location, see NowcastEntry#PREFERRED_LOCATION
+     * @param cancellationSignal Signal to cancel the request, or null
+     * @return The number of minutes written, 0 if the server answered with an error code or
+     * didn't answer at all
+     */
+    static int fetch(Context context, URL url, String location, CancellationSignal cancellationSignal)
+            throws IOException, JSONException {
+        String json = FetchPolicy.getBestEffort().fetch(url, cancellationSignal, null);
+        if (json == null) {
+            return 0;
+        }
+        long[] times = new long[PrecipitationNowcast.CAPACITY];
+        float[] precipitation = new float[PrecipitationNowcast.CAPACITY];
+        int count = OpenWeatherJsonUtils.readNowcastFromJson(new StringReader(json), times, precipitation);
+        if (count <= 0) {
+            return 0;
+        }
+        PrecipitationNowcast.forLocation(context, location).update(times, precipitation, count);
+        context.getContentResolver().notifyChange(NowcastEntry.buildNowcastUriWithLocation(location), null);
+        return count;
+    }
+}
@@ -16,17 +16,45 @@
 package com.example.android.sunshine.sync;
 
 import android.content.Context;
-import android.os.AsyncTask;
+import android.os.CancellationSignal;
+import android.os.Process;
 
+import com.example.android.sunshine.data.WeatherContract.SyncHistoryEntry;
+import com.example.android.sunshine.utilities.FetchPolicy;
 import com.firebase.jobdispatcher.Job;
 import com.firebase.jobdispatcher.JobParameters;
 import com.firebase.jobdispatcher.JobService;
 import com.firebase.jobdispatcher.RetryStrategy;
 
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicBoolean;
+
 
 public class SunshineFirebaseJobService extends JobService {
 
-    private AsyncTask<Void, Void, Void> mFetchWeatherTask;
+    /*
+     * Syncs run on their own background thread rather than on the executor shared by every
+     * AsyncTask of the app, so a slow sync never holds other background work back.
+     */
+    private static final ExecutorService sSyncExecutor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+        @Override
+        public Thread newThread(final Runnable runnable) {
+            return new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+                    runnable.run();
+                }
+            }, "sunshine-sync");
+        }
+    });
+
+    private CancellationSignal mCancellationSignal;
+
+    /* Set once the completion of the current job has been reported, by either side */
+    private AtomicBoolean mJobReported;
 
     /**
      * The entry point to your Job. Implementations should offload work to another thread of
@@ -41,22 +69,40 @@ public class SunshineFirebaseJobService extends JobService {
     @Override
     public boolean onStartJob(final JobParameters jobParameters) {
 
-        mFetchWeatherTask = new AsyncTask<Void, Void, Void>(){
+        final CancellationSignal cancellationSignal = new CancellationSignal();
+        final AtomicBoolean jobReported = new AtomicBoolean();
+        mCancellationSignal = cancellationSignal;
+        mJobReported = jobReported;
+
+        sSyncExecutor.execute(new Runnable() {
             @Override
-            protected Void doInBackground(Void... voids) {
+            public void run() {
                 Context context = getApplicationContext();
-                SunshineSyncTask.syncWeather(context);
-                jobFinished(jobParameters, false);
-                return null;
-            }
+                int syncIntervalSeconds = SunshineSyncUtils.getCurrentSyncIntervalSeconds(context);
+                boolean completed = SunshineSyncTask.syncWeather(context, cancellationSignal,
+                        SyncHistoryEntry.TRIGGER_JOB);
 
-            @Override
-            protected void onPostExecute(Void aVoid) {
-                jobFinished(jobParameters, false);
-            }
-        };
+                /*
+                 * Once the job has been stopped, the dispatcher doesn't expect jobFinished
+                 * anymore: the answer of onStopJob already told it whether to retry. A sync cut
+                 * short asks to be rescheduled, unless the circuit breaker of the FetchPolicy
+                 * knows when the server will be worth asking again: the retry then waits for
+                 * that rather than the backoff of the retry strategy.
+                 */
+                if (jobReported.compareAndSet(false, true)) {
+                    long retryAfterMillis = completed ? 0 : FetchPolicy.getDefault().getRetryAfterMillis();
+                    if (retryAfterMillis > 0) {
+                        jobFinished(jobParameters, false);
+                        SunshineSyncUtils.scheduleRetrySync(context, retryAfterMillis);
+                    } else {
+                        jobFinished(jobParameters, !completed);
+                    }
+                }
 
-        mFetchWeatherTask.execute();
+                /* Replacing the Job while it was running could have lost its result */
+                SunshineSyncUtils.rescheduleSyncIfIntervalChanged(context, syncIntervalSeconds);
+            }
+        });
         return true;
     }
 
@@ -70,9 +116,13 @@ public class SunshineFirebaseJobService extends JobService {
      */
     @Override
     public boolean onStopJob(JobParameters jobParameters) {
-        if (mFetchWeatherTask != null) {
-            mFetchWeatherTask.cancel(true);
+        if (mJobReported != null) {
+            mJobReported.set(true);
+        }
+        if (mCancellationSignal != null) {
+            /* Closes the connection in progress, the sync stops at its next checkpoint */
+            mCancellationSignal.cancel();
         }
         return true;
     }
-}
\ No newline at end of file
+}
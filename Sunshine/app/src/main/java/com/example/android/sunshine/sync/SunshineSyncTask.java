@@ -15,22 +15,75 @@
  */
 package com.example.android.sunshine.sync;
 
+import android.content.ContentProviderOperation;
 import android.content.ContentResolver;
 import android.content.ContentValues;
 import android.content.Context;
+import android.content.OperationApplicationException;
+import android.database.Cursor;
+import android.os.AsyncTask;
+import android.os.CancellationSignal;
+import android.os.OperationCanceledException;
+import android.os.RemoteException;
 import android.text.format.DateUtils;
+import android.util.Log;
 
+import com.example.android.sunshine.data.ForecastCache;
+import com.example.android.sunshine.data.ForecastSnapshot;
 import com.example.android.sunshine.data.SunshinePreferences;
 import com.example.android.sunshine.data.WeatherContract;
+import com.example.android.sunshine.data.WeatherContract.SyncHistoryEntry;
+import com.example.android.sunshine.utilities.CancellationGroup;
+import com.example.android.sunshine.utilities.FetchPolicy;
+import com.example.android.sunshine.utilities.ForecastJsonIndex;
 import com.example.android.sunshine.utilities.NetworkUtils;
 import com.example.android.sunshine.utilities.NotificationUtils;
 import com.example.android.sunshine.utilities.OpenWeatherJsonUtils;
+import com.example.android.sunshine.utilities.OpenWeatherJsonUtils.ForecastValidator;
 import com.example.android.sunshine.utilities.WearableHelper;
+import com.example.android.sunshine.widget.ForecastWidgetProvider;
 
+import org.json.JSONException;
+
+import java.io.IOException;
 import java.net.URL;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
 
+/**
+ * Syncs the weather as a pipeline of explicit stages: fetch, parse, persist and fan-out. Each
+ * stage is timed and traced through a {@link SyncTrace}. The fan-out consumers (notification,
+ * wearable...) run concurrently and all work from the same in-memory {@link ForecastSnapshot}
+ * of what was just persisted.
+ * <p>
+ * Only the fields of the forecast list are decoded before the persist stage, so the list renders
+ * as soon as possible. The pressure, humidity and wind of the days are decoded and filled in
+ * once the fan-out is over.
+ */
 public class SunshineSyncTask {
     
+    private static final String TAG = SunshineSyncTask.class.getSimpleName();
+
+    /* Names of the stages, as they appear in the traces */
+    static final String STAGE_FETCH = "sync:fetch";
+    static final String STAGE_PARSE = "sync:parse";
+    static final String STAGE_PERSIST = "sync:persist";
+    static final String STAGE_FAN_OUT = "sync:fan-out";
+    static final String STAGE_DETAILS = "sync:details";
+    static final String STAGE_LOCATIONS = "sync:locations";
+    static final String STAGE_HOURLY = "sync:hourly";
+    static final String STAGE_NOWCAST = "sync:nowcast";
+    static final String CONSUMER_NOTIFICATION = "sync:notification";
+    static final String CONSUMER_WEARABLE = "sync:wearable";
+    static final String CONSUMER_WIDGET = "sync:widget";
+
+    /* How long the sync waits for its fan-out consumers before giving up on them */
+    private static final long FAN_OUT_TIMEOUT_MILLIS = TimeUnit.SECONDS.toMillis(30);
+
     /**
      * Performs the network request for updated weather, parses the JSON from that request, and
      * inserts the new weather information into our ContentProvider. Will notify the user that new
@@ -39,9 +92,176 @@ public class SunshineSyncTask {
      *
      * @param context Used to access utility methods and the ContentResolver
      */
-    synchronized public static void syncWeather(Context context) {
-        
+    public static void syncWeather(Context context) {
+        syncWeather(context, null, SyncHistoryEntry.TRIGGER_IMMEDIATE);
+    }
+
+    /**
+     * Same as {@link #syncWeather(Context)}, but can be cut short through the cancellation
+     * signal. Cancelling interrupts the network request, and the signal is checked again between
+     * the fetch, the parse and the persist stages. Once the old weather starts being replaced,
+     * the sync runs to completion so the database is never left half updated.
+     * <p>
+     * The saved locations, if there are any, are fetched concurrently with the preferred one
+     * and replaced after it, see {@link MultiLocationSync}.
+     * <p>
+     * Every run, whatever its outcome, is recorded in the sync history.
+     *
+     * @param context            Used to access utility methods and the ContentResolver
+     * @param cancellationSignal Signal to cut the sync short, or null
+     * @param trigger            What started the sync, one of the SyncHistoryEntry.TRIGGER_* values
+     * @return false if the sync was cut short, by a cancellation or a network failure, and should
+     * be tried again later
+     */
+    synchronized public static boolean syncWeather(Context context, CancellationSignal cancellationSignal,
+                                                   String trigger) {
+
+        SyncTrace trace = new SyncTrace(trigger);
+        String outcome = SyncHistoryEntry.OUTCOME_FAILED;
+
+        /*
+         * The saved locations, if any, are fetched concurrently with the preferred one. Every
+         * fetch then needs a signal of its own.
+         */
+        List<String> savedLocations = SunshinePreferences.getSavedLocations(context);
+        CancellationGroup cancellation = null;
+        MultiLocationSync locationSync = null;
+        CancellationSignal fetchSignal = cancellationSignal;
+        if (!savedLocations.isEmpty()) {
+            cancellation = new CancellationGroup(cancellationSignal);
+            fetchSignal = cancellation.newChild();
+            locationSync = MultiLocationSync.start(context, savedLocations, cancellation);
+        }
+
+        try {
+            String cacheKey = NetworkUtils.getForecastCacheKey(context);
+            ForecastValidator validator = new ForecastValidator();
+            String jsonWeatherResponse = fetch(context, cacheKey, fetchSignal, validator, trace);
+            throwIfCanceled(cancellationSignal);
+
+            ParsedForecast forecast = parse(context, jsonWeatherResponse, validator, trace);
+            throwIfCanceled(cancellationSignal);
+
+            /*
+             * In cases where our JSON contained an error code, getForecastIndexFromJson would
+             * have returned null. We need to check for those cases here to prevent any
+             * NullPointerExceptions being thrown. We also have no reason to insert fresh data if
+             * there isn't any to insert.
+             */
+            if (forecast == null) {
+                /*
+                 * The weather server answered with an error code in its JSON. The fetch policy
+                 * already counted it as a server failure, the sync is worth trying again later.
+                 */
+                trace.setError(new IllegalStateException("Error code in the weather JSON"));
+                return false;
+            }
+            if (!trace.isCacheHit()) {
+                /* Only cached once parsed, an error answer must not be served again */
+                ForecastCache.put(context, cacheKey, jsonWeatherResponse);
+            }
+            ForecastSnapshot snapshot = null;
+            boolean persisted = false;
+            if (forecast.mWeatherValues.length != 0) {
+                snapshot = ForecastSnapshot.fromContentValues(forecast.mWeatherValues);
+                /*
+                 * A cached forecast the weather table was already filled from is left as it is,
+                 * so is the time of the last sync, which would otherwise claim it is brand new.
+                 * The table is only filled again when it holds another location.
+                 */
+                if (!trace.isCacheHit() || !cacheKey.equals(SunshinePreferences.getPersistedForecastKey(context))) {
+                    ForecastSnapshot previous = persist(context, forecast.mWeatherValues, trace);
+                    SunshinePreferences.savePersistedForecastKey(context, cacheKey);
+                    persisted = true;
+                    /* A cached forecast says nothing about how fast the forecast changes */
+                    if (SyncHistoryEntry.TRIGGER_JOB.equals(trigger) && !trace.isCacheHit()) {
+                        adaptSyncInterval(context, ForecastChange.between(previous, snapshot));
+                    }
+                }
+            }
+            if (locationSync != null) {
+                persistLocations(locationSync, trace);
+                locationSync = null;
+            }
+            if (snapshot != null) {
+                /* A cached forecast is as old as its response, not brand new */
+                long syncedAt = trace.isCacheHit()
+                        ? ForecastCache.getFetchedAt(context, cacheKey)
+                        : System.currentTimeMillis();
+                fanOut(context, snapshot, syncedAt, trace);
+                if (persisted) {
+                    persistDetails(context, forecast, trace);
+                }
+                if (SunshinePreferences.isHourlyForecastEnabled(context)) {
+                    persistHourly(context, fetchSignal, trace);
+                }
+                if (SunshinePreferences.isNowcastEnabled(context)) {
+                    persistNowcast(context, fetchSignal, trace);
+                }
+            }
+
+            /* If the code reaches this point, we have successfully performed our sync */
+            outcome = SyncHistoryEntry.OUTCOME_SUCCEEDED;
+            return true;
+
+        } catch (OperationCanceledException e) {
+            outcome = SyncHistoryEntry.OUTCOME_CANCELLED;
+            return false;
+        } catch (InterruptedException e) {
+            /* Interrupted while waiting for a stage, let whoever interrupted the thread know */
+            Thread.currentThread().interrupt();
+            outcome = SyncHistoryEntry.OUTCOME_CANCELLED;
+            return false;
+        } catch (IOException e) {
+            /*
+             * Network failure, timeout or server failure that persisted through the retries of
+             * the fetch policy, or a fetch refused by its circuit breaker. Worth trying again.
+             */
+            e.printStackTrace();
+            trace.setError(e);
+            return false;
+        } catch (Exception e) {
+            /* Server probably invalid */
+            e.printStackTrace();
+            trace.setError(e);
+            return true;
+        } finally {
+            if (cancellation != null) {
+                /* Saved locations still running when the sync is over are of no use */
+                if (locationSync != null) {
+                    cancellation.cancel();
+                }
+                cancellation.close();
+            }
+            trace.log(outcome);
+            recordRun(context, trace, outcome);
+        }
+    }
+
+    /*
+     * Adds the run to the sync history. Never lets a failure to record hide the sync outcome.
+     */
+    private static void recordRun(Context context, SyncTrace trace, String outcome) {
+        try {
+            context.getContentResolver().insert(SyncHistoryEntry.CONTENT_URI, trace.toHistoryValues(outcome));
+        } catch (RuntimeException e) {
+            Log.e(TAG, "Couldn't record the sync run", e);
+        }
+    }
+
+    /*
+     * Fetch stage: takes the JSON from the forecast cache, or builds the URL and downloads it.
+     */
+    private static String fetch(Context context, String cacheKey, CancellationSignal cancellationSignal,
+                                ForecastValidator validator, SyncTrace trace) throws IOException {
+        long start = trace.beginStage(STAGE_FETCH);
         try {
+            String cachedResponse = ForecastCache.get(context, cacheKey);
+            if (cachedResponse != null) {
+                trace.setCacheHit();
+                return cachedResponse;
+            }
+
             /*
              * The getUrl method will return the URL that we need to get the forecast JSON for the
              * weather. It will decide whether to create a URL based off of the latitude and
@@ -49,65 +269,284 @@ public class SunshineSyncTask {
              */
             URL weatherRequestUrl = NetworkUtils.getUrl(context);
 
-            /* Use the URL to retrieve the JSON */
-            String jsonWeatherResponse = NetworkUtils.getResponseFromHttpUrl(weatherRequestUrl);
-
-            /* Parse the JSON into a list of weather values */
-            ContentValues[] weatherValues = OpenWeatherJsonUtils.getWeatherContentValuesFromJson(context, jsonWeatherResponse);
+            /* When hedging, slow requests are backed up by the secondary weather endpoint */
+            URL secondaryUrl = SunshinePreferences.isHedgedFetchEnabled(context)
+                    ? NetworkUtils.getSecondaryUrl(context)
+                    : null;
 
             /*
-             * In cases where our JSON contained an error code, getWeatherContentValuesFromJson
-             * would have returned null. We need to check for those cases here to prevent any
-             * NullPointerExceptions being thrown. We also have no reason to insert fresh data if
-             * there isn't any to insert.
+             * Use the URL to retrieve the JSON, retrying transient failures, including the ones
+             * the server only reports in the JSON
              */
-            if (weatherValues != null && weatherValues.length != 0) {
-                /* Get a handle on the ContentResolver to delete and insert data */
-                ContentResolver sunshineContentResolver = context.getContentResolver();
-
-                /* Delete old weather data because we don't need to keep multiple days' data */
-                sunshineContentResolver.delete(WeatherContract.WeatherEntry.CONTENT_URI, null, null);
+            NetworkUtils.ResponseStats stats = new NetworkUtils.ResponseStats();
+            try {
+                return FetchPolicy.getDefault().fetch(weatherRequestUrl, secondaryUrl, cancellationSignal, stats,
+                        validator);
+            } finally {
+                trace.setResponse(stats.getHttpStatus(), stats.getBytes());
+            }
+        } finally {
+            trace.endStage(STAGE_FETCH, start);
+        }
+    }
 
-                /* Insert our new weather data into Sunshine's ContentProvider */
-                sunshineContentResolver.bulkInsert(WeatherContract.WeatherEntry.CONTENT_URI, weatherValues);
+    /*
+     * Parse stage: indexes the JSON and decodes the fields of the forecast list, everything a
+     * ForecastSnapshot needs. Returns null if the JSON holds an error code. A response that was
+     * fetched rather than cached was already indexed by the validator of the fetch.
+     */
+    private static ParsedForecast parse(Context context, String jsonWeatherResponse, ForecastValidator validator,
+                                        SyncTrace trace) throws JSONException {
+        long start = trace.beginStage(STAGE_PARSE);
+        try {
+            ForecastJsonIndex index = OpenWeatherJsonUtils.getForecastIndexFromJson(context,
+                    validator.getIndex(jsonWeatherResponse));
+            if (index == null) {
+                return null;
+            }
+            return new ParsedForecast(index,
+                    OpenWeatherJsonUtils.getWeatherContentValues(index, ForecastJsonIndex.FIELDS_LIST));
+        } finally {
+            trace.endStage(STAGE_PARSE, start);
+        }
+    }
 
-                /*
-                 * Finally, after we insert data into the ContentProvider, determine whether or not
-                 * we should notify the user that the weather has been refreshed.
-                 */
-                boolean notificationsEnabled = SunshinePreferences.areNotificationsEnabled(context);
+    /*
+     * Persist stage: replaces the weather in our ContentProvider, and returns the weather that
+     * was replaced, null if it couldn't be read. The rows only hold the fields of the forecast
+     * list, which renders from them right away, the details stage fills in the rest.
+     */
+    private static ForecastSnapshot persist(Context context, ContentValues[] weatherValues, SyncTrace trace) {
+        long start = trace.beginStage(STAGE_PERSIST);
+        try {
+            /* Get a handle on the ContentResolver to delete and insert data */
+            ContentResolver sunshineContentResolver = context.getContentResolver();
 
-                /*
-                 * If the last notification was shown was more than 1 day ago, we want to send
-                 * another notification to the user that the weather has been updated. Remember,
-                 * it's important that you shouldn't spam your users with notifications.
-                 */
-                long timeSinceLastNotification = SunshinePreferences.getEllapsedTimeSinceLastNotification(context);
-                
-                boolean oneDayPassedSinceLastNotification = false;
-                
-                if (timeSinceLastNotification >= DateUtils.DAY_IN_MILLIS) {
-                    oneDayPassedSinceLastNotification = true;
+            /* Keep the old weather around, to measure how much this sync changes it */
+            ForecastSnapshot previous = null;
+            Cursor cursor = sunshineContentResolver.query(WeatherContract.WeatherEntry.CONTENT_URI,
+                    ForecastSnapshot.PROJECTION, null, null, WeatherContract.WeatherEntry.COLUMN_DATE);
+            if (cursor != null) {
+                try {
+                    previous = ForecastSnapshot.fromCursor(cursor);
+                } finally {
+                    cursor.close();
                 }
+            }
 
-                /*
-                 * We only want to show the notification if the user wants them shown and we
-                 * haven't shown a notification in the past day.
-                 */
-                if (notificationsEnabled && oneDayPassedSinceLastNotification) {
-                    NotificationUtils.notifyUserOfNewWeather(context);
+            /* Delete old weather data because we don't need to keep multiple days' data */
+            int rowsDeleted = sunshineContentResolver.delete(WeatherContract.WeatherEntry.CONTENT_URI, null, null);
+
+            /* Insert our new weather data into Sunshine's ContentProvider */
+            int rowsInserted = sunshineContentResolver.bulkInsert(WeatherContract.WeatherEntry.CONTENT_URI, weatherValues);
+
+            trace.setRowsChanged(rowsDeleted + rowsInserted);
+            return previous;
+        } finally {
+            trace.endStage(STAGE_PERSIST, start);
+        }
+    }
+
+    /*
+     * Details stage: decodes the pressure, humidity and wind of the days just persisted, and
+     * updates their rows in a single transaction. Only runs once the consumers of the forecast
+     * are done with it, and never fails the sync: the detail screen shows them as pending.
+     */
+    private static void persistDetails(Context context, ParsedForecast forecast, SyncTrace trace) {
+        long start = trace.beginStage(STAGE_DETAILS);
+        try {
+            ArrayList<ContentProviderOperation> operations = new ArrayList<>(forecast.mWeatherValues.length);
+            for (int day = 0; day < forecast.mWeatherValues.length; day++) {
+                ContentValues details = new ContentValues();
+                forecast.mIndex.decodeDay(day, ForecastJsonIndex.FIELDS_DETAIL, details);
+                long date = forecast.mWeatherValues[day].getAsLong(WeatherContract.WeatherEntry.COLUMN_DATE);
+                operations.add(ContentProviderOperation
+                        .newUpdate(WeatherContract.WeatherEntry.buildWeatherUriWithDate(date))
+                        .withValues(details)
+                        .build());
+            }
+            context.getContentResolver().applyBatch(WeatherContract.CONTENT_AUTHORITY, operations);
+        } catch (JSONException | RemoteException | OperationApplicationException e) {
+            Log.e(TAG, "Couldn't fill in the weather details", e);
+        } finally {
+            trace.endStage(STAGE_DETAILS, start);
+        }
+    }
+
+    /*
+     * Lets the periodic sync adapt to what this periodic sync changed. Never fails the sync.
+     */
+    private static void adaptSyncInterval(Context context, ForecastChange change) {
+        try {
+            SunshineSyncUtils.adaptSyncInterval(context, change);
+        } catch (RuntimeException e) {
+            Log.e(TAG, "Couldn't adapt the sync interval", e);
+        }
+    }
+
+    /*
+     * Locations stage: waits for the saved locations, fetched since the start of the sync, and
+     * replaces their forecasts in one transaction. A location that failed doesn't fail the sync.
+     */
+    private static void persistLocations(MultiLocationSync locationSync, SyncTrace trace)
+            throws InterruptedException {
+        long start = trace.beginStage(STAGE_LOCATIONS);
+        try {
+            int refreshed = locationSync.commit(trace);
+            Log.d(TAG, refreshed + " saved locations refreshed");
+        } catch (OperationCanceledException e) {
+            /* The preferred location is already replaced, its consumers still get to run */
+            Log.d(TAG, "Saved locations cancelled");
+        } catch (RemoteException | OperationApplicationException e) {
+            Log.e(TAG, "Couldn't replace the forecasts of the saved locations", e);
+        } finally {
+            trace.endStage(STAGE_LOCATIONS, start);
+        }
+    }
+
+    /*
+     * Hourly stage: fetches the 3-hour step forecast of the preferred location and replaces it.
+     * Only runs once the daily forecast is in and its consumers are done with it, and never fails
+     * the sync.
+     */
+    private static void persistHourly(Context context, CancellationSignal cancellationSignal, SyncTrace trace) {
+        long start = trace.beginStage(STAGE_HOURLY);
+        try {
+            String location = WeatherContract.HourlyWeatherEntry.PREFERRED_LOCATION;
+            ContentValues[] days = HourlyForecastSync.fetch(
+                    NetworkUtils.getHourlyUrl(context), location, cancellationSignal);
+            if (days == null || days.length == 0) {
+                Log.w(TAG, "No hourly forecast");
+                return;
+            }
+            ArrayList<ContentProviderOperation> operations = new ArrayList<>();
+            HourlyForecastSync.addReplaceOperations(operations, location, days);
+            context.getContentResolver().applyBatch(WeatherContract.CONTENT_AUTHORITY, operations);
+            trace.addRowsChanged(days.length);
+        } catch (OperationCanceledException e) {
+            Log.d(TAG, "Hourly forecast cancelled");
+        } catch (IOException | JSONException | RemoteException | OperationApplicationException e) {
+            Log.e(TAG, "Couldn't replace the hourly forecast", e);
+        } finally {
+            trace.endStage(STAGE_HOURLY, start);
+        }
+    }
+
+    /*
+     * Nowcast stage: fetches the precipitation of the next hour of the preferred location into
+     * its ring. Never fails the sync either.
+     */
+    private static void persistNowcast(Context context, CancellationSignal cancellationSignal, SyncTrace trace) {
+        long start = trace.beginStage(STAGE_NOWCAST);
+        try {
+            int minutes = NowcastSync.fetch(context, NetworkUtils.getNowcastUrl(context),
+                    WeatherContract.NowcastEntry.PREFERRED_LOCATION, cancellationSignal);
+            if (minutes == 0) {
+                Log.w(TAG, "No nowcast");
+            }
+        } catch (OperationCanceledException e) {
+            Log.d(TAG, "Nowcast cancelled");
+        } catch (IOException | JSONException e) {
+            Log.e(TAG, "Couldn't update the nowcast", e);
+        } finally {
+            trace.endStage(STAGE_NOWCAST, start);
+        }
+    }
+
+    /*
+     * Fan-out stage: runs every consumer of the new weather concurrently and waits for them.
+     * The weather was fetched from the weather server at syncedAt.
+     */
+    private static void fanOut(final Context context, final ForecastSnapshot snapshot, long syncedAt,
+                               final SyncTrace trace) throws InterruptedException {
+        long start = trace.beginStage(STAGE_FAN_OUT);
+        try {
+            Map<String, Runnable> consumers = getFanOutConsumers(context, snapshot, syncedAt);
+            final CountDownLatch done = new CountDownLatch(consumers.size());
+            for (final Map.Entry<String, Runnable> consumer : consumers.entrySet()) {
+                AsyncTask.THREAD_POOL_EXECUTOR.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        long consumerStart = trace.beginStage(consumer.getKey());
+                        try {
+                            consumer.getValue().run();
+                        } catch (RuntimeException e) {
+                            /* One failing consumer must not prevent the others from running */
+                            Log.e(TAG, "Sync consumer " + consumer.getKey() + " failed", e);
+                        } finally {
+                            trace.endStage(consumer.getKey(), consumerStart);
+                            done.countDown();
+                        }
+                    }
+                });
+            }
+            if (!done.await(FAN_OUT_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS)) {
+                Log.w(TAG, "Sync consumers still running after " + FAN_OUT_TIMEOUT_MILLIS + "ms");
+            }
+        } finally {
+            trace.endStage(STAGE_FAN_OUT, start);
+        }
+    }
+
+    /*
+     * The consumers of a successful sync, by name. None of them queries the ContentProvider, they
+     * all read the snapshot.
+     */
+    private static Map<String, Runnable> getFanOutConsumers(final Context context, final ForecastSnapshot snapshot,
+                                                            final long syncedAt) {
+        Map<String, Runnable> consumers = new LinkedHashMap<>();
+
+        /*
+         * Determine whether or not we should notify the user that the weather has been refreshed.
+         * We only want to show the notification if the user wants them shown and we haven't shown
+         * a notification in the past day. Remember, it's important that you shouldn't spam your
+         * users with notifications.
+         */
+        boolean notificationsEnabled = SunshinePreferences.areNotificationsEnabled(context);
+        long timeSinceLastNotification = SunshinePreferences.getEllapsedTimeSinceLastNotification(context);
+        boolean oneDayPassedSinceLastNotification = timeSinceLastNotification >= DateUtils.DAY_IN_MILLIS;
+        if (notificationsEnabled && oneDayPassedSinceLastNotification) {
+            consumers.put(CONSUMER_NOTIFICATION, new Runnable() {
+                @Override
+                public void run() {
+                    NotificationUtils.notifyUserOfNewWeather(context, snapshot);
                 }
-                new WearableHelper(context);
-                
-                
-            /* If the code reaches this point, we have successfully performed our sync */
-                
+            });
+        }
+
+        consumers.put(CONSUMER_WEARABLE, new Runnable() {
+            @Override
+            public void run() {
+                WearableHelper.updateWearable(context, snapshot, syncedAt);
             }
-            
-        } catch (Exception e) {
-            /* Server probably invalid */
-            e.printStackTrace();
+        });
+
+        consumers.put(CONSUMER_WIDGET, new Runnable() {
+            @Override
+            public void run() {
+                ForecastWidgetProvider.updateWidgets(context, snapshot);
+            }
+        });
+        return consumers;
+    }
+
+    private static void throwIfCanceled(CancellationSignal cancellationSignal) {
+        if (cancellationSignal != null) {
+            cancellationSignal.throwIfCanceled();
         }
     }
-    
-}
\ No newline at end of file
+
+    /*
+     * The index of a forecast response, and its weather rows with the fields of the list.
+     */
+    private static final class ParsedForecast {
+
+        final ForecastJsonIndex mIndex;
+        final ContentValues[] mWeatherValues;
+
+        ParsedForecast(ForecastJsonIndex index, ContentValues[] weatherValues) {
+            mIndex = index;
+            mWeatherValues = weatherValues;
+        }
+    }
+}
@@ -17,35 +17,85 @@ package com.example.android.sunshine.sync;
 
 import android.content.Context;
 import android.content.Intent;
-import android.database.Cursor;
-import android.net.Uri;
+import android.os.AsyncTask;
+import android.os.SystemClock;
 import android.support.annotation.NonNull;
+import android.util.Log;
 
-import com.example.android.sunshine.data.WeatherContract;
+import com.example.android.sunshine.data.ForecastFreshness;
+import com.example.android.sunshine.data.SunshinePreferences;
+import com.example.android.sunshine.utilities.StartupOrchestrator;
 import com.firebase.jobdispatcher.Constraint;
 import com.firebase.jobdispatcher.Driver;
 import com.firebase.jobdispatcher.FirebaseJobDispatcher;
 import com.firebase.jobdispatcher.GooglePlayDriver;
 import com.firebase.jobdispatcher.Job;
 import com.firebase.jobdispatcher.Lifetime;
+import com.firebase.jobdispatcher.RetryStrategy;
 import com.firebase.jobdispatcher.Trigger;
 
+import java.util.Collections;
+import java.util.Map;
 import java.util.concurrent.TimeUnit;
 
 public class SunshineSyncUtils {
 
+    private static final String TAG = SunshineSyncUtils.class.getSimpleName();
+
     /*
      * Interval at which to sync with the weather. Use TimeUnit for convenience, rather than
      * writing out a bunch of multiplication ourselves and risk making a silly mistake.
+     *
+     * This is the interval the sync starts with, and the fixed schedule the adaptive interval
+     * is measured against. The interval then adapts to how much each sync changes the forecast,
+     * within the bounds below.
      */
     private static final int SYNC_INTERVAL_HOURS = 3;
     private static final int SYNC_INTERVAL_SECONDS = (int) TimeUnit.HOURS.toSeconds(SYNC_INTERVAL_HOURS);
-    private static final int SYNC_FLEXTIME_SECONDS = SYNC_INTERVAL_SECONDS / 3;
+    private static final int MIN_SYNC_INTERVAL_SECONDS = (int) TimeUnit.HOURS.toSeconds(1);
+    private static final int MAX_SYNC_INTERVAL_SECONDS = (int) TimeUnit.HOURS.toSeconds(12);
+
+    /*
+     * A sync changing less than LOW_VOLATILITY of the forecast stretches the interval, one
+     * changing more than HIGH_VOLATILITY shortens it. See ForecastChange#getVolatility.
+     */
+    private static final double LOW_VOLATILITY = 0.1;
+    private static final double HIGH_VOLATILITY = 0.4;
+    private static final double STRETCH_FACTOR = 1.5;
+    private static final double SHRINK_FACTOR = 0.5;
+
+    /*
+     * When a sync fails, the job asks to be rescheduled. Retries back off exponentially from
+     * a few minutes to a full sync interval, on top of the quick retries of the FetchPolicy.
+     */
+    private static final int RETRY_INITIAL_BACKOFF_SECONDS = (int) TimeUnit.MINUTES.toSeconds(5);
+    private static final int RETRY_MAXIMUM_BACKOFF_SECONDS = SYNC_INTERVAL_SECONDS;
 
     private static boolean sInitialized;
 
     private static final String SUNSHINE_SYNC_TAG = "sunshine-sync";
 
+    /* Tag of the one-off Job retrying a sync refused by the circuit breaker of the FetchPolicy */
+    private static final String SUNSHINE_SYNC_RETRY_TAG = "sunshine-sync-retry";
+
+    /* How late the retry may run after the circuit breaker lets requests through again */
+    private static final int RETRY_FLEXTIME_SECONDS = (int) TimeUnit.MINUTES.toSeconds(5);
+
+
+    /* Names of the startup tasks run by initialize */
+    private static final String TASK_SCHEDULE_SYNC = "schedule-sync";
+
+    /*
+     * Minimum time between two background revalidations. A revalidation that fails leaves the
+     * forecast as old as it was, this keeps every reload of the list from starting another one.
+     */
+    private static final long MIN_REVALIDATION_SPACING_MILLIS = TimeUnit.MINUTES.toMillis(5);
+
+    /* SystemClock.elapsedRealtime of the last revalidation started, 0 if none was */
+    private static long sLastRevalidationMillis;
+
+    private static StartupOrchestrator sStartupOrchestrator;
+
     /**
      * Schedules a repeating sync of Sunshine's weather data using FirebaseJobDispatcher.
      * @param context Context used to create the GooglePlayDriver that powers the
@@ -53,6 +103,9 @@ public class SunshineSyncUtils {
      */
     static void scheduleFirebaseJobDispatcherSync(@NonNull final Context context) {
 
+        int syncIntervalSeconds = getSyncIntervalSeconds(context);
+        int syncFlextimeSeconds = getSyncFlextimeSeconds(syncIntervalSeconds);
+
         Driver driver = new GooglePlayDriver(context);
         FirebaseJobDispatcher dispatcher = new FirebaseJobDispatcher(driver);
 
@@ -79,29 +132,162 @@ public class SunshineSyncUtils {
                  */
                 .setRecurring(true)
                 /*
-                 * We want the weather data to be synced every 3 to 4 hours. The first argument for
+                 * We want the weather data to be synced every 3 to 4 hours, or whatever interval
+                 * the volatility of the forecast adapted that to. The first argument for
                  * Trigger's static executionWindow method is the start of the time frame when the
                  * sync should be performed. The second argument is the latest point in time at
                  * which the data should be synced. Please note that this end time is not
                  * guaranteed, but is more of a guideline for FirebaseJobDispatcher to go off of.
                  */
                 .setTrigger(Trigger.executionWindow(
-                        SYNC_INTERVAL_SECONDS,
-                        SYNC_INTERVAL_SECONDS + SYNC_FLEXTIME_SECONDS))
+                        syncIntervalSeconds,
+                        syncIntervalSeconds + syncFlextimeSeconds))
                 /*
                  * If a Job with the tag with provided already exists, this new job will replace
                  * the old one.
                  */
                 .setReplaceCurrent(true)
+                /*
+                 * A sync that fails asks to be rescheduled (see SunshineFirebaseJobService), this
+                 * tells the dispatcher how to space those retries.
+                 */
+                .setRetryStrategy(dispatcher.newRetryStrategy(
+                        RetryStrategy.RETRY_POLICY_EXPONENTIAL,
+                        RETRY_INITIAL_BACKOFF_SECONDS,
+                        RETRY_MAXIMUM_BACKOFF_SECONDS))
                 /* Once the Job is ready, call the builder's build method to return the Job */
                 .build();
 
         /* Schedule the Job with the dispatcher */
-        dispatcher.schedule(syncSunshineJob);
+        int result = dispatcher.schedule(syncSunshineJob);
+        if (result != FirebaseJobDispatcher.SCHEDULE_RESULT_SUCCESS) {
+            Log.w(TAG, "Couldn't schedule the sync Job: " + result);
+        }
+    }
+
+    /**
+     * Schedules a single sync once the given delay is over. Used when a sync failed because the
+     * weather server is known to be down for a while: retrying before then, as the retry strategy
+     * of the periodic Job would, could only be refused by the circuit breaker.
+     *
+     * @param context     Context used to create the GooglePlayDriver that powers the
+     *                    FirebaseJobDispatcher
+     * @param delayMillis How long to wait before the sync
+     */
+    static void scheduleRetrySync(@NonNull Context context, long delayMillis) {
+        int delaySeconds = (int) Math.max(1, TimeUnit.MILLISECONDS.toSeconds(delayMillis));
+
+        FirebaseJobDispatcher dispatcher = new FirebaseJobDispatcher(new GooglePlayDriver(context));
+        Job retryJob = dispatcher.newJobBuilder()
+                .setService(SunshineFirebaseJobService.class)
+                .setTag(SUNSHINE_SYNC_RETRY_TAG)
+                .setConstraints(Constraint.ON_ANY_NETWORK)
+                .setLifetime(Lifetime.UNTIL_NEXT_BOOT)
+                .setRecurring(false)
+                .setTrigger(Trigger.executionWindow(delaySeconds, delaySeconds + RETRY_FLEXTIME_SECONDS))
+                /* Only the latest retry is of any use */
+                .setReplaceCurrent(true)
+                .build();
+
+        int result = dispatcher.schedule(retryJob);
+        if (result != FirebaseJobDispatcher.SCHEDULE_RESULT_SUCCESS) {
+            Log.w(TAG, "Couldn't schedule the retry Job: " + result);
+        }
+    }
+
+    private static int getSyncIntervalSeconds(Context context) {
+        int interval = SunshinePreferences.getSyncIntervalSeconds(context, SYNC_INTERVAL_SECONDS);
+        return Math.max(MIN_SYNC_INTERVAL_SECONDS, Math.min(MAX_SYNC_INTERVAL_SECONDS, interval));
+    }
+
+    private static int getSyncFlextimeSeconds(int syncIntervalSeconds) {
+        return syncIntervalSeconds / 3;
+    }
+
+    /**
+     * Adapts the interval of the periodic sync to how much the last periodic sync changed the
+     * forecast. A stable forecast gets synced less often, a changing one more often, always
+     * within the configured bounds. Only the syncs of the periodic Job are measured: how much the
+     * forecast changes between two syncs only means something at the pace of that Job.
+     * <p>
+     * The Job isn't scheduled again from here, as it is still running: the Job service does so
+     * once it reported the Job finished, see {@link #rescheduleSyncIfIntervalChanged(Context, int)}.
+     *
+     * @param context Context used to read and write the preferences
+     * @param change  What the periodic sync changed
+     */
+    static void adaptSyncInterval(@NonNull Context context, ForecastChange change) {
+        SunshinePreferences.recordPeriodicSync(context, System.currentTimeMillis());
+
+        int currentInterval = getSyncIntervalSeconds(context);
+        int nextInterval = getNextSyncIntervalSeconds(currentInterval, change.getVolatility());
+        Log.d(TAG, "Sync changed " + change + ", next sync in " + nextInterval + "s");
+        if (nextInterval != currentInterval) {
+            SunshinePreferences.saveSyncIntervalSeconds(context, nextInterval);
+        }
+    }
+
+    /**
+     * Schedules the periodic Job again if its interval changed since it started.
+     *
+     * @param context                 Context used to read the preferences and schedule the Job
+     * @param previousIntervalSeconds The interval of the periodic sync when the Job started
+     */
+    static void rescheduleSyncIfIntervalChanged(@NonNull Context context, int previousIntervalSeconds) {
+        if (getSyncIntervalSeconds(context) != previousIntervalSeconds) {
+            scheduleFirebaseJobDispatcherSync(context);
+        }
+    }
+
+    /**
+     * @param currentInterval Current interval of the periodic sync, in seconds
+     * @param volatility      Volatility of the last sync, NaN if unknown
+     * @return The interval of the next periodic sync, in seconds
+     */
+    static int getNextSyncIntervalSeconds(int currentInterval, double volatility) {
+        double factor;
+        if (Double.isNaN(volatility)) {
+            /* Nothing to compare, the first sync or one after a long gap */
+            factor = 1;
+        } else if (volatility < LOW_VOLATILITY) {
+            factor = STRETCH_FACTOR;
+        } else if (volatility > HIGH_VOLATILITY) {
+            factor = SHRINK_FACTOR;
+        } else {
+            factor = 1;
+        }
+        int next = (int) Math.round(currentInterval * factor);
+        return Math.max(MIN_SYNC_INTERVAL_SECONDS, Math.min(MAX_SYNC_INTERVAL_SECONDS, next));
+    }
+
+    /**
+     * Compares the periodic syncs that actually ran with the ones the fixed schedule of
+     * SYNC_INTERVAL_HOURS would have run over the same period.
+     *
+     * @param context Context used to read the preferences
+     * @return Fetches saved by the adaptive interval, negative if it fetched more
+     */
+    public static int getFetchesSavedVsFixedSchedule(@NonNull Context context) {
+        long since = SunshinePreferences.getPeriodicSyncsSince(context);
+        if (since == 0) {
+            return 0;
+        }
+        long elapsedSeconds = TimeUnit.MILLISECONDS.toSeconds(System.currentTimeMillis() - since);
+        /* The first counted sync runs on both schedules */
+        int fixedScheduleFetches = 1 + (int) (elapsedSeconds / SYNC_INTERVAL_SECONDS);
+        return fixedScheduleFetches - SunshinePreferences.getPeriodicSyncCount(context);
+    }
+
+    /**
+     * @param context Context used to read the preferences
+     * @return The current interval of the periodic sync, in seconds
+     */
+    public static int getCurrentSyncIntervalSeconds(@NonNull Context context) {
+        return getSyncIntervalSeconds(context);
     }
     /**
-     * Creates periodic sync tasks and checks to see if an immediate sync is required. If an
-     * immediate sync is required, this method will take care of making sure that sync occurs.
+     * Creates periodic sync tasks. Whether the forecast needs to be synced right away is up to
+     * whoever serves it, see {@link #revalidateIfNeeded(Context, ForecastFreshness)}.
      *
      * @param context Context that will be passed to other methods and used to access the
      *                ContentResolver
@@ -116,67 +302,74 @@ public class SunshineSyncUtils {
 
         sInitialized = true;
 
-        /*
-         * This method call triggers Sunshine to create its task to synchronize weather data
-         * periodically.
-         */
-        scheduleFirebaseJobDispatcherSync(context);
+        final Context appContext = context.getApplicationContext();
 
         /*
-         * We need to check to see if our ContentProvider has data to display in our forecast
-         * list. However, performing a query on the main thread is a bad idea as this may
-         * cause our UI to lag. Therefore, we create a thread in which we will run the query
-         * to check the contents of our ContentProvider.
+         * None of this work is needed to draw the first frame, so it runs as a set of named
+         * startup tasks on a background thread. Each one is timed and logged by the orchestrator.
          */
-        Thread checkForEmpty = new Thread(new Runnable() {
-            @Override
-            public void run() {
-
-                /* URI for every row of weather data in our weather table*/
-                Uri forecastQueryUri = WeatherContract.WeatherEntry.CONTENT_URI;
-
-                /*
-                 * Since this query is going to be used only as a check to see if we have any
-                 * data (rather than to display data), we just need to PROJECT the ID of each
-                 * row. In our queries where we display data, we need to PROJECT more columns
-                 * to determine what weather details need to be displayed.
-                 */
-                String[] projectionColumns = {WeatherContract.WeatherEntry._ID};
-                String selectionStatement = WeatherContract.WeatherEntry
-                        .getSqlSelectForTodayOnwards();
-
-                /* Here, we perform the query to check to see if we have any weather data */
-                Cursor cursor = context.getContentResolver().query(
-                        forecastQueryUri,
-                        projectionColumns,
-                        selectionStatement,
-                        null,
-                        null);
+        sStartupOrchestrator = new StartupOrchestrator(AsyncTask.THREAD_POOL_EXECUTOR)
                 /*
-                 * A Cursor object can be null for various different reasons. A few are
-                 * listed below.
-                 *
-                 *   1) Invalid URI
-                 *   2) A certain ContentProvider's query method returns null
-                 *   3) A RemoteException was thrown.
-                 *
-                 * Bottom line, it is generally a good idea to check if a Cursor returned
-                 * from a ContentResolver is null.
-                 *
-                 * If the Cursor was null OR if it was empty, we need to sync immediately to
-                 * be able to display data to the user.
+                 * This task triggers Sunshine to create its task to synchronize weather data
+                 * periodically. It is scheduled on every launch, replacing the Job if there is
+                 * one: the dispatcher loses its Jobs when the app is updated or the data of Play
+                 * Services is cleared, and our preferences can't tell.
                  */
-                if (null == cursor || cursor.getCount() == 0) {
-                    startImmediateSync(context);
-                }
+                .addTask(TASK_SCHEDULE_SYNC, new Runnable() {
+                    @Override
+                    public void run() {
+                        scheduleFirebaseJobDispatcherSync(appContext);
+                    }
+                });
+
+        sStartupOrchestrator.start();
+    }
 
-                /* Make sure to close the Cursor to avoid memory leaks! */
-                cursor.close();
+    /**
+     * @return The duration of each startup task run by {@link #initialize(Context)}, empty if
+     * initialization hasn't run yet
+     */
+    public static synchronized Map<String, Long> getStartupTimings() {
+        if (sStartupOrchestrator == null) {
+            return Collections.emptyMap();
+        }
+        return sStartupOrchestrator.getTaskTimings();
+    }
+
+    /**
+     * Starts a sync in the background if the forecast being served is older than its soft TTL,
+     * or if there is none. The forecast keeps being served meanwhile, see
+     * {@link ForecastFreshness}.
+     *
+     * @param context   Context used to start the sync
+     * @param freshness Freshness of the forecast being served
+     * @return Whether a sync was started
+     */
+    public static boolean revalidateIfNeeded(@NonNull Context context, ForecastFreshness freshness) {
+        if (!freshness.needsRevalidation()) {
+            return false;
+        }
+        synchronized (SunshineSyncUtils.class) {
+            long now = SystemClock.elapsedRealtime();
+            if (sLastRevalidationMillis != 0 && now - sLastRevalidationMillis < MIN_REVALIDATION_SPACING_MILLIS) {
+                return false;
             }
-        });
+            sLastRevalidationMillis = now;
+        }
+        startImmediateSync(context);
+        return true;
+    }
 
-        /* Finally, once the thread is prepared, fire it off to perform our checks. */
-        checkForEmpty.start();
+    /**
+     * If the last sync is older than the whole execution window of our periodic Job, that Job
+     * didn't run (no network, Job lost...) and the forecast gets revalidated.
+     *
+     * @param context Context used to read the preferences
+     * @return The soft TTL of the forecast, in milliseconds
+     */
+    public static long getSoftTtlMillis(@NonNull Context context) {
+        int syncIntervalSeconds = getSyncIntervalSeconds(context);
+        return TimeUnit.SECONDS.toMillis(syncIntervalSeconds + getSyncFlextimeSeconds(syncIntervalSeconds));
     }
 
     /**
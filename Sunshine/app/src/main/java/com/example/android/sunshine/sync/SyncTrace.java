@@ -0,0 +1,131 @@
+package com.example.android.sunshine.sync;
+
+import android.content.ContentValues;
+import android.os.SystemClock;
+import android.os.Trace;
+import android.util.Log;
+
+import com.example.android.sunshine.data.WeatherContract.SyncHistoryEntry;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Times the stages of one sync run. Each stage is also a systrace section, so a sync can be
+ * inspected in a system trace next to the rest of the app. Stages may run on different threads,
+ * but a stage must end on the thread that began it.
+ * <p>
+ * The trace also collects what the run moved (HTTP status, bytes, rows) and how it ended, to be
+ * recorded in the sync history, see {@link SyncHistoryEntry}.
+ */
+class SyncTrace {
+
+    private static final String TAG = SyncTrace.class.getSimpleName();
+
+    private final String mTrigger;
+    private final long mStartedAt = System.currentTimeMillis();
+    private final long mStartMillis = SystemClock.elapsedRealtime();
+    private final Map<String, Long> mStageMillis = Collections.synchronizedMap(new LinkedHashMap<String, Long>());
+
+    private int mHttpStatus = -1;
+    private long mBytes;
+    private int mRowsChanged;
+    private String mError;
+    private boolean mCacheHit;
+
+    /**
+     * @param trigger What started the run, one of the SyncHistoryEntry.TRIGGER_* values
+     */
+    SyncTrace(String trigger) {
+        mTrigger = trigger;
+    }
+
+    void setResponse(int httpStatus, long bytes) {
+        mHttpStatus = httpStatus;
+        mBytes = bytes;
+    }
+
+    /**
+     * Marks the forecast as taken from the forecast cache rather than fetched.
+     */
+    void setCacheHit() {
+        mCacheHit = true;
+    }
+
+    boolean isCacheHit() {
+        return mCacheHit;
+    }
+
+    void setRowsChanged(int rowsChanged) {
+        mRowsChanged = rowsChanged;
+    }
+
+    void addRowsChanged(int rowsChanged) {
+        mRowsChanged += rowsChanged;
+    }
+
+    void setError(Throwable error) {
+        mError = error.getClass().getName();
+    }
+
+    /**
+     * @param stage Name of the stage, also used as the systrace section name
+     * @return The start time of the stage, to be passed to {@link #endStage(String, long)}
+     */
+    long beginStage(String stage) {
+        Trace.beginSection(stage);
+        return SystemClock.elapsedRealtime();
+    }
+
+    void endStage(String stage, long stageStartMillis) {
+        mStageMillis.put(stage, SystemClock.elapsedRealtime() - stageStartMillis);
+        Trace.endSection();
+    }
+
+    /**
+     * @return A snapshot of the duration, in milliseconds, of each stage that has ended
+     */
+    Map<String, Long> getStageTimings() {
+        synchronized (mStageMillis) {
+            return new LinkedHashMap<>(mStageMillis);
+        }
+    }
+
+    long getElapsedMillis() {
+        return SystemClock.elapsedRealtime() - mStartMillis;
+    }
+
+    void log(String outcome) {
+        Log.d(TAG, "Sync " + outcome + " in " + getElapsedMillis() + "ms " + getStageTimings()
+                + (mCacheHit ? ", cached" : ", HTTP " + mHttpStatus + ", " + mBytes + " bytes")
+                + ", " + mRowsChanged + " rows"
+                + (mError != null ? ", " + mError : ""));
+    }
+
+    /**
+     * @param outcome How the run ended, one of the SyncHistoryEntry.OUTCOME_* values
+     * @return The row of the sync history describing this run
+     */
+    ContentValues toHistoryValues(String outcome) {
+        ContentValues values = new ContentValues();
+        values.put(SyncHistoryEntry.COLUMN_STARTED_AT, mStartedAt);
+        values.put(SyncHistoryEntry.COLUMN_TRIGGER, mTrigger);
+        values.put(SyncHistoryEntry.COLUMN_OUTCOME, outcome);
+        values.put(SyncHistoryEntry.COLUMN_TOTAL_MILLIS, getElapsedMillis());
+        values.put(SyncHistoryEntry.COLUMN_FETCH_MILLIS, getStageMillis(SunshineSyncTask.STAGE_FETCH));
+        values.put(SyncHistoryEntry.COLUMN_PARSE_MILLIS, getStageMillis(SunshineSyncTask.STAGE_PARSE));
+        values.put(SyncHistoryEntry.COLUMN_PERSIST_MILLIS, getStageMillis(SunshineSyncTask.STAGE_PERSIST));
+        values.put(SyncHistoryEntry.COLUMN_FAN_OUT_MILLIS, getStageMillis(SunshineSyncTask.STAGE_FAN_OUT));
+        values.put(SyncHistoryEntry.COLUMN_HTTP_STATUS, mHttpStatus);
+        values.put(SyncHistoryEntry.COLUMN_BYTES, mBytes);
+        values.put(SyncHistoryEntry.COLUMN_ROWS_CHANGED, mRowsChanged);
+        values.put(SyncHistoryEntry.COLUMN_ERROR, mError);
+        return values;
+    }
+
+    private long getStageMillis(String stage) {
+        Long millis = mStageMillis.get(stage);
+        return millis == null ? 0 : millis;
+    }
+}
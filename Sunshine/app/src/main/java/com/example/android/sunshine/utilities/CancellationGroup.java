@@ -0,0 +1,82 @@
+package com.example.android.sunshine.utilities;
+
+import android.os.CancellationSignal;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Derives several cancellation signals from a single one. A CancellationSignal has a single
+ * listener, which the request using it takes over, so concurrent requests cannot share one.
+ * Each of them gets a child of the group instead: cancelling the parent, or the group, cancels
+ * every child.
+ */
+public class CancellationGroup {
+
+    private final CancellationSignal mParent;
+
+    /* Guarded by this */
+    private final List<CancellationSignal> mChildren = new ArrayList<>();
+    private boolean mCanceled;
+
+    /**
+     * @param parent Signal whose cancellation cancels the group, or null. Its listener belongs to
+     *               the group until {@link #close()}.
+     */
+    public CancellationGroup(CancellationSignal parent) {
+        mParent = parent;
+        if (parent != null) {
+            parent.setOnCancelListener(new CancellationSignal.OnCancelListener() {
+                @Override
+                public void onCancel() {
+                    cancel();
+                }
+            });
+        }
+    }
+
+    /**
+     * @return A new signal, cancelled along with the group. Already cancelled if the group is.
+     */
+    public CancellationSignal newChild() {
+        CancellationSignal child = new CancellationSignal();
+        boolean canceled;
+        synchronized (this) {
+            canceled = mCanceled;
+            if (!canceled) {
+                mChildren.add(child);
+            }
+        }
+        if (canceled) {
+            child.cancel();
+        }
+        return child;
+    }
+
+    /**
+     * Cancels every child, present and future.
+     */
+    public void cancel() {
+        List<CancellationSignal> children;
+        synchronized (this) {
+            if (mCanceled) {
+                return;
+            }
+            mCanceled = true;
+            children = new ArrayList<>(mChildren);
+            mChildren.clear();
+        }
+        for (CancellationSignal child : children) {
+            child.cancel();
+        }
+    }
+
+    /**
+     * Gives the listener of the parent back. The children are left as they are.
+     */
+    public void close() {
+        if (mParent != null) {
+            mParent.setOnCancelListener(null);
+        }
+    }
+}
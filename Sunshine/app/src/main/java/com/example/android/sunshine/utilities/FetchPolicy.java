@@ -0,0 +1,346 @@
+package com.example.android.sunshine.utilities;
+
+import android.os.CancellationSignal;
+import android.os.OperationCanceledException;
+import android.os.SystemClock;
+import android.util.Log;
+
+import java.io.IOException;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Retry policy of the forecast fetches, around {@link NetworkUtils}.
+ * <p>
+ * A failed request is retried a bounded number of times, after an exponential backoff with full
+ * jitter (a random delay between 0 and the exponential bound), so a fleet of devices doesn't
+ * retry in lockstep. Only failures that may go away are retried: network errors, timeouts, 5xx
+ * and 429 responses. Other 4xx responses fail right away. A response can also be checked by a
+ * {@link ResponseValidator}: the weather server reports some of its failures with an error code
+ * in the JSON of a 200 response, those are retried and counted by the breaker like a 5xx.
+ * <p>
+ * A circuit breaker protects the server, and the battery, from requests that are bound to fail:
+ * after a number of consecutive server failures it opens and every fetch fails immediately for a
+ * cool down period. After that period a single trial request is let through: it closes the
+ * circuit if it succeeds and opens it again otherwise. The breaker is shared by every sync of the
+ * process, whatever started them.
+ */
+public class FetchPolicy {
+
+    private static final String TAG = FetchPolicy.class.getSimpleName();
+
+    /**
+     * Thrown when a fetch is refused because the circuit breaker is open.
+     */
+    public static class CircuitOpenException extends IOException {
+
+        private final long mRetryAfterMillis;
+
+        CircuitOpenException(long retryAfterMillis) {
+            super("Circuit open, retry in " + retryAfterMillis + "ms");
+            mRetryAfterMillis = retryAfterMillis;
+        }
+
+        /**
+         * @return How long until the circuit lets a trial request through
+         */
+        public long getRetryAfterMillis() {
+            return mRetryAfterMillis;
+        }
+    }
+
+    /**
+     * Tells the responses the server answered with a failure in their body apart.
+     */
+    public interface ResponseValidator {
+
+        /**
+         * Called on the fetching thread, for every 200 response.
+         *
+         * @param response The contents of the response, may be null
+         * @return false if the response reports a failure of the server
+         */
+        boolean isValid(String response);
+    }
+
+    private static final int DEFAULT_MAX_ATTEMPTS = 3;
+    private static final long DEFAULT_BASE_DELAY_MILLIS = TimeUnit.SECONDS.toMillis(2);
+    private static final long DEFAULT_MAX_DELAY_MILLIS = TimeUnit.SECONDS.toMillis(30);
+    private static final int DEFAULT_FAILURE_THRESHOLD = 5;
+    private static final long DEFAULT_COOL_DOWN_MILLIS = TimeUnit.MINUTES.toMillis(15);
+
+    private static final int HTTP_TOO_MANY_REQUESTS = 429;
+
+    private static FetchPolicy sDefault;
+    private static FetchPolicy sBestEffort;
+
+    private final int mMaxAttempts;
+    private final long mBaseDelayMillis;
+    private final long mMaxDelayMillis;
+    private final int mFailureThreshold;
+    private final long mCoolDownMillis;
+    private final Random mRandom;
+
+    /* Circuit breaker state, guarded by this */
+    private int mConsecutiveFailures;
+    private long mOpenedAtMillis = -1;
+    private boolean mTrialInFlight;
+
+    /**
+     * @param maxAttempts      Attempts per fetch, including the first one
+     * @param baseDelayMillis  Upper bound of the delay before the first retry, doubled on each retry
+     * @param maxDelayMillis   Upper bound of any delay between attempts
+     * @param failureThreshold Consecutive server failures that open the circuit
+     * @param coolDownMillis   How long the circuit stays open before a trial request
+     * @param random           Source of the jitter
+     */
+    FetchPolicy(int maxAttempts, long baseDelayMillis, long maxDelayMillis,
+                int failureThreshold, long coolDownMillis, Random random) {
+        mMaxAttempts = maxAttempts;
+        mBaseDelayMillis = baseDelayMillis;
+        mMaxDelayMillis = maxDelayMillis;
+        mFailureThreshold = failureThreshold;
+        mCoolDownMillis = coolDownMillis;
+        mRandom = random;
+    }
+
+    /**
+     * @return The policy shared by every forecast fetch of the process
+     */
+    public static synchronized FetchPolicy getDefault() {
+        if (sDefault == null) {
+            sDefault = new FetchPolicy(DEFAULT_MAX_ATTEMPTS, DEFAULT_BASE_DELAY_MILLIS,
+                    DEFAULT_MAX_DELAY_MILLIS, DEFAULT_FAILURE_THRESHOLD, DEFAULT_COOL_DOWN_MILLIS,
+                    new Random());
+        }
+        return sDefault;
+    }
+
+    /**
+     * @return The policy of the fetches that come on top of the forecast, and that the sync
+     * doesn't need: a single attempt, and a breaker of its own that never opens, so their
+     * failures never hold the forecast fetches back
+     */
+    public static synchronized FetchPolicy getBestEffort() {
+        if (sBestEffort == null) {
+            sBestEffort = new FetchPolicy(1, DEFAULT_BASE_DELAY_MILLIS, DEFAULT_MAX_DELAY_MILLIS,
+                    Integer.MAX_VALUE, DEFAULT_COOL_DOWN_MILLIS, new Random());
+        }
+        return sBestEffort;
+    }
+
+    /**
+     * Fetches the response of the URL, retrying according to this policy.
+     *
+     * @param url                The URL to fetch
+     * @param cancellationSignal Signal to cancel the fetch, including its backoff delays, or null
+     * @param stats              Filled with the status and size of the last response, or null
+     * @return The contents of the HTTP response, null if no response
+     * @throws CircuitOpenException       If the circuit breaker refused the fetch
+     * @throws IOException                The failure of the last attempt
+     * @throws OperationCanceledException If the signal was cancelled
+     */
+    public String fetch(URL url, CancellationSignal cancellationSignal, NetworkUtils.ResponseStats stats)
+            throws IOException {
+        return fetch(url, null, cancellationSignal, stats);
+    }
+
+    /**
+     * Same as {@link #fetch(URL, CancellationSignal, NetworkUtils.ResponseStats)}, with every
+     * attempt hedged by the secondary URL, see {@link HedgedRequest}.
+     *
+     * @param url                The URL to fetch
+     * @param secondaryUrl       Equivalent URL on another endpoint, or null to not hedge
+     * @param cancellationSignal Signal to cancel the fetch, including its backoff delays, or null
+     * @param stats              Filled with the status and size of the last response, or null
+     * @return The contents of the HTTP response, null if no response
+     * @throws CircuitOpenException       If the circuit breaker refused the fetch
+     * @throws IOException                The failure of the last attempt
+     * @throws OperationCanceledException If the signal was cancelled
+     */
+    public String fetch(URL url, URL secondaryUrl, CancellationSignal cancellationSignal,
+                        NetworkUtils.ResponseStats stats) throws IOException {
+        return fetch(url, secondaryUrl, cancellationSignal, stats, null);
+    }
+
+    /**
+     * Same as {@link #fetch(URL, URL, CancellationSignal, NetworkUtils.ResponseStats)}, with every
+     * response checked by the validator. A response it rejects is retried like a 5xx, and returned
+     * as it is once the attempts are exhausted.
+     *
+     * @param url                The URL to fetch
+     * @param secondaryUrl       Equivalent URL on another endpoint, or null to not hedge
+     * @param cancellationSignal Signal to cancel the fetch, including its backoff delays, or null
+     * @param stats              Filled with the status and size of the last response, or null
+     * @param validator          Checks the body of the responses, or null to accept any
+     * @return The contents of the HTTP response, null if no response
+     * @throws CircuitOpenException       If the circuit breaker refused the fetch
+     * @throws IOException                The failure of the last attempt
+     * @throws OperationCanceledException If the signal was cancelled
+     */
+    public String fetch(URL url, URL secondaryUrl, CancellationSignal cancellationSignal,
+                        NetworkUtils.ResponseStats stats, ResponseValidator validator) throws IOException {
+        IOException lastFailure = null;
+        String rejectedResponse = null;
+        for (int attempt = 0; attempt < mMaxAttempts; attempt++) {
+            if (attempt > 0) {
+                long delay = getBackoffDelayMillis(attempt);
+                Log.d(TAG, "Retrying in " + delay + "ms after "
+                        + (lastFailure != null ? lastFailure : "a rejected response"));
+                sleep(delay, cancellationSignal);
+            }
+
+            boolean trial = acquirePermit();
+            NetworkUtils.ResponseStats attemptStats = new NetworkUtils.ResponseStats();
+            try {
+                String response = secondaryUrl == null
+                        ? NetworkUtils.getResponseFromHttpUrl(url, cancellationSignal, attemptStats)
+                        : HedgedRequest.getDefault().execute(url, secondaryUrl, cancellationSignal, attemptStats);
+                if (validator == null || validator.isValid(response)) {
+                    reportSuccess();
+                    return response;
+                }
+                reportServerFailure();
+                rejectedResponse = response;
+                lastFailure = null;
+            } catch (RuntimeException e) {
+                /*
+                 * Cancelled, or a bug on our side: not the server's fault. The trial, if this
+                 * was it, must not hold the circuit open for good.
+                 */
+                if (trial) {
+                    releasePermit();
+                }
+                throw e;
+            } catch (IOException e) {
+                lastFailure = e;
+                rejectedResponse = null;
+                if (!isRetryable(attemptStats.getHttpStatus())) {
+                    /* The server answered, it just didn't like the request */
+                    reportSuccess();
+                    throw e;
+                }
+                reportServerFailure();
+            } finally {
+                if (stats != null) {
+                    stats.copyFrom(attemptStats);
+                }
+            }
+        }
+        if (lastFailure != null) {
+            throw lastFailure;
+        }
+        Log.w(TAG, "Giving up on a response rejected " + mMaxAttempts + " times");
+        return rejectedResponse;
+    }
+
+    /**
+     * @return How long until a fetch may go through, 0 if the circuit is closed. A sync job that
+     * failed is retried once that delay is over, see SunshineFirebaseJobService.
+     */
+    public synchronized long getRetryAfterMillis() {
+        if (mOpenedAtMillis == -1) {
+            return 0;
+        }
+        return Math.max(0, mOpenedAtMillis + mCoolDownMillis - SystemClock.elapsedRealtime());
+    }
+
+    synchronized boolean isCircuitOpen() {
+        return mOpenedAtMillis != -1;
+    }
+
+    /*
+     * Full jitter: a uniformly random delay between 0 and the exponential bound of the attempt.
+     */
+    long getBackoffDelayMillis(int attempt) {
+        long bound = Math.min(mMaxDelayMillis, mBaseDelayMillis << Math.min(attempt - 1, 30));
+        return (long) (mRandom.nextDouble() * bound);
+    }
+
+    private static boolean isRetryable(int httpStatus) {
+        /* -1 means no response at all: network error or timeout */
+        return httpStatus == -1
+                || httpStatus == HTTP_TOO_MANY_REQUESTS
+                || httpStatus >= HttpURLConnection.HTTP_INTERNAL_ERROR;
+    }
+
+    /*
+     * Returns whether the request is the trial of a half open circuit, which it then has to
+     * report, or release.
+     */
+    private synchronized boolean acquirePermit() throws CircuitOpenException {
+        if (mOpenedAtMillis == -1) {
+            return false;
+        }
+        long retryAfter = getRetryAfterMillis();
+        if (retryAfter > 0 || mTrialInFlight) {
+            throw new CircuitOpenException(retryAfter);
+        }
+        /* Half open: this request is the trial */
+        mTrialInFlight = true;
+        return true;
+    }
+
+    private synchronized void releasePermit() {
+        mTrialInFlight = false;
+    }
+
+    private synchronized void reportServerFailure() {
+        mTrialInFlight = false;
+        mConsecutiveFailures++;
+        if (mOpenedAtMillis != -1 || mConsecutiveFailures >= mFailureThreshold) {
+            if (mOpenedAtMillis == -1) {
+                Log.w(TAG, "Opening the circuit after " + mConsecutiveFailures + " consecutive failures");
+            }
+            mOpenedAtMillis = SystemClock.elapsedRealtime();
+        }
+    }
+
+    private synchronized void reportSuccess() {
+        if (mOpenedAtMillis != -1) {
+            Log.d(TAG, "Closing the circuit");
+        }
+        mTrialInFlight = false;
+        mConsecutiveFailures = 0;
+        mOpenedAtMillis = -1;
+    }
+
+    /*
+     * Sleeps for the given delay, waking up as soon as the signal is cancelled.
+     */
+    private static void sleep(long delayMillis, CancellationSignal cancellationSignal) {
+        final Object lock = new Object();
+        if (cancellationSignal != null) {
+            cancellationSignal.setOnCancelListener(new CancellationSignal.OnCancelListener() {
+                @Override
+                public void onCancel() {
+                    synchronized (lock) {
+                        lock.notifyAll();
+                    }
+                }
+            });
+        }
+        try {
+            long wakeUpAt = SystemClock.elapsedRealtime() + delayMillis;
+            synchronized (lock) {
+                long remaining;
+                while ((remaining = wakeUpAt - SystemClock.elapsedRealtime()) > 0
+                        && (cancellationSignal == null || !cancellationSignal.isCanceled())) {
+                    lock.wait(remaining);
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new OperationCanceledException("Interrupted during backoff");
+        } finally {
+            if (cancellationSignal != null) {
+                cancellationSignal.setOnCancelListener(null);
+            }
+        }
+        if (cancellationSignal != null) {
+            cancellationSignal.throwIfCanceled();
+        }
+    }
+}
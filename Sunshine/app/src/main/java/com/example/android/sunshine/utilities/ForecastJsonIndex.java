@@ -0,0 +1,425 @@
+package com.example.android.sunshine.utilities;
+
+import android.content.ContentValues;
+import android.util.JsonReader;
+import android.util.JsonToken;
+
+import com.example.android.sunshine.data.WeatherContract.WeatherEntry;
+
+import org.json.JSONException;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Index of an OpenWeatherMap daily forecast response. Building it is a single scan of the
+ * characters that records where each day record of the "list" array starts and ends, without
+ * materializing anything. Days are then decoded on demand, and only for the fields asked for:
+ * everything else in the record is skipped, and reading stops as soon as those fields are found.
+ * <p>
+ * The forecast list only needs {@link #FIELDS_LIST}, the remaining {@link #FIELDS_DETAIL} can be
+ * decoded later, into the same ContentValues.
+ */
+public final class ForecastJsonIndex {
+
+    /* High and low temperatures, children of the "temp" object */
+    public static final int FIELD_TEMPERATURES = 1;
+    /* Weather condition id, in the first element of the "weather" array */
+    public static final int FIELD_WEATHER_ID = 1 << 1;
+    public static final int FIELD_PRESSURE = 1 << 2;
+    public static final int FIELD_HUMIDITY = 1 << 3;
+    /* Wind speed and direction */
+    public static final int FIELD_WIND = 1 << 4;
+
+    /* The fields of MainActivity#MAIN_FORECAST_PROJECTION, the date aside */
+    public static final int FIELDS_LIST = FIELD_TEMPERATURES | FIELD_WEATHER_ID;
+    public static final int FIELDS_DETAIL = FIELD_PRESSURE | FIELD_HUMIDITY | FIELD_WIND;
+    public static final int FIELDS_ALL = FIELDS_LIST | FIELDS_DETAIL;
+
+    private static final String OWM_CITY = "city";
+    private static final String OWM_COORD = "coord";
+    private static final String OWM_LATITUDE = "lat";
+    private static final String OWM_LONGITUDE = "lon";
+    private static final String OWM_LIST = "list";
+    private static final String OWM_MESSAGE_CODE = "cod";
+
+    private static final String OWM_PRESSURE = "pressure";
+    private static final String OWM_HUMIDITY = "humidity";
+    private static final String OWM_WINDSPEED = "speed";
+    private static final String OWM_WIND_DIRECTION = "deg";
+    private static final String OWM_TEMPERATURE = "temp";
+    private static final String OWM_MAX = "max";
+    private static final String OWM_MIN = "min";
+    private static final String OWM_WEATHER = "weather";
+    private static final String OWM_WEATHER_ID = "id";
+
+    private final String mJson;
+
+    /* Offsets of the day records, each one from its opening to past its closing brace */
+    private final boolean mHasDayList;
+    private final int[] mDayStarts;
+    private final int[] mDayEnds;
+
+    /* Offsets of the "city" and "cod" values, -1 if absent */
+    private final int mCityStart;
+    private final int mCityEnd;
+    private final int mCodeStart;
+    private final int mCodeEnd;
+
+    private ForecastJsonIndex(String json, boolean hasDayList, int[] dayStarts, int[] dayEnds,
+                              int cityStart, int cityEnd, int codeStart, int codeEnd) {
+        mJson = json;
+        mHasDayList = hasDayList;
+        mDayStarts = dayStarts;
+        mDayEnds = dayEnds;
+        mCityStart = cityStart;
+        mCityEnd = cityEnd;
+        mCodeStart = codeStart;
+        mCodeEnd = codeEnd;
+    }
+
+    /**
+     * @param json JSON response of the weather server
+     * @return The index of the response
+     * @throws JSONException If the response is not a JSON object
+     */
+    public static ForecastJsonIndex build(String json) throws JSONException {
+        Scanner scanner = new Scanner(json);
+        List<int[]> days = new ArrayList<>();
+        boolean hasDayList = false;
+        int cityStart = -1, cityEnd = -1, codeStart = -1, codeEnd = -1;
+
+        scanner.expect('{');
+        if (!scanner.consumeIf('}')) {
+            do {
+                String key = scanner.readKey();
+                scanner.expect(':');
+                int start = scanner.skipWhitespace();
+                if (OWM_LIST.equals(key)) {
+                    hasDayList = true;
+                    scanner.expect('[');
+                    if (!scanner.consumeIf(']')) {
+                        do {
+                            int dayStart = scanner.skipWhitespace();
+                            days.add(new int[]{dayStart, scanner.skipValue()});
+                        } while (scanner.consumeIf(','));
+                        scanner.expect(']');
+                    }
+                } else {
+                    int end = scanner.skipValue();
+                    if (OWM_CITY.equals(key)) {
+                        cityStart = start;
+                        cityEnd = end;
+                    } else if (OWM_MESSAGE_CODE.equals(key)) {
+                        codeStart = start;
+                        codeEnd = end;
+                    }
+                }
+            } while (scanner.consumeIf(','));
+            scanner.expect('}');
+        }
+
+        int[] dayStarts = new int[days.size()];
+        int[] dayEnds = new int[days.size()];
+        for (int i = 0; i < dayStarts.length; i++) {
+            dayStarts[i] = days.get(i)[0];
+            dayEnds[i] = days.get(i)[1];
+        }
+        return new ForecastJsonIndex(json, hasDayList, dayStarts, dayEnds,
+                cityStart, cityEnd, codeStart, codeEnd);
+    }
+
+    /**
+     * @return Whether the response has a list of days, error responses don't
+     */
+    public boolean hasDayList() {
+        return mHasDayList;
+    }
+
+    /**
+     * @return The number of day records
+     */
+    public int getDayCount() {
+        return mDayStarts.length;
+    }
+
+    /**
+     * @return Whether the response has a message code
+     */
+    public boolean hasMessageCode() {
+        return mCodeStart >= 0;
+    }
+
+    /**
+     * @return The message code of the response, a number or a numeric string
+     * @throws JSONException If there is none, or it isn't a number
+     */
+    public int getMessageCode() throws JSONException {
+        if (mCodeStart < 0) {
+            throw new JSONException("No value for " + OWM_MESSAGE_CODE);
+        }
+        JsonReader reader = newReader(mCodeStart, mCodeEnd);
+        try {
+            return reader.nextInt();
+        } catch (IOException | RuntimeException e) {
+            throw toJsonException(e);
+        }
+    }
+
+    /**
+     * @return The latitude and longitude of the city of the forecast
+     * @throws JSONException If the city has no coordinates
+     */
+    public double[] getCityCoordinates() throws JSONException {
+        if (mCityStart < 0) {
+            throw new JSONException("No value for " + OWM_CITY);
+        }
+        JsonReader reader = newReader(mCityStart, mCityEnd);
+        try {
+            reader.beginObject();
+            while (reader.hasNext()) {
+                if (!OWM_COORD.equals(reader.nextName())) {
+                    reader.skipValue();
+                    continue;
+                }
+                double latitude = Double.NaN;
+                double longitude = Double.NaN;
+                reader.beginObject();
+                while (reader.hasNext()) {
+                    String name = reader.nextName();
+                    if (OWM_LATITUDE.equals(name)) {
+                        latitude = reader.nextDouble();
+                    } else if (OWM_LONGITUDE.equals(name)) {
+                        longitude = reader.nextDouble();
+                    } else {
+                        reader.skipValue();
+                    }
+                }
+                if (Double.isNaN(latitude) || Double.isNaN(longitude)) {
+                    throw new JSONException("Incomplete " + OWM_COORD);
+                }
+                return new double[]{latitude, longitude};
+            }
+        } catch (IOException | RuntimeException e) {
+            throw toJsonException(e);
+        }
+        throw new JSONException("No value for " + OWM_COORD);
+    }
+
+    /**
+     * Decodes some fields of a day record into weather columns.
+     *
+     * @param day    Index of the day record
+     * @param fields The fields to decode, FIELD_* flags
+     * @param values Where the weather columns of the fields are put
+     * @throws JSONException If one of the fields is missing or malformed
+     */
+    public void decodeDay(int day, int fields, ContentValues values) throws JSONException {
+        JsonReader reader = newReader(mDayStarts[day], mDayEnds[day]);
+        int missing = fields;
+        boolean windSpeed = false;
+        boolean windDirection = false;
+        try {
+            reader.beginObject();
+            while (missing != 0 && reader.hasNext()) {
+                String name = reader.nextName();
+                if ((missing & FIELD_TEMPERATURES) != 0 && OWM_TEMPERATURE.equals(name)) {
+                    readTemperatures(reader, values);
+                    missing &= ~FIELD_TEMPERATURES;
+                } else if ((missing & FIELD_WEATHER_ID) != 0 && OWM_WEATHER.equals(name)) {
+                    values.put(WeatherEntry.COLUMN_WEATHER_ID, readWeatherId(reader));
+                    missing &= ~FIELD_WEATHER_ID;
+                } else if ((missing & FIELD_PRESSURE) != 0 && OWM_PRESSURE.equals(name)) {
+                    values.put(WeatherEntry.COLUMN_PRESSURE, reader.nextDouble());
+                    missing &= ~FIELD_PRESSURE;
+                } else if ((missing & FIELD_HUMIDITY) != 0 && OWM_HUMIDITY.equals(name)) {
+                    values.put(WeatherEntry.COLUMN_HUMIDITY, reader.nextInt());
+                    missing &= ~FIELD_HUMIDITY;
+                } else if ((missing & FIELD_WIND) != 0 && OWM_WINDSPEED.equals(name)) {
+                    values.put(WeatherEntry.COLUMN_WIND_SPEED, reader.nextDouble());
+                    windSpeed = true;
+                    if (windDirection) {
+                        missing &= ~FIELD_WIND;
+                    }
+                } else if ((missing & FIELD_WIND) != 0 && OWM_WIND_DIRECTION.equals(name)) {
+                    values.put(WeatherEntry.COLUMN_DEGREES, reader.nextDouble());
+                    windDirection = true;
+                    if (windSpeed) {
+                        missing &= ~FIELD_WIND;
+                    }
+                } else {
+                    reader.skipValue();
+                }
+            }
+        } catch (IOException | RuntimeException e) {
+            throw toJsonException(e);
+        }
+        if (missing != 0) {
+            throw new JSONException("Day " + day + " misses fields " + Integer.toBinaryString(missing));
+        }
+    }
+
+    private static void readTemperatures(JsonReader reader, ContentValues values) throws IOException,
+            JSONException {
+        boolean high = false;
+        boolean low = false;
+        reader.beginObject();
+        while (reader.hasNext()) {
+            String name = reader.nextName();
+            if (OWM_MAX.equals(name)) {
+                values.put(WeatherEntry.COLUMN_MAX_TEMP, reader.nextDouble());
+                high = true;
+            } else if (OWM_MIN.equals(name)) {
+                values.put(WeatherEntry.COLUMN_MIN_TEMP, reader.nextDouble());
+                low = true;
+            } else {
+                reader.skipValue();
+            }
+        }
+        reader.endObject();
+        if (!high || !low) {
+            throw new JSONException("Incomplete " + OWM_TEMPERATURE);
+        }
+    }
+
+    /*
+     * The condition is in a child array called "weather", which is 1 element long.
+     */
+    private static int readWeatherId(JsonReader reader) throws IOException, JSONException {
+        Integer weatherId = null;
+        reader.beginArray();
+        if (reader.hasNext() && reader.peek() == JsonToken.BEGIN_OBJECT) {
+            reader.beginObject();
+            while (reader.hasNext()) {
+                if (OWM_WEATHER_ID.equals(reader.nextName())) {
+                    weatherId = reader.nextInt();
+                } else {
+                    reader.skipValue();
+                }
+            }
+            reader.endObject();
+        }
+        while (reader.hasNext()) {
+            reader.skipValue();
+        }
+        reader.endArray();
+        if (weatherId == null) {
+            throw new JSONException("No value for " + OWM_WEATHER_ID);
+        }
+        return weatherId;
+    }
+
+    private JsonReader newReader(int start, int end) {
+        return new JsonReader(new StringReader(mJson.substring(start, end)));
+    }
+
+    private static JSONException toJsonException(Exception e) {
+        JSONException jsonException = new JSONException(e.getMessage());
+        jsonException.initCause(e);
+        return jsonException;
+    }
+
+    /*
+     * Steps over the JSON text without decoding it, to find where values start and end.
+     */
+    private static final class Scanner {
+
+        private final String mText;
+        private int mPosition;
+
+        Scanner(String text) {
+            mText = text;
+        }
+
+        int skipWhitespace() {
+            while (mPosition < mText.length() && Character.isWhitespace(mText.charAt(mPosition))) {
+                mPosition++;
+            }
+            return mPosition;
+        }
+
+        boolean consumeIf(char c) {
+            if (skipWhitespace() < mText.length() && mText.charAt(mPosition) == c) {
+                mPosition++;
+                return true;
+            }
+            return false;
+        }
+
+        void expect(char c) throws JSONException {
+            if (!consumeIf(c)) {
+                throw new JSONException("Expected " + c + " at character " + mPosition);
+            }
+        }
+
+        /*
+         * Reads a key as is. OpenWeatherMap keys have no escapes, a key with escapes is read raw
+         * and won't match any of them.
+         */
+        String readKey() throws JSONException {
+            int start = skipWhitespace();
+            int end = skipString();
+            return mText.substring(start + 1, end - 1);
+        }
+
+        /*
+         * Skips the value at the current position, returns the offset past its end.
+         */
+        int skipValue() throws JSONException {
+            if (skipWhitespace() >= mText.length()) {
+                throw new JSONException("Unexpected end of input");
+            }
+            char c = mText.charAt(mPosition);
+            if (c == '"') {
+                return skipString();
+            }
+            if (c == '{' || c == '[') {
+                int depth = 0;
+                while (mPosition < mText.length()) {
+                    char current = mText.charAt(mPosition);
+                    if (current == '"') {
+                        skipString();
+                        continue;
+                    }
+                    if (current == '{' || current == '[') {
+                        depth++;
+                    } else if (current == '}' || current == ']') {
+                        depth--;
+                    }
+                    mPosition++;
+                    if (depth == 0) {
+                        return mPosition;
+                    }
+                }
+                throw new JSONException("Unterminated " + c);
+            }
+            /* A number or a literal */
+            while (mPosition < mText.length()) {
+                char current = mText.charAt(mPosition);
+                if (current == ',' || current == '}' || current == ']' || Character.isWhitespace(current)) {
+                    break;
+                }
+                mPosition++;
+            }
+            return mPosition;
+        }
+
+        private int skipString() throws JSONException {
+            if (mPosition >= mText.length() || mText.charAt(mPosition) != '"') {
+                throw new JSONException("Expected a string at character " + mPosition);
+            }
+            mPosition++;
+            while (mPosition < mText.length()) {
+                char c = mText.charAt(mPosition++);
+                if (c == '\\') {
+                    mPosition++;
+                } else if (c == '"') {
+                    return mPosition;
+                }
+            }
+            throw new JSONException("Unterminated string");
+        }
+    }
+}
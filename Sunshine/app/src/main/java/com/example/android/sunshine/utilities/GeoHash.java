@@ -0,0 +1,101 @@
+package com.example.android.sunshine.utilities;
+
+/**
+ * Geohash encoding of coordinates. A geohash names a cell of the map: every position in the
+ * cell has the same hash, and each extra character divides the cell by 32. At precision 5, a
+ * cell is about 4.9km by 4.9km, at precision 6 about 1.2km by 0.6km.
+ */
+public final class GeoHash {
+
+    private static final char[] BASE32 = "0123456789bcdefghjkmnpqrstuvwxyz".toCharArray();
+
+    private static final int BITS_PER_CHAR = 5;
+
+    private GeoHash() {
+    }
+
+    /**
+     * @param latitude  Latitude, in degrees
+     * @param longitude Longitude, in degrees
+     * @param precision Number of characters of the hash, from 1 to 12
+     * @return The geohash of the cell holding the position
+     */
+    public static String encode(double latitude, double longitude, int precision) {
+        if (precision < 1 || precision > 12) {
+            throw new IllegalArgumentException("Invalid geohash precision " + precision);
+        }
+        double minLatitude = -90, maxLatitude = 90;
+        double minLongitude = -180, maxLongitude = 180;
+        char[] hash = new char[precision];
+        /* Bits alternate between longitude and latitude, longitude first */
+        boolean evenBit = true;
+        for (int i = 0; i < precision; i++) {
+            int index = 0;
+            for (int bit = 0; bit < BITS_PER_CHAR; bit++) {
+                index <<= 1;
+                if (evenBit) {
+                    double middle = (minLongitude + maxLongitude) / 2;
+                    if (longitude >= middle) {
+                        index |= 1;
+                        minLongitude = middle;
+                    } else {
+                        maxLongitude = middle;
+                    }
+                } else {
+                    double middle = (minLatitude + maxLatitude) / 2;
+                    if (latitude >= middle) {
+                        index |= 1;
+                        minLatitude = middle;
+                    } else {
+                        maxLatitude = middle;
+                    }
+                }
+                evenBit = !evenBit;
+            }
+            hash[i] = BASE32[index];
+        }
+        return new String(hash);
+    }
+
+    /**
+     * @param geohash A geohash
+     * @return The latitude and longitude of the center of its cell, in degrees
+     */
+    public static double[] decodeCenter(String geohash) {
+        double minLatitude = -90, maxLatitude = 90;
+        double minLongitude = -180, maxLongitude = 180;
+        boolean evenBit = true;
+        for (int i = 0; i < geohash.length(); i++) {
+            int index = indexOf(geohash.charAt(i));
+            for (int bit = BITS_PER_CHAR - 1; bit >= 0; bit--) {
+                boolean set = ((index >> bit) & 1) == 1;
+                if (evenBit) {
+                    double middle = (minLongitude + maxLongitude) / 2;
+                    if (set) {
+                        minLongitude = middle;
+                    } else {
+                        maxLongitude = middle;
+                    }
+                } else {
+                    double middle = (minLatitude + maxLatitude) / 2;
+                    if (set) {
+                        minLatitude = middle;
+                    } else {
+                        maxLatitude = middle;
+                    }
+                }
+                evenBit = !evenBit;
+            }
+        }
+        return new double[]{(minLatitude + maxLatitude) / 2, (minLongitude + maxLongitude) / 2};
+    }
+
+    private static int indexOf(char c) {
+        for (int i = 0; i < BASE32.length; i++) {
+            if (BASE32[i] == c) {
+                return i;
+            }
+        }
+        throw new IllegalArgumentException("Invalid geohash character " + c);
+    }
+}
@@ -0,0 +1,290 @@
+package com.example.android.sunshine.utilities;
+
+import android.os.CancellationSignal;
+import android.os.OperationCanceledException;
+import android.os.Process;
+import android.os.SystemClock;
+import android.util.Log;
+
+import java.io.IOException;
+import java.net.URL;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Hedged forecast requests, to cut the tail latency of the weather server.
+ * <p>
+ * The request is sent to the primary endpoint. If no response has started arriving after the
+ * hedge delay, the 95th percentile of the recent first byte times of that endpoint, a backup
+ * request is sent to the secondary endpoint. The first successful response wins and the other
+ * request is cancelled. So only the slowest 5% of the requests are hedged, and they complete as
+ * fast as the quicker of the two endpoints.
+ * <p>
+ * Hedges cost the server extra load, so they are also capped by a token bucket: every request
+ * earns a fraction of a hedge and a hedge spends a whole one. Over time no more than that fraction
+ * of the requests are hedged, even if the server slows down as a whole.
+ */
+public class HedgedRequest {
+
+    private static final String TAG = HedgedRequest.class.getSimpleName();
+
+    /* Hedge delay while an endpoint has too few samples for a meaningful percentile */
+    private static final long DEFAULT_HEDGE_DELAY_MILLIS = TimeUnit.SECONDS.toMillis(2);
+    /* Floor of the hedge delay, so a very fast endpoint doesn't get hedged over noise */
+    private static final long MIN_HEDGE_DELAY_MILLIS = 100;
+    private static final double HEDGE_PERCENTILE = 0.95;
+
+    /* At most one hedge per ten requests over time, with a burst of two */
+    private static final double DEFAULT_HEDGE_BUDGET_RATIO = 0.1;
+    private static final double DEFAULT_MAX_HEDGE_TOKENS = 2;
+
+    private static final int LATENCY_SAMPLES = 50;
+    private static final int LATENCY_MIN_SAMPLES = 20;
+
+    private static final ExecutorService sExecutor = Executors.newCachedThreadPool(new ThreadFactory() {
+        @Override
+        public Thread newThread(final Runnable runnable) {
+            return new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+                    runnable.run();
+                }
+            }, "sunshine-fetch");
+        }
+    });
+
+    private static HedgedRequest sDefault;
+
+    private final long mDefaultHedgeDelayMillis;
+    private final double mBudgetRatio;
+    private final double mMaxTokens;
+
+    /* First byte times, per endpoint, guarded by this */
+    private final Map<String, LatencyTracker> mTrackers = new HashMap<>();
+
+    /* Hedges that may still be sent, guarded by this */
+    private double mTokens;
+
+    private int mRequestCount;
+    private int mHedgeCount;
+
+    /**
+     * @param defaultHedgeDelayMillis Hedge delay of an endpoint with too few samples
+     * @param budgetRatio             Share of a hedge earned by every request
+     * @param maxTokens               Hedges that may be sent in a burst
+     */
+    HedgedRequest(long defaultHedgeDelayMillis, double budgetRatio, double maxTokens) {
+        mDefaultHedgeDelayMillis = defaultHedgeDelayMillis;
+        mBudgetRatio = budgetRatio;
+        mMaxTokens = maxTokens;
+        mTokens = maxTokens;
+    }
+
+    /**
+     * @return The hedging state shared by every forecast fetch of the process
+     */
+    public static synchronized HedgedRequest getDefault() {
+        if (sDefault == null) {
+            sDefault = new HedgedRequest(DEFAULT_HEDGE_DELAY_MILLIS, DEFAULT_HEDGE_BUDGET_RATIO,
+                    DEFAULT_MAX_HEDGE_TOKENS);
+        }
+        return sDefault;
+    }
+
+    /**
+     * Fetches the response of the primary URL, hedged by the secondary one.
+     *
+     * @param primary            The URL to fetch
+     * @param secondary          Equivalent URL on another endpoint, fetched if the primary is slow
+     * @param cancellationSignal Signal to cancel both requests, or null
+     * @param stats              Filled with the status and size of the winning response, or of
+     *                           the primary one if both failed. May be null.
+     * @return The contents of the winning HTTP response, null if no response
+     * @throws IOException                If both requests failed
+     * @throws OperationCanceledException If the signal was cancelled
+     */
+    public String execute(URL primary, URL secondary, CancellationSignal cancellationSignal,
+                          NetworkUtils.ResponseStats stats) throws IOException {
+        if (cancellationSignal != null) {
+            cancellationSignal.throwIfCanceled();
+        }
+        onRequest();
+
+        BlockingQueue<Attempt> completed = new LinkedBlockingQueue<>();
+        final Attempt primaryAttempt = start(primary, completed);
+        final Attempt[] backupAttempt = new Attempt[1];
+        if (cancellationSignal != null) {
+            cancellationSignal.setOnCancelListener(new CancellationSignal.OnCancelListener() {
+                @Override
+                public void onCancel() {
+                    primaryAttempt.cancel();
+                    synchronized (backupAttempt) {
+                        if (backupAttempt[0] != null) {
+                            backupAttempt[0].cancel();
+                        }
+                    }
+                }
+            });
+        }
+
+        try {
+            long hedgeDelay = getHedgeDelayMillis(primary);
+            if (!primaryAttempt.mStats.awaitResponse(hedgeDelay) && tryAcquireHedge()) {
+                Log.d(TAG, "No response after " + hedgeDelay + "ms, hedging on " + secondary.getPath());
+                synchronized (backupAttempt) {
+                    backupAttempt[0] = start(secondary, completed);
+                }
+                if (cancellationSignal != null && cancellationSignal.isCanceled()) {
+                    backupAttempt[0].cancel();
+                }
+            }
+
+            int pending = backupAttempt[0] == null ? 1 : 2;
+            Attempt winner = null;
+            while (pending > 0 && winner == null) {
+                Attempt attempt = completed.take();
+                pending--;
+                if (attempt.mFailure == null) {
+                    winner = attempt;
+                }
+            }
+
+            if (winner != null) {
+                /* The loser is still running, or about to report its own failure */
+                Attempt loser = winner == primaryAttempt ? backupAttempt[0] : primaryAttempt;
+                if (loser != null) {
+                    loser.cancel();
+                    recordCensored(loser);
+                }
+                if (stats != null) {
+                    stats.copyFrom(winner.mStats);
+                }
+                return winner.mResponse;
+            }
+
+            if (stats != null) {
+                stats.copyFrom(primaryAttempt.mStats);
+            }
+            if (cancellationSignal != null) {
+                cancellationSignal.throwIfCanceled();
+            }
+            if (primaryAttempt.mFailure instanceof IOException) {
+                throw (IOException) primaryAttempt.mFailure;
+            }
+            throw (RuntimeException) primaryAttempt.mFailure;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            primaryAttempt.cancel();
+            synchronized (backupAttempt) {
+                if (backupAttempt[0] != null) {
+                    backupAttempt[0].cancel();
+                }
+            }
+            throw new OperationCanceledException("Interrupted while waiting for the response");
+        } finally {
+            if (cancellationSignal != null) {
+                cancellationSignal.setOnCancelListener(null);
+            }
+        }
+    }
+
+    /**
+     * @return Hedges sent per request since the process started, for diagnostics
+     */
+    public synchronized double getHedgeRate() {
+        return mRequestCount == 0 ? 0 : (double) mHedgeCount / mRequestCount;
+    }
+
+    long getHedgeDelayMillis(URL url) {
+        long p95 = getTracker(url).getPercentile(HEDGE_PERCENTILE, mDefaultHedgeDelayMillis);
+        return Math.max(MIN_HEDGE_DELAY_MILLIS, p95);
+    }
+
+    private synchronized void onRequest() {
+        mRequestCount++;
+        mTokens = Math.min(mMaxTokens, mTokens + mBudgetRatio);
+    }
+
+    private synchronized boolean tryAcquireHedge() {
+        if (mTokens < 1) {
+            Log.d(TAG, "Hedge budget exhausted");
+            return false;
+        }
+        mTokens--;
+        mHedgeCount++;
+        return true;
+    }
+
+    private synchronized LatencyTracker getTracker(URL url) {
+        String endpoint = url.getHost() + url.getPath();
+        LatencyTracker tracker = mTrackers.get(endpoint);
+        if (tracker == null) {
+            tracker = new LatencyTracker(LATENCY_SAMPLES, LATENCY_MIN_SAMPLES);
+            mTrackers.put(endpoint, tracker);
+        }
+        return tracker;
+    }
+
+    /*
+     * A cancelled request never gets a first byte time, but leaving it out would only keep the
+     * fast samples of a slow endpoint. Its elapsed time is a lower bound of its first byte time,
+     * so that is what gets recorded.
+     */
+    private void recordCensored(Attempt loser) {
+        if (loser.mStats.getFirstByteMillis() == -1) {
+            getTracker(loser.mUrl).record(SystemClock.elapsedRealtime() - loser.mStartedAt);
+        }
+    }
+
+    private Attempt start(URL url, final BlockingQueue<Attempt> completed) {
+        final Attempt attempt = new Attempt(url);
+        sExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    attempt.mResponse = NetworkUtils.getResponseFromHttpUrl(attempt.mUrl,
+                            attempt.mSignal, attempt.mStats);
+                } catch (IOException | RuntimeException e) {
+                    attempt.mFailure = e;
+                } finally {
+                    long firstByte = attempt.mStats.getFirstByteMillis();
+                    if (firstByte != -1) {
+                        getTracker(attempt.mUrl).record(firstByte);
+                    }
+                    completed.add(attempt);
+                }
+            }
+        });
+        return attempt;
+    }
+
+    /*
+     * One of the two requests. Its fields are written by the fetch thread before it is queued,
+     * and read by the caller after it is taken from the queue.
+     */
+    private static class Attempt {
+
+        final URL mUrl;
+        final CancellationSignal mSignal = new CancellationSignal();
+        final NetworkUtils.ResponseStats mStats = new NetworkUtils.ResponseStats();
+        final long mStartedAt = SystemClock.elapsedRealtime();
+
+        String mResponse;
+        Exception mFailure;
+
+        Attempt(URL url) {
+            mUrl = url;
+        }
+
+        void cancel() {
+            mSignal.cancel();
+        }
+    }
+}
@@ -0,0 +1,30 @@
+package com.example.android.sunshine.utilities;
+
+import android.os.CancellationSignal;
+import android.os.OperationCanceledException;
+
+import java.io.IOException;
+import java.net.URL;
+
+/**
+ * Carries the GET requests of {@link NetworkUtils}. The default implementation is
+ * {@link PooledHttpTransport}; others can be plugged in with
+ * {@link NetworkUtils#setTransport(HttpTransport)}.
+ */
+public interface HttpTransport {
+
+    /**
+     * Fetches the body of the URL. Implementations must honour the cancellation signal during
+     * every blocking phase of the request.
+     *
+     * @param url                The URL to fetch
+     * @param cancellationSignal Signal to cancel the request, or null
+     * @param stats              Filled with the status, size and phase timings of the response
+     * @return The body of the HTTP response, null if it is empty
+     * @throws IOException                Related to network and stream reading, including timeouts
+     *                                    and error statuses
+     * @throws OperationCanceledException If the signal was cancelled
+     */
+    String execute(URL url, CancellationSignal cancellationSignal, NetworkUtils.ResponseStats stats)
+            throws IOException;
+}
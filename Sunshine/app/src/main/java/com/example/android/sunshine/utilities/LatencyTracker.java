@@ -0,0 +1,53 @@
+package com.example.android.sunshine.utilities;
+
+import java.util.Arrays;
+
+/**
+ * Keeps the most recent latency samples of an endpoint and answers percentile queries on them.
+ * Samples are kept in a fixed size ring, so old network conditions age out on their own.
+ */
+class LatencyTracker {
+
+    private final long[] mSamples;
+    private final int mMinSamples;
+
+    /* Guarded by this */
+    private int mCount;
+    private int mNext;
+
+    /**
+     * @param capacity   How many of the most recent samples are kept
+     * @param minSamples Samples needed before a percentile is trusted
+     */
+    LatencyTracker(int capacity, int minSamples) {
+        mSamples = new long[capacity];
+        mMinSamples = minSamples;
+    }
+
+    synchronized void record(long millis) {
+        mSamples[mNext] = millis;
+        mNext = (mNext + 1) % mSamples.length;
+        if (mCount < mSamples.length) {
+            mCount++;
+        }
+    }
+
+    /**
+     * @param percentile   Between 0 and 1, e.g. 0.95 for the p95
+     * @param defaultValue Returned while there are too few samples
+     * @return The latency under which that share of the recent samples fall
+     */
+    synchronized long getPercentile(double percentile, long defaultValue) {
+        if (mCount < mMinSamples) {
+            return defaultValue;
+        }
+        long[] sorted = Arrays.copyOf(mSamples, mCount);
+        Arrays.sort(sorted);
+        int index = (int) Math.ceil(percentile * mCount) - 1;
+        return sorted[Math.max(0, Math.min(mCount - 1, index))];
+    }
+
+    synchronized int getSampleCount() {
+        return mCount;
+    }
+}
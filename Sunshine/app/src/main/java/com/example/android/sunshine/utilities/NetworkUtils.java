@@ -17,16 +17,20 @@ package com.example.android.sunshine.utilities;
 
 import android.content.Context;
 import android.net.Uri;
+import android.os.CancellationSignal;
+import android.os.OperationCanceledException;
 import android.util.Log;
 
+import com.example.android.sunshine.R;
+import com.example.android.sunshine.data.PrecipitationNowcast;
 import com.example.android.sunshine.data.SunshinePreferences;
 
 import java.io.IOException;
-import java.io.InputStream;
-import java.net.HttpURLConnection;
 import java.net.MalformedURLException;
 import java.net.URL;
-import java.util.Scanner;
+import java.util.Locale;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
 
 /**
  * These utilities will be used to communicate with the weather servers.
@@ -56,6 +60,21 @@ public final class NetworkUtils {
 
     private static final String FORECAST_BASE_URL = DYNAMIC_WEATHER_URL;
 
+    /* The endpoint hedged requests fall back to when the primary one is slow */
+    private static final String SECONDARY_BASE_URL = STATIC_WEATHER_URL;
+
+    /*
+     * The 3-hour step forecast, in the format of OpenWeatherMap's /forecast endpoint: a "list"
+     * of steps, each with its "dt", "main.temp", "weather" and "wind".
+     */
+    private static final String HOURLY_FORECAST_BASE_URL = DYNAMIC_WEATHER_URL + "/hourly";
+
+    /*
+     * The minute by minute precipitation of the next hour, in the format of the "minutely" member
+     * of OpenWeatherMap's One Call endpoint: each minute with its "dt" and "precipitation".
+     */
+    private static final String NOWCAST_BASE_URL = DYNAMIC_WEATHER_URL + "/nowcast";
+
     /*
      * NOTE: These values only effect responses from OpenWeatherMap, NOT from the fake weather
      * server. They are simply here to allow us to teach you how to build a URL if you were to use
@@ -69,6 +88,13 @@ public final class NetworkUtils {
     private static final String units = "metric";
     /* The number of days we want our API to return */
     private static final int numDays = 14;
+    /* The number of 3-hour steps we want our API to return, 5 days of them */
+    private static final int numHourlySteps = 5 * 8;
+    /* The number of minutes of precipitation we want our API to return */
+    private static final int numNowcastMinutes = PrecipitationNowcast.CAPACITY;
+
+    /* Carries every request to the weather server, see setTransport */
+    private static HttpTransport sTransport;
 
     /* The query parameter allows us to provide a location string to the API */
     private static final String QUERY_PARAM = "q";
@@ -83,9 +109,13 @@ public final class NetworkUtils {
     /* The days parameter allows us to designate how many days of weather data we want */
     private static final String DAYS_PARAM = "cnt";
 
+    /* Forecast cache keys are either a geohash or a location query */
+    private static final String CACHE_KEY_GEOHASH_PREFIX = "geohash:";
+    private static final String CACHE_KEY_QUERY_PREFIX = "query:";
+
     /**
      * Retrieves the proper URL to query for the weather data. The reason for both this method as
-     * well as {@link #buildUrlWithLocationQuery(String)} is two fold.
+     * well as {@link #buildUrlWithLocationQuery(String, String, int)} is two fold.
      * <p>
      * 1) You should be able to just use one method when you need to create the URL within the
      * app instead of calling both methods.
@@ -98,32 +128,133 @@ public final class NetworkUtils {
      * @return URL to query weather service
      */
     public static URL getUrl(Context context) {
+        return getUrl(context, FORECAST_BASE_URL, numDays);
+    }
+
+    /**
+     * Same as {@link #getUrl(Context)}, on the secondary weather endpoint. Used as the backup of
+     * hedged requests, see {@link HedgedRequest}.
+     *
+     * @param context used to access other Utility methods
+     * @return URL to query the secondary weather service
+     */
+    public static URL getSecondaryUrl(Context context) {
+        return getUrl(context, SECONDARY_BASE_URL, numDays);
+    }
+
+    /**
+     * Same as {@link #getUrl(Context)}, for the 3-hour step forecast.
+     *
+     * @param context used to access other Utility methods
+     * @return URL to query the hourly weather service
+     */
+    public static URL getHourlyUrl(Context context) {
+        return getUrl(context, HOURLY_FORECAST_BASE_URL, numHourlySteps);
+    }
+
+    /**
+     * Same as {@link #getUrl(Context)}, for the precipitation of the next hour.
+     *
+     * @param context used to access other Utility methods
+     * @return URL to query the nowcast service
+     */
+    public static URL getNowcastUrl(Context context) {
+        return getUrl(context, NOWCAST_BASE_URL, numNowcastMinutes);
+    }
+
+    /**
+     * Retrieves the URL to query the weather of a location other than the preferred one.
+     *
+     * @param locationQuery The location, as a query understood by the weather server
+     * @return URL to query the weather service
+     */
+    public static URL getUrlForLocation(String locationQuery) {
+        return buildUrlWithLocationQuery(FORECAST_BASE_URL, locationQuery, numDays);
+    }
+
+    /**
+     * Same as {@link #getUrlForLocation(String)}, for the 3-hour step forecast.
+     *
+     * @param locationQuery The location, as a query understood by the weather server
+     * @return URL to query the hourly weather service
+     */
+    public static URL getHourlyUrlForLocation(String locationQuery) {
+        return buildUrlWithLocationQuery(HOURLY_FORECAST_BASE_URL, locationQuery, numHourlySteps);
+    }
+
+    /**
+     * Same as {@link #getUrlForLocation(String)}, for the precipitation of the next hour.
+     *
+     * @param locationQuery The location, as a query understood by the weather server
+     * @return URL to query the nowcast service
+     */
+    public static URL getNowcastUrlForLocation(String locationQuery) {
+        return buildUrlWithLocationQuery(NOWCAST_BASE_URL, locationQuery, numNowcastMinutes);
+    }
+
+    /**
+     * Returns the key of the forecast of the preferred location in the forecast cache. Positions
+     * in the same geohash cell share the key, as they share the URL.
+     *
+     * @param context used to access other Utility methods
+     * @return Key of the preferred location in {@link com.example.android.sunshine.data.ForecastCache}
+     */
+    public static String getForecastCacheKey(Context context) {
+        if (SunshinePreferences.isLocationLatLonAvailable(context)) {
+            return CACHE_KEY_GEOHASH_PREFIX + getQuantizedGeoHash(context);
+        } else {
+            return getForecastCacheKeyForLocation(SunshinePreferences.getPreferredWeatherLocation(context));
+        }
+    }
+
+    /**
+     * @param locationQuery The location, as a query understood by the weather server
+     * @return Key of the location in {@link com.example.android.sunshine.data.ForecastCache}
+     */
+    public static String getForecastCacheKeyForLocation(String locationQuery) {
+        return CACHE_KEY_QUERY_PREFIX + locationQuery.trim().toLowerCase(Locale.US);
+    }
+
+    private static URL getUrl(Context context, String baseUrl, int count) {
         if (SunshinePreferences.isLocationLatLonAvailable(context)) {
-            double[] preferredCoordinates = SunshinePreferences.getLocationCoordinates(context);
-            double latitude = preferredCoordinates[0];
-            double longitude = preferredCoordinates[1];
-            return buildUrlWithLatitudeLongitude(latitude, longitude);
+            /*
+             * The coordinates are snapped to the center of their geohash cell, so that nearby
+             * positions ask for the very same forecast.
+             */
+            double[] cellCenter = GeoHash.decodeCenter(getQuantizedGeoHash(context));
+            double latitude = cellCenter[0];
+            double longitude = cellCenter[1];
+            return buildUrlWithLatitudeLongitude(baseUrl, latitude, longitude, count);
         } else {
             String locationQuery = SunshinePreferences.getPreferredWeatherLocation(context);
-            return buildUrlWithLocationQuery(locationQuery);
+            return buildUrlWithLocationQuery(baseUrl, locationQuery, count);
         }
     }
 
+    private static String getQuantizedGeoHash(Context context) {
+        double[] preferredCoordinates = SunshinePreferences.getLocationCoordinates(context);
+        int precision = context.getResources().getInteger(R.integer.geohash_precision);
+        return GeoHash.encode(preferredCoordinates[0], preferredCoordinates[1], precision);
+    }
+
     /**
      * Builds the URL used to talk to the weather server using latitude and longitude of a
      * location.
      *
+     * @param baseUrl   The endpoint of the weather server
      * @param latitude  The latitude of the location
      * @param longitude The longitude of the location
+     * @param count     The number of days, steps or minutes to ask for
      * @return The Url to use to query the weather server.
      */
-    private static URL buildUrlWithLatitudeLongitude(Double latitude, Double longitude) {
-        Uri weatherQueryUri = Uri.parse(FORECAST_BASE_URL).buildUpon()
+    private static URL buildUrlWithLatitudeLongitude(String baseUrl, Double latitude, Double longitude,
+                                                     int count) {
+        Uri weatherQueryUri = Uri.parse(baseUrl).buildUpon()
                 .appendQueryParameter(LAT_PARAM, String.valueOf(latitude))
                 .appendQueryParameter(LON_PARAM, String.valueOf(longitude))
                 .appendQueryParameter(FORMAT_PARAM, format)
                 .appendQueryParameter(UNITS_PARAM, units)
-                .appendQueryParameter(DAYS_PARAM, Integer.toString(numDays))
+                .appendQueryParameter(DAYS_PARAM, Integer.toString(count))
                 .build();
 
         try {
@@ -140,15 +271,17 @@ public final class NetworkUtils {
      * Builds the URL used to talk to the weather server using a location. This location is based
      * on the query capabilities of the weather provider that we are using.
      *
+     * @param baseUrl       The endpoint of the weather server
      * @param locationQuery The location that will be queried for.
+     * @param count         The number of days, steps or minutes to ask for
      * @return The URL to use to query the weather server.
      */
-    private static URL buildUrlWithLocationQuery(String locationQuery) {
-        Uri weatherQueryUri = Uri.parse(FORECAST_BASE_URL).buildUpon()
+    private static URL buildUrlWithLocationQuery(String baseUrl, String locationQuery, int count) {
+        Uri weatherQueryUri = Uri.parse(baseUrl).buildUpon()
                 .appendQueryParameter(QUERY_PARAM, locationQuery)
                 .appendQueryParameter(FORMAT_PARAM, format)
                 .appendQueryParameter(UNITS_PARAM, units)
-                .appendQueryParameter(DAYS_PARAM, Integer.toString(numDays))
+                .appendQueryParameter(DAYS_PARAM, Integer.toString(count))
                 .build();
 
         try {
@@ -169,22 +302,167 @@ public final class NetworkUtils {
      * @throws IOException Related to network and stream reading
      */
     public static String getResponseFromHttpUrl(URL url) throws IOException {
-        HttpURLConnection urlConnection = (HttpURLConnection) url.openConnection();
+        return getResponseFromHttpUrl(url, null);
+    }
+
+    /**
+     * This method returns the entire result from the HTTP response. The request can be
+     * cancelled at any time: cancelling the signal closes the connection, which unblocks a
+     * connect or a read in progress, and the response is read in chunks, checking the signal
+     * between each of them.
+     *
+     * @param url                The URL to fetch the HTTP response from.
+     * @param cancellationSignal Signal to cancel the request, or null
+     * @return The contents of the HTTP response, null if no response
+     * @throws IOException                Related to network and stream reading, including timeouts
+     * @throws OperationCanceledException If the signal was cancelled
+     */
+    public static String getResponseFromHttpUrl(URL url, CancellationSignal cancellationSignal)
+            throws IOException {
+        return getResponseFromHttpUrl(url, cancellationSignal, null);
+    }
+
+    /**
+     * Same as {@link #getResponseFromHttpUrl(URL, CancellationSignal)}, also reporting the HTTP
+     * status, the size and the phase timings of the response.
+     *
+     * @param url                The URL to fetch the HTTP response from.
+     * @param cancellationSignal Signal to cancel the request, or null
+     * @param stats              Filled with the status, size and timings of the response, or null
+     * @return The contents of the HTTP response, null if no response
+     * @throws IOException                Related to network and stream reading, including timeouts
+     * @throws OperationCanceledException If the signal was cancelled
+     */
+    public static String getResponseFromHttpUrl(URL url, CancellationSignal cancellationSignal,
+                                                ResponseStats stats) throws IOException {
+        if (stats == null) {
+            stats = new ResponseStats();
+        }
         try {
-            InputStream in = urlConnection.getInputStream();
-
-            Scanner scanner = new Scanner(in);
-            scanner.useDelimiter("\\A");
-
-            boolean hasInput = scanner.hasNext();
-            String response = null;
-            if (hasInput) {
-                response = scanner.next();
-            }
-            scanner.close();
-            return response;
+            return getTransport().execute(url, cancellationSignal, stats);
         } finally {
-            urlConnection.disconnect();
+            stats.onFinished();
+        }
+    }
+
+    /**
+     * Replaces the transport of every request to the weather server, for instance to benchmark
+     * the sync against a local server.
+     *
+     * @param transport The new transport, null to restore the default {@link PooledHttpTransport}
+     */
+    public static synchronized void setTransport(HttpTransport transport) {
+        sTransport = transport;
+    }
+
+    private static synchronized HttpTransport getTransport() {
+        if (sTransport == null) {
+            sTransport = new PooledHttpTransport();
+        }
+        return sTransport;
+    }
+
+    /**
+     * Status, size and timings of an HTTP response, as reported by
+     * {@link #getResponseFromHttpUrl(URL, CancellationSignal, ResponseStats)}.
+     */
+    public static final class ResponseStats {
+
+        /*
+         * Resolving the host name and opening the TCP connection, close to 0 when a pooled
+         * connection was reused
+         */
+        public static final int PHASE_CONNECT = 0;
+        /* TLS handshake, 0 when a pooled connection was reused */
+        public static final int PHASE_TLS = 1;
+        /* From the request being sent to the response headers */
+        public static final int PHASE_FIRST_BYTE = 2;
+        /* Reading the response body */
+        public static final int PHASE_BODY = 3;
+
+        private static final int PHASE_COUNT = 4;
+
+        private int mHttpStatus = -1;
+        private long mBytes;
+        private volatile long mFirstByteMillis = -1;
+        private final long[] mPhaseMillis = new long[PHASE_COUNT];
+
+        /* Released when the headers arrive, or when the request ends without them */
+        private final CountDownLatch mResponded = new CountDownLatch(1);
+
+        /**
+         * @return The HTTP status code, -1 if no response was received
+         */
+        public int getHttpStatus() {
+            return mHttpStatus;
+        }
+
+        /**
+         * @return Number of bytes of the response body that were read, as sent on the wire
+         */
+        public long getBytes() {
+            return mBytes;
+        }
+
+        /**
+         * @return Time from the start of the request to the response headers, in milliseconds,
+         * -1 if no response was received
+         */
+        public long getFirstByteMillis() {
+            return mFirstByteMillis;
+        }
+
+        /**
+         * @param phase One of the PHASE constants
+         * @return Time spent in that phase of the request, in milliseconds
+         */
+        public long getPhaseMillis(int phase) {
+            return mPhaseMillis[phase];
+        }
+
+        /**
+         * Waits until the response starts arriving or the request ends, whichever comes first.
+         *
+         * @return true if the request responded or ended within the timeout
+         */
+        boolean awaitResponse(long timeoutMillis) throws InterruptedException {
+            return mResponded.await(timeoutMillis, TimeUnit.MILLISECONDS);
+        }
+
+        void copyFrom(ResponseStats other) {
+            mHttpStatus = other.mHttpStatus;
+            mBytes = other.mBytes;
+            mFirstByteMillis = other.mFirstByteMillis;
+            System.arraycopy(other.mPhaseMillis, 0, mPhaseMillis, 0, PHASE_COUNT);
+        }
+
+        void setHttpStatus(int httpStatus) {
+            mHttpStatus = httpStatus;
+        }
+
+        void setBytes(long bytes) {
+            mBytes = bytes;
+        }
+
+        void setPhaseMillis(int phase, long millis) {
+            mPhaseMillis[phase] = millis;
+        }
+
+        /**
+         * Called by the transport when the response headers arrive.
+         *
+         * @param millis Time since the start of the request
+         */
+        void onFirstByte(long millis) {
+            mFirstByteMillis = millis;
+            mResponded.countDown();
+        }
+
+        /**
+         * Called by the transport when the request ends, successfully or not.
+         */
+        void onFinished() {
+            mResponded.countDown();
         }
     }
-}
\ No newline at end of file
+}
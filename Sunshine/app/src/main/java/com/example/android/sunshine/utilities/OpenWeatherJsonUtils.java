@@ -17,71 +17,97 @@ package com.example.android.sunshine.utilities;
 
 import android.content.ContentValues;
 import android.content.Context;
+import android.util.JsonReader;
 
+import com.example.android.sunshine.data.HourlyForecast;
 import com.example.android.sunshine.data.SunshinePreferences;
 import com.example.android.sunshine.data.WeatherContract;
 
-import org.json.JSONArray;
 import org.json.JSONException;
-import org.json.JSONObject;
 
+import java.io.IOException;
+import java.io.Reader;
 import java.net.HttpURLConnection;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Utility functions to handle OpenWeatherMap JSON data.
  */
 public final class OpenWeatherJsonUtils {
 
-    /* Location information */
-    private static final String OWM_CITY = "city";
-    private static final String OWM_COORD = "coord";
-
-    /* Location coordinate */
-    private static final String OWM_LATITUDE = "lat";
-    private static final String OWM_LONGITUDE = "lon";
-
-    /* Weather information. Each day's forecast info is an element of the "list" array */
+    /* Hourly forecasts: each 3-hour step is an element of the "list" array */
+    private static final String OWM_MESSAGE_CODE = "cod";
     private static final String OWM_LIST = "list";
-
-    private static final String OWM_PRESSURE = "pressure";
-    private static final String OWM_HUMIDITY = "humidity";
-    private static final String OWM_WINDSPEED = "speed";
-    private static final String OWM_WIND_DIRECTION = "deg";
-
-    /* All temperatures are children of the "temp" object */
+    private static final String OWM_DATE_TIME = "dt";
+    private static final String OWM_MAIN = "main";
     private static final String OWM_TEMPERATURE = "temp";
-
-    /* Max temperature for the day */
-    private static final String OWM_MAX = "max";
-    private static final String OWM_MIN = "min";
-
     private static final String OWM_WEATHER = "weather";
     private static final String OWM_WEATHER_ID = "id";
+    private static final String OWM_WIND = "wind";
+    private static final String OWM_WINDSPEED = "speed";
 
-    private static final String OWM_MESSAGE_CODE = "cod";
+    /* Nowcasts: each minute is an element of the "minutely" array */
+    private static final String OWM_MINUTELY = "minutely";
+    private static final String OWM_PRECIPITATION = "precipitation";
+
+    /* Steps a day can hold, at most one per hour */
+    private static final int MAX_STEPS_PER_DAY = 24;
 
     /**
-     * This method parses JSON from a web response and returns an array of Strings
-     * describing the weather over various days from the forecast.
-     * <p/>
-     * Later on, we'll be parsing the JSON into structured data within the
-     * getFullWeatherDataFromJson function, leveraging the data we have stored in the JSON. For
-     * now, we just convert the JSON into human-readable strings.
+     * This method parses JSON from a web response and returns the weather rows of the days of
+     * the forecast, with every column.
      *
      * @param forecastJsonStr JSON response from server
      *
-     * @return Array of Strings describing weather data
+     * @return The weather rows, null if the server answered with an error code
      *
      * @throws JSONException If JSON data cannot be properly parsed
      */
     public static ContentValues[] getWeatherContentValuesFromJson(Context context, String forecastJsonStr)
             throws JSONException {
 
-        JSONObject forecastJson = new JSONObject(forecastJsonStr);
+        ForecastJsonIndex index = getForecastIndexFromJson(context, forecastJsonStr);
+        if (index == null) {
+            return null;
+        }
+        return getWeatherContentValues(index, ForecastJsonIndex.FIELDS_ALL);
+    }
+
+    /**
+     * Indexes the JSON of a web response, without decoding the days yet, and saves the location
+     * of the forecast.
+     *
+     * @param forecastJsonStr JSON response from server
+     *
+     * @return The index of the days, null if the server answered with an error code
+     *
+     * @throws JSONException If JSON data cannot be properly parsed
+     */
+    public static ForecastJsonIndex getForecastIndexFromJson(Context context, String forecastJsonStr)
+            throws JSONException {
+        return getForecastIndexFromJson(context, ForecastJsonIndex.build(forecastJsonStr));
+    }
+
+    /**
+     * Same as {@link #getForecastIndexFromJson(Context, String)}, for a response that is already
+     * indexed, see {@link ForecastValidator#getIndex(String)}.
+     *
+     * @param index Index of the JSON response from server
+     *
+     * @return The index of the days, null if the server answered with an error code
+     *
+     * @throws JSONException If JSON data cannot be properly parsed
+     */
+    public static ForecastJsonIndex getForecastIndexFromJson(Context context, ForecastJsonIndex index)
+            throws JSONException {
 
         /* Is there an error? */
-        if (forecastJson.has(OWM_MESSAGE_CODE)) {
-            int errorCode = forecastJson.getInt(OWM_MESSAGE_CODE);
+        if (index.hasMessageCode()) {
+            int errorCode = index.getMessageCode();
 
             switch (errorCode) {
                 case HttpURLConnection.HTTP_OK:
@@ -95,90 +121,278 @@ public final class OpenWeatherJsonUtils {
             }
         }
 
-        JSONArray jsonWeatherArray = forecastJson.getJSONArray(OWM_LIST);
+        if (!index.hasDayList()) {
+            throw new JSONException("No list of days");
+        }
 
-        JSONObject cityJson = forecastJson.getJSONObject(OWM_CITY);
+        double[] cityCoordinates = index.getCityCoordinates();
+        SunshinePreferences.setLocationDetails(context, cityCoordinates[0], cityCoordinates[1]);
 
-        JSONObject cityCoord = cityJson.getJSONObject(OWM_COORD);
-        double cityLatitude = cityCoord.getDouble(OWM_LATITUDE);
-        double cityLongitude = cityCoord.getDouble(OWM_LONGITUDE);
+        return index;
+    }
 
-        SunshinePreferences.setLocationDetails(context, cityLatitude, cityLongitude);
+    /**
+     * Decodes some fields of every day of the forecast.
+     * <p>
+     * OWM returns daily forecasts based upon the local time of the city that is being asked for,
+     * which means that we need to know the GMT offset to translate this data properly. Since this
+     * data is also sent in-order and the first day is always the current day, we're going to take
+     * advantage of that to get a nice normalized UTC date for all of our weather. We ignore all
+     * the datetime values embedded in the JSON and assume that the values are returned in-order
+     * by day (which is not guaranteed to be correct).
+     *
+     * @param index  Index of the JSON response
+     * @param fields The fields to decode besides the date, ForecastJsonIndex.FIELD_* flags
+     * @return The weather rows, with the date and the columns of the fields
+     * @throws JSONException If one of the fields is missing or malformed
+     */
+    public static ContentValues[] getWeatherContentValues(ForecastJsonIndex index, int fields)
+            throws JSONException {
 
-        ContentValues[] weatherContentValues = new ContentValues[jsonWeatherArray.length()];
+        long normalizedUtcStartDay = SunshineDateUtils.getNormalizedUtcDateForToday();
 
-        /*
-         * OWM returns daily forecasts based upon the local time of the city that is being asked
-         * for, which means that we need to know the GMT offset to translate this data properly.
-         * Since this data is also sent in-order and the first day is always the current day, we're
-         * going to take advantage of that to get a nice normalized UTC date for all of our weather.
-         */
-//        long now = System.currentTimeMillis();
-//        long normalizedUtcStartDay = SunshineDateUtils.normalizeDate(now);
+        ContentValues[] weatherContentValues = new ContentValues[index.getDayCount()];
+        for (int i = 0; i < weatherContentValues.length; i++) {
+            ContentValues weatherValues = new ContentValues();
+            weatherValues.put(WeatherContract.WeatherEntry.COLUMN_DATE,
+                    normalizedUtcStartDay + SunshineDateUtils.DAY_IN_MILLIS * i);
+            index.decodeDay(i, fields, weatherValues);
+            weatherContentValues[i] = weatherValues;
+        }
+        return weatherContentValues;
+    }
 
-        long normalizedUtcStartDay = SunshineDateUtils.getNormalizedUtcDateForToday();
+    /**
+     * Parses the JSON of an hourly forecast as it is read, without building a JSON tree, and
+     * packs the steps of each day into a row of the hourly weather table.
+     *
+     * @param in       The JSON response from server
+     * @param location The location of the rows, see HourlyWeatherEntry#COLUMN_LOCATION
+     * @return The rows of the hourly weather table, one per day, null if the server answered
+     * with an error code
+     * @throws JSONException If JSON data cannot be properly parsed, or isn't in time order
+     */
+    public static ContentValues[] getHourlyContentValuesFromJson(Reader in, String location)
+            throws JSONException {
+        List<ContentValues> days = new ArrayList<>();
+        JsonReader reader = new JsonReader(in);
+        try {
+            reader.beginObject();
+            while (reader.hasNext()) {
+                String name = reader.nextName();
+                if (OWM_MESSAGE_CODE.equals(name)) {
+                    if (reader.nextInt() != HttpURLConnection.HTTP_OK) {
+                        return null;
+                    }
+                } else if (OWM_LIST.equals(name)) {
+                    readHourlySteps(reader, location, days);
+                } else {
+                    reader.skipValue();
+                }
+            }
+            reader.endObject();
+        } catch (IOException | RuntimeException e) {
+            JSONException jsonException = new JSONException(e.getMessage());
+            jsonException.initCause(e);
+            throw jsonException;
+        }
+        return days.toArray(new ContentValues[days.size()]);
+    }
 
-        for (int i = 0; i < jsonWeatherArray.length(); i++) {
-
-            long dateTimeMillis;
-            double pressure;
-            int humidity;
-            double windSpeed;
-            double windDirection;
-
-            double high;
-            double low;
-
-            int weatherId;
-
-            /* Get the JSON object representing the day */
-            JSONObject dayForecast = jsonWeatherArray.getJSONObject(i);
-
-            /*
-             * We ignore all the datetime values embedded in the JSON and assume that
-             * the values are returned in-order by day (which is not guaranteed to be correct).
-             */
-            dateTimeMillis = normalizedUtcStartDay + SunshineDateUtils.DAY_IN_MILLIS * i;
-
-            pressure = dayForecast.getDouble(OWM_PRESSURE);
-            humidity = dayForecast.getInt(OWM_HUMIDITY);
-            windSpeed = dayForecast.getDouble(OWM_WINDSPEED);
-            windDirection = dayForecast.getDouble(OWM_WIND_DIRECTION);
-
-            /*
-             * Description is in a child array called "weather", which is 1 element long.
-             * That element also contains a weather code.
-             */
-            JSONObject weatherObject =
-                    dayForecast.getJSONArray(OWM_WEATHER).getJSONObject(0);
-
-            weatherId = weatherObject.getInt(OWM_WEATHER_ID);
-
-            /*
-             * Temperatures are sent by Open Weather Map in a child object called "temp".
-             *
-             * Editor's Note: Try not to name variables "temp" when working with temperature.
-             * It confuses everybody. Temp could easily mean any number of things, including
-             * temperature, temporary variable, temporary folder, temporary employee, or many
-             * others, and is just a bad variable name.
-             */
-            JSONObject temperatureObject = dayForecast.getJSONObject(OWM_TEMPERATURE);
-            high = temperatureObject.getDouble(OWM_MAX);
-            low = temperatureObject.getDouble(OWM_MIN);
+    /**
+     * Parses the JSON of a nowcast as it is read, into arrays the caller can reuse from one
+     * nowcast to the next. Minutes past the size of the arrays are skipped.
+     *
+     * @param in            The JSON response from server
+     * @param times         Where the UNIX time of each minute is written
+     * @param precipitation Where the precipitation of each minute is written, in mm/h
+     * @return The number of minutes read, -1 if the server answered with an error code
+     * @throws JSONException If JSON data cannot be properly parsed
+     */
+    public static int readNowcastFromJson(Reader in, long[] times, float[] precipitation)
+            throws JSONException {
+        int count = 0;
+        JsonReader reader = new JsonReader(in);
+        try {
+            reader.beginObject();
+            while (reader.hasNext()) {
+                String name = reader.nextName();
+                if (OWM_MESSAGE_CODE.equals(name)) {
+                    if (reader.nextInt() != HttpURLConnection.HTTP_OK) {
+                        return -1;
+                    }
+                } else if (OWM_MINUTELY.equals(name)) {
+                    reader.beginArray();
+                    while (reader.hasNext()) {
+                        if (count == times.length) {
+                            reader.skipValue();
+                            continue;
+                        }
+                        long time = -1;
+                        double minutePrecipitation = Double.NaN;
+                        reader.beginObject();
+                        while (reader.hasNext()) {
+                            String member = reader.nextName();
+                            if (OWM_DATE_TIME.equals(member)) {
+                                time = TimeUnit.SECONDS.toMillis(reader.nextLong());
+                            } else if (OWM_PRECIPITATION.equals(member)) {
+                                minutePrecipitation = reader.nextDouble();
+                            } else {
+                                reader.skipValue();
+                            }
+                        }
+                        reader.endObject();
+                        if (time == -1 || Double.isNaN(minutePrecipitation)) {
+                            throw new JSONException("Incomplete minute at " + time);
+                        }
+                        times[count] = time;
+                        precipitation[count] = (float) minutePrecipitation;
+                        count++;
+                    }
+                    reader.endArray();
+                } else {
+                    reader.skipValue();
+                }
+            }
+            reader.endObject();
+        } catch (IOException | RuntimeException e) {
+            JSONException jsonException = new JSONException(e.getMessage());
+            jsonException.initCause(e);
+            throw jsonException;
+        }
+        return count;
+    }
 
-            ContentValues weatherValues = new ContentValues();
-            weatherValues.put(WeatherContract.WeatherEntry.COLUMN_DATE, dateTimeMillis);
-            weatherValues.put(WeatherContract.WeatherEntry.COLUMN_HUMIDITY, humidity);
-            weatherValues.put(WeatherContract.WeatherEntry.COLUMN_PRESSURE, pressure);
-            weatherValues.put(WeatherContract.WeatherEntry.COLUMN_WIND_SPEED, windSpeed);
-            weatherValues.put(WeatherContract.WeatherEntry.COLUMN_DEGREES, windDirection);
-            weatherValues.put(WeatherContract.WeatherEntry.COLUMN_MAX_TEMP, high);
-            weatherValues.put(WeatherContract.WeatherEntry.COLUMN_MIN_TEMP, low);
-            weatherValues.put(WeatherContract.WeatherEntry.COLUMN_WEATHER_ID, weatherId);
+    private static void readHourlySteps(JsonReader reader, String location, List<ContentValues> days)
+            throws IOException, JSONException {
+        ByteBuffer steps = ByteBuffer.allocate(MAX_STEPS_PER_DAY * HourlyForecast.STEP_BYTES);
+        long date = -1;
+        reader.beginArray();
+        while (reader.hasNext()) {
+            long time = -1;
+            double temperature = Double.NaN;
+            int weatherId = -1;
+            double windSpeed = 0;
+
+            reader.beginObject();
+            while (reader.hasNext()) {
+                String name = reader.nextName();
+                if (OWM_DATE_TIME.equals(name)) {
+                    time = TimeUnit.SECONDS.toMillis(reader.nextLong());
+                } else if (OWM_MAIN.equals(name)) {
+                    temperature = readDoubleMember(reader, OWM_TEMPERATURE);
+                } else if (OWM_WEATHER.equals(name)) {
+                    reader.beginArray();
+                    while (reader.hasNext()) {
+                        double id = readDoubleMember(reader, OWM_WEATHER_ID);
+                        if (weatherId == -1 && !Double.isNaN(id)) {
+                            weatherId = (int) id;
+                        }
+                    }
+                    reader.endArray();
+                } else if (OWM_WIND.equals(name)) {
+                    double speed = readDoubleMember(reader, OWM_WINDSPEED);
+                    windSpeed = Double.isNaN(speed) ? 0 : speed;
+                } else {
+                    reader.skipValue();
+                }
+            }
+            reader.endObject();
+            if (time == -1 || Double.isNaN(temperature) || weatherId == -1) {
+                throw new JSONException("Incomplete step at " + time);
+            }
 
-            weatherContentValues[i] = weatherValues;
+            long stepDate = SunshineDateUtils.normalizeDate(time);
+            if (stepDate != date) {
+                if (stepDate < date) {
+                    throw new JSONException("Step " + time + " is out of order");
+                }
+                addHourlyDay(location, date, steps, days);
+                date = stepDate;
+            }
+            HourlyForecast.packStep(steps, date, time, temperature, weatherId, windSpeed);
+        }
+        reader.endArray();
+        addHourlyDay(location, date, steps, days);
+    }
+
+    /*
+     * Reads an object, returns the number of one of its members, NaN if it has none.
+     */
+    private static double readDoubleMember(JsonReader reader, String member) throws IOException {
+        double value = Double.NaN;
+        reader.beginObject();
+        while (reader.hasNext()) {
+            if (member.equals(reader.nextName())) {
+                value = reader.nextDouble();
+            } else {
+                reader.skipValue();
+            }
         }
+        reader.endObject();
+        return value;
+    }
 
-        return weatherContentValues;
+    /*
+     * Turns the steps packed so far into a row, and clears them for the next day.
+     */
+    private static void addHourlyDay(String location, long date, ByteBuffer steps, List<ContentValues> days) {
+        if (steps.position() == 0) {
+            return;
+        }
+        ContentValues day = new ContentValues();
+        day.put(WeatherContract.HourlyWeatherEntry.COLUMN_LOCATION, location);
+        day.put(WeatherContract.HourlyWeatherEntry.COLUMN_DATE, date);
+        day.put(WeatherContract.HourlyWeatherEntry.COLUMN_STEPS,
+                Arrays.copyOf(steps.array(), steps.position()));
+        days.add(day);
+        steps.clear();
+    }
+
+    /**
+     * Rejects the forecast responses that report a failure of the server in their JSON: an error
+     * code the server may get over (5xx or 429), or JSON that can't even be indexed, such as the
+     * error page of a proxy. The index of the last response checked is kept, so that the response
+     * isn't indexed twice.
+     * <p>
+     * One validator per fetch, it isn't meant to be shared between threads.
+     */
+    public static final class ForecastValidator implements FetchPolicy.ResponseValidator {
+
+        private static final int HTTP_TOO_MANY_REQUESTS = 429;
+
+        private String mResponse;
+        private ForecastJsonIndex mIndex;
+
+        @Override
+        public boolean isValid(String response) {
+            mResponse = response;
+            mIndex = null;
+            if (response == null) {
+                return false;
+            }
+            try {
+                mIndex = ForecastJsonIndex.build(response);
+                if (!mIndex.hasMessageCode()) {
+                    return true;
+                }
+                int code = mIndex.getMessageCode();
+                return code != HTTP_TOO_MANY_REQUESTS && code < HttpURLConnection.HTTP_INTERNAL_ERROR;
+            } catch (JSONException e) {
+                return false;
+            }
+        }
+
+        /**
+         * @param response JSON response from server
+         * @return The index of the response, the one built when it was checked if it was
+         * @throws JSONException If the response is not a JSON object
+         */
+        public ForecastJsonIndex getIndex(String response) throws JSONException {
+            if (mIndex != null && response == mResponse) {
+                return mIndex;
+            }
+            return ForecastJsonIndex.build(response);
+        }
     }
-}
\ No newline at end of file
+}
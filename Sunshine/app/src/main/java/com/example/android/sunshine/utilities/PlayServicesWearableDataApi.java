@@ -0,0 +1,86 @@
+package com.example.android.sunshine.utilities;
+
+import android.content.Context;
+import android.os.Bundle;
+import android.support.annotation.NonNull;
+import android.util.Log;
+
+import com.google.android.gms.common.ConnectionResult;
+import com.google.android.gms.common.api.GoogleApiClient;
+import com.google.android.gms.common.api.ResultCallback;
+import com.google.android.gms.wearable.DataApi;
+import com.google.android.gms.wearable.PutDataRequest;
+import com.google.android.gms.wearable.Wearable;
+
+/**
+ * {@link WearableDataApi} backed by a single GoogleApiClient and the Wearable DataApi of Google
+ * Play Services.
+ */
+public class PlayServicesWearableDataApi implements WearableDataApi {
+
+    private static final String TAG = PlayServicesWearableDataApi.class.getSimpleName();
+
+    private final GoogleApiClient mGoogleApiClient;
+    private ConnectionCallback mConnectionCallback;
+
+    public PlayServicesWearableDataApi(Context context) {
+        mGoogleApiClient = new GoogleApiClient.Builder(context)
+                .addApi(Wearable.API)
+                .addConnectionCallbacks(new GoogleApiClient.ConnectionCallbacks() {
+                    @Override
+                    public void onConnected(Bundle connectionHint) {
+                        Log.d(TAG, "onConnected: " + connectionHint);
+                        ConnectionCallback callback = mConnectionCallback;
+                        if (callback != null) {
+                            callback.onConnected();
+                        }
+                    }
+
+                    @Override
+                    public void onConnectionSuspended(int cause) {
+                        Log.d(TAG, "onConnectionSuspended: " + cause);
+                    }
+                })
+                .addOnConnectionFailedListener(new GoogleApiClient.OnConnectionFailedListener() {
+                    @Override
+                    public void onConnectionFailed(@NonNull ConnectionResult result) {
+                        Log.d(TAG, "onConnectionFailed: " + result);
+                        ConnectionCallback callback = mConnectionCallback;
+                        if (callback != null) {
+                            callback.onConnectionFailed();
+                        }
+                    }
+                })
+                .build();
+    }
+
+    @Override
+    public void connect(ConnectionCallback callback) {
+        mConnectionCallback = callback;
+        mGoogleApiClient.connect();
+    }
+
+    @Override
+    public void disconnect() {
+        mGoogleApiClient.disconnect();
+    }
+
+    @Override
+    public boolean isConnected() {
+        return mGoogleApiClient.isConnected();
+    }
+
+    @Override
+    public void putDataItem(PutDataRequest request, final PutCallback callback) {
+        Wearable.DataApi.putDataItem(mGoogleApiClient, request)
+                .setResultCallback(new ResultCallback<DataApi.DataItemResult>() {
+                    @Override
+                    public void onResult(@NonNull DataApi.DataItemResult dataItemResult) {
+                        Log.d(TAG, "putDataItem " + dataItemResult.getStatus());
+                        if (callback != null) {
+                            callback.onResult(dataItemResult.getStatus().isSuccess());
+                        }
+                    }
+                });
+    }
+}
@@ -0,0 +1,263 @@
+package com.example.android.sunshine.utilities;
+
+import android.os.CancellationSignal;
+import android.os.SystemClock;
+
+import com.example.android.sunshine.utilities.NetworkUtils.ResponseStats;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.net.HttpURLConnection;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.net.URL;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPInputStream;
+
+import javax.net.ssl.HttpsURLConnection;
+import javax.net.ssl.SSLSocketFactory;
+
+/**
+ * The default {@link HttpTransport}, on top of HttpURLConnection.
+ * <ul>
+ * <li>Connections are kept alive: a response that is read to the end goes back to the connection
+ * pool of HttpURLConnection, and the next request to the same host skips the connect and the TLS
+ * handshake. Only failed or cancelled requests close their connection.</li>
+ * <li>The response is requested with gzip encoding and inflated here, rather than transparently,
+ * so the size reported is the size on the wire.</li>
+ * <li>Connecting and every read time out.</li>
+ * <li>Each phase of the request is timed: connect, TLS, first byte and body. The host name is
+ * resolved by the connection itself, its resolution is part of the connect phase.</li>
+ * </ul>
+ */
+public class PooledHttpTransport implements HttpTransport {
+
+    /* Time allowed to establish the connection and to wait for each read from the server */
+    private static final int CONNECT_TIMEOUT_MILLIS = (int) TimeUnit.SECONDS.toMillis(15);
+    private static final int READ_TIMEOUT_MILLIS = (int) TimeUnit.SECONDS.toMillis(20);
+
+    private static final int READ_BUFFER_CHARS = 4096;
+
+    private static final String ENCODING_GZIP = "gzip";
+
+    /*
+     * When the TCP connection of the current thread was established, set by the socket factory.
+     * HttpURLConnection connects on the calling thread, so this is how a request learns where its
+     * connect phase ends and its TLS phase starts.
+     */
+    private static final ThreadLocal<long[]> sTcpConnectedAt = new ThreadLocal<>();
+
+    /*
+     * A single instance, as HttpURLConnection only pools connections together when they share
+     * their socket factory.
+     */
+    private static SSLSocketFactory sSocketFactory;
+
+    @Override
+    public String execute(URL url, CancellationSignal cancellationSignal, ResponseStats stats)
+            throws IOException {
+        if (cancellationSignal != null) {
+            cancellationSignal.throwIfCanceled();
+        }
+
+        long requestStart = SystemClock.elapsedRealtime();
+        final HttpURLConnection urlConnection = (HttpURLConnection) url.openConnection();
+        urlConnection.setConnectTimeout(CONNECT_TIMEOUT_MILLIS);
+        urlConnection.setReadTimeout(READ_TIMEOUT_MILLIS);
+        /* Asking for gzip explicitly turns the transparent decompression off */
+        urlConnection.setRequestProperty("Accept-Encoding", ENCODING_GZIP);
+        if (urlConnection instanceof HttpsURLConnection) {
+            ((HttpsURLConnection) urlConnection).setSSLSocketFactory(getSocketFactory());
+        }
+        if (cancellationSignal != null) {
+            cancellationSignal.setOnCancelListener(new CancellationSignal.OnCancelListener() {
+                @Override
+                public void onCancel() {
+                    urlConnection.disconnect();
+                }
+            });
+        }
+
+        boolean keepConnection = false;
+        try {
+            long[] tcpConnectedAt = new long[1];
+            sTcpConnectedAt.set(tcpConnectedAt);
+            try {
+                urlConnection.connect();
+            } finally {
+                sTcpConnectedAt.remove();
+            }
+            long connectedAt = SystemClock.elapsedRealtime();
+            if (tcpConnectedAt[0] != 0) {
+                /* A new TLS connection */
+                stats.setPhaseMillis(ResponseStats.PHASE_CONNECT, tcpConnectedAt[0] - requestStart);
+                stats.setPhaseMillis(ResponseStats.PHASE_TLS, connectedAt - tcpConnectedAt[0]);
+            } else {
+                /* Plain HTTP, or a pooled connection */
+                stats.setPhaseMillis(ResponseStats.PHASE_CONNECT, connectedAt - requestStart);
+            }
+
+            InputStream rawBody = urlConnection.getInputStream();
+            long headersAt = SystemClock.elapsedRealtime();
+            stats.setHttpStatus(urlConnection.getResponseCode());
+            stats.setPhaseMillis(ResponseStats.PHASE_FIRST_BYTE, headersAt - connectedAt);
+            stats.onFirstByte(headersAt - requestStart);
+
+            CountingInputStream in = new CountingInputStream(rawBody);
+            boolean gzipped = ENCODING_GZIP.equalsIgnoreCase(urlConnection.getContentEncoding())
+                    && urlConnection.getContentLength() != 0;
+            String response = readFully(gzipped ? new GZIPInputStream(in) : in, cancellationSignal);
+            stats.setBytes(in.getCount());
+            stats.setPhaseMillis(ResponseStats.PHASE_BODY, SystemClock.elapsedRealtime() - headersAt);
+
+            /* Read to the end and closed, the connection can serve the next request */
+            keepConnection = true;
+            return response;
+        } catch (IOException e) {
+            /* A cancellation closes the connection, which surfaces as an IOException */
+            if (cancellationSignal != null) {
+                cancellationSignal.throwIfCanceled();
+            }
+            if (stats.getHttpStatus() == -1) {
+                /* Error statuses make getInputStream throw, but the status is still known */
+                try {
+                    stats.setHttpStatus(urlConnection.getResponseCode());
+                } catch (IOException ignored) {
+                    /* No response at all */
+                }
+            }
+            throw e;
+        } finally {
+            if (cancellationSignal != null) {
+                cancellationSignal.setOnCancelListener(null);
+            }
+            if (!keepConnection) {
+                urlConnection.disconnect();
+            }
+        }
+    }
+
+    /*
+     * Reads the body in chunks, checking the signal between each of them, then closes it.
+     */
+    private static String readFully(InputStream body, CancellationSignal cancellationSignal)
+            throws IOException {
+        Reader reader = new InputStreamReader(body, "UTF-8");
+        try {
+            StringBuilder response = new StringBuilder();
+            char[] buffer = new char[READ_BUFFER_CHARS];
+            int read;
+            while ((read = reader.read(buffer)) != -1) {
+                if (cancellationSignal != null) {
+                    cancellationSignal.throwIfCanceled();
+                }
+                response.append(buffer, 0, read);
+            }
+            return response.length() == 0 ? null : response.toString();
+        } finally {
+            reader.close();
+        }
+    }
+
+    private static synchronized SSLSocketFactory getSocketFactory() {
+        if (sSocketFactory == null) {
+            sSocketFactory = new TimingSocketFactory(HttpsURLConnection.getDefaultSSLSocketFactory());
+        }
+        return sSocketFactory;
+    }
+
+    /*
+     * Delegates everything to the default factory. HttpURLConnection layers TLS over a connected
+     * socket, so the layering call marks the end of the TCP connect.
+     */
+    private static final class TimingSocketFactory extends SSLSocketFactory {
+
+        private final SSLSocketFactory mDelegate;
+
+        TimingSocketFactory(SSLSocketFactory delegate) {
+            mDelegate = delegate;
+        }
+
+        @Override
+        public Socket createSocket(Socket socket, String host, int port, boolean autoClose)
+                throws IOException {
+            long[] tcpConnectedAt = sTcpConnectedAt.get();
+            if (tcpConnectedAt != null) {
+                tcpConnectedAt[0] = SystemClock.elapsedRealtime();
+            }
+            return mDelegate.createSocket(socket, host, port, autoClose);
+        }
+
+        @Override
+        public Socket createSocket() throws IOException {
+            return mDelegate.createSocket();
+        }
+
+        @Override
+        public Socket createSocket(String host, int port) throws IOException {
+            return mDelegate.createSocket(host, port);
+        }
+
+        @Override
+        public Socket createSocket(String host, int port, InetAddress localHost, int localPort)
+                throws IOException {
+            return mDelegate.createSocket(host, port, localHost, localPort);
+        }
+
+        @Override
+        public Socket createSocket(InetAddress host, int port) throws IOException {
+            return mDelegate.createSocket(host, port);
+        }
+
+        @Override
+        public Socket createSocket(InetAddress address, int port, InetAddress localAddress, int localPort)
+                throws IOException {
+            return mDelegate.createSocket(address, port, localAddress, localPort);
+        }
+
+        @Override
+        public String[] getDefaultCipherSuites() {
+            return mDelegate.getDefaultCipherSuites();
+        }
+
+        @Override
+        public String[] getSupportedCipherSuites() {
+            return mDelegate.getSupportedCipherSuites();
+        }
+    }
+
+    /* Counts the bytes read through it */
+    private static final class CountingInputStream extends FilterInputStream {
+
+        private long mCount;
+
+        CountingInputStream(InputStream in) {
+            super(in);
+        }
+
+        long getCount() {
+            return mCount;
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b != -1) {
+                mCount++;
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int length) throws IOException {
+            int read = super.read(buffer, offset, length);
+            if (read > 0) {
+                mCount += read;
+            }
+            return read;
+        }
+    }
+}
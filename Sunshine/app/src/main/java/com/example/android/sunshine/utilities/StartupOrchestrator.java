@@ -0,0 +1,141 @@
+package com.example.android.sunshine.utilities;
+
+import android.os.SystemClock;
+import android.util.Log;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executor;
+
+/**
+ * Runs named startup tasks, in dependency order, on a background {@link Executor}. Each task is
+ * timed and the timings are logged once the whole pipeline has run. If a task throws, every task
+ * depending on it (directly or not) is skipped, the remaining ones still run.
+ */
+public final class StartupOrchestrator {
+
+    private static final String TAG = StartupOrchestrator.class.getSimpleName();
+
+    private final Executor mExecutor;
+    private final Map<String, Task> mTasks = new LinkedHashMap<>();
+    private final Map<String, Long> mTimings = Collections.synchronizedMap(new LinkedHashMap<String, Long>());
+
+    public StartupOrchestrator(Executor executor) {
+        mExecutor = executor;
+    }
+
+    /**
+     * Registers a task to be executed when {@link #start()} is called.
+     *
+     * @param name         Unique name of the task, used for dependencies and timing reports
+     * @param body         The work to be performed
+     * @param dependencies Names of the tasks that must complete successfully before this one
+     * @return this orchestrator, to allow chaining
+     */
+    public StartupOrchestrator addTask(String name, Runnable body, String... dependencies) {
+        if (mTasks.containsKey(name)) {
+            throw new IllegalArgumentException("Duplicated startup task: " + name);
+        }
+        mTasks.put(name, new Task(name, body, dependencies));
+        return this;
+    }
+
+    /**
+     * Resolves the execution order of the registered tasks and runs them on the executor. This
+     * method returns immediately.
+     */
+    public void start() {
+        final List<Task> ordered = resolveOrder();
+        mExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                long pipelineStart = SystemClock.elapsedRealtime();
+                Set<String> failed = new HashSet<>();
+                for (Task task : ordered) {
+                    if (hasFailedDependency(task, failed)) {
+                        Log.w(TAG, "Skipping " + task.name + ", a dependency has failed");
+                        failed.add(task.name);
+                        continue;
+                    }
+                    long taskStart = SystemClock.elapsedRealtime();
+                    try {
+                        task.body.run();
+                    } catch (RuntimeException e) {
+                        Log.e(TAG, "Startup task " + task.name + " failed", e);
+                        failed.add(task.name);
+                    }
+                    mTimings.put(task.name, SystemClock.elapsedRealtime() - taskStart);
+                }
+                Log.d(TAG, "Startup finished in " + (SystemClock.elapsedRealtime() - pipelineStart) + "ms " + mTimings);
+            }
+        });
+    }
+
+    /**
+     * @return A snapshot of the duration, in milliseconds, of each task that has already run
+     */
+    public Map<String, Long> getTaskTimings() {
+        synchronized (mTimings) {
+            return new LinkedHashMap<>(mTimings);
+        }
+    }
+
+    private static boolean hasFailedDependency(Task task, Set<String> failed) {
+        for (String dependency : task.dependencies) {
+            if (failed.contains(dependency)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /*
+     * Depth-first topological sort. Registration order is kept for tasks that don't depend on
+     * each other, so the order is predictable.
+     */
+    private List<Task> resolveOrder() {
+        List<Task> ordered = new ArrayList<>(mTasks.size());
+        Set<String> visited = new HashSet<>();
+        Set<String> visiting = new HashSet<>();
+        for (Task task : mTasks.values()) {
+            visit(task, ordered, visited, visiting);
+        }
+        return ordered;
+    }
+
+    private void visit(Task task, List<Task> ordered, Set<String> visited, Set<String> visiting) {
+        if (visited.contains(task.name)) {
+            return;
+        }
+        if (!visiting.add(task.name)) {
+            throw new IllegalStateException("Cyclic dependency on startup task: " + task.name);
+        }
+        for (String dependency : task.dependencies) {
+            Task dependencyTask = mTasks.get(dependency);
+            if (dependencyTask == null) {
+                throw new IllegalStateException("Unknown dependency " + dependency + " for startup task " + task.name);
+            }
+            visit(dependencyTask, ordered, visited, visiting);
+        }
+        visiting.remove(task.name);
+        visited.add(task.name);
+        ordered.add(task);
+    }
+
+    private static class Task {
+        final String name;
+        final Runnable body;
+        final String[] dependencies;
+
+        Task(String name, Runnable body, String[] dependencies) {
+            this.name = name;
+            this.body = body;
+            this.dependencies = dependencies;
+        }
+    }
+}
@@ -0,0 +1,48 @@
+package com.example.android.sunshine.utilities;
+
+import com.google.android.gms.wearable.PutDataRequest;
+
+/**
+ * The part of the Wearable DataApi used by {@link WearableGateway}. The gateway talks to the
+ * watch through Google Play Services on a device ({@link PlayServicesWearableDataApi}), while a
+ * local stand-in can be used to exercise it without a watch.
+ */
+public interface WearableDataApi {
+
+    /**
+     * Receives the outcome of {@link #connect(ConnectionCallback)}. Callbacks may be delivered
+     * on any thread.
+     */
+    interface ConnectionCallback {
+
+        void onConnected();
+
+        void onConnectionFailed();
+    }
+
+    /**
+     * Receives the outcome of {@link #putDataItem(PutDataRequest, PutCallback)}. Callbacks may be
+     * delivered on any thread.
+     */
+    interface PutCallback {
+
+        void onResult(boolean success);
+    }
+
+    /**
+     * Starts connecting. The callback is notified once the connection succeeded or failed.
+     */
+    void connect(ConnectionCallback callback);
+
+    void disconnect();
+
+    boolean isConnected();
+
+    /**
+     * Sends a data item to the connected nodes. Must only be called while connected.
+     *
+     * @param request  The data item
+     * @param callback Notified once the data item was accepted or rejected, may be null
+     */
+    void putDataItem(PutDataRequest request, PutCallback callback);
+}
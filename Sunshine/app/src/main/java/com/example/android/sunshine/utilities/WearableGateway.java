@@ -0,0 +1,173 @@
+package com.example.android.sunshine.utilities;
+
+import android.content.Context;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.util.Log;
+
+import com.google.android.gms.wearable.PutDataRequest;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Long-lived, process-wide gateway to the watch. It owns one connection to the Wearable DataApi,
+ * connects on demand, queues the data items sent while it is connecting and disconnects once it
+ * has been idle for {@link #IDLE_DISCONNECT_MILLIS}.
+ * <p>
+ * Only the latest data item of each path is kept while waiting for the connection: the watch
+ * doesn't care about a forecast that was already replaced by a newer one.
+ * <p>
+ * When connecting fails while data items are waiting, the gateway tries again on its own, after
+ * a delay that doubles with each failure, from {@link #RECONNECT_INITIAL_DELAY_MILLIS} up to
+ * {@link #RECONNECT_MAX_DELAY_MILLIS}.
+ * <p>
+ * All the state of the gateway is confined to its own HandlerThread.
+ */
+public final class WearableGateway {
+
+    private static final String TAG = WearableGateway.class.getSimpleName();
+
+    static final long IDLE_DISCONNECT_MILLIS = TimeUnit.SECONDS.toMillis(30);
+
+    static final long RECONNECT_INITIAL_DELAY_MILLIS = TimeUnit.SECONDS.toMillis(5);
+    static final long RECONNECT_MAX_DELAY_MILLIS = TimeUnit.MINUTES.toMillis(5);
+
+    private static WearableGateway sInstance;
+
+    private final WearableDataApi mDataApi;
+    private final Handler mHandler;
+    private final long mReconnectInitialDelayMillis;
+
+    /* Data items waiting for the connection, by path. Only touched on mHandler's thread. */
+    private final Map<String, PendingRequest> mPendingRequests = new LinkedHashMap<>();
+    private boolean mConnecting;
+    /* Consecutive failed connections, reset once connected */
+    private int mConnectionFailures;
+
+    private final Runnable mIdleDisconnect = new Runnable() {
+        @Override
+        public void run() {
+            if (mPendingRequests.isEmpty() && mDataApi.isConnected()) {
+                Log.d(TAG, "Idle, disconnecting");
+                mDataApi.disconnect();
+            }
+        }
+    };
+
+    private final Runnable mReconnect = new Runnable() {
+        @Override
+        public void run() {
+            if (!mPendingRequests.isEmpty()) {
+                flushOrConnect();
+            }
+        }
+    };
+
+    /**
+     * @param context Used to create the Play Services connection the first time
+     * @return The gateway shared by the whole process
+     */
+    public static synchronized WearableGateway getInstance(Context context) {
+        if (sInstance == null) {
+            sInstance = new WearableGateway(new PlayServicesWearableDataApi(context.getApplicationContext()));
+        }
+        return sInstance;
+    }
+
+    WearableGateway(WearableDataApi dataApi) {
+        this(dataApi, RECONNECT_INITIAL_DELAY_MILLIS);
+    }
+
+    WearableGateway(WearableDataApi dataApi, long reconnectInitialDelayMillis) {
+        mDataApi = dataApi;
+        mReconnectInitialDelayMillis = reconnectInitialDelayMillis;
+        HandlerThread thread = new HandlerThread(TAG);
+        thread.start();
+        mHandler = new Handler(thread.getLooper());
+    }
+
+    /**
+     * Sends a data item to the watch, connecting first if needed. If another data item with the
+     * same path is still waiting for the connection, it is replaced by this one.
+     *
+     * @param request  The data item to send
+     * @param callback Notified once the data item was sent, may be null. Never called if the
+     *                 data item is replaced by a newer one before being sent.
+     */
+    public void putDataItem(final PutDataRequest request, final WearableDataApi.PutCallback callback) {
+        mHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                PendingRequest replaced = mPendingRequests.put(request.getUri().getPath(),
+                        new PendingRequest(request, callback));
+                if (replaced != null) {
+                    Log.d(TAG, "Collapsed pending update for " + request.getUri().getPath());
+                }
+                flushOrConnect();
+            }
+        });
+    }
+
+    private void flushOrConnect() {
+        if (mDataApi.isConnected()) {
+            for (PendingRequest pending : mPendingRequests.values()) {
+                mDataApi.putDataItem(pending.request, pending.callback);
+            }
+            mPendingRequests.clear();
+            mHandler.removeCallbacks(mIdleDisconnect);
+            mHandler.postDelayed(mIdleDisconnect, IDLE_DISCONNECT_MILLIS);
+        } else if (!mConnecting) {
+            mConnecting = true;
+            mDataApi.connect(new WearableDataApi.ConnectionCallback() {
+                @Override
+                public void onConnected() {
+                    mHandler.post(new Runnable() {
+                        @Override
+                        public void run() {
+                            mConnecting = false;
+                            mConnectionFailures = 0;
+                            mHandler.removeCallbacks(mReconnect);
+                            flushOrConnect();
+                        }
+                    });
+                }
+
+                @Override
+                public void onConnectionFailed() {
+                    mHandler.post(new Runnable() {
+                        @Override
+                        public void run() {
+                            /* Keep the pending items, and try again later */
+                            mConnecting = false;
+                            scheduleReconnect();
+                        }
+                    });
+                }
+            });
+        }
+    }
+
+    private void scheduleReconnect() {
+        if (mPendingRequests.isEmpty()) {
+            return;
+        }
+        long delay = Math.min(RECONNECT_MAX_DELAY_MILLIS,
+                mReconnectInitialDelayMillis << Math.min(mConnectionFailures, 16));
+        mConnectionFailures++;
+        Log.d(TAG, "Couldn't connect, trying again in " + delay + "ms");
+        mHandler.removeCallbacks(mReconnect);
+        mHandler.postDelayed(mReconnect, delay);
+    }
+
+    private static class PendingRequest {
+        final PutDataRequest request;
+        final WearableDataApi.PutCallback callback;
+
+        PendingRequest(PutDataRequest request, WearableDataApi.PutCallback callback) {
+            this.request = request;
+            this.callback = callback;
+        }
+    }
+}
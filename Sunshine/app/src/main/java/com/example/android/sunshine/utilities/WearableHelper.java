@@ -2,100 +2,234 @@ package com.example.android.sunshine.utilities;
 
 import android.content.ContentResolver;
 import android.content.Context;
-import android.content.res.Resources;
 import android.database.Cursor;
-import android.graphics.Bitmap;
-import android.graphics.BitmapFactory;
-import android.net.Uri;
-import android.os.Bundle;
-import android.support.annotation.NonNull;
 import android.util.Log;
 
+import com.example.android.sunshine.MainActivity;
+import com.example.android.sunshine.data.ForecastSnapshot;
+import com.example.android.sunshine.data.SunshinePreferences;
 import com.example.android.sunshine.data.WeatherContract;
-import com.google.android.gms.common.ConnectionResult;
-import com.google.android.gms.common.api.GoogleApiClient;
-import com.google.android.gms.common.api.ResultCallback;
-import com.google.android.gms.wearable.Asset;
-import com.google.android.gms.wearable.DataApi;
+import com.example.android.sunshine.shared.ForecastPayload;
+import com.example.android.sunshine.sync.SunshineSyncUtils;
 import com.google.android.gms.wearable.PutDataMapRequest;
-import com.google.android.gms.wearable.PutDataRequest;
-import com.google.android.gms.wearable.Wearable;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 public class WearableHelper {
     
     private static final String TAG = WearableHelper.class.getSimpleName();
-    private final GoogleApiClient mGoogleApiClient;
-    private Context context;
     
-    public WearableHelper(Context context) {
-        this.context = context;
-        //update weareable datas
-        GoogleApiClient.Builder builder = new GoogleApiClient.Builder(context).addApi(Wearable.API);
-        builder = builder.addConnectionCallbacks(new GoogleApiClient.ConnectionCallbacks() {
-            @Override
-            public void onConnected(Bundle connectionHint) {
-                Log.d(TAG, "onConnected: " + connectionHint);
-                updateWearable();
-            }
-            
-            @Override
-            public void onConnectionSuspended(int cause) {
-                Log.d(TAG, "onConnectionSuspended: " + cause);
+    /*
+     * A change of today's high or low temperature of at least this many degrees Celsius is worth
+     * waking the watch up right away. Smaller changes are delivered whenever the system batches
+     * its next DataApi sync.
+     */
+    private static final double URGENT_TEMPERATURE_DELTA = 2.0;
+    
+    private static final AtomicInteger sPushesSent = new AtomicInteger();
+    private static final AtomicInteger sPushesSkipped = new AtomicInteger();
+    private static final AtomicInteger sUrgentPushes = new AtomicInteger();
+    
+    /**
+     * Sends the whole forecast window, from today onwards, to the watch through the process-wide
+     * {@link WearableGateway}. The forecast is encoded as a compact {@link ForecastPayload}, and
+     * the watch picks the icons from its own resources.
+     *
+     * @param context Context used to query our ContentProvider and reach the gateway
+     */
+    public static void updateWearable(Context context) {
+        
+        Log.d(TAG, "Quering...");
+        ContentResolver cr = context.getContentResolver();
+        Cursor forecastCursor = cr.query(
+                WeatherContract.WeatherEntry.CONTENT_URI,
+                MainActivity.MAIN_FORECAST_PROJECTION,
+                WeatherContract.WeatherEntry.getSqlSelectForTodayOnwards(),
+                null,
+                WeatherContract.WeatherEntry.COLUMN_DATE + " ASC");
+        
+        if (forecastCursor == null) {
+            return;
+        }
+        
+        ForecastPayload payload;
+        try {
+            int count = forecastCursor.getCount();
+            if (count == 0) {
+                return;
             }
-        }).addOnConnectionFailedListener(new GoogleApiClient.OnConnectionFailedListener() {
-            @Override
-            public void onConnectionFailed(ConnectionResult result) {
-                Log.d(TAG, "onConnectionFailed: " + result);
+            long[] dates = new long[count];
+            int[] weatherIds = new int[count];
+            double[] highs = new double[count];
+            double[] lows = new double[count];
+            for (int i = 0; forecastCursor.moveToNext(); i++) {
+                dates[i] = forecastCursor.getLong(MainActivity.INDEX_WEATHER_DATE);
+                weatherIds[i] = forecastCursor.getInt(MainActivity.INDEX_WEATHER_CONDITION_ID);
+                highs[i] = forecastCursor.getDouble(MainActivity.INDEX_WEATHER_MAX_TEMP);
+                lows[i] = forecastCursor.getDouble(MainActivity.INDEX_WEATHER_MIN_TEMP);
             }
-        });
-        mGoogleApiClient = builder.build();
-        mGoogleApiClient.connect();
+            payload = new ForecastPayload(getLastSync(cr), dates, weatherIds, highs, lows);
+        } finally {
+            forecastCursor.close();
+        }
+        
+        sendPayload(context, payload);
+    }
+    
+    /*
+     * UNIX time of the last sync of the weather table, 0 if it can't be read.
+     */
+    private static long getLastSync(ContentResolver cr) {
+        Cursor cursor = cr.query(WeatherContract.MetadataEntry.CONTENT_URI,
+                new String[]{WeatherContract.MetadataEntry.COLUMN_LAST_SYNC}, null, null, null);
+        if (cursor == null) {
+            return 0;
+        }
+        try {
+            return cursor.moveToFirst() ? cursor.getLong(0) : 0;
+        } finally {
+            cursor.close();
+        }
+    }
+
+    /**
+     * Same as {@link #updateWearable(Context)}, from the forecast a sync just wrote rather than
+     * from our ContentProvider.
+     * <p>
+     * The payload carries the time the forecast was fetched at, which a forecast served from
+     * the cache doesn't change.
+     *
+     * @param context  Context used to reach the gateway
+     * @param snapshot The forecast written by the sync
+     * @param syncedAt UNIX time at which the forecast was fetched from the weather server
+     */
+    public static void updateWearable(Context context, ForecastSnapshot snapshot, long syncedAt) {
+        ForecastPayload payload = snapshot.toForecastPayload(SunshineDateUtils.getNormalizedUtcDateForToday(),
+                syncedAt);
+        if (payload.size() == 0) {
+            return;
+        }
+        sendPayload(context, payload);
     }
     
-    void updateWearable() {
-            
-            /* Build the URI for today's weather in order to show up to date data in notification */
-        Uri todaysWeatherUri = WeatherContract.WeatherEntry
-                .buildWeatherUriWithDate(SunshineDateUtils.normalizeDate(System.currentTimeMillis()));
+    private static void sendPayload(Context context, ForecastPayload payload) {
+        final byte[] encodedPayload = payload.encode();
         
-        Log.d(TAG, "Quering...");
-        ContentResolver cr = context.getContentResolver();
-        Cursor todayWeatherCursor = cr.query(todaysWeatherUri, NotificationUtils.WEATHER_NOTIFICATION_PROJECTION, null, null, null);
+        /*
+         * Nothing to do if the watch already acknowledged the same days, unless the time of
+         * their sync needs to be refreshed
+         */
+        byte[] lastPayload = SunshinePreferences.getLastWearablePayload(context);
+        ForecastPayload previous = decodeOrNull(lastPayload);
+        if (previous != null && previous.hasSameDays(payload) && !isGoingStale(context, previous)) {
+            sPushesSkipped.incrementAndGet();
+            Log.d(TAG, "Forecast unchanged, skipping push. " + getPushCountersDescription());
+            return;
+        }
+        
+        PutDataMapRequest putDataMapRequest = PutDataMapRequest.create(ForecastPayload.PATH);
+        putDataMapRequest.getDataMap().putByteArray(ForecastPayload.KEY_FORECAST, encodedPayload);
         
-        if (todayWeatherCursor.moveToFirst()) {
-            Log.d(TAG, "Find!");
-                /* Weather ID as returned by API, used to identify the icon to be used */
-            int weatherId = todayWeatherCursor.getInt(NotificationUtils.INDEX_WEATHER_ID);
-            double high = todayWeatherCursor.getDouble(NotificationUtils.INDEX_MAX_TEMP);
-            double low = todayWeatherCursor.getDouble(NotificationUtils.INDEX_MIN_TEMP);
-            
-            Resources resources = context.getResources();
-            int largeArtResourceId = SunshineWeatherUtils.getSmallArtResourceIdForWeatherCondition(weatherId);
-            
-            Bitmap icon = BitmapFactory.decodeResource(resources, largeArtResourceId);
-            Asset asset = SunshineIOUtils.createAssetFromBitmap(icon);
-            
-            PutDataMapRequest putDataMapRequest = PutDataMapRequest.create("/sunshine");
-            putDataMapRequest.getDataMap().putDouble("max", high);
-            putDataMapRequest.getDataMap().putDouble("min", low);
-            putDataMapRequest.getDataMap().putAsset("icon", asset);
-            Log.d(TAG, "Sending " + high + " " + low + " " + largeArtResourceId);
-            
-            PutDataRequest request = putDataMapRequest.asPutDataRequest();
+        /* Urgency must be set before the request is built, or it is lost */
+        boolean urgent = isUrgent(previous, payload);
+        if (urgent) {
             putDataMapRequest.setUrgent();
-            ResultCallback<DataApi.DataItemResult> resultCallback = new ResultCallback<DataApi.DataItemResult>() {
-                @Override
-                public void onResult(@NonNull DataApi.DataItemResult dataItemResult) {
-                    if (dataItemResult.getStatus().isSuccess()) {
-                        Log.d(TAG, "Enviou");
-                    } else {
-                        Log.d(TAG, "Deu banzo");
+            sUrgentPushes.incrementAndGet();
+        }
+        sPushesSent.incrementAndGet();
+        Log.d(TAG, "Sending " + payload.size() + " days, " + encodedPayload.length + " bytes, urgent: " + urgent
+                + ". " + getPushCountersDescription());
+        
+        final Context appContext = context.getApplicationContext();
+        WearableGateway.getInstance(context).putDataItem(putDataMapRequest.asPutDataRequest(),
+                new WearableDataApi.PutCallback() {
+                    @Override
+                    public void onResult(boolean success) {
+                        if (success) {
+                            SunshinePreferences.saveLastWearablePayload(appContext, encodedPayload);
+                        }
                     }
-                }
-            };
-            Wearable.DataApi.putDataItem(mGoogleApiClient, request).setResultCallback(resultCallback);
-            Log.d(TAG, "Sended!");
+                });
+    }
+    
+    /*
+     * Decodes the payload last acknowledged by the watch, null if there is none or it can't be.
+     */
+    private static ForecastPayload decodeOrNull(byte[] lastPayload) {
+        if (lastPayload == null) {
+            return null;
         }
-        todayWeatherCursor.close();
+        try {
+            return ForecastPayload.decode(lastPayload);
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Tells whether the forecast the watch has would be stale before the next periodic sync
+     * is due, at the latest. The watch only learns that its forecast is still current from a
+     * push, even an unchanged one.
+     *
+     * @param context  Context used to read the interval of the periodic sync
+     * @param previous The payload last acknowledged by the watch
+     * @return true if an unchanged forecast should be pushed anyway
+     */
+    private static boolean isGoingStale(Context context, ForecastPayload previous) {
+        /* The next sync may run up to a third of its interval late */
+        long nextSyncMillis = TimeUnit.SECONDS.toMillis(SunshineSyncUtils.getCurrentSyncIntervalSeconds(context)) * 4 / 3;
+        return System.currentTimeMillis() + nextSyncMillis - previous.getSyncedAt()
+                >= ForecastPayload.STALE_AFTER_MILLIS;
+    }
+
+    /**
+     * Urgency policy of the pushes to the watch. A push is urgent when the watch shows nothing
+     * yet, when today's condition changed, or when today's high or low moved by at least
+     * {@link #URGENT_TEMPERATURE_DELTA} degrees. An unchanged forecast pushed to refresh the
+     * time of its sync is never urgent.
+     *
+     * @param previous The payload last acknowledged by the watch, null if there is none
+     * @param payload  The payload about to be sent
+     * @return true if the push should wake the watch up right away
+     */
+    private static boolean isUrgent(ForecastPayload previous, ForecastPayload payload) {
+        if (previous == null) {
+            return true;
+        }
+        long today = SunshineDateUtils.getNormalizedUtcDateForToday();
+        int previousIndex = previous.indexOfDate(today);
+        int currentIndex = payload.indexOfDate(today);
+        if (previousIndex == -1 || currentIndex == -1) {
+            return previousIndex != currentIndex;
+        }
+        return previous.getWeatherId(previousIndex) != payload.getWeatherId(currentIndex)
+                || Math.abs(previous.getHigh(previousIndex) - payload.getHigh(currentIndex)) >= URGENT_TEMPERATURE_DELTA
+                || Math.abs(previous.getLow(previousIndex) - payload.getLow(currentIndex)) >= URGENT_TEMPERATURE_DELTA;
+    }
+    
+    /**
+     * @return Number of forecast pushes sent to the watch since the process started
+     */
+    public static int getPushesSent() {
+        return sPushesSent.get();
+    }
+    
+    /**
+     * @return Number of forecast pushes skipped because the watch already had the same forecast
+     */
+    public static int getPushesSkipped() {
+        return sPushesSkipped.get();
+    }
+    
+    /**
+     * @return Number of pushes, among the ones sent, that were marked as urgent
+     */
+    public static int getUrgentPushes() {
+        return sUrgentPushes.get();
+    }
+    
+    private static String getPushCountersDescription() {
+        return "Sent: " + getPushesSent() + ", skipped: " + getPushesSkipped() + ", urgent: " + getUrgentPushes();
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,191 @@
+package com.example.android.sunshine.utilities;
+
+import android.content.ComponentCallbacks2;
+import android.content.Context;
+import android.content.res.Configuration;
+import android.content.res.Resources;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.graphics.Canvas;
+import android.graphics.drawable.Drawable;
+import android.support.annotation.DrawableRes;
+import android.support.v4.content.ContextCompat;
+import android.util.Log;
+import android.util.LruCache;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Process-wide, memory bounded cache of the weather art bitmaps used by the notification and the
+ * wearable. Bitmaps are keyed by art resource id and target size, and are decoded directly at
+ * that size: PNGs are sub-sampled and scaled while decoding, vector drawables are rasterized on a
+ * bitmap of the exact size.
+ * <p>
+ * The cache releases its bitmaps when the system asks the app to trim its memory.
+ */
+public final class WeatherArtCache {
+
+    private static final String TAG = WeatherArtCache.class.getSimpleName();
+
+    /* Upper bound of the memory retained by the cache, whatever the size of the heap */
+    private static final int MAX_CACHE_BYTES = 4 * 1024 * 1024;
+
+    private static LruCache<String, Bitmap> sCache;
+    private static int sDecodeCount;
+
+    private WeatherArtCache() {
+    }
+
+    /**
+     * Returns the art for the given resource, at the given size in pixels. The bitmap is shared
+     * with every other caller and must not be recycled or modified.
+     *
+     * @param context  Used to access the resources
+     * @param resId    Drawable resource of the art (PNG or vector)
+     * @param widthPx  Width of the returned bitmap
+     * @param heightPx Height of the returned bitmap
+     * @return The art bitmap, or null if the resource can't be decoded
+     */
+    public static Bitmap getBitmap(Context context, @DrawableRes int resId, int widthPx, int heightPx) {
+        LruCache<String, Bitmap> cache = getCache(context);
+        String key = resId + ":" + widthPx + "x" + heightPx;
+
+        Bitmap bitmap = cache.get(key);
+        if (bitmap != null) {
+            return bitmap;
+        }
+
+        bitmap = decode(context, resId, widthPx, heightPx);
+        if (bitmap != null) {
+            cache.put(key, bitmap);
+            synchronized (WeatherArtCache.class) {
+                sDecodeCount++;
+            }
+            Log.d(TAG, "Decoded " + key + ", " + getDecodeCount() + " decodes, "
+                    + getBytesRetained() + " bytes retained");
+        }
+        return bitmap;
+    }
+
+    /**
+     * @return Number of bitmaps decoded since the process started
+     */
+    public static synchronized int getDecodeCount() {
+        return sDecodeCount;
+    }
+
+    /**
+     * @return Number of bytes of bitmap memory currently held by the cache
+     */
+    public static synchronized int getBytesRetained() {
+        return sCache == null ? 0 : sCache.size();
+    }
+
+    /**
+     * Releases cached bitmaps according to the memory pressure level.
+     *
+     * @param level One of the ComponentCallbacks2 TRIM_MEMORY_* levels
+     */
+    public static synchronized void onTrimMemory(int level) {
+        if (sCache == null) {
+            return;
+        }
+        if (level >= ComponentCallbacks2.TRIM_MEMORY_BACKGROUND) {
+            sCache.evictAll();
+        } else if (level >= ComponentCallbacks2.TRIM_MEMORY_RUNNING_MODERATE) {
+            sCache.trimToSize(sCache.maxSize() / 2);
+        }
+    }
+
+    private static synchronized LruCache<String, Bitmap> getCache(Context context) {
+        if (sCache == null) {
+            int maxBytes = (int) Math.min(MAX_CACHE_BYTES, Runtime.getRuntime().maxMemory() / 32);
+            sCache = new LruCache<String, Bitmap>(maxBytes) {
+                @Override
+                protected int sizeOf(String key, Bitmap bitmap) {
+                    return bitmap.getByteCount();
+                }
+            };
+
+            /* Listen to memory pressure for the whole process, not just one component */
+            context.getApplicationContext().registerComponentCallbacks(new ComponentCallbacks2() {
+                @Override
+                public void onTrimMemory(int level) {
+                    WeatherArtCache.onTrimMemory(level);
+                }
+
+                @Override
+                public void onConfigurationChanged(Configuration newConfig) {
+                }
+
+                @Override
+                public void onLowMemory() {
+                    WeatherArtCache.onTrimMemory(ComponentCallbacks2.TRIM_MEMORY_COMPLETE);
+                }
+            });
+        }
+        return sCache;
+    }
+
+    private static Bitmap decode(Context context, @DrawableRes int resId, int widthPx, int heightPx) {
+        Resources resources = context.getResources();
+
+        /* First, read only the dimensions of the encoded image, if this is an encoded image */
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inJustDecodeBounds = true;
+        decodeStream(resources, resId, options);
+
+        if (options.outWidth <= 0 || options.outHeight <= 0) {
+            /* Not a bitmap (most of our large art are vector drawables), rasterize it */
+            return rasterize(context, resId, widthPx, heightPx);
+        }
+
+        /*
+         * Sub-sample by the largest power of two that keeps the image at least as big as the
+         * target, then let the decoder scale the rest of the way by faking the densities.
+         */
+        int sampleSize = 1;
+        while (options.outWidth / (sampleSize * 2) >= widthPx
+                && options.outHeight / (sampleSize * 2) >= heightPx) {
+            sampleSize *= 2;
+        }
+
+        options.inJustDecodeBounds = false;
+        options.inSampleSize = sampleSize;
+        options.inScaled = true;
+        options.inDensity = options.outWidth / sampleSize;
+        options.inTargetDensity = widthPx;
+
+        Bitmap bitmap = decodeStream(resources, resId, options);
+        if (bitmap != null) {
+            bitmap.setDensity(resources.getDisplayMetrics().densityDpi);
+        }
+        return bitmap;
+    }
+
+    private static Bitmap decodeStream(Resources resources, @DrawableRes int resId, BitmapFactory.Options options) {
+        InputStream in = resources.openRawResource(resId);
+        try {
+            return BitmapFactory.decodeStream(in, null, options);
+        } finally {
+            try {
+                in.close();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    private static Bitmap rasterize(Context context, @DrawableRes int resId, int widthPx, int heightPx) {
+        Drawable drawable = ContextCompat.getDrawable(context, resId);
+        if (drawable == null) {
+            return null;
+        }
+        Bitmap bitmap = Bitmap.createBitmap(widthPx, heightPx, Bitmap.Config.ARGB_8888);
+        Canvas canvas = new Canvas(bitmap);
+        drawable.setBounds(0, 0, widthPx, heightPx);
+        drawable.draw(canvas);
+        return bitmap;
+    }
+}
@@ -0,0 +1,225 @@
+package com.example.android.sunshine.widget;
+
+import android.appwidget.AppWidgetManager;
+import android.content.Context;
+import android.content.Intent;
+import android.content.res.Resources;
+import android.database.Cursor;
+import android.graphics.Bitmap;
+import android.os.Binder;
+import android.os.Bundle;
+import android.widget.RemoteViews;
+import android.widget.RemoteViewsService;
+
+import com.example.android.sunshine.R;
+import com.example.android.sunshine.data.ForecastSnapshot;
+import com.example.android.sunshine.data.SunshinePreferences;
+import com.example.android.sunshine.data.WeatherContract.WeatherEntry;
+import com.example.android.sunshine.utilities.SunshineDateUtils;
+import com.example.android.sunshine.utilities.SunshineWeatherUtils;
+import com.example.android.sunshine.utilities.WeatherArtCache;
+
+import static com.example.android.sunshine.widget.ForecastWidgetProvider.MAX_DAYS;
+
+/**
+ * Builds the days of a forecast widget, from the forecast the latest sync kept in memory, or
+ * from a single query of the weather table, by its date index, when there is none.
+ * <p>
+ * Each cell remembers the day it was built from, and is only built again when that day changed,
+ * or when the date of today, the units or the size of the widget did. The art is decoded at the size of the widget
+ * before the cells are built, rather than scaled by the launcher.
+ */
+class ForecastWidgetFactory implements RemoteViewsService.RemoteViewsFactory {
+
+    private final Context mContext;
+    private final int mAppWidgetId;
+
+    /* The views of each cell, and the day they were built from */
+    private final RemoteViews[] mCells = new RemoteViews[MAX_DAYS];
+    private final long[] mCellDates = new long[MAX_DAYS];
+    private final int[] mCellWeatherIds = new int[MAX_DAYS];
+    private final double[] mCellHighs = new double[MAX_DAYS];
+    private final double[] mCellLows = new double[MAX_DAYS];
+    private int mCellCount;
+
+    /* What every cell depends on */
+    private long mToday;
+    private boolean mMetric;
+    private int mIconSizePx;
+
+    ForecastWidgetFactory(Context context, int appWidgetId) {
+        mContext = context;
+        mAppWidgetId = appWidgetId;
+    }
+
+    @Override
+    public void onCreate() {
+    }
+
+    /**
+     * Called on a worker thread of the service when the widget is created, resized, or reloaded
+     * by {@link ForecastWidgetProvider}. Builds the cells whose day changed.
+     */
+    @Override
+    public void onDataSetChanged() {
+        long today = SunshineDateUtils.getNormalizedUtcDateForToday();
+        ForecastSnapshot snapshot = ForecastWidgetProvider.getSyncedSnapshot();
+        if (snapshot == null || snapshot.indexFromDate(today) == snapshot.size()) {
+            snapshot = queryForecast();
+        }
+        bindCells(snapshot, today, SunshinePreferences.isMetric(mContext), getIconSizePx());
+    }
+
+    /**
+     * Binds the cells to the days of the snapshot from today onwards. A cell is only built again
+     * when its day, or what every cell depends on, changed.
+     *
+     * @param snapshot   The forecast, null if there is none
+     * @param today      Normalized UTC date of today
+     * @param metric     Whether the temperatures are shown in metric units
+     * @param iconSizePx Size of the art, in pixels
+     * @return The number of cells built
+     */
+    int bindCells(ForecastSnapshot snapshot, long today, boolean metric, int iconSizePx) {
+        /* The dates of the cells are relative to today: "Today", "Tomorrow", then week days */
+        boolean rebuildAll = today != mToday || metric != mMetric || iconSizePx != mIconSizePx;
+        mToday = today;
+        mMetric = metric;
+        mIconSizePx = iconSizePx;
+
+        int built = 0;
+        int from = snapshot == null ? 0 : snapshot.indexFromDate(today);
+        int count = snapshot == null ? 0 : Math.min(MAX_DAYS, snapshot.size() - from);
+        for (int cell = 0; cell < count; cell++) {
+            int day = from + cell;
+            if (!rebuildAll && mCells[cell] != null
+                    && mCellDates[cell] == snapshot.getDate(day)
+                    && mCellWeatherIds[cell] == snapshot.getWeatherId(day)
+                    && mCellHighs[cell] == snapshot.getHigh(day)
+                    && mCellLows[cell] == snapshot.getLow(day)) {
+                continue;
+            }
+            mCellDates[cell] = snapshot.getDate(day);
+            mCellWeatherIds[cell] = snapshot.getWeatherId(day);
+            mCellHighs[cell] = snapshot.getHigh(day);
+            mCellLows[cell] = snapshot.getLow(day);
+            mCells[cell] = buildCell(cell);
+            built++;
+        }
+        for (int cell = count; cell < MAX_DAYS; cell++) {
+            mCells[cell] = null;
+        }
+        mCellCount = count;
+        return built;
+    }
+
+    /*
+     * Queries the days from today onwards. The launcher is the caller of the factory, and our
+     * provider isn't exported, so the query is made as the app itself.
+     */
+    private ForecastSnapshot queryForecast() {
+        long identity = Binder.clearCallingIdentity();
+        try {
+            Cursor cursor = mContext.getContentResolver().query(
+                    WeatherEntry.CONTENT_URI,
+                    ForecastSnapshot.PROJECTION,
+                    WeatherEntry.getSqlSelectForTodayOnwards(),
+                    null,
+                    WeatherEntry.COLUMN_DATE + " ASC");
+            if (cursor == null) {
+                return null;
+            }
+            try {
+                return ForecastSnapshot.fromCursor(cursor);
+            } finally {
+                cursor.close();
+            }
+        } finally {
+            Binder.restoreCallingIdentity(identity);
+        }
+    }
+
+    /*
+     * Size of the art in pixels: the height of a cell, when the widget is as tall as it gets,
+     * minus its padding, within the bounds of the widget dimensions.
+     */
+    private int getIconSizePx() {
+        Resources resources = mContext.getResources();
+        Bundle options = AppWidgetManager.getInstance(mContext).getAppWidgetOptions(mAppWidgetId);
+        int maxHeightDp = options.getInt(AppWidgetManager.OPTION_APPWIDGET_MAX_HEIGHT);
+        int sizePx = (int) (maxHeightDp * resources.getDisplayMetrics().density) / (MAX_DAYS + 1)
+                - 2 * resources.getDimensionPixelSize(R.dimen.widget_item_padding_vertical);
+        int minSizePx = resources.getDimensionPixelSize(R.dimen.widget_icon_min_size);
+        int maxSizePx = resources.getDimensionPixelSize(R.dimen.widget_icon_max_size);
+        return Math.max(minSizePx, Math.min(maxSizePx, sizePx));
+    }
+
+    private RemoteViews buildCell(int cell) {
+        RemoteViews views = new RemoteViews(mContext.getPackageName(), R.layout.widget_forecast_item);
+
+        int weatherId = mCellWeatherIds[cell];
+        String description = SunshineWeatherUtils.getStringForWeatherCondition(mContext, weatherId);
+        Bitmap art = WeatherArtCache.getBitmap(mContext,
+                SunshineWeatherUtils.getSmallArtResourceIdForWeatherCondition(weatherId),
+                mIconSizePx, mIconSizePx);
+        if (art != null) {
+            views.setImageViewBitmap(R.id.widget_icon, art);
+        }
+        views.setContentDescription(R.id.widget_icon,
+                mContext.getString(R.string.a11y_forecast_icon, description));
+
+        views.setTextViewText(R.id.widget_date,
+                SunshineDateUtils.getFriendlyDateString(mContext, mCellDates[cell], false));
+        views.setTextViewText(R.id.widget_description, description);
+
+        String high = SunshineWeatherUtils.formatTemperature(mContext, mCellHighs[cell]);
+        String low = SunshineWeatherUtils.formatTemperature(mContext, mCellLows[cell]);
+        views.setTextViewText(R.id.widget_high_temperature, high);
+        views.setContentDescription(R.id.widget_high_temperature, mContext.getString(R.string.a11y_high_temp, high));
+        views.setTextViewText(R.id.widget_low_temperature, low);
+        views.setContentDescription(R.id.widget_low_temperature, mContext.getString(R.string.a11y_low_temp, low));
+
+        Intent fillInIntent = new Intent();
+        fillInIntent.setData(WeatherEntry.buildWeatherUriWithDate(mCellDates[cell]));
+        views.setOnClickFillInIntent(R.id.widget_item, fillInIntent);
+        return views;
+    }
+
+    @Override
+    public int getCount() {
+        return mCellCount;
+    }
+
+    @Override
+    public RemoteViews getViewAt(int position) {
+        return position < mCellCount ? mCells[position] : null;
+    }
+
+    @Override
+    public RemoteViews getLoadingView() {
+        return null;
+    }
+
+    @Override
+    public int getViewTypeCount() {
+        return 1;
+    }
+
+    @Override
+    public long getItemId(int position) {
+        return mCellDates[position];
+    }
+
+    @Override
+    public boolean hasStableIds() {
+        return true;
+    }
+
+    @Override
+    public void onDestroy() {
+        for (int cell = 0; cell < MAX_DAYS; cell++) {
+            mCells[cell] = null;
+        }
+        mCellCount = 0;
+    }
+}
@@ -0,0 +1,153 @@
+package com.example.android.sunshine.widget;
+
+import android.app.PendingIntent;
+import android.appwidget.AppWidgetManager;
+import android.appwidget.AppWidgetProvider;
+import android.content.ComponentName;
+import android.content.Context;
+import android.content.Intent;
+import android.net.Uri;
+import android.os.Bundle;
+import android.support.v4.app.TaskStackBuilder;
+import android.util.Log;
+import android.widget.RemoteViews;
+
+import com.example.android.sunshine.DetailActivity;
+import com.example.android.sunshine.MainActivity;
+import com.example.android.sunshine.R;
+import com.example.android.sunshine.data.ForecastSnapshot;
+import com.example.android.sunshine.utilities.SunshineDateUtils;
+
+/**
+ * Home-screen widget listing today and the next few days.
+ * <p>
+ * The widget has no update period of its own: the sync refreshes it as one of its fan-out
+ * consumers, with the forecast it just wrote. That forecast is kept in memory for
+ * {@link ForecastWidgetFactory}, which only queries the ContentProvider when the process was
+ * started after the latest sync. A sync that leaves the days shown unchanged doesn't reload the
+ * widgets at all.
+ * <p>
+ * The days shown start at today, and are labelled relative to it, so the widgets are also
+ * reloaded when the date changes, whether at midnight or with the time zone or the clock.
+ */
+public class ForecastWidgetProvider extends AppWidgetProvider {
+
+    private static final String TAG = ForecastWidgetProvider.class.getSimpleName();
+
+    /* Number of days shown, today included */
+    static final int MAX_DAYS = 5;
+
+    /* The latest forecast written by a sync of this process, null until then */
+    private static volatile ForecastSnapshot sSyncedSnapshot;
+
+    @Override
+    public void onUpdate(Context context, AppWidgetManager appWidgetManager, int[] appWidgetIds) {
+        for (int appWidgetId : appWidgetIds) {
+            appWidgetManager.updateAppWidget(appWidgetId, buildWidgetViews(context, appWidgetId));
+        }
+    }
+
+    @Override
+    public void onReceive(Context context, Intent intent) {
+        super.onReceive(context, intent);
+        String action = intent.getAction();
+        if (Intent.ACTION_DATE_CHANGED.equals(action)
+                || Intent.ACTION_TIMEZONE_CHANGED.equals(action)
+                || Intent.ACTION_TIME_CHANGED.equals(action)) {
+            refreshWidgets(context);
+        }
+    }
+
+    @Override
+    public void onAppWidgetOptionsChanged(Context context, AppWidgetManager appWidgetManager, int appWidgetId,
+                                          Bundle newOptions) {
+        /* The widget was resized, its art is decoded again at the new size */
+        appWidgetManager.notifyAppWidgetViewDataChanged(appWidgetId, R.id.widget_list);
+    }
+
+    private static RemoteViews buildWidgetViews(Context context, int appWidgetId) {
+        RemoteViews views = new RemoteViews(context.getPackageName(), R.layout.widget_forecast);
+
+        Intent launchIntent = new Intent(context, MainActivity.class);
+        views.setOnClickPendingIntent(R.id.widget_title,
+                PendingIntent.getActivity(context, 0, launchIntent, 0));
+
+        /*
+         * The data makes the intent unique per widget, so that each widget gets a factory of its
+         * own: they may not have the same size.
+         */
+        Intent serviceIntent = new Intent(context, ForecastWidgetService.class);
+        serviceIntent.putExtra(AppWidgetManager.EXTRA_APPWIDGET_ID, appWidgetId);
+        serviceIntent.setData(Uri.parse(serviceIntent.toUri(Intent.URI_INTENT_SCHEME)));
+        views.setRemoteAdapter(R.id.widget_list, serviceIntent);
+        views.setEmptyView(R.id.widget_list, R.id.widget_empty);
+
+        /* Each day fills in the URI of its details, see ForecastWidgetFactory */
+        PendingIntent detailTemplate = TaskStackBuilder.create(context)
+                .addNextIntentWithParentStack(new Intent(context, DetailActivity.class))
+                .getPendingIntent(0, PendingIntent.FLAG_UPDATE_CURRENT);
+        views.setPendingIntentTemplate(R.id.widget_list, detailTemplate);
+        return views;
+    }
+
+    /**
+     * Hands the forecast a sync just wrote to the widgets, and has their list reloaded if the
+     * days they show changed.
+     *
+     * @param context  Used to reach the AppWidgetManager
+     * @param snapshot The forecast written by the sync
+     */
+    public static void updateWidgets(Context context, ForecastSnapshot snapshot) {
+        ForecastSnapshot previous = sSyncedSnapshot;
+        sSyncedSnapshot = snapshot;
+
+        long today = SunshineDateUtils.getNormalizedUtcDateForToday();
+        if (previous != null && showSameDays(previous, snapshot, today)) {
+            Log.d(TAG, "Days shown unchanged, widgets left as they are");
+            return;
+        }
+        refreshWidgets(context);
+    }
+
+    /**
+     * Has the list of every widget reloaded, when the way the days are shown changed.
+     *
+     * @param context Used to reach the AppWidgetManager
+     */
+    public static void refreshWidgets(Context context) {
+        AppWidgetManager appWidgetManager = AppWidgetManager.getInstance(context);
+        int[] appWidgetIds = appWidgetManager.getAppWidgetIds(
+                new ComponentName(context, ForecastWidgetProvider.class));
+        if (appWidgetIds.length != 0) {
+            appWidgetManager.notifyAppWidgetViewDataChanged(appWidgetIds, R.id.widget_list);
+        }
+    }
+
+    /**
+     * @return The latest forecast written by a sync of this process, null if there was none
+     */
+    static ForecastSnapshot getSyncedSnapshot() {
+        return sSyncedSnapshot;
+    }
+
+    /*
+     * Whether both forecasts have the same MAX_DAYS days from today, with the same weather.
+     */
+    private static boolean showSameDays(ForecastSnapshot previous, ForecastSnapshot snapshot, long today) {
+        int previousFrom = previous.indexFromDate(today);
+        int from = snapshot.indexFromDate(today);
+        int count = Math.min(MAX_DAYS, snapshot.size() - from);
+        if (count != Math.min(MAX_DAYS, previous.size() - previousFrom)) {
+            return false;
+        }
+        for (int i = 0; i < count; i++) {
+            if (previous.getDate(previousFrom + i) != snapshot.getDate(from + i)
+                    || previous.getWeatherId(previousFrom + i) != snapshot.getWeatherId(from + i)
+                    || previous.getHigh(previousFrom + i) != snapshot.getHigh(from + i)
+                    || previous.getLow(previousFrom + i) != snapshot.getLow(from + i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,18 @@
+package com.example.android.sunshine.widget;
+
+import android.appwidget.AppWidgetManager;
+import android.content.Intent;
+import android.widget.RemoteViewsService;
+
+/**
+ * Provides the list of days of each forecast widget, see {@link ForecastWidgetFactory}.
+ */
+public class ForecastWidgetService extends RemoteViewsService {
+
+    @Override
+    public RemoteViewsFactory onGetViewFactory(Intent intent) {
+        int appWidgetId = intent.getIntExtra(AppWidgetManager.EXTRA_APPWIDGET_ID,
+                AppWidgetManager.INVALID_APPWIDGET_ID);
+        return new ForecastWidgetFactory(getApplicationContext(), appWidgetId);
+    }
+}
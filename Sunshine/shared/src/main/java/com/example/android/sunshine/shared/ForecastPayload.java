@@ -0,0 +1,235 @@
+package com.example.android.sunshine.shared;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.TimeZone;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The forecast sent from the phone to the watch, as a compact, versioned binary encoding of
+ * every day of the forecast window, along with the time the phone synced it.
+ * <p>
+ * Version 2 layout, big endian:
+ * <pre>
+ *     byte   version
+ *     long   UNIX time of the sync of the forecast
+ *     int    first day, in days since the epoch
+ *     byte   number of days (unsigned)
+ *     then, for each day:
+ *     byte   days since the previous day (0 for the first one)
+ *     short  weather id
+ *     short  high temperature, in tenths of degree Celsius
+ *     short  low temperature, in tenths of degree Celsius
+ * </pre>
+ * That is 14 bytes of header plus 7 bytes per day. The watch resolves the weather icon from the
+ * weather id with its own resources, so no image needs to be sent.
+ * <p>
+ * Version 1 is the same without the time of the sync. It is still decoded, with a sync time of
+ * 0, as the watch may have stored one.
+ */
+public final class ForecastPayload {
+
+    /* Path of the DataItem holding the payload */
+    public static final String PATH = "/sunshine";
+
+    /* Key of the payload byte array in the DataMap of the DataItem */
+    public static final String KEY_FORECAST = "forecast";
+
+    /*
+     * The interval of the periodic sync of the phone adapts between 1 and 12 hours, and the sync
+     * may run up to a third of its interval late. Past the longest of these windows, a sync was
+     * missed and the watch treats the forecast as stale.
+     */
+    public static final long STALE_AFTER_MILLIS = TimeUnit.HOURS.toMillis(12 + 4);
+
+    public static final byte VERSION = 2;
+    private static final byte VERSION_1 = 1;
+
+    private static final int HEADER_BYTES = 14;
+    private static final int DAY_BYTES = 7;
+    private static final int MAX_DAYS = 255;
+    private static final long DAY_IN_MILLIS = TimeUnit.DAYS.toMillis(1);
+
+    /* Size of the largest payload {@link #encode()} produces */
+    public static final int MAX_ENCODED_BYTES = HEADER_BYTES + DAY_BYTES * MAX_DAYS;
+
+    private final long mSyncedAt;
+    private final long[] mDates;
+    private final int[] mWeatherIds;
+    private final double[] mHighs;
+    private final double[] mLows;
+
+    /**
+     * @param syncedAt   UNIX time at which the phone synced the forecast, 0 if unknown
+     * @param dates      Normalized UTC dates of each day, in ascending order
+     * @param weatherIds Weather id of each day
+     * @param highs      High temperature of each day, in degrees Celsius
+     * @param lows       Low temperature of each day, in degrees Celsius
+     */
+    public ForecastPayload(long syncedAt, long[] dates, int[] weatherIds, double[] highs, double[] lows) {
+        if (dates.length != weatherIds.length || dates.length != highs.length || dates.length != lows.length) {
+            throw new IllegalArgumentException("All the forecast arrays must have the same length");
+        }
+        if (dates.length > MAX_DAYS) {
+            throw new IllegalArgumentException("Too many days: " + dates.length);
+        }
+        mSyncedAt = syncedAt;
+        mDates = dates;
+        mWeatherIds = weatherIds;
+        mHighs = highs;
+        mLows = lows;
+    }
+
+    /**
+     * @return UNIX time at which the phone synced the forecast, 0 if unknown
+     */
+    public long getSyncedAt() {
+        return mSyncedAt;
+    }
+
+    public int size() {
+        return mDates.length;
+    }
+
+    public long getDate(int index) {
+        return mDates[index];
+    }
+
+    public int getWeatherId(int index) {
+        return mWeatherIds[index];
+    }
+
+    public double getHigh(int index) {
+        return mHighs[index];
+    }
+
+    public double getLow(int index) {
+        return mLows[index];
+    }
+
+    /**
+     * Tells whether two payloads hold the same days, whatever the time of their sync. The
+     * temperatures are compared at the precision they are encoded with.
+     *
+     * @param other Another payload
+     * @return true if both payloads have the same dates, weather ids and temperatures
+     */
+    public boolean hasSameDays(ForecastPayload other) {
+        if (mDates.length != other.mDates.length) {
+            return false;
+        }
+        for (int i = 0; i < mDates.length; i++) {
+            if (mDates[i] != other.mDates[i]
+                    || mWeatherIds[i] != other.mWeatherIds[i]
+                    || toFixedPoint(mHighs[i]) != toFixedPoint(other.mHighs[i])
+                    || toFixedPoint(mLows[i]) != toFixedPoint(other.mLows[i])) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @param normalizedDate A normalized UTC date
+     * @return The index of the day with that date, -1 if there is none
+     */
+    public int indexOfDate(long normalizedDate) {
+        for (int i = 0; i < mDates.length; i++) {
+            if (mDates[i] == normalizedDate) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Returns the normalized UTC date that represents the local date of the given instant, the
+     * same way the phone normalizes the dates of the forecast.
+     *
+     * @param timeMillis UNIX time
+     * @param timeZone   Time zone of the device
+     * @return UTC midnight of the local date
+     */
+    public static long normalizeLocalDate(long timeMillis, TimeZone timeZone) {
+        long localMillis = timeMillis + timeZone.getOffset(timeMillis);
+        return TimeUnit.MILLISECONDS.toDays(localMillis) * DAY_IN_MILLIS;
+    }
+
+    /**
+     * @return The payload encoded as described in the class documentation
+     */
+    public byte[] encode() {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(HEADER_BYTES + DAY_BYTES * mDates.length);
+        DataOutputStream out = new DataOutputStream(bytes);
+        try {
+            long firstDay = mDates.length == 0 ? 0 : mDates[0] / DAY_IN_MILLIS;
+            out.writeByte(VERSION);
+            out.writeLong(mSyncedAt);
+            out.writeInt((int) firstDay);
+            out.writeByte(mDates.length);
+            long previousDay = firstDay;
+            for (int i = 0; i < mDates.length; i++) {
+                long day = mDates[i] / DAY_IN_MILLIS;
+                long delta = day - previousDay;
+                if (delta < 0 || delta > Byte.MAX_VALUE) {
+                    throw new IllegalArgumentException("Dates must be ascending and close together");
+                }
+                out.writeByte((int) delta);
+                out.writeShort(mWeatherIds[i]);
+                out.writeShort(toFixedPoint(mHighs[i]));
+                out.writeShort(toFixedPoint(mLows[i]));
+                previousDay = day;
+            }
+        } catch (IOException e) {
+            /* Writing to memory can't fail */
+            throw new IllegalStateException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Decodes a payload produced by {@link #encode()}.
+     *
+     * @param data The encoded payload
+     * @return The decoded payload
+     * @throws IllegalArgumentException If the data is truncated or of an unknown version
+     */
+    public static ForecastPayload decode(byte[] data) {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(data));
+        try {
+            byte version = in.readByte();
+            if (version != VERSION && version != VERSION_1) {
+                throw new IllegalArgumentException("Unknown forecast payload version " + version);
+            }
+            long syncedAt = version == VERSION_1 ? 0 : in.readLong();
+            long day = in.readInt();
+            int count = in.readUnsignedByte();
+            long[] dates = new long[count];
+            int[] weatherIds = new int[count];
+            double[] highs = new double[count];
+            double[] lows = new double[count];
+            for (int i = 0; i < count; i++) {
+                day += in.readByte();
+                dates[i] = day * DAY_IN_MILLIS;
+                weatherIds[i] = in.readShort();
+                highs[i] = fromFixedPoint(in.readShort());
+                lows[i] = fromFixedPoint(in.readShort());
+            }
+            return new ForecastPayload(syncedAt, dates, weatherIds, highs, lows);
+        } catch (IOException e) {
+            throw new IllegalArgumentException("Truncated forecast payload", e);
+        }
+    }
+
+    private static int toFixedPoint(double temperature) {
+        long tenths = Math.round(temperature * 10);
+        return (int) Math.max(Short.MIN_VALUE, Math.min(Short.MAX_VALUE, tenths));
+    }
+
+    private static double fromFixedPoint(short tenths) {
+        return tenths / 10.0;
+    }
+}
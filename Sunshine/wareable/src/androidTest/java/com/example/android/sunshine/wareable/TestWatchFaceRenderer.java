@@ -0,0 +1,111 @@
+package com.example.android.sunshine.wareable;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Rect;
+import android.os.Debug;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.runner.AndroidJUnit4;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.TimeZone;
+import java.util.concurrent.TimeUnit;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertFalse;
+import static junit.framework.Assert.assertTrue;
+
+@RunWith(AndroidJUnit4.class)
+public class TestWatchFaceRenderer {
+
+    private static final int FACE_SIZE = 320;
+    private static final int STEADY_STATE_FRAMES = 30;
+
+    /**
+     * Once the texts of the current minute are cached, drawing a frame must not allocate.
+     */
+    @Test
+    @SuppressWarnings("deprecation")
+    public void testSteadyStateFrameDoesNotAllocate() {
+        WatchFaceRenderer renderer = new WatchFaceRenderer(InstrumentationRegistry.getTargetContext());
+        renderer.setTimeZone(TimeZone.getTimeZone("UTC"));
+        renderer.setForecast(21.4, 12.6, System.currentTimeMillis());
+        renderer.setIcon(Bitmap.createBitmap(60, 60, Bitmap.Config.ARGB_8888));
+
+        Bitmap target = Bitmap.createBitmap(FACE_SIZE, FACE_SIZE, Bitmap.Config.ARGB_8888);
+        Canvas canvas = new Canvas(target);
+        Rect bounds = new Rect(0, 0, FACE_SIZE, FACE_SIZE);
+
+        /* Start of a minute, so every frame below shows the same minute */
+        long minuteStart = TimeUnit.MINUTES.toMillis(TimeUnit.MILLISECONDS.toMinutes(System.currentTimeMillis()));
+        renderer.draw(canvas, bounds, minuteStart);
+
+        Debug.resetThreadAllocCount();
+        Debug.startAllocCounting();
+        for (int i = 0; i < STEADY_STATE_FRAMES; i++) {
+            renderer.draw(canvas, bounds, minuteStart + TimeUnit.SECONDS.toMillis(i));
+        }
+        Debug.stopAllocCounting();
+
+        assertEquals("Steady state frames allocated objects", 0, Debug.getThreadAllocCount());
+    }
+
+    /**
+     * Switching between interactive and ambient mode reuses the cached layer of each mode, only a
+     * change of content renders them again.
+     */
+    @Test
+    public void testModeSwitchesReuseCachedLayers() {
+        WatchFaceRenderer renderer = new WatchFaceRenderer(InstrumentationRegistry.getTargetContext());
+        renderer.setTimeZone(TimeZone.getTimeZone("UTC"));
+        renderer.setForecast(21.4, 12.6, System.currentTimeMillis());
+
+        Canvas canvas = new Canvas(Bitmap.createBitmap(FACE_SIZE, FACE_SIZE, Bitmap.Config.ARGB_8888));
+        Rect bounds = new Rect(0, 0, FACE_SIZE, FACE_SIZE);
+        long minuteStart = TimeUnit.MINUTES.toMillis(TimeUnit.MILLISECONDS.toMinutes(System.currentTimeMillis()));
+
+        renderer.draw(canvas, bounds, minuteStart);
+        renderer.setAmbient(true);
+        renderer.draw(canvas, bounds, minuteStart);
+        assertEquals(2, renderer.getLayerRebuildCount());
+
+        for (int i = 0; i < 5; i++) {
+            renderer.setAmbient(false);
+            renderer.draw(canvas, bounds, minuteStart);
+            renderer.setAmbient(true);
+            renderer.draw(canvas, bounds, minuteStart);
+        }
+        assertEquals("Mode switches rebuilt a layer", 2, renderer.getLayerRebuildCount());
+
+        renderer.setForecast(18.0, 9.0, System.currentTimeMillis());
+        renderer.draw(canvas, bounds, minuteStart);
+        assertEquals("A new forecast didn't rebuild the layer", 3, renderer.getLayerRebuildCount());
+    }
+
+    @Test
+    public void testOldForecastIsStale() {
+        WatchFaceRenderer renderer = new WatchFaceRenderer(InstrumentationRegistry.getTargetContext());
+        Canvas canvas = new Canvas(Bitmap.createBitmap(FACE_SIZE, FACE_SIZE, Bitmap.Config.ARGB_8888));
+        Rect bounds = new Rect(0, 0, FACE_SIZE, FACE_SIZE);
+        long now = System.currentTimeMillis();
+
+        renderer.setForecast(21.4, 12.6, now - TimeUnit.HOURS.toMillis(1));
+        renderer.draw(canvas, bounds, now);
+        assertFalse(renderer.isStale());
+
+        /* The longest interval of the periodic sync of the phone */
+        renderer.setForecast(21.4, 12.6, now - TimeUnit.HOURS.toMillis(12));
+        renderer.draw(canvas, bounds, now);
+        assertFalse(renderer.isStale());
+
+        renderer.setForecast(21.4, 12.6, now - WatchFaceRenderer.STALE_AFTER_MILLIS - 1);
+        renderer.draw(canvas, bounds, now);
+        assertTrue(renderer.isStale());
+
+        renderer.clearForecast();
+        renderer.draw(canvas, bounds, now);
+        assertFalse("Nothing drawn can't be stale", renderer.isStale());
+    }
+}
@@ -0,0 +1,127 @@
+package com.example.android.sunshine.wareable;
+
+import android.content.Context;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.AtomicFile;
+import android.util.Log;
+
+import com.example.android.sunshine.shared.ForecastPayload;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * Keeps the last forecast payload received from the phone in a small file, so the watch face can
+ * show it right away after a reboot or a face switch, before the phone pushes anything. The file
+ * holds the time the payload was received followed by the payload, as sent by the phone. All the
+ * IO happens on a single background thread.
+ */
+class ForecastStore {
+
+    private static final String TAG = ForecastStore.class.getSimpleName();
+
+    private static final String FILE_NAME = "forecast.bin";
+
+    interface LoadCallback {
+        /**
+         * Called on the main thread, only if a forecast was stored.
+         *
+         * @param payload    The payload as received from the phone
+         * @param receivedAt UNIX time at which it was received
+         */
+        void onForecastLoaded(byte[] payload, long receivedAt);
+    }
+
+    private final AtomicFile mFile;
+    private final ExecutorService mExecutor = Executors.newSingleThreadExecutor();
+    private final Handler mMainHandler = new Handler(Looper.getMainLooper());
+    private volatile boolean mShutdown;
+
+    ForecastStore(Context context) {
+        mFile = new AtomicFile(new File(context.getFilesDir(), FILE_NAME));
+    }
+
+    void load(final LoadCallback callback) {
+        mExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                DataInputStream in = null;
+                try {
+                    in = new DataInputStream(mFile.openRead());
+                    final long receivedAt = in.readLong();
+                    int length = in.readInt();
+                    if (length <= 0 || length > ForecastPayload.MAX_ENCODED_BYTES) {
+                        /* A truncated or corrupt file, the next push replaces it */
+                        Log.w(TAG, "Discarding a stored forecast of " + length + " bytes");
+                        return;
+                    }
+                    final byte[] payload = new byte[length];
+                    in.readFully(payload);
+                    mMainHandler.post(new Runnable() {
+                        @Override
+                        public void run() {
+                            if (!mShutdown) {
+                                callback.onForecastLoaded(payload, receivedAt);
+                            }
+                        }
+                    });
+                } catch (FileNotFoundException e) {
+                    /* Nothing received yet */
+                } catch (IOException e) {
+                    Log.w(TAG, "Couldn't read the stored forecast", e);
+                } finally {
+                    if (in != null) {
+                        try {
+                            in.close();
+                        } catch (IOException e) {
+                            e.printStackTrace();
+                        }
+                    }
+                }
+            }
+        });
+    }
+
+    void save(final byte[] payload, final long receivedAt) {
+        try {
+            mExecutor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    FileOutputStream out = null;
+                    try {
+                        out = mFile.startWrite();
+                        DataOutputStream data = new DataOutputStream(out);
+                        data.writeLong(receivedAt);
+                        data.writeInt(payload.length);
+                        data.write(payload);
+                        data.flush();
+                        mFile.finishWrite(out);
+                    } catch (IOException e) {
+                        Log.w(TAG, "Couldn't store the forecast", e);
+                        if (out != null) {
+                            mFile.failWrite(out);
+                        }
+                    }
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            /* The DataApi may deliver a forecast after the engine was destroyed */
+            Log.d(TAG, "Store shut down, the forecast isn't stored");
+        }
+    }
+
+    void shutdown() {
+        /* Let a pending save complete, but don't deliver loads to a destroyed engine */
+        mShutdown = true;
+        mExecutor.shutdown();
+        mMainHandler.removeCallbacksAndMessages(null);
+    }
+}
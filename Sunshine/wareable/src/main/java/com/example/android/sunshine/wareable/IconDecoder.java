@@ -0,0 +1,129 @@
+package com.example.android.sunshine.wareable;
+
+import android.content.res.Resources;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.os.Handler;
+import android.os.Looper;
+import android.support.annotation.DrawableRes;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Decodes the weather icons of the watch face on a single background thread, directly at the
+ * size they are drawn. Only the latest request matters: a request superseded by a newer one
+ * before it starts, or while it decodes, is dropped. The decoded bitmap is handed to the
+ * {@link Listener} on the main thread, the thread the watch face draws on, so the renderer never
+ * sees a bitmap that is being replaced or recycled.
+ */
+class IconDecoder {
+
+    interface Listener {
+        /**
+         * Called on the main thread with the decoded icon. The listener owns the bitmap from now
+         * on and is responsible for recycling it.
+         */
+        void onIconDecoded(@DrawableRes int resId, Bitmap icon);
+    }
+
+    private final Resources mResources;
+    private final int mSizePx;
+    private final Listener mListener;
+    private final ExecutorService mExecutor = Executors.newSingleThreadExecutor();
+    private final Handler mMainHandler = new Handler(Looper.getMainLooper());
+
+    /* Sequence number of the latest request, every older one is superseded */
+    private final AtomicInteger mLatestRequest = new AtomicInteger();
+
+    IconDecoder(Resources resources, int sizePx, Listener listener) {
+        mResources = resources;
+        mSizePx = sizePx;
+        mListener = listener;
+    }
+
+    /**
+     * Requests the icon of the given resource, superseding every pending request.
+     */
+    void request(@DrawableRes final int resId) {
+        final int request = mLatestRequest.incrementAndGet();
+        mExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                if (request != mLatestRequest.get()) {
+                    return;
+                }
+                final Bitmap icon = decode(resId);
+                if (icon == null) {
+                    return;
+                }
+                mMainHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        if (request != mLatestRequest.get()) {
+                            icon.recycle();
+                            return;
+                        }
+                        mListener.onIconDecoded(resId, icon);
+                    }
+                });
+            }
+        });
+    }
+
+    /**
+     * Drops every pending request and stops the decoding thread.
+     */
+    void shutdown() {
+        mLatestRequest.incrementAndGet();
+        mExecutor.shutdownNow();
+        mMainHandler.removeCallbacksAndMessages(null);
+    }
+
+    private Bitmap decode(@DrawableRes int resId) {
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inJustDecodeBounds = true;
+        decodeStream(resId, options);
+        if (options.outWidth <= 0 || options.outHeight <= 0) {
+            return null;
+        }
+
+        /*
+         * Sub-sample by the largest power of two that keeps the icon at least as big as the
+         * target, then let the decoder scale the rest of the way, so no full size bitmap is
+         * ever allocated.
+         */
+        int sampleSize = 1;
+        while (options.outWidth / (sampleSize * 2) >= mSizePx
+                && options.outHeight / (sampleSize * 2) >= mSizePx) {
+            sampleSize *= 2;
+        }
+
+        options.inJustDecodeBounds = false;
+        options.inSampleSize = sampleSize;
+        options.inScaled = true;
+        options.inDensity = options.outWidth / sampleSize;
+        options.inTargetDensity = mSizePx;
+        return decodeStream(resId, options);
+    }
+
+    /*
+     * Reads the raw resource rather than using decodeResource, so the densities set in the
+     * options are ours and not the ones of the resource folder.
+     */
+    private Bitmap decodeStream(@DrawableRes int resId, BitmapFactory.Options options) {
+        InputStream in = mResources.openRawResource(resId);
+        try {
+            return BitmapFactory.decodeStream(in, null, options);
+        } finally {
+            try {
+                in.close();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+}
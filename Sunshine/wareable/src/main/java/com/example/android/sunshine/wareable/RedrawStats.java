@@ -0,0 +1,69 @@
+package com.example.android.sunshine.wareable;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Counts the frames drawn by the watch face and the time spent in each mode, to report how many
+ * redraws per hour each mode costs.
+ */
+class RedrawStats {
+
+    static final int MODE_INTERACTIVE = 0;
+    static final int MODE_AMBIENT = 1;
+    private static final int MODE_COUNT = 2;
+
+    private static final double HOUR_IN_MILLIS = TimeUnit.HOURS.toMillis(1);
+
+    private final long[] mRedraws = new long[MODE_COUNT];
+    private final long[] mMillisInMode = new long[MODE_COUNT];
+
+    private int mMode = MODE_INTERACTIVE;
+    private long mModeStartMillis = -1;
+
+    /**
+     * Starts or stops accounting time, for instance when the watch face becomes visible or hidden.
+     *
+     * @param running     Whether the watch face is visible
+     * @param nowElapsed  SystemClock.elapsedRealtime()
+     */
+    void setRunning(boolean running, long nowElapsed) {
+        closeInterval(nowElapsed);
+        mModeStartMillis = running ? nowElapsed : -1;
+    }
+
+    void setMode(int mode, long nowElapsed) {
+        if (mode == mMode) {
+            return;
+        }
+        boolean running = mModeStartMillis != -1;
+        closeInterval(nowElapsed);
+        mMode = mode;
+        mModeStartMillis = running ? nowElapsed : -1;
+    }
+
+    void onRedraw() {
+        mRedraws[mMode]++;
+    }
+
+    /**
+     * @param mode       MODE_INTERACTIVE or MODE_AMBIENT
+     * @param nowElapsed SystemClock.elapsedRealtime()
+     * @return Frames drawn per hour spent in that mode, 0 if no time was spent in it yet
+     */
+    double getRedrawsPerHour(int mode, long nowElapsed) {
+        long millis = mMillisInMode[mode];
+        if (mode == mMode && mModeStartMillis != -1) {
+            millis += nowElapsed - mModeStartMillis;
+        }
+        if (millis <= 0) {
+            return 0;
+        }
+        return mRedraws[mode] * HOUR_IN_MILLIS / millis;
+    }
+
+    private void closeInterval(long nowElapsed) {
+        if (mModeStartMillis != -1) {
+            mMillisInMode[mMode] += nowElapsed - mModeStartMillis;
+        }
+    }
+}
@@ -21,14 +21,13 @@ import android.content.Context;
 import android.content.Intent;
 import android.content.IntentFilter;
 import android.graphics.Bitmap;
-import android.graphics.BitmapFactory;
 import android.graphics.Canvas;
-import android.graphics.Color;
-import android.graphics.Paint;
 import android.graphics.Rect;
+import android.net.Uri;
 import android.os.Bundle;
 import android.os.Handler;
 import android.os.Message;
+import android.os.SystemClock;
 import android.support.annotation.NonNull;
 import android.support.annotation.Nullable;
 import android.support.wearable.watchface.CanvasWatchFaceService;
@@ -36,22 +35,22 @@ import android.support.wearable.watchface.WatchFaceStyle;
 import android.util.Log;
 import android.view.SurfaceHolder;
 
-import com.example.android.sunshine.R;
+import com.example.android.sunshine.shared.ForecastPayload;
 import com.google.android.gms.common.ConnectionResult;
 import com.google.android.gms.common.api.GoogleApiClient;
-import com.google.android.gms.wearable.Asset;
+import com.google.android.gms.common.api.ResultCallback;
 import com.google.android.gms.wearable.DataApi;
 import com.google.android.gms.wearable.DataEvent;
 import com.google.android.gms.wearable.DataEventBuffer;
 import com.google.android.gms.wearable.DataItem;
+import com.google.android.gms.wearable.DataItemBuffer;
 import com.google.android.gms.wearable.DataMap;
 import com.google.android.gms.wearable.DataMapItem;
+import com.google.android.gms.wearable.PutDataRequest;
 import com.google.android.gms.wearable.Wearable;
 
-import java.io.InputStream;
 import java.lang.ref.WeakReference;
-import java.text.SimpleDateFormat;
-import java.util.Calendar;
+import java.util.Arrays;
 import java.util.Locale;
 import java.util.TimeZone;
 import java.util.concurrent.TimeUnit;
@@ -67,16 +66,18 @@ import java.util.concurrent.TimeUnit;
 public class RoundedWatchFace extends CanvasWatchFaceService {
     
     /*
-     * Update rate in milliseconds for interactive mode. We update once a second to advance the
-     * second hand.
+     * Update rate in milliseconds for interactive mode. The face only shows hours and minutes, so
+     * it is redrawn right at each minute boundary and never in between.
      */
-    private static final long INTERACTIVE_UPDATE_RATE_MS = TimeUnit.SECONDS.toMillis(1);
+    private static final long INTERACTIVE_UPDATE_RATE_MS = TimeUnit.MINUTES.toMillis(1);
     
     /**
      * Handler message id for updating the time periodically in interactive mode.
      */
     private static final int MSG_UPDATE_TIME = 0;
-    private Double min;
+
+    /* Size at which the weather icon is drawn */
+    private static final int ICON_SIZE_PX = 60;
     
     @Override
     public Engine onCreateEngine() {
@@ -84,12 +85,7 @@ public class RoundedWatchFace extends CanvasWatchFaceService {
     }
     
     private class Engine extends CanvasWatchFaceService.Engine implements DataApi.DataListener, GoogleApiClient.ConnectionCallbacks,
-            GoogleApiClient.OnConnectionFailedListener {
-        private static final float HOUR_STROKE_WIDTH = 4f;
-        private static final int HOUR_SIZE = 55;
-        private static final int DATE_SIZE = 23;
-        private static final int MAX_SIZE = 32;
-        private static final int LINE_SIZE = 60;
+            GoogleApiClient.OnConnectionFailedListener, IconDecoder.Listener, ForecastStore.LoadCallback {
         private static final String TAG = "RoundedWatchFace";
         
         GoogleApiClient mGoogleApiClient = new GoogleApiClient.Builder(RoundedWatchFace.this).addConnectionCallbacks(this)
@@ -97,31 +93,33 @@ public class RoundedWatchFace extends CanvasWatchFaceService {
                                                                                              .addApi(Wearable.API).build();
         
         private final Rect mPeekCardBounds = new Rect();
-        /* Handler to update the time once a second in interactive mode. */
+        /* Handler to update the time once a minute in interactive mode. */
         private final Handler mUpdateTimeHandler = new EngineHandler(this);
-        private Calendar mCalendar;
         private final BroadcastReceiver mTimeZoneReceiver = new BroadcastReceiver() {
             @Override
             public void onReceive(Context context, Intent intent) {
-                mCalendar.setTimeZone(TimeZone.getDefault());
+                updateTimeZone();
                 invalidate();
             }
         };
         private boolean mRegisteredTimeZoneReceiver = false;
         private boolean mMuteMode;
+        private TimeZone mTimeZone = TimeZone.getDefault();
         
-        private Paint mHourPaint;
-        private Paint mDatePaint;
-        private Paint mIconPaint;
-        private Paint mMaxPaint;
-        private Paint mMinPaint;
+        private WatchFaceRenderer mRenderer;
+        private final RedrawStats mRedrawStats = new RedrawStats();
         private boolean mAmbient;
-        private boolean mLowBitAmbient;
-        private boolean mBurnInProtection;
-        private SimpleDateFormat hourFormat;
-        private SimpleDateFormat dateFormat;
-        private Double max;
+        private IconDecoder mIconDecoder;
+        private ForecastStore mForecastStore;
+        /* The encoded payload currently shown */
+        private byte[] mLastPayload;
+        /* When mLastPayload was received, and the local date it was shown for, -1 if none */
+        private long mLastPayloadReceivedAt;
+        private long mShownDate = -1;
+        /* The icon currently drawn, only touched on the main thread */
         private Bitmap iconBitmap;
+        /* Resource of the latest icon requested from the decoder */
+        private int mRequestedIconResourceId = -1;
         
         @Override
         public void onCreate(SurfaceHolder holder) {
@@ -133,33 +131,12 @@ public class RoundedWatchFace extends CanvasWatchFaceService {
                     .setAcceptsTapEvents(true);
             setWatchFaceStyle(builder.build());
             
-            mIconPaint = new Paint();
-            
-            mHourPaint = new Paint();
-            mHourPaint.setColor(Color.WHITE);
-            mHourPaint.setTextSize(HOUR_SIZE);
-            mHourPaint.setStrokeWidth(HOUR_STROKE_WIDTH);
-            mHourPaint.setAntiAlias(true);
-            
-            mDatePaint = new Paint();
-            mDatePaint.setTextSize(DATE_SIZE);
-            mDatePaint.setColor(getColor(R.color.light_font));
-            mDatePaint.setAntiAlias(true);
-            
-            mMaxPaint = new Paint();
-            mMaxPaint.setTextSize(MAX_SIZE);
-            mMaxPaint.setColor(Color.WHITE);
-            mMaxPaint.setAntiAlias(true);
-            
-            mMinPaint = new Paint();
-            mMinPaint.setTextSize(MAX_SIZE);
-            mMinPaint.setColor(getColor(R.color.light_font));
-            mMinPaint.setAntiAlias(true);
-            
-            mCalendar = Calendar.getInstance();
-            
-            hourFormat = new SimpleDateFormat("HH:mm", Locale.getDefault());
-            dateFormat = new SimpleDateFormat("EEE, MMM dd yyyy", Locale.getDefault());
+            mRenderer = new WatchFaceRenderer(RoundedWatchFace.this);
+            mIconDecoder = new IconDecoder(getResources(), ICON_SIZE_PX, this);
+
+            /* Show the last known forecast while we connect to the phone */
+            mForecastStore = new ForecastStore(RoundedWatchFace.this);
+            mForecastStore.load(this);
             
             mGoogleApiClient.connect();
             
@@ -168,19 +145,28 @@ public class RoundedWatchFace extends CanvasWatchFaceService {
         @Override
         public void onDestroy() {
             mUpdateTimeHandler.removeMessages(MSG_UPDATE_TIME);
+            mIconDecoder.shutdown();
+            mForecastStore.shutdown();
+            if (mGoogleApiClient.isConnected()) {
+                Wearable.DataApi.removeListener(mGoogleApiClient, this);
+            }
+            mGoogleApiClient.disconnect();
+            mRenderer.releaseLayers();
             super.onDestroy();
         }
         
         @Override
         public void onPropertiesChanged(Bundle properties) {
             super.onPropertiesChanged(properties);
-            mLowBitAmbient = properties.getBoolean(PROPERTY_LOW_BIT_AMBIENT, false);
-            mBurnInProtection = properties.getBoolean(PROPERTY_BURN_IN_PROTECTION, false);
+            mRenderer.setDeviceProperties(
+                    properties.getBoolean(PROPERTY_LOW_BIT_AMBIENT, false),
+                    properties.getBoolean(PROPERTY_BURN_IN_PROTECTION, false));
         }
         
         @Override
         public void onTimeTick() {
             super.onTimeTick();
+            checkDateChanged();
             invalidate();
         }
         
@@ -189,75 +175,19 @@ public class RoundedWatchFace extends CanvasWatchFaceService {
             super.onAmbientModeChanged(inAmbientMode);
             mAmbient = inAmbientMode;
             
-            updateWatchHandStyle();
+            mRenderer.setAmbient(inAmbientMode);
+            mRedrawStats.setMode(inAmbientMode ? RedrawStats.MODE_AMBIENT : RedrawStats.MODE_INTERACTIVE,
+                    SystemClock.elapsedRealtime());
+            invalidate();
 
             /* Check and trigger whether or not timer should be running (only in active mode). */
             updateTimer();
         }
         
-        private void updateWatchHandStyle() {
-            if (mAmbient) {
-                mHourPaint.setAntiAlias(false);
-                mDatePaint.setAntiAlias(false);
-                mMinPaint.setColor(Color.WHITE);
-                mDatePaint.setColor(Color.WHITE);
-            } else {
-                mMinPaint.setColor(getColor(R.color.light_font));
-                mDatePaint.setColor(getColor(R.color.light_font));
-                mHourPaint.setAntiAlias(true);
-                mDatePaint.setAntiAlias(true);
-            }
-        }
-        
         @Override
         public void onDraw(Canvas canvas, Rect bounds) {
-            long now = System.currentTimeMillis();
-            mCalendar.setTimeInMillis(now);
-            
-            if (mAmbient && (mLowBitAmbient || mBurnInProtection)) {
-                canvas.drawColor(Color.BLACK);
-            } else if (mAmbient) {
-                canvas.drawColor(getColor(R.color.watch_background_inative));
-            } else {
-                canvas.drawColor(getColor(R.color.watch_background));
-            }
-            
-            int centerY = bounds.height() / 2;
-            float centerX = bounds.width() / 2;
-            
-            float yAtual = centerY - 40;
-            Rect hourRect = new Rect();
-            String hourText = hourFormat.format(mCalendar.getTime());
-            mHourPaint.getTextBounds(hourText, 0, hourText.length(), hourRect);
-            canvas.drawText(hourText, centerX - hourRect.centerX(), yAtual, mHourPaint);
-            
-            Rect dateRect = new Rect();
-            String dateText = dateFormat.format(mCalendar.getTime()).toUpperCase(Locale.getDefault());
-            mDatePaint.getTextBounds(dateText, 0, dateText.length(), dateRect);
-            yAtual += hourRect.height() - 5;
-            canvas.drawText(dateText, centerX - dateRect.centerX(), yAtual, mDatePaint);
-            
-            yAtual += dateRect.height() + 10;
-            
-            canvas.drawLine(centerX - LINE_SIZE / 2, yAtual, centerX + LINE_SIZE / 2, yAtual, mDatePaint);
-            
-            if (max != null) {
-                Rect maxRect = new Rect();
-                String maxText = String.format(Locale.getDefault(), "%.0fº", max);
-                mMaxPaint.getTextBounds(maxText, 0, maxText.length(), maxRect);
-                yAtual += maxRect.height() + 26;
-                canvas.drawText(maxText, centerX - maxRect.centerX(), yAtual, mMaxPaint);
-                
-                String minText = String.format(Locale.getDefault(), "%.0fº", min);
-                canvas.drawText(minText, centerX + maxRect.centerX() + 16, yAtual, mMinPaint);
-                
-                if (!isInAmbientMode() && iconBitmap != null) {
-                    float xInit = centerX - maxRect.centerX() - iconBitmap.getWidth() - 16;
-                    float yInit = yAtual - iconBitmap.getHeight() / 2 - 10;
-                    canvas.drawBitmap(iconBitmap, xInit, yInit, mIconPaint);
-                }
-            }
-            
+            mRenderer.draw(canvas, bounds, System.currentTimeMillis());
+            mRedrawStats.onRedraw();
         }
         
         @Override
@@ -267,10 +197,13 @@ public class RoundedWatchFace extends CanvasWatchFaceService {
             if (visible) {
                 registerReceiver();
                 /* Update time zone in case it changed while we weren't visible. */
-                mCalendar.setTimeZone(TimeZone.getDefault());
+                updateTimeZone();
+                mRedrawStats.setRunning(true, SystemClock.elapsedRealtime());
                 invalidate();
             } else {
                 unregisterReceiver();
+                mRedrawStats.setRunning(false, SystemClock.elapsedRealtime());
+                logRedrawStats();
             }
 
             /* Check and trigger whether or not timer should be running (only in active mode). */
@@ -310,6 +243,29 @@ public class RoundedWatchFace extends CanvasWatchFaceService {
             }
         }
         
+        private void updateTimeZone() {
+            mTimeZone = TimeZone.getDefault();
+            mRenderer.setTimeZone(mTimeZone);
+            checkDateChanged();
+        }
+
+        /*
+         * The forecast shows the entry of today, so it is applied again once the local date
+         * changed, whether at midnight or with the time zone. Checked on every minute tick.
+         */
+        private void checkDateChanged() {
+            if (mLastPayload == null) {
+                return;
+            }
+            long today = ForecastPayload.normalizeLocalDate(System.currentTimeMillis(), mTimeZone);
+            if (today != mShownDate && !applyForecast(mLastPayload, mLastPayloadReceivedAt)) {
+                /* Nothing to show for the new day until the phone pushes again */
+                mLastPayload = null;
+                mShownDate = -1;
+                mRenderer.clearForecast();
+            }
+        }
+
         /**
          * Returns whether the {@link #mUpdateTimeHandler} timer should be running. The timer
          * should only run in active mode.
@@ -318,10 +274,19 @@ public class RoundedWatchFace extends CanvasWatchFaceService {
             return isVisible() && !mAmbient;
         }
         
+        private void logRedrawStats() {
+            long now = SystemClock.elapsedRealtime();
+            Log.d(TAG, String.format(Locale.US, "Redraws per hour: interactive %.1f, ambient %.1f",
+                    mRedrawStats.getRedrawsPerHour(RedrawStats.MODE_INTERACTIVE, now),
+                    mRedrawStats.getRedrawsPerHour(RedrawStats.MODE_AMBIENT, now)));
+        }
+
         /**
-         * Handle updating the time periodically in interactive mode.
+         * Handle updating the time periodically in interactive mode. The next update is scheduled
+         * for the next minute boundary, when the displayed time changes.
          */
         private void handleUpdateTimeMessage() {
+            checkDateChanged();
             invalidate();
             if (shouldTimerBeRunning()) {
                 long timeMs = System.currentTimeMillis();
@@ -334,6 +299,22 @@ public class RoundedWatchFace extends CanvasWatchFaceService {
         public void onConnected(@Nullable Bundle connectionHint) {
             Log.d(TAG, "onConnected: " + connectionHint);
             Wearable.DataApi.addListener(mGoogleApiClient, this);
+
+            /* The phone may have pushed a forecast while we weren't listening */
+            Uri forecastUri = new Uri.Builder().scheme(PutDataRequest.WEAR_URI_SCHEME).path(ForecastPayload.PATH).build();
+            Wearable.DataApi.getDataItems(mGoogleApiClient, forecastUri).setResultCallback(
+                    new ResultCallback<DataItemBuffer>() {
+                        @Override
+                        public void onResult(@NonNull DataItemBuffer dataItems) {
+                            try {
+                                for (DataItem item : dataItems) {
+                                    onForecastDataItem(item);
+                                }
+                            } finally {
+                                dataItems.release();
+                            }
+                        }
+                    });
         }
         
         @Override
@@ -350,41 +331,82 @@ public class RoundedWatchFace extends CanvasWatchFaceService {
         public void onDataChanged(DataEventBuffer dataEventBuffer) {
             Log.d(TAG, "Received");
             for (DataEvent dataEvent : dataEventBuffer) {
-                DataItem item = dataEvent.getDataItem();
-                if (item.getUri().getPath().compareTo("/sunshine") == 0) {
-                    DataMapItem dataMapItem = DataMapItem.fromDataItem(item);
-                    DataMap config = dataMapItem.getDataMap();
-                    max = config.getDouble("max");
-                    min = config.getDouble("min");
-                    final Asset iconAsset = config.getAsset("icon");
-                    new Thread(new Runnable() {
-                        @Override
-                        public void run() {
-                            if (iconBitmap != null) {
-                                iconBitmap.recycle();
-                                iconBitmap = null;
-                            }
-                            iconBitmap = loadBitmapFromAsset(iconAsset);
-                            iconBitmap = Bitmap.createScaledBitmap(iconBitmap, 60, 60, true);
-                        }
-                    }).start();
-                }
+                onForecastDataItem(dataEvent.getDataItem());
             }
         }
-        
-        public Bitmap loadBitmapFromAsset(Asset asset) {
-            if (asset == null) {
-                throw new IllegalArgumentException("Asset must be non-null");
+
+        /*
+         * Applies the forecast of a DataItem, whether it was pushed to us or found when
+         * connecting, and stores it for the next start of the watch face.
+         */
+        private void onForecastDataItem(DataItem item) {
+            if (item.getUri().getPath().compareTo(ForecastPayload.PATH) != 0) {
+                return;
             }
-            // convert asset into a file descriptor and block until it's ready
-            InputStream assetInputStream = Wearable.DataApi.getFdForAsset(mGoogleApiClient, asset).await().getInputStream();
-            
-            if (assetInputStream == null) {
-                Log.w(TAG, "Requested an unknown Asset.");
-                return null;
+            DataMapItem dataMapItem = DataMapItem.fromDataItem(item);
+            DataMap config = dataMapItem.getDataMap();
+            byte[] encodedPayload = config.getByteArray(ForecastPayload.KEY_FORECAST);
+            if (encodedPayload == null || Arrays.equals(encodedPayload, mLastPayload)) {
+                return;
+            }
+            long receivedAt = System.currentTimeMillis();
+            if (applyForecast(encodedPayload, receivedAt)) {
+                mForecastStore.save(encodedPayload, receivedAt);
             }
-            // decode the stream into a bitmap
-            return BitmapFactory.decodeStream(assetInputStream);
+        }
+
+        @Override
+        public void onForecastLoaded(byte[] payload, long receivedAt) {
+            /* A fresher forecast may already have arrived from the phone */
+            if (mLastPayload == null) {
+                applyForecast(payload, receivedAt);
+            }
+        }
+
+        /**
+         * Shows today's entry of an encoded forecast payload. It is stale once the phone didn't
+         * sync for a while, which payloads of the first version don't tell: the time they were
+         * received stands for it then.
+         *
+         * @return false if the payload can't be decoded or has no entry for today
+         */
+        private boolean applyForecast(byte[] encodedPayload, long receivedAt) {
+            ForecastPayload payload;
+            try {
+                payload = ForecastPayload.decode(encodedPayload);
+            } catch (IllegalArgumentException e) {
+                Log.w(TAG, "Ignoring forecast payload", e);
+                return false;
+            }
+            long todayDate = ForecastPayload.normalizeLocalDate(System.currentTimeMillis(), mTimeZone);
+            int today = payload.indexOfDate(todayDate);
+            if (today == -1) {
+                return false;
+            }
+            mLastPayload = encodedPayload;
+            mLastPayloadReceivedAt = receivedAt;
+            mShownDate = todayDate;
+            long syncedAt = payload.getSyncedAt() != 0 ? payload.getSyncedAt() : receivedAt;
+            mRenderer.setForecast(payload.getHigh(today), payload.getLow(today), syncedAt);
+            invalidate();
+            int iconResourceId = WeatherIcons.getIconResourceIdForWeatherCondition(payload.getWeatherId(today));
+            if (iconResourceId != mRequestedIconResourceId) {
+                mRequestedIconResourceId = iconResourceId;
+                mIconDecoder.request(iconResourceId);
+            }
+            return true;
+        }
+
+        @Override
+        public void onIconDecoded(int resId, Bitmap icon) {
+            /* On the main thread, so onDraw can't be using the previous icon right now */
+            Bitmap previous = iconBitmap;
+            iconBitmap = icon;
+            mRenderer.setIcon(icon);
+            if (previous != null) {
+                previous.recycle();
+            }
+            invalidate();
         }
     }
     
@@ -0,0 +1,342 @@
+package com.example.android.sunshine.wareable;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.Paint;
+import android.graphics.Rect;
+
+import com.example.android.sunshine.shared.ForecastPayload;
+
+import java.text.SimpleDateFormat;
+import java.util.Calendar;
+import java.util.Locale;
+import java.util.TimeZone;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Draws the Sunshine watch face. Everything drawn on a frame is prepared ahead of time: the
+ * geometry is preallocated and the texts, with their measured bounds, are only formatted again
+ * when the displayed minute, the date or the forecast changes. A steady state frame allocates
+ * nothing.
+ * <p>
+ * The face is drawn in two layers. Everything but the time (background, date, separator,
+ * temperatures and icon) is rendered once into a cached bitmap, and each frame only copies that
+ * bitmap and draws the time on top of it. Each display mode (interactive, ambient, low-bit
+ * ambient and burn-in protected ambient) has its own cached layer, so entering and leaving
+ * ambient mode doesn't rebuild anything. The layers are rebuilt when the forecast, the icon,
+ * the date or the size of the face changes.
+ * <p>
+ * A forecast the phone didn't sync for {@link #STALE_AFTER_MILLIS} is drawn dimmed, so the user
+ * can tell it may be out of date.
+ */
+class WatchFaceRenderer {
+
+    private static final float HOUR_STROKE_WIDTH = 4f;
+    private static final int HOUR_SIZE = 55;
+    private static final int DATE_SIZE = 23;
+    private static final int MAX_SIZE = 32;
+    private static final int LINE_SIZE = 60;
+
+    private static final long MINUTE_IN_MILLIS = TimeUnit.MINUTES.toMillis(1);
+    private static final long DAY_IN_MILLIS = TimeUnit.DAYS.toMillis(1);
+
+    /* Past the longest window between two syncs of the phone, the forecast is stale */
+    static final long STALE_AFTER_MILLIS = ForecastPayload.STALE_AFTER_MILLIS;
+
+    /* Alpha of the icon and the high temperature of a stale forecast */
+    private static final int STALE_ALPHA = 0x80;
+
+    /* Display modes, each one has its own cached static layer */
+    private static final int MODE_INTERACTIVE = 0;
+    private static final int MODE_AMBIENT = 1;
+    private static final int MODE_AMBIENT_LOW_BIT = 2;
+    private static final int MODE_AMBIENT_BURN_IN = 3;
+    private static final int MODE_COUNT = 4;
+
+    /* Text used to measure the height of the time, which the layout of the static layer uses */
+    private static final String HOUR_MEASURE_TEXT = "00:00";
+
+    private final Paint mHourPaint = new Paint();
+    private final Paint mDatePaint = new Paint();
+    private final Paint mIconPaint = new Paint();
+    private final Paint mMaxPaint = new Paint();
+    private final Paint mMinPaint = new Paint();
+
+    private final int mBackgroundColor;
+    private final int mAmbientBackgroundColor;
+    private final int mLightFontColor;
+
+    private final Calendar mCalendar = Calendar.getInstance();
+    private final SimpleDateFormat mHourFormat = new SimpleDateFormat("HH:mm", Locale.getDefault());
+    private final SimpleDateFormat mDateFormat = new SimpleDateFormat("EEE, MMM dd yyyy", Locale.getDefault());
+    private TimeZone mTimeZone = TimeZone.getDefault();
+
+    private final Rect mHourBounds = new Rect();
+    private final Rect mDateBounds = new Rect();
+    private final Rect mMaxBounds = new Rect();
+    private final int mHourHeight;
+
+    /* Static layer of each mode and the content generation it was rendered for */
+    private final Bitmap[] mLayers = new Bitmap[MODE_COUNT];
+    private final int[] mLayerGenerations = new int[MODE_COUNT];
+    private final Canvas mLayerCanvas = new Canvas();
+
+    /* Incremented each time the content of the static layer changes */
+    private int mContentGeneration = 1;
+    private int mLayerRebuildCount;
+
+    /* Cached texts, along with the local minute and day they were formatted for */
+    private String mHourText;
+    private String mDateText;
+    private long mHourTextMinute = Long.MIN_VALUE;
+    private long mDateTextDay = Long.MIN_VALUE;
+
+    private boolean mHasForecast;
+    private String mMaxText;
+    private String mMinText;
+    private long mForecastSyncedAt;
+    private boolean mStale;
+    private Bitmap mIcon;
+
+    private boolean mAmbient;
+    private boolean mLowBitAmbient;
+    private boolean mBurnInProtection;
+
+    WatchFaceRenderer(Context context) {
+        mBackgroundColor = context.getColor(R.color.watch_background);
+        mAmbientBackgroundColor = context.getColor(R.color.watch_background_inative);
+        mLightFontColor = context.getColor(R.color.light_font);
+
+        mHourPaint.setColor(Color.WHITE);
+        mHourPaint.setTextSize(HOUR_SIZE);
+        mHourPaint.setStrokeWidth(HOUR_STROKE_WIDTH);
+        mHourPaint.setAntiAlias(true);
+
+        mDatePaint.setTextSize(DATE_SIZE);
+        mDatePaint.setColor(mLightFontColor);
+        mDatePaint.setAntiAlias(true);
+
+        mMaxPaint.setTextSize(MAX_SIZE);
+        mMaxPaint.setColor(Color.WHITE);
+        mMaxPaint.setAntiAlias(true);
+
+        mMinPaint.setTextSize(MAX_SIZE);
+        mMinPaint.setColor(mLightFontColor);
+        mMinPaint.setAntiAlias(true);
+
+        Rect hourBounds = new Rect();
+        mHourPaint.getTextBounds(HOUR_MEASURE_TEXT, 0, HOUR_MEASURE_TEXT.length(), hourBounds);
+        mHourHeight = hourBounds.height();
+    }
+
+    void setTimeZone(TimeZone timeZone) {
+        mTimeZone = timeZone;
+        mCalendar.setTimeZone(timeZone);
+        mHourFormat.setTimeZone(timeZone);
+        mDateFormat.setTimeZone(timeZone);
+        invalidateTexts();
+    }
+
+    void setDeviceProperties(boolean lowBitAmbient, boolean burnInProtection) {
+        mLowBitAmbient = lowBitAmbient;
+        mBurnInProtection = burnInProtection;
+    }
+
+    void setAmbient(boolean ambient) {
+        mAmbient = ambient;
+        if (ambient) {
+            mHourPaint.setAntiAlias(false);
+            mDatePaint.setAntiAlias(false);
+            mMinPaint.setColor(Color.WHITE);
+            mDatePaint.setColor(Color.WHITE);
+        } else {
+            mMinPaint.setColor(mLightFontColor);
+            mDatePaint.setColor(mLightFontColor);
+            mHourPaint.setAntiAlias(true);
+            mDatePaint.setAntiAlias(true);
+        }
+    }
+
+    /**
+     * @return Number of times a static layer has been rendered, for diagnostics and tests
+     */
+    int getLayerRebuildCount() {
+        return mLayerRebuildCount;
+    }
+
+    /**
+     * Sets today's forecast. The temperature texts are formatted and measured here, once.
+     *
+     * @param syncedAt UNIX time at which the phone synced the forecast
+     */
+    void setForecast(double max, double min, long syncedAt) {
+        mHasForecast = true;
+        mForecastSyncedAt = syncedAt;
+        /* Check the staleness of the new forecast on the next frame */
+        mHourTextMinute = Long.MIN_VALUE;
+        mMaxText = String.format(Locale.getDefault(), "%.0fº", max);
+        mMinText = String.format(Locale.getDefault(), "%.0fº", min);
+        mMaxPaint.getTextBounds(mMaxText, 0, mMaxText.length(), mMaxBounds);
+        mContentGeneration++;
+    }
+
+    /**
+     * Stops drawing the forecast, for instance when it has no entry for the new day.
+     */
+    void clearForecast() {
+        if (mHasForecast) {
+            mHasForecast = false;
+            mStale = false;
+            mContentGeneration++;
+        }
+    }
+
+    boolean isStale() {
+        return mStale;
+    }
+
+    void setIcon(Bitmap icon) {
+        mIcon = icon;
+        mContentGeneration++;
+    }
+
+    /**
+     * Drops the cached layers, releasing their memory. They are rendered again when needed.
+     */
+    void releaseLayers() {
+        for (int i = 0; i < MODE_COUNT; i++) {
+            if (mLayers[i] != null) {
+                mLayers[i].recycle();
+                mLayers[i] = null;
+            }
+        }
+    }
+
+    /**
+     * Forgets the cached time and date texts, for instance after a time zone or locale change.
+     */
+    void invalidateTexts() {
+        mHourTextMinute = Long.MIN_VALUE;
+        mDateTextDay = Long.MIN_VALUE;
+    }
+
+    void draw(Canvas canvas, Rect bounds, long nowMillis) {
+        updateTexts(nowMillis);
+
+        canvas.drawBitmap(getStaticLayer(bounds), bounds.left, bounds.top, null);
+
+        float centerX = bounds.exactCenterX();
+        float hourY = bounds.top + bounds.height() / 2 - 40;
+        canvas.drawText(mHourText, centerX - mHourBounds.centerX(), hourY, mHourPaint);
+    }
+
+    private int getMode() {
+        if (!mAmbient) {
+            return MODE_INTERACTIVE;
+        } else if (mLowBitAmbient) {
+            return MODE_AMBIENT_LOW_BIT;
+        } else if (mBurnInProtection) {
+            return MODE_AMBIENT_BURN_IN;
+        }
+        return MODE_AMBIENT;
+    }
+
+    /*
+     * Returns the static layer of the current mode, rendering it first if it is missing, out of
+     * date or of another size.
+     */
+    private Bitmap getStaticLayer(Rect bounds) {
+        int mode = getMode();
+        int generation = mContentGeneration;
+        Bitmap layer = mLayers[mode];
+        if (layer != null && layer.getWidth() == bounds.width() && layer.getHeight() == bounds.height()) {
+            if (mLayerGenerations[mode] == generation) {
+                return layer;
+            }
+        } else {
+            if (layer != null) {
+                layer.recycle();
+            }
+            layer = Bitmap.createBitmap(bounds.width(), bounds.height(), Bitmap.Config.ARGB_8888);
+            mLayers[mode] = layer;
+        }
+        mLayerCanvas.setBitmap(layer);
+        drawStaticLayer(mLayerCanvas, mode, layer.getWidth(), layer.getHeight());
+        mLayerCanvas.setBitmap(null);
+        mLayerGenerations[mode] = generation;
+        mLayerRebuildCount++;
+        return layer;
+    }
+
+    private void drawStaticLayer(Canvas canvas, int mode, int width, int height) {
+        if (mode == MODE_AMBIENT_LOW_BIT || mode == MODE_AMBIENT_BURN_IN) {
+            canvas.drawColor(Color.BLACK);
+        } else if (mode == MODE_AMBIENT) {
+            canvas.drawColor(mAmbientBackgroundColor);
+        } else {
+            canvas.drawColor(mBackgroundColor);
+        }
+
+        int centerY = height / 2;
+        float centerX = width / 2;
+
+        float yAtual = centerY - 40;
+
+        yAtual += mHourHeight - 5;
+        canvas.drawText(mDateText, centerX - mDateBounds.centerX(), yAtual, mDatePaint);
+
+        yAtual += mDateBounds.height() + 10;
+
+        canvas.drawLine(centerX - LINE_SIZE / 2, yAtual, centerX + LINE_SIZE / 2, yAtual, mDatePaint);
+
+        if (mHasForecast) {
+            yAtual += mMaxBounds.height() + 26;
+            int alpha = mStale ? STALE_ALPHA : 0xFF;
+            mMaxPaint.setAlpha(alpha);
+            mIconPaint.setAlpha(alpha);
+            canvas.drawText(mMaxText, centerX - mMaxBounds.centerX(), yAtual, mMaxPaint);
+
+            canvas.drawText(mMinText, centerX + mMaxBounds.centerX() + 16, yAtual, mMinPaint);
+
+            Bitmap icon = mIcon;
+            if (mode == MODE_INTERACTIVE && icon != null) {
+                float xInit = centerX - mMaxBounds.centerX() - icon.getWidth() - 16;
+                float yInit = yAtual - icon.getHeight() / 2 - 10;
+                canvas.drawBitmap(icon, xInit, yInit, mIconPaint);
+            }
+        }
+    }
+
+    /*
+     * Only formats (and allocates) when the local minute or the local day changed since the
+     * texts were last formatted. The staleness of the forecast is checked once a minute too.
+     */
+    private void updateTexts(long nowMillis) {
+        long localMillis = nowMillis + mTimeZone.getOffset(nowMillis);
+        long minute = localMillis / MINUTE_IN_MILLIS;
+        if (minute == mHourTextMinute) {
+            return;
+        }
+        mHourTextMinute = minute;
+
+        boolean stale = mHasForecast && nowMillis - mForecastSyncedAt > STALE_AFTER_MILLIS;
+        if (stale != mStale) {
+            mStale = stale;
+            mContentGeneration++;
+        }
+
+        mCalendar.setTimeInMillis(nowMillis);
+        mHourText = mHourFormat.format(mCalendar.getTime());
+        mHourPaint.getTextBounds(mHourText, 0, mHourText.length(), mHourBounds);
+
+        long day = localMillis / DAY_IN_MILLIS;
+        if (day != mDateTextDay) {
+            mDateTextDay = day;
+            mDateText = mDateFormat.format(mCalendar.getTime()).toUpperCase(Locale.getDefault());
+            mDatePaint.getTextBounds(mDateText, 0, mDateText.length(), mDateBounds);
+            mContentGeneration++;
+        }
+    }
+}